@@ -1,4 +1,5 @@
 <#import "solr.lib.ftl" as solrLib/>
+<#if binaryOutput??>${binaryOutput.write()}<#else>
 { 
    "aclsReaders" :
    [
@@ -7,4 +8,4 @@
          <#if aclReaders_has_next>,</#if>
       </#list>
    ]
-}
\ No newline at end of file
+}</#if>
\ No newline at end of file
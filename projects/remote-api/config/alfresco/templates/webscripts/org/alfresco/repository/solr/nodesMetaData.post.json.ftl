@@ -1,4 +1,5 @@
 <#import "solr.lib.ftl" as solrLib/>
+<#if binaryOutput??>${binaryOutput.write()}<#else>
 {
    "nodes" :
    [
@@ -6,4 +7,4 @@
          <@solrLib.nodeMetaDataJSON nodeMetaData=nodeMetaData filter=filter/><#if nodeMetaData_has_next>,</#if>
       </#list>
    ]
-}
\ No newline at end of file
+}</#if>
\ No newline at end of file
@@ -440,7 +440,7 @@ public class ContentStreamer implements ResourceLoaderAware
                // get the content and stream directly to the response output stream
                // assuming the repository is capable of streaming in chunks, this should allow large files
                // to be streamed directly to the browser response stream.
-               reader.getContent( res.getOutputStream() );
+               HttpRangeProcessor.streamContent(reader, res.getOutputStream());
             }
         }
         catch (SocketException e1)
@@ -27,12 +27,14 @@ package org.alfresco.repo.web.scripts.solr;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.alfresco.repo.solr.AclReaders;
 import org.alfresco.repo.solr.SOLRTrackingComponent;
+import org.alfresco.solr.client.SOLRBinaryEncoding;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.json.JSONArray;
@@ -43,6 +45,7 @@ import org.springframework.extensions.webscripts.DeclarativeWebScript;
 import org.springframework.extensions.webscripts.Status;
 import org.springframework.extensions.webscripts.WebScriptException;
 import org.springframework.extensions.webscripts.WebScriptRequest;
+import org.springframework.extensions.webscripts.WebScriptResponse;
 
 /**
  * Support for SOLR: Track ACLs
@@ -111,10 +114,27 @@ public class AclsReadersGet extends DeclarativeWebScript
         }
 
         // Request according to the paging query style required
-        List<AclReaders> aclsReaders = solrTrackingComponent.getAclsReaders(aclIds);
+        final List<AclReaders> aclsReaders = solrTrackingComponent.getAclsReaders(aclIds);
         
         Map<String, Object> model = new HashMap<String, Object>(1, 1.0f);
-        model.put("aclsReaders", aclsReaders);
+        if (SOLRBinaryWriter.isRequested(req))
+        {
+            model.put(SOLRBinaryOutput.MODEL_KEY, new SOLRBinaryOutput()
+            {
+                @Override
+                protected void writeRecords(SOLRBinaryWriter writer) throws IOException
+                {
+                    for (AclReaders aclReaders : aclsReaders)
+                    {
+                        writeAclReaders(writer, aclReaders);
+                    }
+                }
+            });
+        }
+        else
+        {
+            model.put("aclsReaders", aclsReaders);
+        }
 
         if (logger.isDebugEnabled())
         {
@@ -123,4 +143,42 @@ public class AclsReadersGet extends DeclarativeWebScript
         
         return model;
     }
+
+    @Override
+    protected Map<String, Object> createTemplateParameters(WebScriptRequest req, WebScriptResponse res, Map<String, Object> customParams)
+    {
+        SOLRBinaryOutput.bind(customParams, res);
+        return super.createTemplateParameters(req, res, customParams);
+    }
+
+    /**
+     * Write the readers of an ACL as a binary record, with the same content as the JSON template.
+     */
+    static void writeAclReaders(SOLRBinaryWriter writer, AclReaders aclReaders) throws IOException
+    {
+        writer.startRecord();
+        writer.writeField(SOLRBinaryEncoding.FIELD_ACL_ID);
+        writer.writeLong(aclReaders.getAclId());
+        writer.writeField(SOLRBinaryEncoding.FIELD_ACL_CHANGE_SET_ID);
+        writer.writeLong(aclReaders.getAclChangeSetId());
+        writer.writeField(SOLRBinaryEncoding.FIELD_TENANT);
+        writer.writeString(aclReaders.getTenantDomain());
+        writeAuthorities(writer, SOLRBinaryEncoding.FIELD_READERS, aclReaders.getReaders());
+        writeAuthorities(writer, SOLRBinaryEncoding.FIELD_DENIED, aclReaders.getDenied());
+        writer.endRecord();
+    }
+
+    private static void writeAuthorities(SOLRBinaryWriter writer, int field, Collection<String> authorities) throws IOException
+    {
+        if (authorities == null)
+        {
+            return;
+        }
+        writer.writeField(field);
+        writer.writeCount(authorities.size());
+        for (String authority : authorities)
+        {
+            writer.writeAuthority(authority);
+        }
+    }
 }
@@ -25,6 +25,7 @@
  */
 package org.alfresco.repo.web.scripts.solr;
 
+import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -34,7 +35,9 @@ import java.util.Locale;
 import javax.servlet.http.HttpServletResponse;
 
 import org.alfresco.model.ContentModel;
+import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.content.MimetypeMap;
+import org.alfresco.repo.content.filestore.FileContentReader;
 import org.alfresco.repo.content.transform.ContentTransformer;
 import org.alfresco.repo.content.transform.TransformerDebug;
 import org.alfresco.repo.content.transform.UnsupportedTransformationException;
@@ -59,6 +62,9 @@ import org.springframework.extensions.webscripts.WebScriptResponse;
 /**
  * A web service to return the text content (transformed if required) of a node's
  * content property.
+ * <p/>
+ * If a transformed text cache is set, the text is kept by content URL and mimetype, so that content shared by
+ * several nodes, such as copies of templates, is only transformed once while the text is still in the temp store.
  * 
  * @since 4.0
  */
@@ -79,6 +85,7 @@ public class NodeContentGet extends StreamContent
     private NodeService nodeService;
     private ContentService contentService;
     private TransformerDebug transformerDebug;
+    private SimpleCache<String, String> transformedTextCache;
 
     public void setNodeDAO(NodeDAO nodeDAO)
     {
@@ -104,6 +111,15 @@ public class NodeContentGet extends StreamContent
         this.transformerDebug = transformerDebug;
     }
 
+    /**
+     * Setter of the cache of transformed text files by content URL and mimetype. Optional.
+     * @param transformedTextCache SimpleCache
+     */
+    public void setTransformedTextCache(SimpleCache<String, String> transformedTextCache)
+    {
+        this.transformedTextCache = transformedTextCache;
+    }
+
     /**
      *
      * @param req WebScriptRequest
@@ -184,6 +200,16 @@ public class NodeContentGet extends StreamContent
             return;            
         }
         
+        String textCacheKey = reader.getContentUrl() + "|" + reader.getMimetype();
+        textReader = getCachedText(textCacheKey);
+        if (textReader != null)
+        {
+            res.setHeader(TRANSFORM_DURATION_HEADER, "0");
+            res.setStatus(HttpStatus.SC_OK);
+            streamContentImpl(req, res, textReader, null, null, false, modified, String.valueOf(modified.getTime()), null, null);
+            return;
+        }
+        
         try
         {
             // get the transformer
@@ -241,6 +267,10 @@ public class NodeContentGet extends StreamContent
             }
             else
             {
+                if (transformedTextCache != null && textReader instanceof FileContentReader)
+                {
+                    transformedTextCache.put(textCacheKey, ((FileContentReader) textReader).getFile().getAbsolutePath());
+                }
                 res.setStatus(HttpStatus.SC_OK);
                 streamContentImpl(req, res, textReader, null, null, false, modified, String.valueOf(modified.getTime()), null, null);            
             }
@@ -250,4 +280,31 @@ public class NodeContentGet extends StreamContent
             transformerDebug.popAvailable();
         }
     }
+
+    /**
+     * @return a reader of the text transformed from the same content before, or <tt>null</tt>
+     */
+    private ContentReader getCachedText(String textCacheKey)
+    {
+        if (transformedTextCache == null)
+        {
+            return null;
+        }
+        String textPath = transformedTextCache.get(textCacheKey);
+        if (textPath == null)
+        {
+            return null;
+        }
+        File textFile = new File(textPath);
+        if (!textFile.exists())
+        {
+            // The temp file has been cleaned up
+            transformedTextCache.remove(textCacheKey);
+            return null;
+        }
+        ContentReader textReader = new FileContentReader(textFile);
+        textReader.setMimetype(MimetypeMap.MIMETYPE_TEXT_PLAIN);
+        textReader.setEncoding("UTF-8");
+        return textReader;
+    }
 }
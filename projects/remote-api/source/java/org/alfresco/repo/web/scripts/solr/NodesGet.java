@@ -33,6 +33,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.domain.node.Node;
 import org.alfresco.repo.domain.qname.QNameDAO;
 import org.alfresco.repo.search.impl.QueryParserUtils;
@@ -43,6 +44,7 @@ import org.alfresco.repo.solr.SOLRTrackingComponent.NodeQueryCallback;
 import org.alfresco.repo.tenant.TenantService;
 import org.alfresco.service.cmr.repository.StoreRef;
 import org.alfresco.service.namespace.QName;
+import org.alfresco.solr.client.SOLRBinaryEncoding;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.json.JSONArray;
@@ -53,6 +55,7 @@ import org.springframework.extensions.webscripts.DeclarativeWebScript;
 import org.springframework.extensions.webscripts.Status;
 import org.springframework.extensions.webscripts.WebScriptException;
 import org.springframework.extensions.webscripts.WebScriptRequest;
+import org.springframework.extensions.webscripts.WebScriptResponse;
 
 /**
  * Support for SOLR: Get a list of nodes in the given transactions.
@@ -169,7 +172,7 @@ public class NodesGet extends DeclarativeWebScript
             
             String shardProperty = o.has("shardProperty") ? o.getString("shardProperty") : null;
             
-            NodeParameters nodeParameters = new NodeParameters();
+            final NodeParameters nodeParameters = new NodeParameters();
             nodeParameters.setTransactionIds(txnIds);
             nodeParameters.setFromTxnId(fromTxnId);
             nodeParameters.setToTxnId(toTxnId);
@@ -197,6 +200,25 @@ public class NodesGet extends DeclarativeWebScript
             
             nodeParameters.setMaxResults(maxResults);
             
+            if(SOLRBinaryWriter.isRequested(req))
+            {
+                // the template writes the nodes to the response as they are read
+                final int count = maxResults;
+                final StoreRef filterStoreRef = storeRef;
+                Map<String, Object> model = new HashMap<String, Object>(1, 1.0f);
+                model.put(SOLRBinaryOutput.MODEL_KEY, new SOLRBinaryOutput()
+                {
+                    @Override
+                    protected void writeRecords(SOLRBinaryWriter writer) throws IOException
+                    {
+                        WebNodeQueryCallback nodeQueryCallback = new WebNodeQueryCallback(count, filterStoreRef, tenantService, qnameDAO);
+                        nodeQueryCallback.setWriter(writer);
+                        solrTrackingComponent.getNodes(nodeParameters, nodeQueryCallback);
+                    }
+                });
+                return model;
+            }
+            
             WebNodeQueryCallback nodeQueryCallback = new WebNodeQueryCallback(maxResults, storeRef, tenantService, qnameDAO);
             
             solrTrackingComponent.getNodes(nodeParameters, nodeQueryCallback);
@@ -222,6 +244,13 @@ public class NodesGet extends DeclarativeWebScript
         }
     }
 
+    @Override
+    protected Map<String, Object> createTemplateParameters(WebScriptRequest req, WebScriptResponse res, Map<String, Object> customParams)
+    {
+        SOLRBinaryOutput.bind(customParams, res);
+        return super.createTemplateParameters(req, res, customParams);
+    }
+
     public static class NodeRecord
     {
         private final Long id;
@@ -277,6 +306,35 @@ public class NodesGet extends DeclarativeWebScript
         {
             return this.shardPropertyValue;
         }
+
+        /**
+         * Write the node as a binary record, with the same content as the JSON template.
+         */
+        public void write(SOLRBinaryWriter writer) throws IOException
+        {
+            writer.startRecord();
+            writer.writeField(SOLRBinaryEncoding.FIELD_ID);
+            writer.writeLong(id);
+            writer.writeField(SOLRBinaryEncoding.FIELD_NODE_REF);
+            writer.writeString(nodeRef);
+            writer.writeField(SOLRBinaryEncoding.FIELD_TXN_ID);
+            writer.writeLong(txnId);
+            writer.writeField(SOLRBinaryEncoding.FIELD_STATUS);
+            writer.writeString(isDeleted ? "d" : "u");
+            if(aclId != null)
+            {
+                writer.writeField(SOLRBinaryEncoding.FIELD_ACL_ID);
+                writer.writeLong(aclId);
+            }
+            if(shardPropertyValue != null)
+            {
+                writer.writeField(SOLRBinaryEncoding.FIELD_SHARD_PROPERTY_VALUE);
+                writer.writeString(shardPropertyValue);
+            }
+            writer.writeField(SOLRBinaryEncoding.FIELD_TENANT);
+            writer.writeString(tenant);
+            writer.endRecord();
+        }
     }
 
     /**
@@ -292,6 +350,8 @@ public class NodesGet extends DeclarativeWebScript
         
         private QNameDAO qnameDAO;
         
+        private SOLRBinaryWriter writer;
+        
         public WebNodeQueryCallback(int count, StoreRef storeRef, TenantService tenantService, QNameDAO qnameDAO)
         {
             super();
@@ -313,18 +373,43 @@ public class NodesGet extends DeclarativeWebScript
                 StoreRef baseStoreRef = new StoreRef(tenantStoreRef.getProtocol(), tenantService.getBaseName(tenantStoreRef.getIdentifier(), true));
                 if (storeRef.equals(baseStoreRef))
                 {
-                    nodes.add(new NodeRecord(node, qnameDAO, tenantService));
+                    addNode(new NodeRecord(node, qnameDAO, tenantService));
                 }
             }
             else
             {
-                nodes.add(new NodeRecord(node, qnameDAO, tenantService));
+                addNode(new NodeRecord(node, qnameDAO, tenantService));
             }
             
             // continue - get next node
             return true;
         }
         
+        /**
+         * Write the nodes to the given binary writer as they are found, instead of collecting them.
+         */
+        public void setWriter(SOLRBinaryWriter writer)
+        {
+            this.writer = writer;
+        }
+        
+        private void addNode(NodeRecord node)
+        {
+            if (writer == null)
+            {
+                nodes.add(node);
+                return;
+            }
+            try
+            {
+                node.write(writer);
+            }
+            catch (IOException e)
+            {
+                throw new AlfrescoRuntimeException("Problem writing node " + node.getNodeRef(), e);
+            }
+        }
+        
         public List<NodeRecord> getNodes()
         {
             return nodes;
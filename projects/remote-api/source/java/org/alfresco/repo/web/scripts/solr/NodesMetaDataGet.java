@@ -49,6 +49,7 @@ import org.alfresco.service.cmr.repository.ChildAssociationRef;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.Path;
 import org.alfresco.service.namespace.QName;
+import org.alfresco.solr.client.SOLRBinaryEncoding;
 import org.alfresco.util.Pair;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -60,6 +61,7 @@ import org.springframework.extensions.webscripts.DeclarativeWebScript;
 import org.springframework.extensions.webscripts.Status;
 import org.springframework.extensions.webscripts.WebScriptException;
 import org.springframework.extensions.webscripts.WebScriptRequest;
+import org.springframework.extensions.webscripts.WebScriptResponse;
 
 // todo url parameter to remove whitespace in results - make it the default?
 /**
@@ -138,7 +140,7 @@ public class NodesMetaDataGet extends DeclarativeWebScript
             final boolean noSizeCalculated = (size == 0);
 
             // filters, defaults are 'true'
-            MetaDataResultsFilter filter = new MetaDataResultsFilter();
+            final MetaDataResultsFilter filter = new MetaDataResultsFilter();
             if(o.has("includeAclId"))
             {
                 filter.setIncludeAclId(o.getBoolean("includeAclId"));
@@ -180,14 +182,45 @@ public class NodesMetaDataGet extends DeclarativeWebScript
                 filter.setIncludeTxnId(o.getBoolean("includeTxnId"));
             }
             
-            final ArrayList<FreemarkerNodeMetaData> nodesMetaData = 
-                new ArrayList<FreemarkerNodeMetaData>(size > 0 ? size : INITIAL_DEFAULT_SIZE);
-            NodeMetaDataParameters params = new NodeMetaDataParameters();
+            final NodeMetaDataParameters params = new NodeMetaDataParameters();
             params.setNodeIds(nodeIds);
             params.setFromNodeId(fromNodeId);
             params.setToNodeId(toNodeId);
             params.setMaxResults(maxResults);
 
+            if(SOLRBinaryWriter.isRequested(req))
+            {
+                // the template writes the nodes to the response as they are read
+                Map<String, Object> model = new HashMap<String, Object>(1, 1.0f);
+                model.put(SOLRBinaryOutput.MODEL_KEY, new SOLRBinaryOutput()
+                {
+                    @Override
+                    protected void writeRecords(final SOLRBinaryWriter writer) throws IOException
+                    {
+                        solrTrackingComponent.getNodesMetadata(params, filter, new NodeMetaDataQueryCallback()
+                        {
+                            @Override
+                            public boolean handleNodeMetaData(NodeMetaData nodeMetaData)
+                            {
+                                try
+                                {
+                                    writeNodeMetaData(writer, nodeMetaData);
+                                }
+                                catch(Exception e)
+                                {
+                                    throw new AlfrescoRuntimeException("Problem writing node " + nodeMetaData.getNodeRef(), e);
+                                }
+                                return true;
+                            }
+                        });
+                    }
+                });
+                return model;
+            }
+
+            final ArrayList<FreemarkerNodeMetaData> nodesMetaData = 
+                new ArrayList<FreemarkerNodeMetaData>(size > 0 ? size : INITIAL_DEFAULT_SIZE);
+
             solrTrackingComponent.getNodesMetadata(params, filter, new NodeMetaDataQueryCallback()
             {
                 private int counter = BATCH_SIZE;
@@ -239,6 +272,170 @@ public class NodesMetaDataGet extends DeclarativeWebScript
         }
     }
 
+    @Override
+    protected Map<String, Object> createTemplateParameters(WebScriptRequest req, WebScriptResponse res, Map<String, Object> customParams)
+    {
+        SOLRBinaryOutput.bind(customParams, res);
+        return super.createTemplateParameters(req, res, customParams);
+    }
+
+    /**
+     * Write the node meta data as a binary record, with the same content as the JSON template.
+     */
+    private void writeNodeMetaData(final SOLRBinaryWriter writer, final NodeMetaData nodeMetaData) throws IOException, JSONException
+    {
+        writer.startRecord();
+        writer.writeField(SOLRBinaryEncoding.FIELD_ID);
+        writer.writeLong(nodeMetaData.getNodeId());
+        if(nodeMetaData.getTenantDomain() != null)
+        {
+            writer.writeField(SOLRBinaryEncoding.FIELD_TENANT);
+            writer.writeString(nodeMetaData.getTenantDomain());
+        }
+        if(nodeMetaData.getNodeRef() != null)
+        {
+            writer.writeField(SOLRBinaryEncoding.FIELD_NODE_REF);
+            writer.writeString(nodeMetaData.getNodeRef().toString());
+        }
+        if(nodeMetaData.getNodeType() != null)
+        {
+            writer.writeField(SOLRBinaryEncoding.FIELD_TYPE);
+            writer.writeQName(nodeMetaData.getNodeType());
+        }
+        if(nodeMetaData.getAclId() != null)
+        {
+            writer.writeField(SOLRBinaryEncoding.FIELD_ACL_ID);
+            writer.writeLong(nodeMetaData.getAclId());
+        }
+        if(nodeMetaData.getTxnId() != null)
+        {
+            writer.writeField(SOLRBinaryEncoding.FIELD_TXN_ID);
+            writer.writeLong(nodeMetaData.getTxnId());
+        }
+
+        final Map<QName, Serializable> props = nodeMetaData.getProperties();
+        if(props != null)
+        {
+            writer.writeField(SOLRBinaryEncoding.FIELD_PROPERTIES);
+            writer.writeCount(props.size());
+            // need to run this in tenant context because types may be in a tenant-specific
+            // dictionary registry
+            TenantUtil.runAsTenant(new TenantRunAsWork<Void>()
+            {
+                @Override
+                public Void doWork() throws Exception
+                {
+                    for(Map.Entry<QName, Serializable> entry : props.entrySet())
+                    {
+                        writer.writeQName(entry.getKey());
+                        solrSerializer.serialize(entry.getKey(), entry.getValue(), writer);
+                    }
+                    return null;
+                }
+            }, nodeMetaData.getTenantDomain());
+        }
+
+        if(nodeMetaData.getAspects() != null)
+        {
+            writer.writeField(SOLRBinaryEncoding.FIELD_ASPECTS);
+            writer.writeCount(nodeMetaData.getAspects().size());
+            for(QName aspect : nodeMetaData.getAspects())
+            {
+                writer.writeQName(aspect);
+            }
+        }
+
+        // Paths that were not asked for are left out, so that they read back as null rather than as no paths
+        Collection<Pair<Path, QName>> paths = nodeMetaData.getPaths();
+        Set<String> ancestors = new HashSet<String>();
+        if(paths != null)
+        {
+            writer.writeField(SOLRBinaryEncoding.FIELD_PATHS);
+            writer.writeCount(paths.size());
+            for(Pair<Path, QName> pair : paths)
+            {
+                StringBuilder ancestorPath = new StringBuilder();
+                for (NodeRef ancestor : FreemarkerNodeMetaData.getAncestors(pair.getFirst()))
+                {
+                    ancestors.add(ancestor.toString());
+                    ancestorPath.insert(0, ancestor.getId()).insert(0, "/");
+                }
+                writer.writePath(solrSerializer.serializeValue(String.class, pair.getFirst()));
+                writer.writeQName(pair.getSecond());
+                writer.writePath(ancestorPath.toString());
+            }
+        }
+        if(ancestors.size() > 0)
+        {
+            writer.writeField(SOLRBinaryEncoding.FIELD_ANCESTORS);
+            writer.writeCount(ancestors.size());
+            for(String ancestor : ancestors)
+            {
+                writer.writePath(ancestor);
+            }
+        }
+
+        Collection<Collection<String>> namePaths = nodeMetaData.getNamePaths();
+        if(namePaths != null)
+        {
+            writer.writeField(SOLRBinaryEncoding.FIELD_NAME_PATHS);
+            writer.writeCount(namePaths.size());
+            for(Collection<String> namePath : namePaths)
+            {
+                writer.writeCount(namePath.size());
+                for(String element : namePath)
+                {
+                    writer.writePath(element);
+                }
+            }
+        }
+
+        List<ChildAssociationRef> parentAssocs = nodeMetaData.getParentAssocs();
+        if(parentAssocs != null && parentAssocs.size() > 0)
+        {
+            writer.writeField(SOLRBinaryEncoding.FIELD_PARENT_ASSOCS);
+            writer.writeCount(parentAssocs.size());
+            for(ChildAssociationRef parentAssoc : parentAssocs)
+            {
+                writer.writeString(parentAssoc.toString());
+            }
+            if(nodeMetaData.getParentAssocsCrc() != null)
+            {
+                writer.writeField(SOLRBinaryEncoding.FIELD_PARENT_ASSOCS_CRC);
+                writer.writeLong(nodeMetaData.getParentAssocsCrc());
+            }
+        }
+
+        List<ChildAssociationRef> childAssocs = nodeMetaData.getChildAssocs();
+        if(childAssocs != null && childAssocs.size() > 0)
+        {
+            writer.writeField(SOLRBinaryEncoding.FIELD_CHILD_ASSOCS);
+            writer.writeCount(childAssocs.size());
+            for(ChildAssociationRef childAssoc : childAssocs)
+            {
+                writer.writeString(childAssoc.toString());
+            }
+        }
+
+        List<Long> childIds = nodeMetaData.getChildIds();
+        if(childIds != null && childIds.size() > 0)
+        {
+            writer.writeField(SOLRBinaryEncoding.FIELD_CHILD_IDS);
+            writer.writeCount(childIds.size());
+            for(Long childId : childIds)
+            {
+                writer.writeLong(childId);
+            }
+        }
+
+        if(nodeMetaData.getOwner() != null)
+        {
+            writer.writeField(SOLRBinaryEncoding.FIELD_OWNER);
+            writer.writeString(nodeMetaData.getOwner());
+        }
+        writer.endRecord();
+    }
+
     /**
      * Bean to store node meta data for use by FreeMarker templates
      * 
@@ -418,7 +615,7 @@ public class NodesMetaDataGet extends DeclarativeWebScript
         {
             return tenantDomain;
         }
-        private ArrayList<NodeRef> getAncestors(Path path)
+        private static ArrayList<NodeRef> getAncestors(Path path)
         {
             ArrayList<NodeRef> ancestors = new ArrayList<NodeRef>(8);
             for (Iterator<Path.Element> elit = path.iterator(); elit.hasNext(); /**/)
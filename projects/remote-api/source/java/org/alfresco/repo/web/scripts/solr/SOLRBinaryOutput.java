@@ -0,0 +1,82 @@
+/*
+ * #%L
+ * Alfresco Remote API
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.web.scripts.solr;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.alfresco.solr.client.SOLRBinaryEncoding;
+import org.springframework.extensions.webscripts.WebScriptResponse;
+
+/**
+ * Support for SOLR: a deferred binary response, placed in the model in place of the JSON results.
+ * <p/>
+ * The JSON templates call {@link #write()} when they find this object in the model, so that the results are written to
+ * the response while they are being read from the database rather than being collected for the template.
+ *
+ * @since 5.2
+ */
+public abstract class SOLRBinaryOutput
+{
+    public static final String MODEL_KEY = "binaryOutput";
+
+    private WebScriptResponse res;
+
+    /**
+     * Give the binary output in the model, if any, the response to write to.
+     */
+    public static void bind(Map<String, Object> model, WebScriptResponse res)
+    {
+        Object output = (model == null ? null : model.get(MODEL_KEY));
+        if (output instanceof SOLRBinaryOutput)
+        {
+            ((SOLRBinaryOutput) output).res = res;
+        }
+    }
+
+    /**
+     * Write the results to the response.
+     *
+     * @return an empty string, for the template
+     */
+    public String write() throws IOException
+    {
+        // Replace the template output with the binary stream
+        res.reset();
+        res.setContentType(SOLRBinaryEncoding.MIMETYPE_BINARY);
+        res.setHeader(SOLRBinaryEncoding.ENCODING_HEADER, SOLRBinaryEncoding.ENCODING_BINARY);
+
+        SOLRBinaryWriter writer = new SOLRBinaryWriter(res.getOutputStream());
+        writeRecords(writer);
+        writer.finish();
+        return "";
+    }
+
+    /**
+     * Write each result as a record.
+     */
+    protected abstract void writeRecords(SOLRBinaryWriter writer) throws IOException;
+}
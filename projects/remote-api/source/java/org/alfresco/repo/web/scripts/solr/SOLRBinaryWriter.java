@@ -0,0 +1,207 @@
+/*
+ * #%L
+ * Alfresco Remote API
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.web.scripts.solr;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.MLText;
+import org.alfresco.service.cmr.repository.datatype.DefaultTypeConverter;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.solr.client.SOLRBinaryEncoding;
+import org.springframework.extensions.webscripts.WebScriptRequest;
+
+/**
+ * Support for SOLR: writes tracking results in the compact binary encoding described by {@link SOLRBinaryEncoding}, as
+ * an alternative to the JSON templates.
+ * <p/>
+ * The encoding is used when the client asks for it and the response carries the same header, so a client can fall
+ * back to JSON when talking to an older repository. Callers leave out fields whose value is <tt>null</tt>.
+ *
+ * @since 5.2
+ */
+public class SOLRBinaryWriter
+{
+    private final OutputStream out;
+    private final Map<String, Integer> qnames = new HashMap<String, Integer>(256);
+    private final Map<String, Integer> paths = new HashMap<String, Integer>(1024);
+    private final Map<String, Integer> authorities = new HashMap<String, Integer>(256);
+
+    public SOLRBinaryWriter(OutputStream out) throws IOException
+    {
+        this.out = new BufferedOutputStream(out, 8192);
+        this.out.write(SOLRBinaryEncoding.VERSION);
+    }
+
+    /**
+     * @return <tt>true</tt> if the client asked for the binary encoding
+     */
+    public static boolean isRequested(WebScriptRequest req)
+    {
+        return SOLRBinaryEncoding.isBinary(req.getHeader(SOLRBinaryEncoding.ENCODING_HEADER));
+    }
+
+    public void startRecord() throws IOException
+    {
+        out.write(SOLRBinaryEncoding.RECORD_START);
+    }
+
+    public void endRecord() throws IOException
+    {
+        writeUnsigned(SOLRBinaryEncoding.FIELD_END);
+    }
+
+    /**
+     * Ends the stream and flushes it. The underlying stream is left open.
+     */
+    public void finish() throws IOException
+    {
+        out.write(SOLRBinaryEncoding.RECORD_END_OF_STREAM);
+        out.flush();
+    }
+
+    public void writeField(int field) throws IOException
+    {
+        writeUnsigned(field);
+    }
+
+    public void writeCount(int count) throws IOException
+    {
+        writeUnsigned(count);
+    }
+
+    public void writeLong(long value) throws IOException
+    {
+        writeUnsigned((value << 1) ^ (value >> 63));
+    }
+
+    public void writeString(String value) throws IOException
+    {
+        if (value == null)
+        {
+            writeUnsigned(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeUnsigned(bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    public void writeQName(QName qname) throws IOException
+    {
+        writeInterned(qnames, qname == null ? null : qname.toString());
+    }
+
+    public void writePath(String path) throws IOException
+    {
+        writeInterned(paths, path);
+    }
+
+    public void writeAuthority(String authority) throws IOException
+    {
+        writeInterned(authorities, authority);
+    }
+
+    public void writeNullValue() throws IOException
+    {
+        writeUnsigned(SOLRBinaryEncoding.VALUE_NULL);
+    }
+
+    public void writeStringValue(String value) throws IOException
+    {
+        writeUnsigned(SOLRBinaryEncoding.VALUE_STRING);
+        writeString(value);
+    }
+
+    public void writeMLTextValue(MLText value) throws IOException
+    {
+        writeUnsigned(SOLRBinaryEncoding.VALUE_MLTEXT);
+        writeCount(value.size());
+        for (Map.Entry<Locale, String> entry : value.entrySet())
+        {
+            writeString(DefaultTypeConverter.INSTANCE.convert(String.class, entry.getKey()));
+            writeString(entry.getValue());
+        }
+    }
+
+    /**
+     * @param contentId the ID of the content data, or <tt>null</tt> if it is not known
+     */
+    public void writeContentValue(ContentData value, Long contentId) throws IOException
+    {
+        writeUnsigned(SOLRBinaryEncoding.VALUE_CONTENT);
+        writeLong(contentId == null ? -1L : contentId);
+        writeString(DefaultTypeConverter.INSTANCE.convert(String.class, value.getLocale()));
+        writeLong(value.getSize());
+        writeString(value.getEncoding());
+        writeString(value.getMimetype());
+    }
+
+    /**
+     * Start a multi-valued property, which must be followed by <tt>count</tt> values.
+     */
+    public void writeMultiValue(int count) throws IOException
+    {
+        writeUnsigned(SOLRBinaryEncoding.VALUE_MULTI);
+        writeCount(count);
+    }
+
+    private void writeInterned(Map<String, Integer> dictionary, String value) throws IOException
+    {
+        if (value == null)
+        {
+            writeUnsigned(SOLRBinaryEncoding.DICTIONARY_NULL);
+            return;
+        }
+        Integer index = dictionary.get(value);
+        if (index == null)
+        {
+            dictionary.put(value, dictionary.size());
+            writeUnsigned(SOLRBinaryEncoding.DICTIONARY_NEW);
+            writeString(value);
+        }
+        else
+        {
+            writeUnsigned(index + (long) SOLRBinaryEncoding.DICTIONARY_FIRST_INDEX);
+        }
+    }
+
+    private void writeUnsigned(long value) throws IOException
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
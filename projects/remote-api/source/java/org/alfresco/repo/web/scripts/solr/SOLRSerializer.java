@@ -201,6 +201,75 @@ import org.springframework.extensions.webscripts.json.JSONUtils;
             return new PropertyValue(encodeString, sValue);
         }
     }
+
+    /**
+     * Write a property value in the binary encoding. Values are converted as for {@link #serialize(QName, Serializable)}
+     * but MLText and content values are written as structures rather than JSON.
+     */
+    @SuppressWarnings("unchecked")
+    public void serialize(QName propName, Serializable value, SOLRBinaryWriter writer) throws IOException
+    {
+        if(value == null)
+        {
+            writer.writeNullValue();
+            return;
+        }
+
+        PropertyDefinition propertyDef = dictionaryService.getProperty(propName);
+        if (propertyDef == null)
+        {
+            // Treat it as text
+            writer.writeStringValue(serializeToJSONString(value));
+        }
+        else if (propertyDef.isMultiValued())
+        {
+            if(!(value instanceof Collection))
+            {
+                throw new IllegalArgumentException("Multi value: expected a collection, got " + value.getClass().getName());
+            }
+
+            QName dataTypeName = propertyDef.getDataType().getName();
+            if(dataTypeName.equals(DataTypeDefinition.CONTENT))
+            {
+                throw new RuntimeException("Multi-valued content properties are not supported");
+            }
+
+            Collection<Serializable> c = (Collection<Serializable>)value;
+            writer.writeMultiValue(c.size());
+            for(Serializable o : c)
+            {
+                writeSingleValue(dataTypeName, o, writer);
+            }
+        }
+        else
+        {
+            writeSingleValue(propertyDef.getDataType().getName(), value, writer);
+        }
+    }
+
+    private void writeSingleValue(QName dataTypeName, Serializable value, SOLRBinaryWriter writer) throws IOException
+    {
+        if(value == null)
+        {
+            writer.writeNullValue();
+        }
+        else if(dataTypeName.equals(DataTypeDefinition.MLTEXT) && value instanceof MLText)
+        {
+            writer.writeMLTextValue((MLText)value);
+        }
+        else if(dataTypeName.equals(DataTypeDefinition.CONTENT) && value instanceof ContentDataWithId)
+        {
+            writer.writeContentValue((ContentData)value, ((ContentDataWithId)value).getId());
+        }
+        else if(dataTypeName.equals(DataTypeDefinition.CONTENT) && value instanceof ContentData)
+        {
+            writer.writeContentValue((ContentData)value, null);
+        }
+        else
+        {
+            writer.writeStringValue(serializeToJSONString(value));
+        }
+    }
     
     @SuppressWarnings("rawtypes")
     private class SOLRTypeConverter
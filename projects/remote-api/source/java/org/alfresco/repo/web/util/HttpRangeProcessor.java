@@ -28,6 +28,9 @@ package org.alfresco.repo.web.util;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -36,6 +39,7 @@ import java.util.StringTokenizer;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
 
+import org.alfresco.repo.content.DirectContentReader;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.NodeRef;
@@ -72,6 +76,34 @@ public class HttpRangeProcessor
         this.contentService = contentService;
     }
 
+    /**
+     * Stream the complete content to the output stream, which is closed afterwards. Content held in a local file is
+     * transferred by the file channel rather than copied through an input stream.
+     * 
+     * @param reader the content reader
+     * @param os the response output stream
+     * @throws IOException
+     */
+    public static void streamContent(ContentReader reader, OutputStream os)
+       throws IOException
+    {
+       if (reader instanceof DirectContentReader)
+       {
+          try
+          {
+             ((DirectContentReader) reader).transferTo(0L, reader.getSize(), Channels.newChannel(os));
+          }
+          finally
+          {
+             os.close();
+          }
+       }
+       else
+       {
+          reader.getContent(os);
+       }
+    }
+
     /**
      * Process a range header for a HttpServletResponse - handles single and multiple range requests.
      * 
@@ -230,9 +262,16 @@ public class HttpRangeProcessor
           {
              os = webScriptResponse.getOutputStream();
           }
-          is = reader.getContentInputStream();
-          
-          streamRangeBytes(r, is, os, 0L);
+          if (reader instanceof DirectContentReader)
+          {
+             long span = (r.end - r.start) + 1L;
+             ((DirectContentReader) reader).transferTo(r.start, span, Channels.newChannel(os));
+          }
+          else
+          {
+             is = reader.getContentInputStream();
+             streamRangeBytes(r, is, os, 0L);
+          }
           
           os.close();
           processedRange = true;
@@ -392,6 +431,9 @@ public class HttpRangeProcessor
           }
           
           InputStream is = null;
+          // A local file is read through mapped ranges rather than a new stream for each range
+          DirectContentReader directReader = reader instanceof DirectContentReader ? (DirectContentReader) reader : null;
+          WritableByteChannel channel = directReader == null ? null : Channels.newChannel(os);
           try
           {
              for (Range r : ranges)
@@ -406,11 +448,23 @@ public class HttpRangeProcessor
                        r.outputHeader((ServletOutputStream) os);
                    
                    // output the binary data for the range
-                   // need a new reader for each new InputStream
-                   is = contentService.getReader(ref, property).getContentInputStream();
-                   streamRangeBytes(r, is, os, 0L);
-                   is.close();
-                   is = null;
+                   long span = (r.end - r.start) + 1L;
+                   if (directReader != null && span <= Integer.MAX_VALUE)
+                   {
+                      ByteBuffer mapped = directReader.mapRange(r.start, span);
+                      while (mapped.hasRemaining())
+                      {
+                         channel.write(mapped);
+                      }
+                   }
+                   else
+                   {
+                      // need a new reader for each new InputStream (also for ranges too large to map)
+                      is = contentService.getReader(ref, property).getContentInputStream();
+                      streamRangeBytes(r, is, os, 0L);
+                      is.close();
+                      is = null;
+                   }
                    
                    // section marker and flush stream
                    if (os instanceof ServletOutputStream)
@@ -348,7 +348,7 @@ public class GetMethod extends WebDAVMethod
                 m_response.setHeader(WebDAV.HEADER_CONTENT_TYPE, reader.getMimetype());
                 m_davHelper.publishReadEvent(realNodeInfo, reader.getMimetype(), reader.getSize(), null, reader.getEncoding());
                 // copy the content to the response output stream
-                reader.getContent(m_response.getOutputStream());
+                HttpRangeProcessor.streamContent(reader, m_response.getOutputStream());
             }
         }
     }
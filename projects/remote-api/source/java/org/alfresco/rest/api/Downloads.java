@@ -26,6 +26,7 @@
 package org.alfresco.rest.api;
 
 import org.alfresco.rest.api.model.Download;
+import org.alfresco.rest.framework.resource.content.BinaryResource;
 
 /**
  * downloads API
@@ -43,6 +44,24 @@ public interface Downloads
      */
     Download createDownloadNode(Download download);
 
+    /**
+     * Creates a download:download node whose zip is not created in the background.
+     * Instead, the zip is streamed as it is created when its content is requested.
+     * 
+     * @param download
+     * @return information about the newly created download:download node
+     */
+    Download createStreamingDownloadNode(Download download);
+
+    /**
+     * Get the content of a download node. The zip of a streaming download is
+     * created as it is written to the response.
+     * 
+     * @param downloadNodeId
+     * @return the zip of the download:download node
+     */
+    BinaryResource getDownloadContent(String downloadNodeId);
+
     /**
      * Get status info about a download node.
      * 
@@ -32,12 +32,15 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.alfresco.rest.api.Downloads;
 import org.alfresco.rest.api.model.Download;
+import org.alfresco.rest.framework.BinaryProperties;
 import org.alfresco.rest.framework.WebApiDescription;
 import org.alfresco.rest.framework.WebApiParam;
 import org.alfresco.rest.framework.core.ResourceParameter;
 import org.alfresco.rest.framework.core.exceptions.EntityNotFoundException;
 import org.alfresco.rest.framework.resource.EntityResource;
+import org.alfresco.rest.framework.resource.actions.interfaces.BinaryResourceAction;
 import org.alfresco.rest.framework.resource.actions.interfaces.EntityResourceAction;
+import org.alfresco.rest.framework.resource.content.BinaryResource;
 import org.alfresco.rest.framework.resource.parameters.Parameters;
 import org.alfresco.util.ParameterCheck;
 import org.springframework.beans.factory.InitializingBean;
@@ -48,8 +51,10 @@ import org.springframework.beans.factory.InitializingBean;
  *
  */
 @EntityResource(name = "downloads", title = "Downloads")
-public class DownloadsEntityResource implements EntityResourceAction.Create<Download>, EntityResourceAction.ReadById<Download>, EntityResourceAction.Delete, InitializingBean
+public class DownloadsEntityResource implements EntityResourceAction.Create<Download>, EntityResourceAction.ReadById<Download>, EntityResourceAction.Delete, BinaryResourceAction.Read, InitializingBean
 {
+    public static final String PARAM_STREAM = "stream";
+
     private Downloads downloads;
 
     public void setDownloads(Downloads downloads)
@@ -69,7 +74,8 @@ public class DownloadsEntityResource implements EntityResourceAction.Create<Down
                  kind = ResourceParameter.KIND.HTTP_BODY_OBJECT, allowMultiple = false)
     public List<Download> create(List<Download> entity, Parameters parameters)
     {
-        Download downloadNode = downloads.createDownloadNode(entity.get(0));
+        boolean stream = Boolean.valueOf(parameters.getParameter(PARAM_STREAM));
+        Download downloadNode = stream ? downloads.createStreamingDownloadNode(entity.get(0)) : downloads.createDownloadNode(entity.get(0));
         return Collections.singletonList(downloadNode);
     }
 
@@ -80,6 +86,14 @@ public class DownloadsEntityResource implements EntityResourceAction.Create<Down
     {
         return downloads.getDownloadStatus(nodeId);
     }
+
+    @Override
+    @WebApiDescription(title = "Get download content", description = "Get the zip of a download. The zip of a download created with stream=true is created as it is sent.")
+    @BinaryProperties({"content"})
+    public BinaryResource readProperty(String nodeId, Parameters parameters) throws EntityNotFoundException
+    {
+        return downloads.getDownloadContent(nodeId);
+    }
     
     @WebApiDescription(title = "Cancel download", description = "Stop the zip creation if still in progress.", successStatus = HttpServletResponse.SC_ACCEPTED)
     @Override
@@ -27,15 +27,25 @@ package org.alfresco.rest.api.impl;
 
 import java.util.HashSet;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 import org.alfresco.model.ContentModel;
+import org.alfresco.repo.content.MimetypeMap;
 import org.alfresco.repo.download.DownloadModel;
 import org.alfresco.rest.api.Downloads;
 import org.alfresco.rest.api.Nodes;
 import org.alfresco.rest.api.model.Download;
+import org.alfresco.rest.framework.core.exceptions.ConstraintViolatedException;
 import org.alfresco.rest.framework.core.exceptions.InvalidArgumentException;
 import org.alfresco.rest.framework.core.exceptions.PermissionDeniedException;
+import org.alfresco.rest.framework.resource.content.BinaryResource;
+import org.alfresco.rest.framework.resource.content.ContentInfoImpl;
+import org.alfresco.rest.framework.resource.content.NodeBinaryResource;
+import org.alfresco.rest.framework.resource.content.StreamedBinaryResource;
 import org.alfresco.service.cmr.download.DownloadService;
 import org.alfresco.service.cmr.download.DownloadStatus;
+import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.security.AccessStatus;
@@ -78,6 +88,17 @@ public class DownloadsImpl implements Downloads
 
     @Override
     public Download createDownloadNode(Download download)
+    {
+        return createDownloadNode(download, false);
+    }
+
+    @Override
+    public Download createStreamingDownloadNode(Download download)
+    {
+        return createDownloadNode(download, true);
+    }
+
+    private Download createDownloadNode(Download download, boolean streaming)
     {
         checkEmptyNodeIds(download);
         
@@ -87,7 +108,7 @@ public class DownloadsImpl implements Downloads
         
         checkNodeIdsReadPermission(zipContentNodeRefs);
         
-        NodeRef zipNodeRef = downloadService.createDownload(zipContentNodeRefs, true);
+        NodeRef zipNodeRef = streaming ? downloadService.createStreamingDownload(zipContentNodeRefs, true) : downloadService.createDownload(zipContentNodeRefs, true);
         
         String archiveName = zipContentNodeRefs.length > 1 ?
                                  DEFAULT_ARCHIVE_NAME : 
@@ -109,6 +130,39 @@ public class DownloadsImpl implements Downloads
         return downloadInfo;
     }
 
+    @Override
+    public BinaryResource getDownloadContent(String downloadNodeId)
+    {
+        final NodeRef downloadNodeRef = nodes.validateNode(downloadNodeId);
+        
+        checkIsDownloadNodeType(downloadNodeRef);
+        
+        String archiveName = (String) nodeService.getProperty(downloadNodeRef, ContentModel.PROP_NAME);
+        ContentData contentData = (ContentData) nodeService.getProperty(downloadNodeRef, ContentModel.PROP_CONTENT);
+        if (contentData != null)
+        {
+            // The zip has been created in the background
+            ContentInfoImpl contentInfo = new ContentInfoImpl(contentData.getMimetype(), contentData.getEncoding(), contentData.getSize(), contentData.getLocale());
+            return new NodeBinaryResource(downloadNodeRef, ContentModel.PROP_CONTENT, contentInfo, archiveName);
+        }
+        
+        if (downloadService.getDownloadStatus(downloadNodeRef).getStatus() != DownloadStatus.Status.PENDING)
+        {
+            throw new ConstraintViolatedException("The zip of download " + downloadNodeId + " is not available.");
+        }
+        
+        // Stream the zip as it is created
+        StreamedBinaryResource.Writer writer = new StreamedBinaryResource.Writer()
+        {
+            @Override
+            public void write(OutputStream output) throws IOException
+            {
+                downloadService.streamDownload(downloadNodeRef, output);
+            }
+        };
+        return new StreamedBinaryResource(writer, MimetypeMap.MIMETYPE_ZIP, archiveName);
+    }
+
     @Override
     public void cancel(String downloadNodeId)
     {
@@ -1,41 +1,65 @@
-/*
- * #%L
- * Alfresco Solr 4
- * %%
- * Copyright (C) 2005 - 2016 Alfresco Software Limited
- * %%
- * This file is part of the Alfresco software. 
- * If the software was purchased under a paid Alfresco license, the terms of 
- * the paid license agreement will prevail.  Otherwise, the software is 
- * provided under the following open source license terms:
- * 
- * Alfresco is free software: you can redistribute it and/or modify
- * it under the terms of the GNU Lesser General Public License as published by
- * the Free Software Foundation, either version 3 of the License, or
- * (at your option) any later version.
- * 
- * Alfresco is distributed in the hope that it will be useful,
- * but WITHOUT ANY WARRANTY; without even the implied warranty of
- * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
- * GNU Lesser General Public License for more details.
- * 
- * You should have received a copy of the GNU Lesser General Public License
- * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
- * #L%
- */
+/*
+ * #%L
+ * Alfresco Remote API
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.rest.framework.resource.content;
 
+import java.io.IOException;
+import java.io.OutputStream;
 
-package org.alfresco.solr.query;
-
-public class EmptyHybridBitSet extends HybridBitSet
+/**
+ * A binary resource that is written straight to the response as it is created, e.g. an archive of other content.
+ *
+ * @since 5.2
+ */
+public class StreamedBinaryResource extends AbstractBinaryResource
 {
-    public void set(long bit)
+    /**
+     * Writes the content of the resource.
+     */
+    public static interface Writer
     {
+        public void write(OutputStream output) throws IOException;
+    }
 
+    final Writer writer;
+    final String mimeType;
+
+    public StreamedBinaryResource(Writer writer, String mimeType, String attachFileName)
+    {
+        super(attachFileName, null);
+        this.writer = writer;
+        this.mimeType = mimeType;
+    }
+
+    public Writer getWriter()
+    {
+        return this.writer;
     }
 
-    public boolean get(long bit)
+    public String getMimeType()
     {
-        return false;
+        return this.mimeType;
     }
 }
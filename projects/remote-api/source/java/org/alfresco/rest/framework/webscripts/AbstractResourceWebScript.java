@@ -51,6 +51,7 @@ import org.alfresco.rest.framework.resource.content.CacheDirective;
 import org.alfresco.rest.framework.resource.content.ContentInfo;
 import org.alfresco.rest.framework.resource.content.FileBinaryResource;
 import org.alfresco.rest.framework.resource.content.NodeBinaryResource;
+import org.alfresco.rest.framework.resource.content.StreamedBinaryResource;
 import org.alfresco.rest.framework.resource.parameters.Params;
 import org.alfresco.rest.framework.tools.ApiAssistant;
 import org.alfresco.rest.framework.tools.ResponseWriter;
@@ -206,6 +207,15 @@ public abstract class AbstractResourceWebScript extends ApiWebScript implements
             Map<String, Object> model = getModelForCacheDirective(nodeResource.getCacheDirective());
             streamer.streamContent(req, res, nodeResource.getNodeRef(), nodeResource.getPropertyQName(), attach, nodeResource.getAttachFileName(), model);
         }
+        else if (resource instanceof StreamedBinaryResource)
+        {
+            StreamedBinaryResource streamedResource = (StreamedBinaryResource) resource;
+            res.setContentType(streamedResource.getMimeType());
+            // if requested, set attachment
+            boolean attach = StringUtils.isNotEmpty(streamedResource.getAttachFileName());
+            streamer.setAttachment(req, res, attach, streamedResource.getAttachFileName());
+            streamedResource.getWriter().write(res.getOutputStream());
+        }
 
     }
 
@@ -29,6 +29,7 @@ import junit.framework.JUnit4TestAdapter;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
+import org.alfresco.repo.web.scripts.solr.SOLRBinaryWriterTest;
 import org.alfresco.repo.web.scripts.solr.StatsGetTest;
 import org.alfresco.repo.web.util.PagingCursorTest;
 import org.alfresco.repo.web.util.paging.PagingTest;
@@ -61,6 +62,7 @@ public class AllUnitTestsSuite extends TestSuite
         pagingTests(suite);
 
         suite.addTest(new JUnit4TestAdapter(StatsGetTest.class));
+        suite.addTest(new JUnit4TestAdapter(SOLRBinaryWriterTest.class));
         return suite;
     }
     
@@ -0,0 +1,312 @@
+/*
+ * #%L
+ * Alfresco Remote API
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.web.scripts.solr;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.solr.AclReaders;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.MLText;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.solr.client.ContentPropertyValue;
+import org.alfresco.solr.client.MLTextPropertyValue;
+import org.alfresco.solr.client.MultiPropertyValue;
+import org.alfresco.solr.client.Node;
+import org.alfresco.solr.client.NodeMetaData;
+import org.alfresco.solr.client.PropertyValue;
+import org.alfresco.solr.client.SOLRBinaryEncoding;
+import org.alfresco.solr.client.SOLRBinaryReader;
+import org.alfresco.solr.client.StringPropertyValue;
+import org.junit.Test;
+
+/**
+ * Writes each kind of SOLR tracking record with {@link SOLRBinaryWriter} and reads it back with the client's
+ * {@link SOLRBinaryReader}.
+ *
+ * @since 5.2
+ */
+public class SOLRBinaryWriterTest
+{
+    private static final String NODE_REF = "workspace://SpacesStore/00000000-0000-0000-0000-000000000001";
+
+    @Test
+    public void testValues() throws Exception
+    {
+        long[] longs = { 0L, 1L, -1L, 63L, -64L, Integer.MAX_VALUE + 1L, Long.MAX_VALUE, Long.MIN_VALUE };
+        String[] strings = { null, "", "a", "\u00e9t\u00e9 \u65e5\u672c" };
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SOLRBinaryWriter writer = new SOLRBinaryWriter(bytes);
+        for (long value : longs)
+        {
+            writer.writeLong(value);
+        }
+        for (String value : strings)
+        {
+            writer.writeString(value);
+        }
+        writer.writeQName(ContentModel.PROP_NAME);
+        writer.writeQName(null);
+        writer.writeQName(ContentModel.PROP_TITLE);
+        writer.writeQName(ContentModel.PROP_NAME);
+        writer.writePath("/a");
+        writer.writePath("/a");
+        writer.writePath(null);
+        writer.writeAuthority("GROUP_EVERYONE");
+        writer.writeAuthority("admin");
+        writer.writeAuthority("GROUP_EVERYONE");
+        writer.finish();
+
+        SOLRBinaryReader reader = read(bytes);
+        for (long value : longs)
+        {
+            assertEquals(value, reader.readLong());
+        }
+        for (String value : strings)
+        {
+            assertEquals(value, reader.readString());
+        }
+        assertEquals(ContentModel.PROP_NAME, reader.readQName());
+        assertNull(reader.readQName());
+        assertEquals(ContentModel.PROP_TITLE, reader.readQName());
+        assertEquals(ContentModel.PROP_NAME, reader.readQName());
+        assertEquals("/a", reader.readPath());
+        assertEquals("/a", reader.readPath());
+        assertNull(reader.readPath());
+        assertEquals("GROUP_EVERYONE", reader.readAuthority());
+        assertEquals("admin", reader.readAuthority());
+        assertEquals("GROUP_EVERYONE", reader.readAuthority());
+        assertFalse("Expected the end of the stream", reader.nextRecord());
+    }
+
+    @Test
+    public void testAclReaders() throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SOLRBinaryWriter writer = new SOLRBinaryWriter(bytes);
+        AclsReadersGet.writeAclReaders(writer, aclReaders(1L, "acme.com", new String[] {"admin", "GROUP_EVERYONE"}, new String[] {}));
+        AclsReadersGet.writeAclReaders(writer, aclReaders(2L, TenantService.DEFAULT_DOMAIN, new String[] {"GROUP_EVERYONE", "admin"}, new String[] {"guest"}));
+        AclsReadersGet.writeAclReaders(writer, aclReaders(3L, null, null, null));
+        writer.finish();
+
+        List<org.alfresco.solr.client.AclReaders> aclsReaders = read(bytes).readAclReaders();
+        assertEquals(3, aclsReaders.size());
+
+        org.alfresco.solr.client.AclReaders first = aclsReaders.get(0);
+        assertEquals(1L, first.getId());
+        assertEquals(10L, first.getAclChangeSetId());
+        assertEquals("acme.com", first.getTenantDomain());
+        assertEquals(Arrays.asList("GROUP_EVERYONE", "admin"), first.getReaders());
+        assertEquals(Arrays.asList(), first.getDenied());
+
+        org.alfresco.solr.client.AclReaders second = aclsReaders.get(1);
+        assertEquals(TenantService.DEFAULT_DOMAIN, second.getTenantDomain());
+        assertSame("Equal reader sets are shared", first.getReaders(), second.getReaders());
+        assertEquals(Arrays.asList("guest"), second.getDenied());
+
+        org.alfresco.solr.client.AclReaders third = aclsReaders.get(2);
+        assertEquals(TenantService.DEFAULT_DOMAIN, third.getTenantDomain());
+        assertNull("Missing readers read back as null", third.getReaders());
+        assertNull("Missing denied read back as null", third.getDenied());
+    }
+
+    @Test
+    public void testNodes() throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SOLRBinaryWriter writer = new SOLRBinaryWriter(bytes);
+        // As written by NodesGet
+        writer.startRecord();
+        writer.writeField(SOLRBinaryEncoding.FIELD_ID);
+        writer.writeLong(12L);
+        writer.writeField(SOLRBinaryEncoding.FIELD_NODE_REF);
+        writer.writeString(NODE_REF);
+        writer.writeField(SOLRBinaryEncoding.FIELD_TXN_ID);
+        writer.writeLong(5L);
+        writer.writeField(SOLRBinaryEncoding.FIELD_STATUS);
+        writer.writeString("u");
+        writer.writeField(SOLRBinaryEncoding.FIELD_ACL_ID);
+        writer.writeLong(7L);
+        writer.writeField(SOLRBinaryEncoding.FIELD_SHARD_PROPERTY_VALUE);
+        writer.writeString("shard");
+        writer.writeField(SOLRBinaryEncoding.FIELD_TENANT);
+        writer.writeString(TenantService.DEFAULT_DOMAIN);
+        writer.endRecord();
+        writer.startRecord();
+        writer.writeField(SOLRBinaryEncoding.FIELD_ID);
+        writer.writeLong(13L);
+        writer.writeField(SOLRBinaryEncoding.FIELD_STATUS);
+        writer.writeString("d");
+        writer.endRecord();
+        writer.finish();
+
+        List<Node> nodes = read(bytes).readNodes();
+        assertEquals(2, nodes.size());
+        Node node = nodes.get(0);
+        assertEquals(12L, node.getId());
+        assertEquals(NODE_REF, node.getNodeRef());
+        assertEquals(5L, node.getTxnId());
+        assertEquals(Node.SolrApiNodeStatus.UPDATED, node.getStatus());
+        assertEquals(7L, node.getAclId());
+        assertEquals("shard", node.getShardPropertyValue());
+        assertEquals(TenantService.DEFAULT_DOMAIN, node.getTenant());
+        node = nodes.get(1);
+        assertEquals(Node.SolrApiNodeStatus.DELETED, node.getStatus());
+        assertNull(node.getShardPropertyValue());
+    }
+
+    @Test
+    public void testNodeMetaData() throws Exception
+    {
+        MLText title = new MLText(Locale.ENGLISH, "Title");
+        title.addValue(Locale.FRENCH, "Titre");
+        ContentData content = new ContentData(null, "text/plain", 42L, "UTF-8", Locale.UK);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SOLRBinaryWriter writer = new SOLRBinaryWriter(bytes);
+        // As written by NodesMetaDataGet
+        writer.startRecord();
+        writer.writeField(SOLRBinaryEncoding.FIELD_ID);
+        writer.writeLong(12L);
+        writer.writeField(SOLRBinaryEncoding.FIELD_NODE_REF);
+        writer.writeString(NODE_REF);
+        writer.writeField(SOLRBinaryEncoding.FIELD_TYPE);
+        writer.writeQName(ContentModel.TYPE_CONTENT);
+        writer.writeField(SOLRBinaryEncoding.FIELD_PROPERTIES);
+        writer.writeCount(5);
+        writer.writeQName(ContentModel.PROP_NAME);
+        writer.writeStringValue("Content1");
+        writer.writeQName(ContentModel.PROP_TITLE);
+        writer.writeMLTextValue(title);
+        writer.writeQName(ContentModel.PROP_CONTENT);
+        writer.writeContentValue(content, 3L);
+        writer.writeQName(ContentModel.PROP_DESCRIPTION);
+        writer.writeNullValue();
+        writer.writeQName(ContentModel.PROP_AUTHOR);
+        writer.writeMultiValue(2);
+        writer.writeStringValue("a");
+        writer.writeStringValue("b");
+        writer.writeField(SOLRBinaryEncoding.FIELD_ASPECTS);
+        writer.writeCount(1);
+        writer.writeQName(ContentModel.ASPECT_AUDITABLE);
+        writer.writeField(SOLRBinaryEncoding.FIELD_PATHS);
+        writer.writeCount(1);
+        writer.writePath("/{http://www.alfresco.org/model/application/1.0}company_home");
+        writer.writeQName(null);
+        writer.writePath("/1");
+        writer.writeField(SOLRBinaryEncoding.FIELD_ANCESTORS);
+        writer.writeCount(1);
+        writer.writePath("workspace://SpacesStore/1");
+        writer.writeField(SOLRBinaryEncoding.FIELD_NAME_PATHS);
+        writer.writeCount(1);
+        writer.writeCount(2);
+        writer.writePath("Company Home");
+        writer.writePath("Content1");
+        writer.writeField(SOLRBinaryEncoding.FIELD_OWNER);
+        writer.writeString("admin");
+        writer.endRecord();
+        // Without paths, as when they are not asked for
+        writer.startRecord();
+        writer.writeField(SOLRBinaryEncoding.FIELD_ID);
+        writer.writeLong(13L);
+        writer.endRecord();
+        writer.finish();
+
+        List<NodeMetaData> nodes = read(bytes).readNodesMetaData();
+        assertEquals(2, nodes.size());
+
+        NodeMetaData node = nodes.get(0);
+        assertEquals(12L, node.getId());
+        assertEquals(new NodeRef(NODE_REF), node.getNodeRef());
+        assertEquals(ContentModel.TYPE_CONTENT, node.getType());
+        assertEquals(new HashSet<QName>(Arrays.asList(ContentModel.ASPECT_AUDITABLE)), node.getAspects());
+        assertEquals("admin", node.getOwner());
+        assertEquals(1, node.getPaths().size());
+        assertNull(node.getPaths().get(0).getSecond());
+        assertEquals(Arrays.asList("/1"), node.getAncestorPaths());
+        assertEquals(Arrays.asList(Arrays.asList("Company Home", "Content1")), node.getNamePaths());
+        assertEquals(new HashSet<NodeRef>(Arrays.asList(new NodeRef("workspace://SpacesStore/1"))), node.getAncestors());
+
+        Map<QName, PropertyValue> properties = node.getProperties();
+        assertEquals(5, properties.size());
+        assertEquals("Content1", ((StringPropertyValue) properties.get(ContentModel.PROP_NAME)).getValue());
+        MLTextPropertyValue mlText = (MLTextPropertyValue) properties.get(ContentModel.PROP_TITLE);
+        assertEquals("Title", mlText.getValue(Locale.ENGLISH));
+        assertEquals("Titre", mlText.getValue(Locale.FRENCH));
+        ContentPropertyValue contentValue = (ContentPropertyValue) properties.get(ContentModel.PROP_CONTENT);
+        assertEquals(Long.valueOf(3L), contentValue.getId());
+        assertEquals(Locale.UK, contentValue.getLocale());
+        assertEquals(42L, contentValue.getLength());
+        assertEquals("UTF-8", contentValue.getEncoding());
+        assertEquals("text/plain", contentValue.getMimetype());
+        assertTrue(properties.containsKey(ContentModel.PROP_DESCRIPTION));
+        assertNull(properties.get(ContentModel.PROP_DESCRIPTION));
+        List<PropertyValue> values = ((MultiPropertyValue) properties.get(ContentModel.PROP_AUTHOR)).getValues();
+        assertEquals(2, values.size());
+        assertEquals("b", ((StringPropertyValue) values.get(1)).getValue());
+
+        node = nodes.get(1);
+        assertEquals(13L, node.getId());
+        assertNull("Missing paths read back as null", node.getPaths());
+        assertNull("Missing name paths read back as null", node.getNamePaths());
+        assertNull(node.getAspects());
+        assertNull(node.getProperties());
+    }
+
+    @Test(expected=IOException.class)
+    public void testUnknownVersion() throws Exception
+    {
+        new SOLRBinaryReader(new ByteArrayInputStream(new byte[] {SOLRBinaryEncoding.VERSION + 1, 0}));
+    }
+
+    private static AclReaders aclReaders(long aclId, String tenantDomain, String[] readers, String[] denied)
+    {
+        AclReaders aclReaders = new AclReaders();
+        aclReaders.setAclId(aclId);
+        aclReaders.setAclChangeSetId(10L);
+        aclReaders.setTenantDomain(tenantDomain);
+        aclReaders.setReaders(readers == null ? null : new HashSet<String>(Arrays.asList(readers)));
+        aclReaders.setDenied(denied == null ? null : new HashSet<String>(Arrays.asList(denied)));
+        return aclReaders;
+    }
+
+    private static SOLRBinaryReader read(ByteArrayOutputStream bytes) throws IOException
+    {
+        return new SOLRBinaryReader(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+}
@@ -25,11 +25,13 @@
  */
 package org.alfresco.repo.web.scripts.solr;
 
+import java.io.ByteArrayInputStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -55,6 +57,11 @@ import org.alfresco.service.cmr.repository.StoreRef;
 import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.solr.client.Node;
+import org.alfresco.solr.client.NodeMetaData;
+import org.alfresco.solr.client.SOLRBinaryEncoding;
+import org.alfresco.solr.client.SOLRBinaryReader;
+import org.alfresco.solr.client.StringPropertyValue;
 import org.alfresco.util.Pair;
 import org.alfresco.util.PropertyMap;
 import org.apache.commons.logging.Log;
@@ -623,6 +630,158 @@ public class SOLRWebScriptTest extends BaseWebScriptTest
         }
     }
 
+    public void testNodeMetaDataBinary() throws Exception
+    {
+        long fromCommitTime = System.currentTimeMillis();
+
+        buildTransactions5();
+
+        List<Long> transactionIds = getTransactionIds(getTransactions(fromCommitTime));
+        GetNodesParameters params = new GetNodesParameters();
+        params.setTransactionIds(transactionIds);
+        params.setStoreProtocol(storeRef.getProtocol());
+        params.setStoreIdentifier(storeRef.getIdentifier());
+        JSONArray nodes = getNodes(params, 0, 2);
+        List<Long> nodeIds = new ArrayList<Long>(nodes.length());
+        JSONArray nodeIdsJSON = new JSONArray();
+        for(int i = 0; i < nodes.length(); i++)
+        {
+            nodeIds.add(nodes.getJSONObject(i).getLong("id"));
+            nodeIdsJSON.put(nodes.getJSONObject(i).getLong("id"));
+        }
+        JSONArray nodesMetaData = getNodesMetaData(nodeIds, 0, 2);
+
+        JSONObject json = new JSONObject();
+        json.put("nodeIds", nodeIdsJSON);
+        List<NodeMetaData> binaryNodesMetaData = postBinary("/api/solr/metadata", json).readNodesMetaData();
+        assertEquals("Binary and JSON returned different number of results", nodesMetaData.length(), binaryNodesMetaData.size());
+        for(int i = 0; i < nodesMetaData.length(); i++)
+        {
+            JSONObject node = nodesMetaData.getJSONObject(i);
+            NodeMetaData binaryNode = binaryNodesMetaData.get(i);
+            assertEquals("ID is incorrect", node.getLong("id"), binaryNode.getId());
+            assertEquals("NodeRef is incorrect", new NodeRef(node.getString("nodeRef")), binaryNode.getNodeRef());
+            assertEquals("Type is incorrect", QName.createQName(node.getString("type"), namespaceService), binaryNode.getType());
+            assertEquals("ACL ID is incorrect", node.getLong("aclId"), binaryNode.getAclId());
+            assertEquals("Transaction ID is incorrect", node.getLong("txnId"), binaryNode.getTxnId());
+            assertEquals("Owner is incorrect", node.has("owner") ? node.getString("owner") : null, binaryNode.getOwner());
+
+            JSONArray aspects = node.getJSONArray("aspects");
+            assertEquals("Aspects are incorrect", aspects.length(), binaryNode.getAspects().size());
+            for(QName aspect : binaryNode.getAspects())
+            {
+                assertTrue("Unexpected aspect " + aspect, containsAspect(aspects, aspect));
+            }
+
+            Map<QName, String> propertyMap = getPropertyMap(node.getJSONObject("properties"));
+            assertEquals("Properties are incorrect", propertyMap.keySet(), binaryNode.getProperties().keySet());
+
+            JSONArray paths = node.getJSONArray("paths");
+            assertEquals("Paths are incorrect", paths.length(), binaryNode.getPaths().size());
+            for(int j = 0; j < paths.length(); j++)
+            {
+                assertEquals("Path " + j + " is incorrect", paths.getJSONObject(j).getString("path"), binaryNode.getPaths().get(j).getFirst());
+            }
+            JSONArray namePaths = node.getJSONArray("namePaths");
+            assertEquals("Name paths are incorrect", namePaths.length(), binaryNode.getNamePaths().size());
+        }
+        NodeMetaData binaryNode = binaryNodesMetaData.get(1);
+        assertEquals("NodeRef is incorrect", contents.get(0), binaryNode.getNodeRef());
+        assertTrue("Expected author aspect", binaryNode.getAspects().contains(ContentModel.ASPECT_AUTHOR));
+        assertEquals("Expected author property", "steve", ((StringPropertyValue) binaryNode.getProperties().get(ContentModel.PROP_AUTHOR)).getValue());
+
+        // Paths that are not asked for are missing rather than empty, as they are from JSON
+        json.put("includePaths", false);
+        for(NodeMetaData node : postBinary("/api/solr/metadata", json).readNodesMetaData())
+        {
+            assertNull("Paths should not be included", node.getPaths());
+            assertNull("Name paths should not be included", node.getNamePaths());
+            assertNull("Ancestors should not be included", node.getAncestors());
+        }
+    }
+
+    public void testNodesBinary() throws Exception
+    {
+        long fromCommitTime = System.currentTimeMillis();
+
+        buildTransactions5();
+
+        List<Long> transactionIds = getTransactionIds(getTransactions(fromCommitTime));
+        GetNodesParameters params = new GetNodesParameters();
+        params.setTransactionIds(transactionIds);
+        params.setStoreProtocol(storeRef.getProtocol());
+        params.setStoreIdentifier(storeRef.getIdentifier());
+        JSONArray nodes = getNodes(params, 0, 2);
+
+        JSONObject json = new JSONObject();
+        json.put("txnIds", new JSONArray(transactionIds));
+        json.put("storeProtocol", storeRef.getProtocol());
+        json.put("storeIdentifier", storeRef.getIdentifier());
+        json.put("maxResults", 0);
+        List<Node> binaryNodes = postBinary("/api/solr/nodes", json).readNodes();
+        assertEquals("Binary and JSON returned different number of results", nodes.length(), binaryNodes.size());
+        for(int i = 0; i < nodes.length(); i++)
+        {
+            JSONObject node = nodes.getJSONObject(i);
+            Node binaryNode = binaryNodes.get(i);
+            assertEquals("ID is incorrect", node.getLong("id"), binaryNode.getId());
+            assertEquals("NodeRef is incorrect", node.getString("nodeRef"), binaryNode.getNodeRef());
+            assertEquals("Transaction ID is incorrect", node.getLong("txnId"), binaryNode.getTxnId());
+            assertEquals("ACL ID is incorrect", node.getLong("aclId"), binaryNode.getAclId());
+            assertEquals("Tenant is incorrect", node.getString("tenant"), binaryNode.getTenant());
+            assertEquals("Status is incorrect", Node.SolrApiNodeStatus.UPDATED, binaryNode.getStatus());
+        }
+    }
+
+    public void testAclReadersBinary() throws Exception
+    {
+        txnHelper.doInTransaction(
+            new RetryingTransactionCallback<Void>()
+            {
+                public Void execute() throws Throwable
+                {
+                    List<Acl> acls = solrTrackingComponent.getAcls(null, null, 1024);
+                    List<Long> aclIds = new ArrayList<Long>(acls.size());
+                    JSONArray aclIdsJSON = new JSONArray();
+                    for (Acl acl : acls)
+                    {
+                        aclIds.add(acl.getId());
+                        aclIdsJSON.put(acl.getId());
+                    }
+                    assertTrue("Must have *some* ACLs here", aclIds.size() > 0);
+                    List<AclReaders> aclsReaders = solrTrackingComponent.getAclsReaders(aclIds);
+
+                    JSONObject json = new JSONObject();
+                    json.put("aclIds", aclIdsJSON);
+                    List<org.alfresco.solr.client.AclReaders> binaryAclsReaders = postBinary("/api/solr/aclsReaders", json).readAclReaders();
+                    assertEquals("Binary and API returned different number of results", aclsReaders.size(), binaryAclsReaders.size());
+                    for (int i = 0; i < aclsReaders.size(); i++)
+                    {
+                        AclReaders aclReaders = aclsReaders.get(i);
+                        org.alfresco.solr.client.AclReaders binaryAclReaders = binaryAclsReaders.get(i);
+                        assertEquals("ACL ID is incorrect", aclReaders.getAclId().longValue(), binaryAclReaders.getId());
+                        assertEquals("ACL change set ID is incorrect", aclReaders.getAclChangeSetId(), binaryAclReaders.getAclChangeSetId());
+                        assertEquals("Tenant is incorrect", aclReaders.getTenantDomain(), binaryAclReaders.getTenantDomain());
+                        assertEquals("Readers are incorrect", aclReaders.getReaders(), new HashSet<String>(binaryAclReaders.getReaders()));
+                        assertEquals("Denied are incorrect", aclReaders.getDenied(), new HashSet<String>(binaryAclReaders.getDenied()));
+                    }
+                    return null;
+                }
+            }
+        );
+    }
+
+    private SOLRBinaryReader postBinary(String url, JSONObject json) throws Exception
+    {
+        TestWebScriptServer.PostRequest req = new TestWebScriptServer.PostRequest(url, json.toString(), "application/json");
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put(SOLRBinaryEncoding.ENCODING_HEADER, SOLRBinaryEncoding.ENCODING_BINARY);
+        req.setHeaders(headers);
+        Response response = sendRequest(req, Status.STATUS_OK, admin);
+        assertEquals("Expected the binary encoding", SOLRBinaryEncoding.ENCODING_BINARY, response.getHeader(SOLRBinaryEncoding.ENCODING_HEADER));
+        return new SOLRBinaryReader(new ByteArrayInputStream(response.getContentAsByteArray()));
+    }
+
     private NodeRef container7;
     
     private void buildTransactions7()
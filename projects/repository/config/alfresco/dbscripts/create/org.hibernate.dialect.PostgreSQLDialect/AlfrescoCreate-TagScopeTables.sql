@@ -0,0 +1,31 @@
+--
+-- Title:      Tag scope count tables
+-- Database:   PostgreSQL
+-- Since:      V5.2 Schema 10058
+--
+-- Please contact support@alfresco.com if you need assistance with the upgrade.
+--
+
+CREATE TABLE alf_tag_scope_count
+(
+    scope_node_id INT8 NOT NULL,
+    tag_short VARCHAR(32) NOT NULL,
+    tag_crc INT8 NOT NULL,
+    tag_name VARCHAR(1024) NOT NULL,
+    tag_count INT8 NOT NULL,
+    PRIMARY KEY (scope_node_id, tag_short, tag_crc),
+    CONSTRAINT fk_alf_tagsc_n FOREIGN KEY (scope_node_id) REFERENCES alf_node (id) ON DELETE CASCADE
+);
+CREATE INDEX idx_alf_tagsc_cnt ON alf_tag_scope_count (scope_node_id, tag_count);
+
+--
+-- Record script finish
+--
+DELETE FROM alf_applied_patch WHERE id = 'patch.db-V5.2-TagScopeCountTables';
+INSERT INTO alf_applied_patch
+  (id, description, fixes_from_schema, fixes_to_schema, applied_to_schema, target_schema, applied_on_date, applied_to_server, was_executed, succeeded, report)
+  VALUES
+  (
+    'patch.db-V5.2-TagScopeCountTables', 'Manually executed script upgrade V5.2: Tag Scope Count Tables',
+    0, 10057, -1, 10058, null, 'UNKNOWN', ${TRUE}, ${TRUE}, 'Script completed'
+  );
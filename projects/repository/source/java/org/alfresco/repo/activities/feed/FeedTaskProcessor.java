@@ -98,7 +98,12 @@ public abstract class FeedTaskProcessor
         this.userNamesAreCaseSensitive = userNamesAreCaseSensitive;
     }
     
-    public void process(int jobTaskNode, long minSeq, long maxSeq, RepoCtx ctx) throws Exception
+    /**
+     * Generate the feed entries for a range of activity posts.
+     * 
+     * @return                  Returns the number of feed entries generated
+     */
+    public int process(int jobTaskNode, long minSeq, long maxSeq, RepoCtx ctx) throws Exception
     {
         long startTime = System.currentTimeMillis();
         
@@ -115,6 +120,7 @@ public abstract class FeedTaskProcessor
         
         List<ActivityPostEntity> activityPosts = null;
         int totalGenerated = 0;
+        int totalRecipients = 0;
         
         try
         {
@@ -127,6 +133,7 @@ public abstract class FeedTaskProcessor
             Map<Pair<String, String>, Set<String>> followerConnectedUsers = new HashMap<Pair<String, String>, Set<String>>(); // user -> followers
             Map<Pair<String, String>, Boolean> canUserReadSite = new HashMap<Pair<String, String>, Boolean>();                // <user, site> -> true/false (note: used when following, implied as true for site members)
             Map<String, List<FeedControlEntity>> userFeedControls = new HashMap<String, List<FeedControlEntity>>();
+            Map<Pair<Long, String>, Boolean> canUserReadNode = new HashMap<Pair<Long, String>, Boolean>();                    // <ACL, user> -> true/false (note: not used for the owner of the node)
             
             List<String> fmTemplates = Arrays.asList(new String[]{"activities/org/alfresco/generic.json.ftl"});
             
@@ -225,89 +232,79 @@ public abstract class FeedTaskProcessor
                         logger.trace("Process: " + recipients.size() + " candidate connections for activity post " + activityPost.getId());
                     }
                     
-                    int excludedConnections = 0;
+                    int excludedConnections = recipients.size();
                     
-                    for (String recipient : recipients)
+                    // Generate activity feed summary - the same for every recipient, so only check it once per post
+                    // note: allows JSON to simply pass straight through
+                    String activitySummary = activityPost.getActivityData();
+                    if (activitySummary.equals(""))
                     {
-                        List<FeedControlEntity> feedControls = null;
-                        if (! recipient.equals(""))
-                        {
-                            // Get user's feed controls
-                            feedControls = userFeedControls.get(recipient);
-                            if (feedControls == null)
-                            {
-                                feedControls = getFeedControls(recipient);
-                                userFeedControls.put(recipient, feedControls);
-                            }
-                        }
-                        
-                        // filter based on opt-out feed controls (if any)
-                        if (! acceptActivity(activityPost, feedControls))
+                        if (logger.isDebugEnabled())
                         {
-                            excludedConnections++;
+                            logger.debug("Empty template result for activityType '" + activityType + "' using format '" + FeedTaskProcessor.FEED_FORMAT_JSON + "' hence skip feed entries (activity post " + activityPost.getId() + ")");
                         }
-                        else
+                    }
+                    else if (activitySummary.length() > ActivityFeedDAO.MAX_LEN_ACTIVITY_SUMMARY)
+                    {
+                        logger.warn("Skip feed entries (activity post " + activityPost.getId() + ") since activity summary - exceeds " + ActivityFeedDAO.MAX_LEN_ACTIVITY_SUMMARY + " chars: " + activitySummary);
+                    }
+                    else
+                    {
+                        Set<String> acceptedRecipients = new HashSet<String>(recipients.size() * 2);
+                        for (String recipient : recipients)
                         {
-                            // node read permission check (if nodeRef is present)
-                            if (! canRead(ctx, recipient, model))
+                            List<FeedControlEntity> feedControls = null;
+                            if (! recipient.equals(""))
                             {
-                                excludedConnections++;
-                                continue;
+                                // Get user's feed controls
+                                feedControls = userFeedControls.get(recipient);
+                                if (feedControls == null)
+                                {
+                                    feedControls = getFeedControls(recipient);
+                                    userFeedControls.put(recipient, feedControls);
+                                }
                             }
                             
-                            for (String fmTemplate : fmTemplates)
+                            // filter based on opt-out feed controls (if any)
+                            if (acceptActivity(activityPost, feedControls))
                             {
-                                String formatFound = FeedTaskProcessor.FEED_FORMAT_JSON;
-                                
-                                ActivityFeedEntity feed = new ActivityFeedEntity();
-                                
-                                // Generate activity feed summary 
-                                //MNT-9104 If username contains uppercase letters the action of joining a site will not be displayed in "My activities" 
-                                if (! userNamesAreCaseSensitive)
-                                {
-                                    recipient = recipient.toLowerCase();
-                                    postingUserId = postingUserId.toLowerCase();
-                                }
-                                feed.setFeedUserId(recipient);
-                                feed.setPostUserId(postingUserId);
-                                feed.setActivityType(activityType);
-                                
-                                String activitySummary = null;
-                                    // allows JSON to simply pass straight through
-                                    activitySummary = activityPost.getActivityData();
-                                
-                                if (! activitySummary.equals(""))
-                                {
-                                    if (activitySummary.length() > ActivityFeedDAO.MAX_LEN_ACTIVITY_SUMMARY)
-                                    {
-                                        logger.warn("Skip feed entry (activity post " + activityPost.getId() + ") since activity summary - exceeds " + ActivityFeedDAO.MAX_LEN_ACTIVITY_SUMMARY + " chars: " + activitySummary);
-                                    }
-                                    else
-                                    {
-                                        feed.setActivitySummary(activitySummary);
-                                        feed.setSiteNetwork(thisSite);
-                                        feed.setAppTool(activityPost.getAppTool());
-                                        feed.setPostDate(activityPost.getPostDate());
-                                        feed.setPostId(activityPost.getId());
-                                        feed.setFeedDate(new Date());
-                                        
-                                        // Insert activity feed
-                                        insertFeedEntry(feed); // ignore returned feedId
-                                        
-                                        totalGenerated++;
-                                    }
-                                }
-                                else
-                                {
-                                    if (logger.isDebugEnabled())
-                                    {
-                                        logger.debug("Empty template result for activityType '" + activityType + "' using format '" + formatFound + "' hence skip feed entry (activity post " + activityPost.getId() + ")");
-                                    }
-                                }
+                                acceptedRecipients.add(recipient);
                             }
                         }
+                        
+                        // node read permission check (if nodeRef is present)
+                        Set<String> readers = acceptedRecipients.isEmpty() ? acceptedRecipients : getReaders(ctx, acceptedRecipients, model, canUserReadNode);
+                        excludedConnections -= readers.size();
+                        
+                        //MNT-9104 If username contains uppercase letters the action of joining a site will not be displayed in "My activities" 
+                        if (! userNamesAreCaseSensitive)
+                        {
+                            postingUserId = postingUserId.toLowerCase();
+                        }
+                        Date feedDate = new Date();
+                        
+                        List<ActivityFeedEntity> feeds = new ArrayList<ActivityFeedEntity>(readers.size());
+                        for (String recipient : readers)
+                        {
+                            ActivityFeedEntity feed = new ActivityFeedEntity();
+                            feed.setFeedUserId(userNamesAreCaseSensitive ? recipient : recipient.toLowerCase());
+                            feed.setPostUserId(postingUserId);
+                            feed.setActivityType(activityType);
+                            feed.setActivitySummary(activitySummary);
+                            feed.setSiteNetwork(thisSite);
+                            feed.setAppTool(activityPost.getAppTool());
+                            feed.setPostDate(activityPost.getPostDate());
+                            feed.setPostId(activityPost.getId());
+                            feed.setFeedDate(feedDate);
+                            feeds.add(feed);
+                        }
+                        
+                        // Insert activity feed entries for all the recipients together
+                        totalGenerated += insertFeedEntries(feeds);
                     }
                     
+                    totalRecipients += recipients.size();
+                    
                     updatePostStatus(activityPost.getId(), ActivityPostEntity.STATUS.PROCESSED);
                     
                     commitTransaction();
@@ -331,13 +328,23 @@ public abstract class FeedTaskProcessor
         finally
         {
             int postCnt = activityPosts == null ? 0 : activityPosts.size();
+            long elapsed = System.currentTimeMillis() - startTime;
             
             // TODO i18n info message
             StringBuilder sb = new StringBuilder();
             sb.append("Generated ").append(totalGenerated).append(" activity feed entr").append(totalGenerated == 1 ? "y" : "ies");
-            sb.append(" for ").append(postCnt).append(" activity post").append(postCnt != 1 ? "s" : "").append(" (in ").append(System.currentTimeMillis() - startTime).append(" msecs)");
+            sb.append(" for ").append(postCnt).append(" activity post").append(postCnt != 1 ? "s" : "");
+            sb.append(" and ").append(totalRecipients).append(" candidate connection").append(totalRecipients != 1 ? "s" : "");
+            sb.append(" (in ").append(elapsed).append(" msecs");
+            if (elapsed > 0)
+            {
+                sb.append(", ").append(totalGenerated * 1000L / elapsed).append(" entries/sec");
+            }
+            sb.append(")");
             logger.info(sb.toString());
         }
+        
+        return totalGenerated;
     }
     
     private Set<String> getRecipients(RepoCtx ctx, String siteId, String postUserId, String tenantDomain,
@@ -445,6 +452,21 @@ public abstract class FeedTaskProcessor
 
     public abstract long insertFeedEntry(ActivityFeedEntity feed) throws SQLException;
 
+    /**
+     * Insert the feed entries generated for an activity post.  Implementations should override this to
+     * insert the entries together rather than {@link #insertFeedEntry(ActivityFeedEntity) one at a time}.
+     * 
+     * @return                  Returns the number of feed entries inserted
+     */
+    public int insertFeedEntries(List<ActivityFeedEntity> feeds) throws SQLException
+    {
+        for (ActivityFeedEntity feed : feeds)
+        {
+            insertFeedEntry(feed); // ignore returned feedId
+        }
+        return feeds.size();
+    }
+
     public abstract int updatePostStatus(long id, ActivityPostEntity.STATUS status) throws SQLException;
 
     protected String callWebScript(String urlString, String ticket) throws MalformedURLException, URISyntaxException, IOException
@@ -547,6 +569,27 @@ public abstract class FeedTaskProcessor
     protected abstract boolean canReadSite(final RepoCtx ctx, String siteIdIn, String connectedUser, final String tenantDomain) throws Exception;
     protected abstract boolean canRead(RepoCtx ctx, final String connectedUser, Map<String, Object> model) throws Exception;
     
+    /**
+     * Get the connected users that can read the activity's node (if any).  Implementations can override this to
+     * check the users together, e.g. once for each distinct set of permissions on the node.
+     * 
+     * @param connectedUsers    the connected users to check
+     * @param readCache         read permission results by ACL id and user, that can be reused for the rest of this run of activity posts
+     * @return                  Returns the connected users that can read the node
+     */
+    protected Set<String> getReaders(RepoCtx ctx, Set<String> connectedUsers, Map<String, Object> model, Map<Pair<Long, String>, Boolean> readCache) throws Exception
+    {
+        Set<String> readers = new HashSet<String>(connectedUsers.size() * 2);
+        for (String connectedUser : connectedUsers)
+        {
+            if (canRead(ctx, connectedUser, model))
+            {
+                readers.add(connectedUser);
+            }
+        }
+        return readers;
+    }
+    
     protected Map<String, List<String>> getActivityTypeTemplates(String repoEndPoint, String ticket, String subPath) throws Exception
     {
         StringBuffer sbUrl = new StringBuffer();
@@ -55,10 +55,18 @@ public class LocalFeedGridJob implements FeedGridJob
         
         if (logger.isDebugEnabled()) { logger.debug(">>> Execute: nodehash '" + js.getJobTaskNode() + "' from seq '" + js.getMinSeq() + "' to seq '" + js.getMaxSeq() + "' on this node"); }
         
-        feedTaskProcessor.process(js.getJobTaskNode(), js.getMinSeq(), js.getMaxSeq(), js.getWebScriptsCtx());
+        long start = System.currentTimeMillis();
+        int generated = feedTaskProcessor.process(js.getJobTaskNode(), js.getMinSeq(), js.getMaxSeq(), js.getWebScriptsCtx());
+        long elapsed = System.currentTimeMillis() - start;
         
-        // This job does not return any result.
-        return null;
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("<<< Execute: nodehash '" + js.getJobTaskNode() + "' generated " + generated + " feed entries in " + elapsed + " msecs" +
+                    (elapsed > 0 ? " (" + (generated * 1000L / elapsed) + " entries/sec)" : ""));
+        }
+        
+        // The result is the number of feed entries generated
+        return generated;
     }
     
     public void setArgument(JobSettings arg)
@@ -26,6 +26,7 @@
 package org.alfresco.repo.activities.feed.local;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -45,6 +46,7 @@ import org.alfresco.repo.domain.activities.ActivityPostDAO;
 import org.alfresco.repo.domain.activities.ActivityPostEntity;
 import org.alfresco.repo.domain.activities.FeedControlDAO;
 import org.alfresco.repo.domain.activities.FeedControlEntity;
+import org.alfresco.repo.domain.node.NodeDAO;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.template.ClassPathRepoTemplateLoader;
 import org.alfresco.repo.tenant.TenantService;
@@ -63,6 +65,7 @@ import org.alfresco.service.cmr.site.SiteService;
 import org.alfresco.service.cmr.site.SiteVisibility;
 import org.alfresco.service.cmr.subscriptions.PagingFollowingResults;
 import org.alfresco.service.cmr.subscriptions.SubscriptionService;
+import org.alfresco.util.Pair;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.BeansException;
@@ -98,6 +101,7 @@ public class LocalFeedTaskProcessor extends FeedTaskProcessor implements Applica
     private PermissionService permissionService;
     private SubscriptionService subscriptionService;
     private TenantService tenantService;
+    private NodeDAO nodeDAO;
 
     private String defaultEncoding;
     private List<String> templateSearchPaths;
@@ -149,6 +153,14 @@ public class LocalFeedTaskProcessor extends FeedTaskProcessor implements Applica
         this.tenantService = tenantService;
     }
 
+    /**
+     * Optional: used to check read permissions once per ACL rather than once per user and node
+     */
+    public void setNodeDAO(NodeDAO nodeDAO)
+    {
+        this.nodeDAO = nodeDAO;
+    }
+
     public void setDefaultEncoding(String defaultEncoding)
     {
         this.defaultEncoding = defaultEncoding;
@@ -215,6 +227,16 @@ public class LocalFeedTaskProcessor extends FeedTaskProcessor implements Applica
         return feedDAO.insertFeedEntry(feed);
     }
 
+    @Override
+    public int insertFeedEntries(List<ActivityFeedEntity> feeds) throws SQLException
+    {
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Inserting " + feeds.size() + " feed entries");
+        }
+        return feedDAO.insertFeedEntries(feeds);
+    }
+
     public int updatePostStatus(long id, ActivityPostEntity.STATUS status) throws SQLException
     {
         if (logger.isDebugEnabled())
@@ -399,6 +421,99 @@ public class LocalFeedTaskProcessor extends FeedTaskProcessor implements Applica
         }
     }
     
+    @Override
+    protected Set<String> getReaders(RepoCtx ctx, final Set<String> connectedUsers, Map<String, Object> model, final Map<Pair<Long, String>, Boolean> readCache) throws Exception
+    {
+        if (useRemoteCallbacks || permissionService == null || nodeDAO == null)
+        {
+            return super.getReaders(ctx, connectedUsers, model, readCache);
+        }
+        
+        String nodeRefStr = (String) model.get(PostLookup.JSON_NODEREF);
+        if (nodeRefStr == null)
+        {
+            nodeRefStr = (String) model.get(PostLookup.JSON_NODEREF_PARENT);
+        }
+        
+        if (nodeRefStr != null)
+        {
+            final NodeRef nodeRef = new NodeRef(nodeRefStr);
+            
+            // MT share
+            String tenantDomain = (String)model.get(PostLookup.JSON_TENANT_DOMAIN);
+            if (tenantDomain == null) { tenantDomain = TenantService.DEFAULT_DOMAIN; }
+            
+            return TenantUtil.runAsSystemTenant(new TenantUtil.TenantRunAsWork<Set<String>>()
+            {
+                public Set<String> doWork() throws Exception
+                {
+                    return getReadersImpl(connectedUsers, nodeRef, readCache);
+                }
+            }, tenantDomain);
+        }
+        else
+        {
+            // no nodeRef
+            return connectedUsers;
+        }
+    }
+    
+    /**
+     * A user has the same read permission on all the nodes that share an ACL, apart from the owner of each node.
+     * So, other than for the owner, the result of each user's check is reused for every node with the same ACL.
+     */
+    private Set<String> getReadersImpl(Set<String> connectedUsers, NodeRef nodeRef, Map<Pair<Long, String>, Boolean> readCache) throws Exception
+    {
+        Set<String> readers = new HashSet<String>(connectedUsers.size() * 2);
+        
+        Pair<Long, NodeRef> nodePair = nodeDAO.getNodePair(tenantService.getName(nodeRef));
+        Long aclId = (nodePair == null) ? null : nodeDAO.getNodeAclId(nodePair.getFirst());
+        if (aclId == null)
+        {
+            // deleted node (see canReadImpl) or no ACL
+            for (String connectedUser : connectedUsers)
+            {
+                if (canReadImpl(connectedUser, nodeRef))
+                {
+                    readers.add(connectedUser);
+                }
+            }
+            return readers;
+        }
+        
+        Serializable owner = nodeDAO.getNodeProperty(nodePair.getFirst(), ContentModel.PROP_OWNER);
+        if (owner == null)
+        {
+            owner = nodeDAO.getNodeProperty(nodePair.getFirst(), ContentModel.PROP_CREATOR);
+        }
+        
+        for (String connectedUser : connectedUsers)
+        {
+            boolean canRead;
+            if (owner != null && connectedUser.equalsIgnoreCase(owner.toString()))
+            {
+                canRead = canReadImpl(connectedUser, nodeRef);
+            }
+            else
+            {
+                Pair<Long, String> aclUserKey = new Pair<Long, String>(aclId, connectedUser);
+                Boolean cachedCanRead = readCache.get(aclUserKey);
+                if (cachedCanRead == null)
+                {
+                    cachedCanRead = canReadImpl(connectedUser, nodeRef);
+                    readCache.put(aclUserKey, cachedCanRead);
+                }
+                canRead = cachedCanRead;
+            }
+            
+            if (canRead)
+            {
+                readers.add(connectedUser);
+            }
+        }
+        return readers;
+    }
+    
     private boolean canReadImpl(final String connectedUser, final NodeRef nodeRef) throws Exception
     {
         // check for read permission
@@ -0,0 +1,215 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.admin.patch.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.admin.patch.AbstractPatch;
+import org.alfresco.repo.batch.BatchProcessWorkProvider;
+import org.alfresco.repo.batch.BatchProcessor;
+import org.alfresco.repo.batch.BatchProcessor.BatchProcessWorkerAdaptor;
+import org.alfresco.repo.domain.node.NodeDAO;
+import org.alfresco.repo.domain.patch.PatchDAO;
+import org.alfresco.repo.domain.qname.QNameDAO;
+import org.alfresco.repo.domain.tagging.TagScopeCountDAO;
+import org.alfresco.repo.policy.BehaviourFilter;
+import org.alfresco.repo.tagging.TaggingServiceImpl;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.tagging.TagDetails;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.extensions.surf.util.I18NUtil;
+
+/**
+ * Patch to move the tag counts of each tag scope from the content of its <b>cm:tagScopeCache</b>
+ * property into the tag scope count table.
+ * 
+ * @since 5.2
+ */
+public class TagScopeCountsPatch extends AbstractPatch
+{
+    private static final String MSG_SUCCESS = "patch.tagScopeCounts.result";
+    
+    private static Log logger = LogFactory.getLog(TagScopeCountsPatch.class);
+    
+    private NodeDAO nodeDAO;
+    private PatchDAO patchDAO;
+    private QNameDAO qnameDAO;
+    private ContentService contentService;
+    private TagScopeCountDAO tagScopeCountDAO;
+    private BehaviourFilter behaviourFilter;
+    
+    private int batchThreads = 2;
+    private int batchSize = 100;
+    private long rangeSize = 10000L;
+    
+    public void setNodeDAO(NodeDAO nodeDAO)
+    {
+        this.nodeDAO = nodeDAO;
+    }
+    
+    public void setPatchDAO(PatchDAO patchDAO)
+    {
+        this.patchDAO = patchDAO;
+    }
+    
+    public void setQnameDAO(QNameDAO qnameDAO)
+    {
+        this.qnameDAO = qnameDAO;
+    }
+    
+    public void setContentService(ContentService contentService)
+    {
+        this.contentService = contentService;
+    }
+    
+    public void setTagScopeCountDAO(TagScopeCountDAO tagScopeCountDAO)
+    {
+        this.tagScopeCountDAO = tagScopeCountDAO;
+    }
+    
+    public void setBehaviourFilter(BehaviourFilter behaviourFilter)
+    {
+        this.behaviourFilter = behaviourFilter;
+    }
+    
+    public void setBatchThreads(int batchThreads)
+    {
+        this.batchThreads = batchThreads;
+    }
+    
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+    
+    @Override
+    protected void checkProperties()
+    {
+        super.checkProperties();
+        checkPropertyNotNull(nodeDAO, "nodeDAO");
+        checkPropertyNotNull(patchDAO, "patchDAO");
+        checkPropertyNotNull(qnameDAO, "qnameDAO");
+        checkPropertyNotNull(contentService, "contentService");
+        checkPropertyNotNull(tagScopeCountDAO, "tagScopeCountDAO");
+        checkPropertyNotNull(behaviourFilter, "behaviourFilter");
+    }
+    
+    @Override
+    protected String applyInternal() throws Exception
+    {
+        final Pair<Long, QName> aspectPair = qnameDAO.getQName(ContentModel.ASPECT_TAGSCOPE);
+        if (aspectPair == null)
+        {
+            // No tag scopes have ever been created
+            return I18NUtil.getMessage(MSG_SUCCESS, 0);
+        }
+        final long maxNodeId = patchDAO.getMaxAdmNodeID();
+        
+        BatchProcessWorkProvider<Long> workProvider = new BatchProcessWorkProvider<Long>()
+        {
+            private long minSearchNodeId = 0L;
+            
+            public int getTotalEstimatedWorkSize()
+            {
+                return -1;
+            }
+            
+            public Collection<Long> getNextWork()
+            {
+                List<Long> result = new ArrayList<Long>();
+                while (result.isEmpty() && minSearchNodeId <= maxNodeId)
+                {
+                    result.addAll(patchDAO.getNodesByAspectQNameId(aspectPair.getFirst(), minSearchNodeId, minSearchNodeId + rangeSize));
+                    minSearchNodeId += rangeSize;
+                }
+                return result;
+            }
+        };
+        
+        RetryingTransactionHelper txnHelper = transactionService.getRetryingTransactionHelper();
+        txnHelper.setForceWritable(true);
+        
+        BatchProcessor<Long> batchProcessor = new BatchProcessor<Long>(
+                "TagScopeCountsPatch",
+                txnHelper,
+                workProvider,
+                batchThreads,
+                batchSize,
+                applicationEventPublisher,
+                logger,
+                1000);
+        
+        batchProcessor.process(new BatchProcessWorkerAdaptor<Long>()
+        {
+            public void process(Long nodeId) throws Throwable
+            {
+                NodeRef.Status status = nodeDAO.getNodeIdStatus(nodeId);
+                if (status == null || status.isDeleted())
+                {
+                    return;
+                }
+                NodeRef nodeRef = status.getNodeRef();
+                ContentReader reader = contentService.getReader(nodeRef, ContentModel.PROP_TAGSCOPE_CACHE);
+                if (reader == null)
+                {
+                    return;
+                }
+                Map<String, Integer> counts = new HashMap<String, Integer>();
+                if (reader.exists())
+                {
+                    for (TagDetails tagDetails : TaggingServiceImpl.readTagDetails(reader.getContentInputStream()))
+                    {
+                        counts.put(tagDetails.getName(), tagDetails.getCount());
+                    }
+                }
+                tagScopeCountDAO.setTagCounts(nodeId, counts);
+                
+                behaviourFilter.disableBehaviour(nodeRef, ContentModel.ASPECT_AUDITABLE);
+                try
+                {
+                    nodeService.removeProperty(nodeRef, ContentModel.PROP_TAGSCOPE_CACHE);
+                }
+                finally
+                {
+                    behaviourFilter.enableBehaviour(nodeRef, ContentModel.ASPECT_AUDITABLE);
+                }
+            }
+        }, true);
+        
+        return I18NUtil.getMessage(MSG_SUCCESS, batchProcessor.getSuccessfullyProcessedEntries());
+    }
+}
@@ -86,6 +86,7 @@ public class AuditComponentImpl implements AuditComponent
     private TransactionService transactionService;
     private AuditFilter auditFilter;
     private UserAuditFilter userAuditFilter;
+    private AuditWriteBehindRecorder writeBehindRecorder;
     
     /**
      * Default constructor
@@ -142,6 +143,20 @@ public class AuditComponentImpl implements AuditComponent
         this.userAuditFilter = userAuditFilter;
     }
 
+    /**
+     * Set the component that records audit entries behind the transaction, if it is enabled
+     * @since 5.2
+     */
+    public void setWriteBehindRecorder(AuditWriteBehindRecorder writeBehindRecorder)
+    {
+        this.writeBehindRecorder = writeBehindRecorder;
+    }
+
+    private boolean isWriteBehind()
+    {
+        return writeBehindRecorder != null && writeBehindRecorder.isEnabled();
+    }
+
     /**
      * {@inheritDoc}
      * @since 3.2
@@ -163,6 +178,11 @@ public class AuditComponentImpl implements AuditComponent
         
         Long applicationId = application.getApplicationId();
         
+        if (isWriteBehind())
+        {
+            // Include the entries still in the journal
+            writeBehindRecorder.flush();
+        }
         int deleted = auditDAO.deleteAuditEntries(applicationId, fromTime, toTime);
         // Done
         if (logger.isDebugEnabled())
@@ -186,6 +206,11 @@ public class AuditComponentImpl implements AuditComponent
         {
             return 0;
         }
+        if (isWriteBehind())
+        {
+            // Write the journalled entries first, as for the range delete
+            writeBehindRecorder.flush();
+        }
         return auditDAO.deleteAuditEntries(auditEntryIds);
     }
 
@@ -720,7 +745,12 @@ public class AuditComponentImpl implements AuditComponent
         {
             // Persist the values (if not just gathering data in a pre call for use in a post call)
             boolean justGatherPreCallData = application.isApplicationJustGeneratingPreCallData();
-            if (!justGatherPreCallData)
+            if (!justGatherPreCallData && isWriteBehind())
+            {
+                // Written to the database once the transaction commits
+                writeBehindRecorder.record(applicationId, time, username, auditData);
+            }
+            else if (!justGatherPreCallData)
             {
                 entryId = auditDAO.createAuditEntry(applicationId, time, username, auditData);
             }
@@ -896,6 +926,11 @@ public class AuditComponentImpl implements AuditComponent
             return;
         }
         
+        if (isWriteBehind())
+        {
+            // Make recently committed entries visible
+            writeBehindRecorder.flush();
+        }
         auditDAO.findAuditEntries(callback, parameters, maxResults);
     }
 }
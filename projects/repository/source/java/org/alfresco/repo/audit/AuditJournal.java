@@ -0,0 +1,589 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.audit;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.alfresco.repo.domain.audit.AuditDAO.AuditEntryInfo;
+import org.alfresco.util.GUID;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A local, append-only journal of audit entries waiting to be written to the database.
+ * <p/>
+ * The entries recorded by a transaction are appended to the current journal file as one record and
+ * forced to disk.  To drain the journal, the current file is {@link #roll() rolled} over to a
+ * numbered pending file and the pending files are read back in order.  The journal does not keep
+ * track of how far each pending file has been drained: the caller records that with the entries it
+ * writes and {@link #openReader(File, long) skips} the records already written.
+ * <p/>
+ * Each record is written as its length, the serialized record and a CRC32 of the serialized record.
+ * An incomplete record at the end of the current file, left by a failure during an append, is
+ * dropped.  A record that is corrupt or cannot be read is moved aside to the <tt>quarantine</tt>
+ * directory and reading carries on with the next record.
+ *
+ * @since 5.2
+ */
+public class AuditJournal
+{
+    private static final String CURRENT = "audit.journal";
+    private static final String PENDING_PREFIX = "audit.journal.";
+    private static final String ID = "journal.id";
+    private static final String QUARANTINE = "quarantine";
+    private static final int MAX_RECORD_LENGTH = 64 * 1024 * 1024;
+
+    private static Log logger = LogFactory.getLog(AuditJournal.class);
+
+    private final File directory;
+    private final String id;
+    private final TreeMap<Long, File> pendingFiles;
+    private RandomAccessFile current;
+    private long currentSize;
+    private long nextPendingNumber;
+
+    /**
+     * @param directory             the directory to keep the journal in, created if necessary
+     */
+    public AuditJournal(File directory) throws IOException
+    {
+        if (!directory.exists() && !directory.mkdirs())
+        {
+            throw new IOException("Failed to create audit journal directory: " + directory);
+        }
+        this.directory = directory;
+        this.id = readId();
+        this.pendingFiles = new TreeMap<Long, File>();
+        File[] files = directory.listFiles();
+        for (File file : files == null ? new File[0] : files)
+        {
+            String name = file.getName();
+            if (name.startsWith(PENDING_PREFIX))
+            {
+                try
+                {
+                    pendingFiles.put(Long.valueOf(name.substring(PENDING_PREFIX.length())), file);
+                }
+                catch (NumberFormatException e)
+                {
+                    logger.warn("Ignoring unexpected file in audit journal directory: " + file);
+                }
+            }
+        }
+        nextPendingNumber = pendingFiles.isEmpty() ? 1L : pendingFiles.lastKey() + 1L;
+        openCurrent();
+    }
+
+    /**
+     * Read the identity of the journal, giving it one if it is new
+     */
+    private String readId() throws IOException
+    {
+        File file = new File(directory, ID);
+        if (file.exists())
+        {
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try
+            {
+                return in.readUTF();
+            }
+            catch (EOFException e)
+            {
+                // Incomplete: the journal was never used
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        String id = GUID.generate();
+        FileOutputStream os = new FileOutputStream(file);
+        try
+        {
+            DataOutputStream out = new DataOutputStream(os);
+            out.writeUTF(id);
+            out.flush();
+            os.getFD().sync();
+        }
+        finally
+        {
+            os.close();
+        }
+        return id;
+    }
+
+    private void openCurrent() throws IOException
+    {
+        File file = new File(directory, CURRENT);
+        // Drop any incomplete record left at the end
+        long validLength = 0L;
+        boolean corrupt = false;
+        if (file.exists())
+        {
+            Reader reader = new Reader(file);
+            try
+            {
+                while (reader.readFrame() != null)
+                {
+                    // Keep reading
+                }
+                validLength = reader.validLength;
+                corrupt = reader.corrupt;
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        current = new RandomAccessFile(file, "rw");
+        if (current.length() != validLength)
+        {
+            if (corrupt)
+            {
+                quarantine(file, validLength);
+            }
+            else
+            {
+                logger.warn("Dropping incomplete audit journal record at " + validLength + " in " + file);
+            }
+            current.setLength(validLength);
+        }
+        current.seek(validLength);
+        currentSize = validLength;
+    }
+
+    /**
+     * @return                      Returns the identity of the journal, which stays the same for as long as its directory exists
+     */
+    public String getId()
+    {
+        return id;
+    }
+
+    /**
+     * Append the entries of a transaction as one record and force them to disk.  Nothing is left in the
+     * journal if the append fails.
+     *
+     * @param txnId                 the transaction that recorded the entries
+     * @param entries               the entries to append
+     */
+    public void append(String txnId, List<AuditEntryInfo> entries) throws IOException
+    {
+        if (entries.isEmpty())
+        {
+            return;
+        }
+        byte[] serialized = serialize(txnId, entries);
+        CRC32 crc = new CRC32();
+        crc.update(serialized);
+        ByteBuffer buffer = ByteBuffer.allocate(serialized.length + 8);
+        buffer.putInt(serialized.length);
+        buffer.put(serialized);
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        synchronized (this)
+        {
+            FileChannel channel = current.getChannel();
+            try
+            {
+                while (buffer.hasRemaining())
+                {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            catch (IOException e)
+            {
+                // Do not leave part of a record for the next append to follow
+                try
+                {
+                    channel.truncate(currentSize);
+                    channel.position(currentSize);
+                }
+                catch (IOException ee)
+                {
+                    logger.error("Failed to remove incomplete audit journal record at " + currentSize, ee);
+                }
+                throw e;
+            }
+            currentSize += buffer.limit();
+        }
+    }
+
+    /**
+     * Roll the current file over to a new pending file, if anything has been appended to it.
+     *
+     * @return                      Returns <tt>true</tt> if a new pending file was created
+     */
+    public synchronized boolean roll() throws IOException
+    {
+        if (currentSize == 0L)
+        {
+            return false;
+        }
+        current.close();
+        File pending = new File(directory, PENDING_PREFIX + nextPendingNumber);
+        if (!new File(directory, CURRENT).renameTo(pending))
+        {
+            openCurrent();
+            throw new IOException("Failed to roll audit journal over to " + pending);
+        }
+        pendingFiles.put(nextPendingNumber, pending);
+        nextPendingNumber++;
+        openCurrent();
+        return true;
+    }
+
+    /**
+     * @return                      Returns the number the current file will be given when it is rolled over
+     */
+    public synchronized long getNextPendingNumber()
+    {
+        return nextPendingNumber;
+    }
+
+    /**
+     * Make sure that pending files created from now on are numbered after the given number,
+     * which has been used before.
+     */
+    public synchronized void skipPendingNumbers(long used)
+    {
+        nextPendingNumber = Math.max(nextPendingNumber, used + 1L);
+    }
+
+    /**
+     * @return                      Returns <tt>true</tt> if there is nothing to drain
+     */
+    public synchronized boolean isEmpty()
+    {
+        return currentSize == 0L && pendingFiles.isEmpty();
+    }
+
+    /**
+     * @return                      Returns the pending files by number, oldest first
+     */
+    public synchronized SortedMap<Long, File> getPendingFiles()
+    {
+        return new TreeMap<Long, File>(pendingFiles);
+    }
+
+    /**
+     * Open a pending file for reading, skipping the records already drained from it.
+     *
+     * @param drained               the number of records to skip
+     */
+    public Reader openReader(File pending, long drained) throws IOException
+    {
+        Reader reader = new Reader(pending);
+        while (reader.position < drained && reader.readFrame() != null)
+        {
+            // Skip
+        }
+        return reader;
+    }
+
+    /**
+     * Delete a fully drained pending file.
+     */
+    public synchronized void complete(long number)
+    {
+        File pending = pendingFiles.remove(number);
+        if (pending != null && !pending.delete())
+        {
+            logger.warn("Failed to delete drained audit journal file: " + pending);
+        }
+    }
+
+    /**
+     * Move a record aside so that it no longer holds up the journal.
+     *
+     * @param record                a record read from a pending file
+     */
+    public void quarantine(Record record) throws IOException
+    {
+        File file = getQuarantineFile(record.file.getName() + "." + record.position);
+        FileOutputStream os = new FileOutputStream(file);
+        try
+        {
+            DataOutputStream out = new DataOutputStream(os);
+            out.writeInt(record.serialized.length);
+            out.write(record.serialized);
+            out.writeInt(record.crc);
+            out.flush();
+            os.getFD().sync();
+        }
+        finally
+        {
+            os.close();
+        }
+        logger.error("Moved audit journal record aside: " + file);
+    }
+
+    /**
+     * Move the rest of a file, from a point where no more records can be found, aside.
+     */
+    private void quarantine(File journalFile, long offset) throws IOException
+    {
+        File file = getQuarantineFile(journalFile.getName() + ".at" + offset);
+        FileInputStream is = new FileInputStream(journalFile);
+        FileOutputStream os = new FileOutputStream(file);
+        try
+        {
+            FileChannel in = is.getChannel();
+            long size = in.size();
+            long copied = 0L;
+            while (offset + copied < size)
+            {
+                copied += in.transferTo(offset + copied, size - offset - copied, os.getChannel());
+            }
+            os.getFD().sync();
+        }
+        finally
+        {
+            os.close();
+            is.close();
+        }
+        logger.error("Moved unreadable end of audit journal file aside: " + file);
+    }
+
+    private File getQuarantineFile(String name) throws IOException
+    {
+        File quarantine = new File(directory, QUARANTINE);
+        if (!quarantine.exists() && !quarantine.mkdirs())
+        {
+            throw new IOException("Failed to create audit journal quarantine directory: " + quarantine);
+        }
+        return new File(quarantine, name);
+    }
+
+    public synchronized void close() throws IOException
+    {
+        current.close();
+    }
+
+    private static byte[] serialize(String txnId, List<AuditEntryInfo> entries) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entries.size() * 256);
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeUTF(txnId);
+        out.writeInt(entries.size());
+        for (AuditEntryInfo entry : entries)
+        {
+            out.writeLong(entry.getApplicationId());
+            out.writeLong(entry.getTime());
+            out.writeObject(entry.getUsername());
+            Map<String, Serializable> values = entry.getValues();
+            out.writeObject(values == null ? null : new HashMap<String, Serializable>(values));
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The entries recorded by a transaction
+     */
+    public static class Record
+    {
+        private final File file;
+        private final long position;
+        private final byte[] serialized;
+        private final int crc;
+        private String txnId;
+        private List<AuditEntryInfo> entries;
+
+        private Record(File file, long position, byte[] serialized, int crc)
+        {
+            this.file = file;
+            this.position = position;
+            this.serialized = serialized;
+            this.crc = crc;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void deserialize() throws IOException, ClassNotFoundException
+        {
+            ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized));
+            try
+            {
+                txnId = in.readUTF();
+                int count = in.readInt();
+                entries = new ArrayList<AuditEntryInfo>(count);
+                for (int i = 0; i < count; i++)
+                {
+                    long applicationId = in.readLong();
+                    long time = in.readLong();
+                    String username = (String) in.readObject();
+                    Map<String, Serializable> values = (Map<String, Serializable>) in.readObject();
+                    entries.add(new AuditEntryInfo(applicationId, time, username, values));
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+
+        /**
+         * @return              Returns the number of records in the file up to and including this one
+         */
+        public long getPosition()
+        {
+            return position;
+        }
+
+        public String getTxnId()
+        {
+            return txnId;
+        }
+
+        public List<AuditEntryInfo> getEntries()
+        {
+            return entries;
+        }
+    }
+
+    /**
+     * Reads records from a journal file in the order they were appended.
+     */
+    public class Reader
+    {
+        private final File file;
+        private final DataInputStream in;
+        private long validLength;
+        private long position;
+        private boolean corrupt;
+
+        private Reader(File file) throws IOException
+        {
+            this.file = file;
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+        }
+
+        /**
+         * @return                  Returns the number of records read from the start of the file
+         */
+        public long getPosition()
+        {
+            return position;
+        }
+
+        /**
+         * Read the next record, moving aside any corrupt or unreadable records on the way.
+         *
+         * @return                  Returns the next record or <tt>null</tt> at the end of the file
+         */
+        public Record next() throws IOException
+        {
+            while (true)
+            {
+                Record record = readFrame();
+                if (record == null)
+                {
+                    if (corrupt)
+                    {
+                        quarantine(file, validLength);
+                    }
+                    return null;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(record.serialized);
+                if ((int) crc.getValue() != record.crc)
+                {
+                    logger.error("Corrupt audit journal record " + record.position + " in " + file);
+                    quarantine(record);
+                    continue;
+                }
+                try
+                {
+                    record.deserialize();
+                    return record;
+                }
+                catch (Exception e)
+                {
+                    logger.error("Failed to read audit journal record " + record.position + " in " + file, e);
+                    quarantine(record);
+                }
+            }
+        }
+
+        /**
+         * Read the next record as it is stored.  Reading stops at an incomplete record at the end of
+         * the file or at a length that cannot be right, after which no record can be found.
+         */
+        private Record readFrame() throws IOException
+        {
+            byte[] serialized;
+            int expectedCrc;
+            try
+            {
+                int length = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_LENGTH)
+                {
+                    logger.error("Invalid audit journal record length " + length + " at " + validLength + " in " + file);
+                    corrupt = true;
+                    return null;
+                }
+                serialized = new byte[length];
+                in.readFully(serialized);
+                expectedCrc = in.readInt();
+            }
+            catch (EOFException e)
+            {
+                return null;
+            }
+            validLength += 8 + serialized.length;
+            position++;
+            return new Record(file, position, serialized, expectedCrc);
+        }
+
+        public void close() throws IOException
+        {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,582 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.audit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.domain.audit.AuditDAO;
+import org.alfresco.repo.domain.audit.AuditDAO.AuditEntryInfo;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.PropertyCheck;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Records audit entries behind the user's transaction.
+ * <p/>
+ * When {@link #setEnabled(boolean) enabled}, the {@link AuditComponentImpl} hands audit entries to
+ * this component instead of writing them to the database.  The entries are appended to a local
+ * {@link AuditJournal journal} before the transaction commits; if that fails they are written to the
+ * database in the transaction, as they would be without this component.  A background thread writes
+ * the journalled entries of committed transactions to the database in batches, resolving each
+ * distinct user once per batch and inserting the entries with multi-row statements.  Entries of
+ * transactions that roll back are discarded.
+ * <p/>
+ * Each batch records how far the journal has been drained in the same transaction, so entries are
+ * written once even if the server stops part way through.  The exception is a server stop while a
+ * transaction is committing: its entries are written on restart whatever the outcome of the commit.
+ * Entries that cannot be read from the journal or written to the database are moved aside (see
+ * {@link AuditJournal#quarantine(AuditJournal.Record)}) so that they do not hold up the rest.
+ * <p/>
+ * Audit queries and deletes {@link #flush() write} all journalled entries of committed transactions
+ * first, so that they see the same entries as without this component; entries recorded by the
+ * querying transaction itself are not visible until it commits.
+ *
+ * @since 5.2
+ */
+public class AuditWriteBehindRecorder extends TransactionListenerAdapter
+{
+    /**
+     * Entries to journal when the transaction commits.
+     * @see #beforeCommit(boolean)
+     */
+    private static final String KEY_ENTRIES = "AuditWriteBehindRecorder.Entries";
+    /**
+     * Present once the transaction's entries have been journalled
+     */
+    private static final String KEY_JOURNALLED = "AuditWriteBehindRecorder.Journalled";
+
+    private static final String KEY_CHECKPOINT_ROOT = ".auditWriteBehind";
+    private static final String KEY_CHECKPOINT_FILE = "file";
+    private static final String KEY_CHECKPOINT_POSITION = "position";
+
+    private static Log logger = LogFactory.getLog(AuditWriteBehindRecorder.class);
+
+    private boolean enabled;
+    private String journalDirectory;
+    private int batchSize = 500;
+    private long drainIntervalMs = 1000L;
+    private int maxWriteAttempts = 3;
+    private AuditDAO auditDAO;
+    private AttributeService attributeService;
+    private TransactionService transactionService;
+
+    private AuditJournal journal;
+    private ScheduledExecutorService drainer;
+    /** Transactions with journalled entries that have yet to commit or roll back */
+    private final Set<String> unresolvedTxnIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    /** Transactions with journalled entries that rolled back, by the last pending file that can hold them */
+    private final Map<String, Long> rolledBackTxnIds = new ConcurrentHashMap<String, Long>();
+
+    // Drain state, guarded by this
+    private boolean checkpointLoaded;
+    private Long checkpointFile;
+    private long checkpointPosition;
+    private int failedAttempts;
+
+    /**
+     * @param enabled               <tt>true</tt> to record audit entries behind the transaction
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param journalDirectory      the local directory to keep the journal in
+     */
+    public void setJournalDirectory(String journalDirectory)
+    {
+        this.journalDirectory = journalDirectory;
+    }
+
+    /**
+     * @param batchSize             the number of entries to write to the database in each transaction
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param drainIntervalMs       the time between the background writes
+     */
+    public void setDrainIntervalMs(long drainIntervalMs)
+    {
+        this.drainIntervalMs = drainIntervalMs;
+    }
+
+    /**
+     * @param maxWriteAttempts      the number of times in a row that none of a batch's entries can be
+     *                              written before they are moved aside
+     */
+    public void setMaxWriteAttempts(int maxWriteAttempts)
+    {
+        this.maxWriteAttempts = maxWriteAttempts;
+    }
+
+    public void setAuditDAO(AuditDAO auditDAO)
+    {
+        this.auditDAO = auditDAO;
+    }
+
+    /**
+     * @param attributeService      records how far the journal has been drained, with the entries
+     */
+    public void setAttributeService(AttributeService attributeService)
+    {
+        this.attributeService = attributeService;
+    }
+
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * @return                      Returns <tt>true</tt> if audit entries are recorded behind the transaction
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Opens the journal and starts writing any entries left in it.
+     */
+    public void init()
+    {
+        if (!enabled)
+        {
+            return;
+        }
+        PropertyCheck.mandatory(this, "journalDirectory", journalDirectory);
+        PropertyCheck.mandatory(this, "auditDAO", auditDAO);
+        PropertyCheck.mandatory(this, "attributeService", attributeService);
+        PropertyCheck.mandatory(this, "transactionService", transactionService);
+        try
+        {
+            journal = new AuditJournal(new File(journalDirectory));
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to open audit journal: " + journalDirectory, e);
+        }
+        drainer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "AuditWriteBehindRecorder");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        drainer.scheduleWithFixedDelay(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    flush();
+                }
+                catch (Throwable e)
+                {
+                    logger.error("Failed to write journalled audit entries; they will be retried", e);
+                }
+            }
+        }, drainIntervalMs, drainIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background writes, writing what is left in the journal if possible.
+     */
+    public void destroy()
+    {
+        if (drainer == null)
+        {
+            return;
+        }
+        drainer.shutdown();
+        try
+        {
+            drainer.awaitTermination(30L, TimeUnit.SECONDS);
+            flush();
+        }
+        catch (Throwable e)
+        {
+            logger.warn("Audit entries left in the journal will be written on restart", e);
+        }
+        try
+        {
+            journal.close();
+        }
+        catch (IOException e)
+        {
+            logger.warn("Failed to close audit journal", e);
+        }
+    }
+
+    /**
+     * Record an audit entry to be written once the current transaction commits.
+     */
+    public void record(Long applicationId, long time, String username, Map<String, Serializable> values)
+    {
+        AuditEntryInfo entry = new AuditEntryInfo(applicationId, time, username, new HashMap<String, Serializable>(values));
+        if (AlfrescoTransactionSupport.getResource(KEY_JOURNALLED) != null)
+        {
+            // Recorded by another listener after this one journalled the transaction's entries
+            journal(Collections.singletonList(entry));
+            return;
+        }
+        List<AuditEntryInfo> entries = TransactionalResourceHelper.getList(KEY_ENTRIES);
+        entries.add(entry);
+        // Register to listen for transaction commit
+        AlfrescoTransactionSupport.bindListener(this);
+    }
+
+    /**
+     * Journals the entries recorded in the transaction
+     */
+    @Override
+    public void beforeCommit(boolean readOnly)
+    {
+        List<AuditEntryInfo> entries = TransactionalResourceHelper.getList(KEY_ENTRIES);
+        AlfrescoTransactionSupport.bindResource(KEY_JOURNALLED, Boolean.TRUE);
+        journal(entries);
+    }
+
+    private void journal(List<AuditEntryInfo> entries)
+    {
+        String txnId = AlfrescoTransactionSupport.getTransactionId();
+        // The entries must not be written until the transaction commits
+        unresolvedTxnIds.add(txnId);
+        try
+        {
+            journal.append(txnId, entries);
+        }
+        catch (IOException e)
+        {
+            logger.error("Failed to journal " + entries.size() + " audit entries; writing them in the transaction", e);
+            auditDAO.createAuditEntries(entries);
+        }
+    }
+
+    @Override
+    public void afterCommit()
+    {
+        unresolvedTxnIds.remove(AlfrescoTransactionSupport.getTransactionId());
+    }
+
+    /**
+     * Discards any entries journalled by the transaction
+     */
+    @Override
+    public void afterRollback()
+    {
+        String txnId = AlfrescoTransactionSupport.getTransactionId();
+        if (unresolvedTxnIds.contains(txnId))
+        {
+            // Its records are in the current file or an earlier one
+            rolledBackTxnIds.put(txnId, journal.getNextPendingNumber());
+            unresolvedTxnIds.remove(txnId);
+        }
+    }
+
+    /**
+     * Write all journalled entries of committed transactions to the database.
+     *
+     * @return                      Returns the number of entries written
+     */
+    public int flush()
+    {
+        if (journal == null)
+        {
+            return 0;
+        }
+        int written = 0;
+        while (true)
+        {
+            // Only hold the lock for one batch at a time
+            int batchWritten = drain();
+            if (batchWritten < 0)
+            {
+                break;
+            }
+            written += batchWritten;
+        }
+        if (logger.isDebugEnabled() && written > 0)
+        {
+            logger.debug("Wrote " + written + " journalled audit entries");
+        }
+        return written;
+    }
+
+    /**
+     * Drain up to a batch of entries from the oldest pending file.
+     *
+     * @return                      Returns the number of entries written or <tt>-1</tt> if nothing more
+     *                              can be drained for now
+     */
+    private synchronized int drain()
+    {
+        try
+        {
+            loadCheckpoint();
+            SortedMap<Long, File> pendingFiles = journal.getPendingFiles();
+            if (pendingFiles.isEmpty())
+            {
+                journal.roll();
+                pendingFiles = journal.getPendingFiles();
+                if (pendingFiles.isEmpty())
+                {
+                    return -1;
+                }
+            }
+            long number = pendingFiles.firstKey();
+            if (checkpointFile != null && number < checkpointFile)
+            {
+                // Drained before the last restart
+                complete(number);
+                return 0;
+            }
+            long start = (checkpointFile != null && number == checkpointFile) ? checkpointPosition : 0L;
+
+            List<AuditJournal.Record> records = new ArrayList<AuditJournal.Record>();
+            int count = 0;
+            long position = start;
+            boolean end = false;
+            AuditJournal.Reader reader = journal.openReader(pendingFiles.get(number), start);
+            try
+            {
+                while (count < batchSize)
+                {
+                    AuditJournal.Record record = reader.next();
+                    if (record == null)
+                    {
+                        position = reader.getPosition();
+                        end = true;
+                        break;
+                    }
+                    if (unresolvedTxnIds.contains(record.getTxnId()))
+                    {
+                        // Wait for the transaction to commit or roll back
+                        break;
+                    }
+                    position = record.getPosition();
+                    if (!rolledBackTxnIds.containsKey(record.getTxnId()))
+                    {
+                        records.add(record);
+                        count += record.getEntries().size();
+                    }
+                }
+            }
+            finally
+            {
+                reader.close();
+            }
+
+            int written = 0;
+            if (position > start)
+            {
+                written = write(number, records, position);
+            }
+            if (end)
+            {
+                complete(number);
+            }
+            else if (position == start)
+            {
+                return -1;
+            }
+            return written;
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to read audit journal: " + journalDirectory, e);
+        }
+    }
+
+    /**
+     * Write the entries of the given records, moving aside any that cannot be written.
+     */
+    private int write(long number, List<AuditJournal.Record> records, long position)
+    {
+        List<AuditEntryInfo> entries = new ArrayList<AuditEntryInfo>();
+        for (AuditJournal.Record record : records)
+        {
+            entries.addAll(record.getEntries());
+        }
+        try
+        {
+            int written = write(number, entries, position, Collections.<AuditJournal.Record>emptyList());
+            failedAttempts = 0;
+            return written;
+        }
+        catch (RuntimeException e)
+        {
+            if (records.size() <= 1 && failedAttempts + 1 < maxWriteAttempts)
+            {
+                failedAttempts++;
+                throw e;
+            }
+            logger.warn("Failed to write a batch of journalled audit entries; writing them one transaction at a time", e);
+        }
+        // Find the records that cannot be written
+        List<AuditJournal.Record> failed = new ArrayList<AuditJournal.Record>();
+        int written = 0;
+        RuntimeException failure = null;
+        for (AuditJournal.Record record : records)
+        {
+            try
+            {
+                // Entries that can be written show that the database is there: move the failures aside
+                written += write(number, record.getEntries(), record.getPosition(), failed);
+                failed.clear();
+            }
+            catch (RuntimeException e)
+            {
+                failed.add(record);
+                failure = e;
+            }
+        }
+        if (!failed.isEmpty())
+        {
+            if (++failedAttempts < maxWriteAttempts)
+            {
+                throw failure;
+            }
+            logger.error("Failed to write journalled audit entries " + maxWriteAttempts + " times", failure);
+        }
+        if (!Long.valueOf(number).equals(checkpointFile) || checkpointPosition < position)
+        {
+            // Skip the failures and any records of rolled back transactions at the end
+            write(number, Collections.<AuditEntryInfo>emptyList(), position, failed);
+        }
+        failedAttempts = 0;
+        return written;
+    }
+
+    /**
+     * Write entries and record how far the pending file has been drained in the same transaction.
+     *
+     * @param quarantine            records to move aside before the transaction commits
+     */
+    private int write(
+            final long number,
+            final List<AuditEntryInfo> entries,
+            final long position,
+            final List<AuditJournal.Record> quarantine)
+    {
+        RetryingTransactionCallback<Integer> callback = new RetryingTransactionCallback<Integer>()
+        {
+            public Integer execute() throws Throwable
+            {
+                int created = entries.isEmpty() ? 0 : auditDAO.createAuditEntries(entries);
+                for (AuditJournal.Record record : quarantine)
+                {
+                    journal.quarantine(record);
+                }
+                attributeService.setAttribute(
+                        number,
+                        KEY_CHECKPOINT_ROOT, journal.getId(), KEY_CHECKPOINT_FILE);
+                attributeService.setAttribute(
+                        position,
+                        KEY_CHECKPOINT_ROOT, journal.getId(), KEY_CHECKPOINT_POSITION);
+                return created;
+            }
+        };
+        RetryingTransactionHelper txnHelper = transactionService.getRetryingTransactionHelper();
+        txnHelper.setForceWritable(true);
+        int created = txnHelper.doInTransaction(callback, false, true);
+        checkpointFile = number;
+        checkpointPosition = position;
+        return created;
+    }
+
+    /**
+     * Read how far the journal was drained before the last restart
+     */
+    private void loadCheckpoint()
+    {
+        if (checkpointLoaded)
+        {
+            return;
+        }
+        RetryingTransactionCallback<Void> callback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                checkpointFile = (Long) attributeService.getAttribute(
+                        KEY_CHECKPOINT_ROOT, journal.getId(), KEY_CHECKPOINT_FILE);
+                Long position = (Long) attributeService.getAttribute(
+                        KEY_CHECKPOINT_ROOT, journal.getId(), KEY_CHECKPOINT_POSITION);
+                checkpointPosition = position == null ? 0L : position;
+                return null;
+            }
+        };
+        transactionService.getRetryingTransactionHelper().doInTransaction(callback, true, true);
+        if (checkpointFile != null)
+        {
+            // Do not reuse the number of a file that has been drained and deleted
+            journal.skipPendingNumbers(checkpointFile);
+        }
+        checkpointLoaded = true;
+    }
+
+    private void complete(long number)
+    {
+        journal.complete(number);
+        for (Iterator<Long> it = rolledBackTxnIds.values().iterator(); it.hasNext(); )
+        {
+            if (it.next() <= number)
+            {
+                it.remove();
+            }
+        }
+    }
+}
@@ -103,4 +103,20 @@ public interface BatchMonitor
      * @return the end time
      */
     public Date getEndTime();
+
+    /**
+     * Gets the number of entries currently processed in each transaction. This only differs from the configured batch
+     * size when the batch size is adapted to the transaction latency.
+     * 
+     * @return the current batch size
+     */
+    public int getCurrentBatchSize();
+
+    /**
+     * Gets the throughput of each stage of the process: fetching work, processing entries and committing transactions.
+     * Rates are given per second spent in the stage, so stages running on several threads report the rate of one thread.
+     * 
+     * @return a summary of the stage statistics
+     */
+    public String getStageStatistics();
 }
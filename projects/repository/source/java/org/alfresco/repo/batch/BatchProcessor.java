@@ -39,12 +39,18 @@ import java.util.NoSuchElementException;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.node.integrity.IntegrityException;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
@@ -63,11 +69,18 @@ import org.springframework.context.ApplicationEventPublisher;
  * ERROR level. Each individual error is logged at WARN level and progress information is logged at INFO level. Through
  * the {@link BatchMonitor} interface, it also supports the real-time monitoring of batch metrics (e.g. over JMX in the
  * Enterprise Edition).
+ * <p/>
+ * When {@link #setPipelined(boolean) pipelined}, work is fetched from the provider on a separate thread while the
+ * previous batches are running, batches are taken from a bounded queue shared by the worker threads and the batch size
+ * is adapted to the measured transaction latency and retry rate.
  * 
  * @author dward
  */
 public class BatchProcessor<T> implements BatchMonitor
 {
+    /** The number of chunks of work fetched ahead of the workers when pipelined */
+    private static final int PREFETCH_CHUNKS = 2;
+
     /** The factory for all new threads */
     private TraceableThreadFactory threadFactory;
     
@@ -92,6 +105,33 @@ public class BatchProcessor<T> implements BatchMonitor
     /** The number of entries we process at a time in a transaction. */
     private final int batchSize;
     
+    /** Is work prefetched and the batch size adapted? */
+    private boolean pipelined;
+
+    /** The smallest batch size the adaptive sizing will use. */
+    private int minBatchSize = 1;
+
+    /** The largest batch size the adaptive sizing will use. */
+    private int maxBatchSize;
+
+    /** The transaction duration the adaptive sizing aims for. */
+    private long targetTransactionMillis = 1000L;
+
+    /** The number of entries currently processed in a transaction. */
+    private volatile int currentBatchSize;
+
+    /** The number of transactions that needed more than one attempt. */
+    private int retriedTransactions;
+
+    /** Time spent getting work from the provider. */
+    private final StageStatistics fetchStatistics = new StageStatistics("fetch");
+
+    /** Time spent by the worker processing entries. */
+    private final StageStatistics processStatistics = new StageStatistics("process");
+
+    /** Time spent committing the transactions. */
+    private final StageStatistics commitStatistics = new StageStatistics("commit");
+
     /** The current entry id. */
     private String currentEntryId;
 
@@ -218,6 +258,8 @@ public class BatchProcessor<T> implements BatchMonitor
         this.workProvider = workProvider;
         this.workerThreads = workerThreads;
         this.batchSize = batchSize;
+        this.maxBatchSize = batchSize;
+        this.currentBatchSize = batchSize;
         if (logger == null)
         {
             this.logger = LogFactory.getLog(this.getClass());
@@ -235,6 +277,48 @@ public class BatchProcessor<T> implements BatchMonitor
         }
     }
 
+    /**
+     * Switch on pipelined processing. Work is fetched from the provider on a separate thread, so the provider must
+     * manage its own transactions rather than rely on the caller's. Only processing that
+     * {@link #process(BatchProcessWorker, boolean) splits transactions} is pipelined.
+     * 
+     * @param pipelined
+     *            <tt>true</tt> to prefetch work and adapt the batch size
+     */
+    public void setPipelined(boolean pipelined)
+    {
+        this.pipelined = pipelined;
+    }
+
+    /**
+     * Set the bounds within which a pipelined process adapts the batch size. By default the batch size given on
+     * construction is the upper bound.
+     * 
+     * @param minBatchSize
+     *            the smallest number of entries processed in a transaction
+     * @param maxBatchSize
+     *            the largest number of entries processed in a transaction
+     */
+    public void setBatchSizeLimits(int minBatchSize, int maxBatchSize)
+    {
+        if (minBatchSize < 1 || maxBatchSize < minBatchSize)
+        {
+            throw new IllegalArgumentException("Invalid batch size limits: " + minBatchSize + " to " + maxBatchSize);
+        }
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.currentBatchSize = Math.max(minBatchSize, Math.min(maxBatchSize, this.batchSize));
+    }
+
+    /**
+     * @param targetTransactionMillis
+     *            the transaction duration that a pipelined process adapts the batch size towards
+     */
+    public void setTargetTransactionMillis(long targetTransactionMillis)
+    {
+        this.targetTransactionMillis = targetTransactionMillis;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -326,6 +410,32 @@ public class BatchProcessor<T> implements BatchMonitor
         return this.startTime;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public int getCurrentBatchSize()
+    {
+        return this.currentBatchSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getStageStatistics()
+    {
+        StringBuilder sb = new StringBuilder(256);
+        this.fetchStatistics.appendTo(sb);
+        sb.append("; ");
+        this.processStatistics.appendTo(sb);
+        sb.append("; ");
+        this.commitStatistics.appendTo(sb);
+        synchronized (this)
+        {
+            sb.append("; retried transactions: ").append(this.retriedTransactions);
+        }
+        return sb.toString();
+    }
+
     /**
      * Invokes the worker for each entry in the collection, managing transactions and collating success / failure
      * information.
@@ -361,6 +471,19 @@ public class BatchProcessor<T> implements BatchMonitor
             }
         }
 
+        if (this.pipelined && splitTxns)
+        {
+            try
+            {
+                processPipelined(worker);
+                return count;
+            }
+            finally
+            {
+                reportCompletion(count);
+            }
+        }
+
         // Create a thread pool executor with the specified number of threads and a finite blocking queue of jobs
         ExecutorService executorService = splitTxns && this.workerThreads > 1 ?
                 new ThreadPoolExecutor(
@@ -386,7 +509,7 @@ public class BatchProcessor<T> implements BatchMonitor
                 threadFactory) : null;
         try
         {
-            Iterator<T> iterator = new WorkProviderIterator<T>(this.workProvider);
+            Iterator<T> iterator = new WorkProviderIterator<T>(this.workProvider, this.fetchStatistics);
             int id=0;
             List<T> batch = new ArrayList<T>(this.batchSize);
             while (iterator.hasNext())
@@ -424,31 +547,164 @@ public class BatchProcessor<T> implements BatchMonitor
                 }
                 catch (InterruptedException e)
                 {
+                    // Stop the workers and let the caller see the interrupt
+                    executorService.shutdownNow();
+                    Thread.currentThread().interrupt();
                 }
             }
-            synchronized (this)
+            reportCompletion(count);
+        }
+    }
+
+    /**
+     * Hands the work to the worker threads in batches sized by {@link #adjustBatchSize(int, long, int)}, while the
+     * next chunk of work is fetched by a {@link WorkPrefetcher}. The number of batches queued is bounded so that the
+     * prefetching cannot run far ahead of the workers.
+     */
+    private void processPipelined(BatchProcessWorker<T> worker)
+    {
+        WorkPrefetcher prefetcher = new WorkPrefetcher();
+        this.threadFactory.newThread(prefetcher).start();
+        ForkJoinPool pool = createWorkerPool();
+        final Semaphore queuedBatches = new Semaphore(Math.max(1, this.workerThreads) * 2);
+        try
+        {
+            int id = 0;
+            List<T> batch = new ArrayList<T>(this.currentBatchSize);
+            Collection<T> chunk;
+            while ((chunk = prefetcher.take()) != null)
             {
-                reportProgress(true);
-                this.endTime = new Date();
-                if (this.logger.isInfoEnabled())
+                for (T entry : chunk)
                 {
-                    if (count >= 0)
+                    batch.add(entry);
+                    if (batch.size() >= this.currentBatchSize)
                     {
-                        this.logger.info(getProcessName() + ": Completed batch of " + count + " entries");
+                        queueBatch(pool, queuedBatches, new TxnCallback(id++, worker, batch, true));
+                        batch = new ArrayList<T>(this.currentBatchSize);
                     }
-                    else
-                    {
-                        this.logger.info(getProcessName() + ": Completed batch");
+                }
+            }
+            if (!batch.isEmpty())
+            {
+                queueBatch(pool, queuedBatches, new TxnCallback(id++, worker, batch, true));
+            }
+        }
+        finally
+        {
+            prefetcher.cancel();
+            pool.shutdown();
+            try
+            {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                // Stop the workers and let the caller see the interrupt
+                pool.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 
-                    }
+    private void queueBatch(ForkJoinPool pool, final Semaphore queuedBatches, final TxnCallback callback)
+    {
+        queuedBatches.acquireUninterruptibly();
+        pool.execute(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    callback.run();
                 }
-                if (this.totalErrors > 0 && this.logger.isErrorEnabled())
+                finally
                 {
-                    this.logger.error(getProcessName() + ": " + this.totalErrors
-                            + " error(s) detected. Last error from entry \"" + this.lastErrorEntryId + "\"",
-                            this.lastError);
+                    queuedBatches.release();
                 }
             }
+        });
+    }
+
+    private ForkJoinPool createWorkerPool()
+    {
+        return new ForkJoinPool(Math.max(1, this.workerThreads), new ForkJoinPool.ForkJoinWorkerThreadFactory()
+        {
+            public ForkJoinWorkerThread newThread(ForkJoinPool pool)
+            {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName(getProcessName() + "-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, null, false);
+    }
+
+    /**
+     * Adapts the batch size after a transaction. Retries suggest contention between the batches, so the batch size is
+     * halved. Transactions slower than the target shrink it to the size that would have met the target and fast
+     * transactions let it grow by a quarter.
+     * 
+     * @param size
+     *            the number of entries in the transaction
+     * @param txnMillis
+     *            the duration of the transaction, including any retries
+     * @param attempts
+     *            the number of times the transaction was attempted
+     */
+    private synchronized void adjustBatchSize(int size, long txnMillis, int attempts)
+    {
+        int newSize = this.currentBatchSize;
+        if (attempts > 1)
+        {
+            this.retriedTransactions++;
+            newSize = newSize / 2;
+        }
+        else if (txnMillis > this.targetTransactionMillis)
+        {
+            newSize = Math.min(newSize, (int) (size * this.targetTransactionMillis / txnMillis));
+        }
+        else if (txnMillis < this.targetTransactionMillis / 2 && size >= newSize)
+        {
+            newSize = newSize + Math.max(1, newSize / 4);
+        }
+        newSize = Math.max(this.minBatchSize, Math.min(this.maxBatchSize, newSize));
+        if (newSize != this.currentBatchSize && this.logger.isDebugEnabled())
+        {
+            this.logger.debug(getProcessName() + ": Batch size changed from " + this.currentBatchSize + " to " + newSize
+                    + " after a transaction of " + size + " entries took " + txnMillis + "ms in " + attempts
+                    + " attempt(s)");
+        }
+        this.currentBatchSize = newSize;
+    }
+
+    /**
+     * Reports the end of the process.
+     */
+    private synchronized void reportCompletion(int count)
+    {
+        reportProgress(true);
+        this.endTime = new Date();
+        if (this.logger.isInfoEnabled())
+        {
+            if (count >= 0)
+            {
+                this.logger.info(getProcessName() + ": Completed batch of " + count + " entries");
+            }
+            else
+            {
+                this.logger.info(getProcessName() + ": Completed batch");
+
+            }
+        }
+        if (this.logger.isDebugEnabled())
+        {
+            this.logger.debug(getProcessName() + ": " + getStageStatistics());
+        }
+        if (this.totalErrors > 0 && this.logger.isErrorEnabled())
+        {
+            this.logger.error(getProcessName() + ": " + this.totalErrors
+                    + " error(s) detected. Last error from entry \"" + this.lastErrorEntryId + "\"",
+                    this.lastError);
         }
     }
 
@@ -557,11 +813,13 @@ public class BatchProcessor<T> implements BatchMonitor
     private static class WorkProviderIterator<T> implements Iterator<T>
     {
         private BatchProcessWorkProvider<T> workProvider;
+        private final StageStatistics fetchStatistics;
         private Iterator<T> currentIterator;
         
-        private WorkProviderIterator(BatchProcessWorkProvider<T> workProvider)
+        private WorkProviderIterator(BatchProcessWorkProvider<T> workProvider, StageStatistics fetchStatistics)
         {
             this.workProvider = workProvider;
+            this.fetchStatistics = fetchStatistics;
         }
         
         public boolean hasNext()
@@ -584,11 +842,13 @@ public class BatchProcessor<T> implements BatchMonitor
                 // go and get more results
                 if (!hasNext)
                 {
+                    long start = System.nanoTime();
                     Collection<T> nextWork = workProvider.getNextWork();
                     if (nextWork == null)
                     {
                         throw new RuntimeException("BatchProcessWorkProvider returned 'null' work: " + workProvider);
                     }
+                    fetchStatistics.record(nextWork.size(), System.nanoTime() - start);
                     // Check that there are some results at all
                     if (nextWork.size() == 0)
                     {
@@ -623,6 +883,155 @@ public class BatchProcessor<T> implements BatchMonitor
         }
     }
 
+    /**
+     * Fetches work from the provider on its own thread, keeping up to {@link BatchProcessor#PREFETCH_CHUNKS} chunks
+     * ready for the thread handing out the batches. The provider is called as the user that started the process.
+     */
+    private class WorkPrefetcher implements Runnable
+    {
+        private final BlockingQueue<Collection<T>> chunks = new ArrayBlockingQueue<Collection<T>>(PREFETCH_CHUNKS);
+        private final String runAsUser = AuthenticationUtil.getRunAsUser();
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+
+        public void run()
+        {
+            try
+            {
+                if (runAsUser == null)
+                {
+                    fetchAll();
+                }
+                else
+                {
+                    AuthenticationUtil.runAs(new RunAsWork<Void>()
+                    {
+                        public Void doWork() throws Exception
+                        {
+                            fetchAll();
+                            return null;
+                        }
+                    }, runAsUser);
+                }
+            }
+            catch (Throwable e)
+            {
+                error = e;
+            }
+            finally
+            {
+                // An empty chunk marks the end of the work
+                put(Collections.<T>emptyList());
+            }
+        }
+
+        private void fetchAll()
+        {
+            while (!cancelled)
+            {
+                long start = System.nanoTime();
+                Collection<T> chunk = workProvider.getNextWork();
+                if (chunk == null)
+                {
+                    throw new RuntimeException("BatchProcessWorkProvider returned 'null' work: " + workProvider);
+                }
+                fetchStatistics.record(chunk.size(), System.nanoTime() - start);
+                if (chunk.isEmpty())
+                {
+                    break;
+                }
+                put(chunk);
+            }
+        }
+
+        private void put(Collection<T> chunk)
+        {
+            try
+            {
+                // Poll so that cancellation is noticed when nothing is taking chunks any more
+                while (!cancelled && !chunks.offer(chunk, 100L, TimeUnit.MILLISECONDS))
+                {
+                }
+            }
+            catch (InterruptedException e)
+            {
+                cancelled = true;
+            }
+        }
+
+        /**
+         * @return the next chunk of work or <tt>null</tt> if there is no more work
+         */
+        private Collection<T> take()
+        {
+            Collection<T> chunk;
+            try
+            {
+                chunk = chunks.take();
+            }
+            catch (InterruptedException e)
+            {
+                throw new AlfrescoRuntimeException("Interrupted while waiting for work during " + getProcessName(), e);
+            }
+            if (!chunk.isEmpty())
+            {
+                return chunk;
+            }
+            if (error instanceof RuntimeException)
+            {
+                throw (RuntimeException) error;
+            }
+            if (error instanceof Error)
+            {
+                throw (Error) error;
+            }
+            if (error != null)
+            {
+                throw new AlfrescoRuntimeException("Failed to get work during " + getProcessName(), error);
+            }
+            return null;
+        }
+
+        private void cancel()
+        {
+            cancelled = true;
+            chunks.clear();
+        }
+    }
+
+    /**
+     * Accumulates the number of entries passing through one stage of the process and the time spent in it.
+     */
+    private static class StageStatistics
+    {
+        private final String name;
+        private long batches;
+        private long entries;
+        private long nanos;
+
+        private StageStatistics(String name)
+        {
+            this.name = name;
+        }
+
+        private synchronized void record(int entryCount, long elapsedNanos)
+        {
+            this.batches++;
+            this.entries += entryCount;
+            this.nanos += elapsedNanos;
+        }
+
+        private synchronized void appendTo(StringBuilder sb)
+        {
+            sb.append(this.name).append(": ").append(this.entries).append(" entries in ").append(this.batches)
+                    .append(" batches, ").append(this.nanos / 1000000L).append("ms");
+            if (this.nanos > 0)
+            {
+                sb.append(" (").append(this.entries * 1000000000L / this.nanos).append(" per second)");
+            }
+        }
+    }
+
     /**
      * A callback that invokes a worker on a batch, optionally in a new transaction.
      */
@@ -673,8 +1082,15 @@ public class BatchProcessor<T> implements BatchMonitor
         /** The last error entry id. */
         private String txnLastErrorEntryId;
         
+        /** The number of times the transaction has been attempted. */
+        private int attempts;
+
+        /** When the worker finished with the batch, used to time the commit. */
+        private long processedNanos;
+
         public Object execute() throws Throwable
         {
+            this.attempts++;
             reset();
             if (this.batch.isEmpty())
             {
@@ -712,6 +1128,7 @@ public class BatchProcessor<T> implements BatchMonitor
                 BatchProcessor.this.executingCount++;
             }
 
+            long start = System.nanoTime();
             for (T entry : this.batch)
             {
                 this.txnEntryId = this.worker.getIdentifier(entry);                
@@ -740,6 +1157,8 @@ public class BatchProcessor<T> implements BatchMonitor
                     }
                 }
             }
+            this.processedNanos = System.nanoTime();
+            BatchProcessor.this.processStatistics.record(this.batch.size(), this.processedNanos - start);
             return null;
         }
 
@@ -759,6 +1178,7 @@ public class BatchProcessor<T> implements BatchMonitor
             {
                 Throwable tt = null;
                 worker.beforeProcess();
+                long start = System.nanoTime();
                 try
                 {
                     BatchProcessor.this.retryingTransactionHelper.doInTransaction(callback, false, splitTxns);
@@ -768,6 +1188,10 @@ public class BatchProcessor<T> implements BatchMonitor
                     // Keep this and rethrow
                     tt = t;
                 }
+                if (BatchProcessor.this.pipelined && this.splitTxns)
+                {
+                    adjustBatchSize(this.batch.size(), (System.nanoTime() - start) / 1000000L, this.attempts);
+                }
                 worker.afterProcess();
                 // Throw if there was a processing exception
                 if (tt != null)
@@ -883,6 +1307,10 @@ public class BatchProcessor<T> implements BatchMonitor
         @Override
         public void afterCommit()
         {
+            if (this.splitTxns)
+            {
+                BatchProcessor.this.commitStatistics.record(this.batch.size(), System.nanoTime() - this.processedNanos);
+            }
             // Wake up any waiting batches
             synchronized (BatchProcessor.this)
             {
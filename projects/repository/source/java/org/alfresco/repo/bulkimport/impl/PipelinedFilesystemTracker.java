@@ -0,0 +1,286 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.bulkimport.impl;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alfresco.repo.batch.BatchProcessWorkProvider;
+import org.alfresco.repo.bulkimport.AnalysedDirectory;
+import org.alfresco.repo.bulkimport.DirectoryAnalyser;
+import org.alfresco.repo.bulkimport.ImportableItem;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.util.TraceableThreadFactory;
+
+/**
+ * A filesystem walker that analyses directories concurrently, without waiting for a whole level of the tree to be
+ * imported before starting on the next one.
+ * <p/>
+ * Each directory is walked by one of a pool of walker threads as soon as the node for it has been committed. The
+ * walker creates the sub-directories through the {@link DirectoryImporter} and schedules their walks, then queues the
+ * files for the workers. The node of a directory is only looked up, in a concurrent map of paths to nodes, when the
+ * directory is walked, so the tree is never held in memory. The queue of files is bounded so that walking cannot run
+ * far ahead of the import.
+ *
+ * @since 5.2
+ */
+public class PipelinedFilesystemTracker extends AbstractFilesystemTracker
+{
+    /**
+     * Creates the nodes for directories found by the walk.
+     */
+    public interface DirectoryImporter
+    {
+        /**
+         * Import the given directories in a single transaction, which must be committed on return. The nodes created
+         * are set on the items.
+         *
+         * @param directories the directories to import
+         */
+        void importDirectories(List<ImportableItem> directories) throws Throwable;
+    }
+
+    private final Path sourceFolder;
+    private final int batchSize;
+
+    /** The nodes of the directories that have been committed but not yet walked */
+    private final ConcurrentMap<Path, NodeRef> directoryNodeRefs = new ConcurrentHashMap<Path, NodeRef>();
+    private final BlockingQueue<ImportableItem> itemsToImport;
+    private final AtomicInteger pendingWalks = new AtomicInteger();
+    private final AtomicInteger queuedItems = new AtomicInteger();
+
+    private ExecutorService walkers;
+    private DirectoryImporter directoryImporter;
+    private volatile boolean stopped;
+    private volatile Throwable error;
+
+    public PipelinedFilesystemTracker(DirectoryAnalyser directoryAnalyser, NodeRef target, File sourceFolder, int batchSize, int queueSize)
+    {
+        this.directoryAnalyser = directoryAnalyser;
+        this.sourceFolder = sourceFolder.toPath();
+        this.batchSize = batchSize;
+        this.itemsToImport = new ArrayBlockingQueue<ImportableItem>(queueSize);
+        this.directoryNodeRefs.put(this.sourceFolder, target);
+    }
+
+    /**
+     * Start walking the source folder.
+     *
+     * @param directoryImporter     creates the nodes for the directories
+     * @param walkerThreads         the number of directories to walk at the same time
+     */
+    public void start(DirectoryImporter directoryImporter, int walkerThreads)
+    {
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setNamePrefix("BulkImportWalker");
+        threadFactory.setThreadDaemon(true);
+
+        this.directoryImporter = directoryImporter;
+        this.walkers = Executors.newFixedThreadPool(Math.max(1, walkerThreads), threadFactory);
+        scheduleWalk(sourceFolder);
+    }
+
+    /**
+     * Stop walking. Walks that have not started yet are abandoned.
+     */
+    public void stop()
+    {
+        stopped = true;
+        if (walkers != null)
+        {
+            walkers.shutdown();
+        }
+    }
+
+    /**
+     * @return the first error that stopped the walk, or <tt>null</tt>
+     */
+    public Throwable getError()
+    {
+        return error;
+    }
+
+    private void scheduleWalk(final Path directory)
+    {
+        pendingWalks.incrementAndGet();
+        try
+        {
+            walkers.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        walk(directory);
+                    }
+                    catch (Throwable e)
+                    {
+                        logger.error("Failed to import directory " + directory, e);
+                        if (error == null)
+                        {
+                            error = e;
+                        }
+                    }
+                    finally
+                    {
+                        directoryNodeRefs.remove(directory);
+                        pendingWalks.decrementAndGet();
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            // We have been stopped
+            pendingWalks.decrementAndGet();
+        }
+    }
+
+    private void walk(Path path) throws Throwable
+    {
+        if (stopped || error != null)
+        {
+            return;
+        }
+
+        // Not really an importable item but it is the parent of the items in the directory
+        ImportableItem directory = new ImportableItem();
+        directory.getHeadRevision().setContentFile(path);
+        directory.setNodeRef(directoryNodeRefs.get(path));
+
+        AnalysedDirectory analysedDirectory = getImportableItemsInDirectory(directory);
+
+        // Create the sub-directories first so that walking them overlaps with importing the files
+        List<ImportableItem> directories = new ArrayList<ImportableItem>(analysedDirectory.getImportableDirectories());
+        for (int i = 0; i < directories.size(); i += batchSize)
+        {
+            List<ImportableItem> batch = directories.subList(i, Math.min(i + batchSize, directories.size()));
+            directoryImporter.importDirectories(batch);
+            for (ImportableItem subDirectory : batch)
+            {
+                NodeRef nodeRef = subDirectory.getNodeRef();
+                if (nodeRef != null)
+                {
+                    Path subDirectoryPath = subDirectory.getHeadRevision().getContentFile();
+                    directoryNodeRefs.put(subDirectoryPath, nodeRef);
+                    scheduleWalk(subDirectoryPath);
+                }
+            }
+        }
+
+        for (ImportableItem item : analysedDirectory.getImportableItems())
+        {
+            // Poll so that the walk gives up when nothing is taking items any more
+            while (!itemsToImport.offer(item, 100L, TimeUnit.MILLISECONDS))
+            {
+                if (stopped)
+                {
+                    return;
+                }
+            }
+            queuedItems.incrementAndGet();
+        }
+    }
+
+    public int count()
+    {
+        // Note: the number of files found so far, as the size of the tree is not known until the walk is complete
+        return queuedItems.get();
+    }
+
+    public void itemImported(NodeRef nodeRef, ImportableItem importableItem)
+    {
+        // nothing to do
+    }
+
+    /**
+     * Get the next files to import, waiting for the walkers if none are ready.
+     *
+     * @param count the maximum number of files to return
+     * @return the files to import, empty when the walk is complete or has failed
+     */
+    protected List<ImportableItem> getImportableItems(int count)
+    {
+        List<ImportableItem> result = new ArrayList<ImportableItem>();
+        try
+        {
+            while (!stopped && error == null)
+            {
+                ImportableItem item = itemsToImport.poll(100L, TimeUnit.MILLISECONDS);
+                if (item != null)
+                {
+                    result.add(item);
+                    itemsToImport.drainTo(result, count - 1);
+                    break;
+                }
+                // A walk queues all of its files before it completes
+                if (pendingWalks.get() == 0 && itemsToImport.isEmpty())
+                {
+                    break;
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        return result;
+    }
+
+    @Override
+    public BatchProcessWorkProvider<ImportableItem> getWorkProvider()
+    {
+        BatchProcessWorkProvider<ImportableItem> provider = new BatchProcessWorkProvider<ImportableItem>()
+        {
+            @Override
+            public int getTotalEstimatedWorkSize()
+            {
+                return count();
+            }
+
+            @Override
+            public Collection<ImportableItem> getNextWork()
+            {
+                return getImportableItems(batchSize * 10);
+            }
+        };
+
+        return provider;
+    }
+}
@@ -35,6 +35,10 @@ import org.apache.commons.logging.LogFactory;
  * The caches are created with a capacity specified by the property {name}.maxItems.
  * For example, a cache named <tt>cache.ticketsCache</tt> would have a capacity specified
  * by the property <tt>cache.ticketsCache.maxItems</tt>
+ * <p/>
+ * Setting <tt>{name}.offHeap.enabled=true</tt> creates an {@link OffHeapSimpleCache} instead,
+ * sized by <tt>{name}.offHeap.maxMemoryMB</tt> and split into <tt>{name}.offHeap.segments</tt>
+ * independently locked segments.
  * 
  * @author Matt Ward
  */
@@ -42,6 +46,7 @@ public class DefaultCacheFactory<K extends Serializable, V> extends AbstractCach
 {
     private static final Log log = LogFactory.getLog(DefaultCacheFactory.class);
     private static final String EVICT_NONE = "NONE";
+    private static final long BYTES_PER_MB = 1024L * 1024L;
     
     
     @Override
@@ -52,6 +57,10 @@ public class DefaultCacheFactory<K extends Serializable, V> extends AbstractCach
     
     private SimpleCache<K, V> createLocalCache(String cacheName)
     {
+        if (useOffHeap(cacheName))
+        {
+            return createOffHeapCache(cacheName);
+        }
         int maxItems = maxItems(cacheName);
         boolean useMaxItems = useMaxItems(cacheName);
         int ttlSecs = ttlSeconds(cacheName);
@@ -64,6 +73,25 @@ public class DefaultCacheFactory<K extends Serializable, V> extends AbstractCach
         return cache;
     }
 
+    private SimpleCache<K, V> createOffHeapCache(String cacheName)
+    {
+        int maxItems = maxItems(cacheName);
+        boolean useMaxItems = useMaxItems(cacheName);
+        int ttlSecs = ttlSeconds(cacheName);
+        long maxMemoryBytes = offHeapMaxMemoryMB(cacheName) * BYTES_PER_MB;
+        int segments = offHeapSegments(cacheName);
+        if (maxIdleSeconds(cacheName) > 0)
+        {
+            log.warn("maxIdleSeconds is not supported by off-heap caches and will be ignored for " + cacheName);
+        }
+        OffHeapSimpleCache<K, V> cache = new OffHeapSimpleCache<K, V>(maxMemoryBytes, segments, maxItems, useMaxItems, ttlSecs, cacheName);
+        if (log.isDebugEnabled())
+        {
+            log.debug("Creating cache: " + cache);
+        }
+        return cache;
+    }
+
     private int maxItems(String cacheName)
     {
         String maxItemsStr = getProperty(cacheName, "maxItems", "0");
@@ -90,4 +118,22 @@ public class DefaultCacheFactory<K extends Serializable, V> extends AbstractCach
         Integer maxIdleSecs = Integer.parseInt(maxIdleSecsStr);
         return maxIdleSecs;
     }
+    
+    private boolean useOffHeap(String cacheName)
+    {
+        String offHeapStr = getProperty(cacheName, "offHeap.enabled", "false");
+        return Boolean.parseBoolean(offHeapStr);
+    }
+    
+    private long offHeapMaxMemoryMB(String cacheName)
+    {
+        String maxMemoryStr = getProperty(cacheName, "offHeap.maxMemoryMB", "64");
+        return Long.parseLong(maxMemoryStr);
+    }
+    
+    private int offHeapSegments(String cacheName)
+    {
+        String segmentsStr = getProperty(cacheName, "offHeap.segments", "16");
+        return Integer.parseInt(segmentsStr);
+    }
 }
@@ -0,0 +1,847 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.cache.TransactionStats.OpType;
+import org.springframework.beans.factory.BeanNameAware;
+
+/**
+ * {@link SimpleCache} implementation that keeps its keys and values <b>outside of the Java heap</b>.
+ * <p/>
+ * Entries are serialized into direct {@link ByteBuffer byte buffers} that are divided into a number
+ * of independently locked segments.  Each segment is written as a ring: new entries are appended at
+ * the tail and, when the segment runs out of memory (or out of items if <tt>maxItems</tt> is in use),
+ * the oldest entries are dropped from the head.  The only on-heap structure per segment is an
+ * open-addressing index of primitive <tt>long</tt> key hashes to <tt>int</tt> buffer offsets, so
+ * the garbage collector sees a handful of large arrays regardless of how many entries are held.
+ * <p/>
+ * The index is keyed by a 64-bit hash of the serialized key; the serialized key itself is stored
+ * alongside the value and compared on every read, so hash collisions can only ever result in a
+ * cache miss.  Keys must therefore serialize to the same bytes whenever they are {@link Object#equals(Object) equal},
+ * which is the case for the {@link Long}, {@link String} and region-wrapped keys used by the node caches.
+ * <p/>
+ * Values are copies: every {@link #get(Serializable)} deserializes a fresh instance.  This suits the
+ * immutable node, aspect and property entries held by the node DAO caches but makes the cache
+ * unsuitable for values that are expected to be shared by reference.
+ * <p/>
+ * Operation counts and timings are tracked in the same form as {@link InMemoryCacheStatistics} exposes
+ * them for transactional caches; see {@link #allStats()}.
+ *
+ * @since 5.2
+ */
+public final class OffHeapSimpleCache<K extends Serializable, V extends Object>
+    implements SimpleCache<K, V>, BeanNameAware
+{
+    private static final int DEFAULT_CAPACITY = Integer.MAX_VALUE;
+    /** Entry header: total length (int), key hash (long), write time (long), key length (int) */
+    private static final int HEADER_SIZE = 4 + 8 + 8 + 4;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final long maxMemoryBytes;
+    private final int maxItems;
+    private final boolean useMaxItems;
+    private final int ttlSecs;
+    private String cacheName;
+
+    private final Map<OpType, AtomicLong> opCounts = new EnumMap<OpType, AtomicLong>(OpType.class);
+    private final Map<OpType, AtomicLong> opTimes = new EnumMap<OpType, AtomicLong>(OpType.class);
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Construct an off-heap cache.
+     *
+     * @param maxMemoryBytes    total off-heap memory to allocate, divided evenly between the segments
+     * @param segmentCount      number of independently locked segments (rounded up to a power of two)
+     * @param maxItems          the cache capacity in items. 0 = use {@link #DEFAULT_CAPACITY}
+     * @param useMaxItems       whether the maxItems value should be applied as a size-cap for the cache
+     * @param ttlSecs           time-to-live of entries in seconds or 0 for no expiry
+     * @param cacheName         an arbitrary cache name
+     */
+    public OffHeapSimpleCache(long maxMemoryBytes, int segmentCount, int maxItems, boolean useMaxItems, int ttlSecs, String cacheName)
+    {
+        if (maxMemoryBytes <= 0)
+        {
+            throw new IllegalArgumentException("maxMemoryBytes must be positive, but was " + maxMemoryBytes);
+        }
+        if (segmentCount <= 0)
+        {
+            throw new IllegalArgumentException("segmentCount must be positive, but was " + segmentCount);
+        }
+        if (maxItems == 0)
+        {
+            maxItems = DEFAULT_CAPACITY;
+        }
+        else if (maxItems < 0)
+        {
+            throw new IllegalArgumentException("maxItems may not be negative, but was " + maxItems);
+        }
+        int segmentsPow2 = Integer.highestOneBit(segmentCount);
+        if (segmentsPow2 < segmentCount)
+        {
+            segmentsPow2 <<= 1;
+        }
+        long segmentBytes = maxMemoryBytes / segmentsPow2;
+        if (segmentBytes > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException(
+                    "Each segment is limited to " + Integer.MAX_VALUE + " bytes; increase the segment count for " + maxMemoryBytes + " bytes.");
+        }
+        if (segmentBytes < HEADER_SIZE)
+        {
+            throw new IllegalArgumentException("maxMemoryBytes is too small for " + segmentsPow2 + " segments: " + maxMemoryBytes);
+        }
+        int segmentMaxItems = Math.max(1, maxItems / segmentsPow2);
+
+        this.maxMemoryBytes = segmentBytes * segmentsPow2;
+        this.maxItems = maxItems;
+        this.useMaxItems = useMaxItems;
+        this.ttlSecs = ttlSecs;
+        this.segments = new Segment[segmentsPow2];
+        this.segmentMask = segmentsPow2 - 1;
+        for (int i = 0; i < segmentsPow2; i++)
+        {
+            segments[i] = new Segment((int) segmentBytes, useMaxItems ? segmentMaxItems : Integer.MAX_VALUE, evictionCount);
+        }
+        for (OpType opType : OpType.values())
+        {
+            opCounts.put(opType, new AtomicLong());
+            opTimes.put(opType, new AtomicLong());
+        }
+        setBeanName(cacheName);
+    }
+
+    @Override
+    public boolean contains(K key)
+    {
+        byte[] keyBytes = serialize(key);
+        long hash = hash(keyBytes);
+        return segmentFor(hash).read(hash, keyBytes, expiryCutoff(), false) != null;
+    }
+
+    @Override
+    public Collection<K> getKeys()
+    {
+        long cutoff = expiryCutoff();
+        List<K> keys = new ArrayList<K>();
+        for (Segment segment : segments)
+        {
+            for (byte[] keyBytes : segment.keys(cutoff))
+            {
+                @SuppressWarnings("unchecked")
+                K key = (K) deserialize(keyBytes);
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public V get(K key)
+    {
+        long start = System.nanoTime();
+        byte[] keyBytes = serialize(key);
+        long hash = hash(keyBytes);
+        byte[] valueBytes = segmentFor(hash).read(hash, keyBytes, expiryCutoff(), true);
+        if (valueBytes == null)
+        {
+            record(OpType.GET_MISS, start);
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        V value = (V) deserialize(valueBytes);
+        record(OpType.GET_HIT, start);
+        return value;
+    }
+
+    @Override
+    public void put(K key, V value)
+    {
+        long start = System.nanoTime();
+        byte[] keyBytes = serialize(key);
+        byte[] valueBytes = serialize((Serializable) value);
+        long hash = hash(keyBytes);
+        segmentFor(hash).write(hash, keyBytes, valueBytes);
+        record(OpType.PUT, start);
+    }
+
+    @Override
+    public void remove(K key)
+    {
+        long start = System.nanoTime();
+        byte[] keyBytes = serialize(key);
+        long hash = hash(keyBytes);
+        segmentFor(hash).remove(hash, keyBytes);
+        record(OpType.REMOVE, start);
+    }
+
+    @Override
+    public void clear()
+    {
+        long start = System.nanoTime();
+        for (Segment segment : segments)
+        {
+            segment.clear();
+        }
+        record(OpType.CLEAR, start);
+    }
+
+    /**
+     * Retrieve a snapshot of the operation statistics for this cache, in the same form as
+     * {@link CacheStatistics#allStats(String)}.  Timings are in nanoseconds.
+     *
+     * @return Map of OpType to OperationStats
+     */
+    public Map<OpType, OperationStats> allStats()
+    {
+        Map<OpType, OperationStats> stats = new EnumMap<OpType, OperationStats>(OpType.class);
+        for (OpType opType : OpType.values())
+        {
+            stats.put(opType, new OperationStats(opTimes.get(opType).get(), opCounts.get(opType).get()));
+        }
+        return stats;
+    }
+
+    /**
+     * @see CacheStatistics#count(String, OpType)
+     */
+    public long count(OpType opType)
+    {
+        return opCounts.get(opType).get();
+    }
+
+    /**
+     * @see CacheStatistics#meanTime(String, OpType)
+     */
+    public double meanTime(OpType opType)
+    {
+        return (double) opTimes.get(opType).get() / opCounts.get(opType).get();
+    }
+
+    /**
+     * @see CacheStatistics#hitMissRatio(String)
+     */
+    public double hitMissRatio()
+    {
+        long hits = count(OpType.GET_HIT);
+        long misses = count(OpType.GET_MISS);
+        return (double) hits / (hits + misses);
+    }
+
+    /**
+     * @see CacheStatistics#numGets(String)
+     */
+    public long numGets()
+    {
+        return count(OpType.GET_HIT) + count(OpType.GET_MISS);
+    }
+
+    /**
+     * @return          the number of entries dropped to make room for new ones (explicit removals are not counted)
+     */
+    public long getEvictionCount()
+    {
+        return evictionCount.get();
+    }
+
+    /**
+     * @return          the number of live entries currently indexed (expired entries may still be counted)
+     */
+    public int size()
+    {
+        int size = 0;
+        for (Segment segment : segments)
+        {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return          the number of off-heap bytes occupied by entries, including superseded entries
+     *                  that have not yet been reclaimed
+     */
+    public long getUsedMemoryBytes()
+    {
+        long used = 0L;
+        for (Segment segment : segments)
+        {
+            used += segment.usedBytes();
+        }
+        return used;
+    }
+
+    /**
+     * @return          the total number of off-heap bytes allocated by this cache
+     */
+    public long getMaxMemoryBytes()
+    {
+        return maxMemoryBytes;
+    }
+
+    public int getSegmentCount()
+    {
+        return segments.length;
+    }
+
+    public int getMaxItems()
+    {
+        return maxItems;
+    }
+
+    public boolean isUseMaxItems()
+    {
+        return useMaxItems;
+    }
+
+    public int getTTLSecs()
+    {
+        return ttlSecs;
+    }
+
+    public String getCacheName()
+    {
+        return cacheName;
+    }
+
+    @Override
+    public void setBeanName(String cacheName)
+    {
+        this.cacheName = cacheName;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "OffHeapSimpleCache[maxMemoryBytes=" + maxMemoryBytes + ", segments=" + segments.length +
+               ", maxItems=" + maxItems + ", useMaxItems=" + useMaxItems + ", cacheName=" + cacheName + "]";
+    }
+
+    private Segment segmentFor(long hash)
+    {
+        // The index uses the low bits, so pick the segment from the high bits
+        return segments[(int) (hash >>> 40) & segmentMask];
+    }
+
+    private long expiryCutoff()
+    {
+        return ttlSecs > 0 ? System.currentTimeMillis() - ttlSecs * 1000L : Long.MIN_VALUE;
+    }
+
+    private void record(OpType opType, long start)
+    {
+        opCounts.get(opType).incrementAndGet();
+        opTimes.get(opType).addAndGet(System.nanoTime() - start);
+    }
+
+    /**
+     * 64-bit FNV-1a hash with a final avalanche step
+     */
+    private static long hash(byte[] bytes)
+    {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes)
+        {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        return h;
+    }
+
+    private static byte[] serialize(Serializable object)
+    {
+        try
+        {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+            ObjectOutputStream oos = new ObjectOutputStream(bos);
+            oos.writeObject(object);
+            oos.close();
+            return bos.toByteArray();
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to serialize cache entry: " + object, e);
+        }
+    }
+
+    private static Object deserialize(byte[] bytes)
+    {
+        try
+        {
+            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            try
+            {
+                return ois.readObject();
+            }
+            finally
+            {
+                ois.close();
+            }
+        }
+        catch (IOException | ClassNotFoundException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to deserialize cache entry", e);
+        }
+    }
+
+    /**
+     * A single ring buffer of entries and its primitive index.
+     * <p/>
+     * Live data runs from <tt>head</tt> to <tt>tail</tt>.  Once the tail has wrapped around to the start
+     * of the buffer, the data from <tt>head</tt> runs to <tt>wrapAt</tt> and continues from zero.
+     * Superseded and removed entries stay in the ring until the head passes over them.
+     */
+    private static final class Segment
+    {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ByteBuffer buffer;
+        private final int capacity;
+        private final int maxItems;
+        private final LongIntIndex index = new LongIntIndex();
+        private final AtomicLong evictionCount;
+        private int head;
+        private int tail;
+        private int wrapAt;
+        private boolean wrapped;
+
+        private Segment(int capacity, int maxItems, AtomicLong evictionCount)
+        {
+            this.evictionCount = evictionCount;
+            this.buffer = ByteBuffer.allocateDirect(capacity);
+            this.capacity = capacity;
+            this.maxItems = maxItems;
+            this.wrapAt = capacity;
+        }
+
+        private byte[] read(long hash, byte[] keyBytes, long expiryCutoff, boolean fetchValue)
+        {
+            lock.lock();
+            try
+            {
+                int pos = index.get(hash);
+                if (pos < 0 || !keyMatches(pos, keyBytes))
+                {
+                    return null;
+                }
+                if (buffer.getLong(pos + 12) < expiryCutoff)
+                {
+                    index.remove(hash);
+                    return null;
+                }
+                if (!fetchValue)
+                {
+                    return keyBytes;
+                }
+                int length = buffer.getInt(pos);
+                int valueOffset = pos + HEADER_SIZE + keyBytes.length;
+                byte[] valueBytes = new byte[length - HEADER_SIZE - keyBytes.length];
+                copyOut(valueOffset, valueBytes);
+                return valueBytes;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        private void write(long hash, byte[] keyBytes, byte[] valueBytes)
+        {
+            int length = HEADER_SIZE + keyBytes.length + valueBytes.length;
+            lock.lock();
+            try
+            {
+                // Whatever happens, the old entry is superseded
+                index.remove(hash);
+                if (length > capacity)
+                {
+                    // Too big to cache at all
+                    return;
+                }
+                int pos = allocate(length);
+                buffer.putInt(pos, length);
+                buffer.putLong(pos + 4, hash);
+                buffer.putLong(pos + 12, System.currentTimeMillis());
+                buffer.putInt(pos + 20, keyBytes.length);
+                copyIn(pos + HEADER_SIZE, keyBytes);
+                copyIn(pos + HEADER_SIZE + keyBytes.length, valueBytes);
+                index.put(hash, pos);
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        private void remove(long hash, byte[] keyBytes)
+        {
+            lock.lock();
+            try
+            {
+                int pos = index.get(hash);
+                if (pos >= 0 && keyMatches(pos, keyBytes))
+                {
+                    index.remove(hash);
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        private void clear()
+        {
+            lock.lock();
+            try
+            {
+                index.clear();
+                head = 0;
+                tail = 0;
+                wrapAt = capacity;
+                wrapped = false;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        private List<byte[]> keys(long expiryCutoff)
+        {
+            List<byte[]> keys = new ArrayList<byte[]>();
+            lock.lock();
+            try
+            {
+                for (int pos : index.values())
+                {
+                    if (buffer.getLong(pos + 12) < expiryCutoff)
+                    {
+                        continue;
+                    }
+                    byte[] keyBytes = new byte[buffer.getInt(pos + 20)];
+                    copyOut(pos + HEADER_SIZE, keyBytes);
+                    keys.add(keyBytes);
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+            return keys;
+        }
+
+        private int size()
+        {
+            lock.lock();
+            try
+            {
+                return index.size();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        private long usedBytes()
+        {
+            lock.lock();
+            try
+            {
+                return wrapped ? (wrapAt - head) + tail : tail - head;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Find room for an entry of the given length at the tail of the ring, evicting from the
+         * head as required.  The length must not exceed the segment capacity.
+         */
+        private int allocate(int length)
+        {
+            while (index.size() >= maxItems)
+            {
+                if (!evictHead())
+                {
+                    break;
+                }
+            }
+            while (true)
+            {
+                if (!wrapped)
+                {
+                    if (capacity - tail >= length)
+                    {
+                        int pos = tail;
+                        tail += length;
+                        return pos;
+                    }
+                    // Not enough room before the end of the buffer; continue from the start
+                    wrapAt = tail;
+                    tail = 0;
+                    wrapped = true;
+                }
+                if (head - tail >= length)
+                {
+                    int pos = tail;
+                    tail += length;
+                    return pos;
+                }
+                evictHead();
+            }
+        }
+
+        /**
+         * Drop the oldest entry in the ring.
+         *
+         * @return          <tt>false</tt> if the ring was already empty
+         */
+        private boolean evictHead()
+        {
+            if (wrapped && head >= wrapAt)
+            {
+                // Finished with the end of the buffer
+                head = 0;
+                wrapAt = capacity;
+                wrapped = false;
+            }
+            if (!wrapped && head >= tail)
+            {
+                // Empty
+                head = 0;
+                tail = 0;
+                return false;
+            }
+            int length = buffer.getInt(head);
+            long hash = buffer.getLong(head + 4);
+            if (index.get(hash) == head)
+            {
+                index.remove(hash);
+                evictionCount.incrementAndGet();
+            }
+            head += length;
+            return true;
+        }
+
+        private boolean keyMatches(int pos, byte[] keyBytes)
+        {
+            if (buffer.getInt(pos + 20) != keyBytes.length)
+            {
+                return false;
+            }
+            int offset = pos + HEADER_SIZE;
+            for (int i = 0; i < keyBytes.length; i++)
+            {
+                if (buffer.get(offset + i) != keyBytes[i])
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void copyIn(int pos, byte[] bytes)
+        {
+            ByteBuffer dup = buffer.duplicate();
+            dup.position(pos);
+            dup.put(bytes);
+        }
+
+        private void copyOut(int pos, byte[] bytes)
+        {
+            ByteBuffer dup = buffer.duplicate();
+            dup.position(pos);
+            dup.get(bytes);
+        }
+    }
+
+    /**
+     * Minimal open-addressing (linear probing) map of primitive <tt>long</tt> keys to non-negative
+     * <tt>int</tt> values.  Not thread safe.
+     */
+    static final class LongIntIndex
+    {
+        private static final int EMPTY = -1;
+        private long[] keys;
+        private int[] values;
+        private int size;
+
+        LongIntIndex()
+        {
+            allocate(64);
+        }
+
+        int size()
+        {
+            return size;
+        }
+
+        /**
+         * @return          the value or <tt>-1</tt> if not present
+         */
+        int get(long key)
+        {
+            int mask = keys.length - 1;
+            for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask)
+            {
+                if (values[slot] == EMPTY)
+                {
+                    return EMPTY;
+                }
+                if (keys[slot] == key)
+                {
+                    return values[slot];
+                }
+            }
+        }
+
+        void put(long key, int value)
+        {
+            if ((size + 1) * 2 > keys.length)
+            {
+                rehash(keys.length * 2);
+            }
+            int mask = keys.length - 1;
+            for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask)
+            {
+                if (values[slot] == EMPTY)
+                {
+                    keys[slot] = key;
+                    values[slot] = value;
+                    size++;
+                    return;
+                }
+                if (keys[slot] == key)
+                {
+                    values[slot] = value;
+                    return;
+                }
+            }
+        }
+
+        void remove(long key)
+        {
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+            while (true)
+            {
+                if (values[slot] == EMPTY)
+                {
+                    return;
+                }
+                if (keys[slot] == key)
+                {
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            // Backward-shift deletion keeps probe sequences intact without tombstones
+            int gap = slot;
+            for (int next = (gap + 1) & mask; values[next] != EMPTY; next = (next + 1) & mask)
+            {
+                int ideal = mix(keys[next]) & mask;
+                boolean movable = (gap <= next) ? (ideal <= gap || ideal > next) : (ideal <= gap && ideal > next);
+                if (movable)
+                {
+                    keys[gap] = keys[next];
+                    values[gap] = values[next];
+                    gap = next;
+                }
+            }
+            values[gap] = EMPTY;
+            size--;
+        }
+
+        void clear()
+        {
+            allocate(64);
+        }
+
+        int[] values()
+        {
+            int[] result = new int[size];
+            int i = 0;
+            for (int value : values)
+            {
+                if (value != EMPTY)
+                {
+                    result[i++] = value;
+                }
+            }
+            return result;
+        }
+
+        private void rehash(int newCapacity)
+        {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            allocate(newCapacity);
+            for (int i = 0; i < oldKeys.length; i++)
+            {
+                if (oldValues[i] != EMPTY)
+                {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private void allocate(int capacity)
+        {
+            keys = new long[capacity];
+            values = new int[capacity];
+            Arrays.fill(values, EMPTY);
+            size = 0;
+        }
+
+        private static int mix(long key)
+        {
+            return (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+        }
+    }
+}
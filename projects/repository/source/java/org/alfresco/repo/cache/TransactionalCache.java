@@ -28,6 +28,7 @@ package org.alfresco.repo.cache;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -75,6 +76,10 @@ import org.springframework.beans.factory.InitializingBean;
  * the shared cache will not have stale data in the event of the transaction-local
  * caches dropping items.  It is therefore important to size the transactional caches
  * correctly.
+ * <p>
+ * Optionally, {@link #setReadOnlyFastPath(boolean) reads in read-only transactions} that have not
+ * touched the cache in any other way go straight to the shared cache without binding any
+ * per-transaction state.
  * 
  * @author Derek Hulley
  */
@@ -105,6 +110,8 @@ public class TransactionalCache<K extends Serializable, V extends Object>
     /** Enable collection of statistics? */
     private boolean cacheStatsEnabled = false;
     private boolean isTenantAware = true; // true if tenant-aware (default), false if system-wide
+    /** read directly from the shared cache in read-only transactions that have no transactional data */
+    private boolean readOnlyFastPath = false;
     
     /**
      * Public constructor.
@@ -232,6 +239,22 @@ public class TransactionalCache<K extends Serializable, V extends Object>
     {
         this.cacheStatsEnabled = cacheStatsEnabled;
     }
+    
+    /**
+     * Allow reads in <b>read-only</b> transactions to bypass the transactional layer altogether,
+     * provided that nothing has yet been put, removed, locked or cleared by the transaction.
+     * No per-transaction data is bound for such reads, so the values read are not remembered
+     * for the remainder of the transaction (i.e. a later read may see a newer shared value)
+     * and the reads are not included in the {@link #setCacheStatsEnabled(boolean) cache statistics}.
+     * <p/>
+     * As soon as the transaction writes to the cache, the normal transactional behaviour applies.
+     * 
+     * @param readOnlyFastPath          <tt>true</tt> to enable the fast path (default: <tt>false</tt>)
+     */
+    public void setReadOnlyFastPath(boolean readOnlyFastPath)
+    {
+        this.readOnlyFastPath = readOnlyFastPath;
+    }
 
     /**
      * Ensures that all properties have been set
@@ -279,6 +302,28 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         return data;
     }
     
+    /**
+     * Get the transactional data that reads must be layered over.
+     * 
+     * @return          the transaction's data or <tt>null</tt> if reads should go directly to the
+     *                  shared cache, either because there is no transaction or because the
+     *                  {@link #setReadOnlyFastPath(boolean) read-only fast path} applies
+     */
+    private TransactionData getTransactionDataForRead()
+    {
+        if (AlfrescoTransactionSupport.getTransactionId() == null)
+        {
+            return null;
+        }
+        if (readOnlyFastPath && AlfrescoTransactionSupport.getResource(resourceKeyTxnData) == null &&
+                AlfrescoTransactionSupport.getTransactionReadState() == TxnReadState.TXN_READ_ONLY)
+        {
+            // Nothing has been done to the cache in this read-only transaction
+            return null;
+        }
+        return getTransactionData();
+    }
+    
     /**
      * @see #setDisableSharedCacheReadForTransaction(boolean)
      */
@@ -577,12 +622,44 @@ public class TransactionalCache<K extends Serializable, V extends Object>
     public V get(K keyIn)
     {
         final Serializable key = getTenantAwareCacheKey(keyIn);
-        
+        return getValue(key, getTransactionDataForRead());
+    }
+    
+    /**
+     * Fetch the values for several keys at once.  The transactional state is resolved once for
+     * the whole collection rather than once per key; otherwise each value is resolved exactly as
+     * for {@link #get(Serializable)}.
+     * 
+     * @param keysIn            the keys to fetch
+     * @return                  a map of the keys that have non-<tt>null</tt> values to their values
+     */
+    public Map<K, V> getAll(Collection<K> keysIn)
+    {
+        TransactionData txnData = getTransactionDataForRead();
+        Map<K, V> values = new HashMap<K, V>(keysIn.size() * 2);
+        for (K keyIn : keysIn)
+        {
+            final Serializable key = getTenantAwareCacheKey(keyIn);
+            V value = getValue(key, txnData);
+            if (value != null)
+            {
+                values.put(keyIn, value);
+            }
+        }
+        return values;
+    }
+    
+    /**
+     * @param key           a tenant-aware key
+     * @param txnData       the transactional data to layer over the shared cache or <tt>null</tt>
+     *                      to read the shared cache directly
+     */
+    private V getValue(Serializable key, TransactionData txnData)
+    {
         boolean ignoreSharedCache = false;
-        // are we in a transaction?
-        if (AlfrescoTransactionSupport.getTransactionId() != null)
+        // are we layering over a transaction?
+        if (txnData != null)
         {
-            TransactionData txnData = getTransactionData();
             if (txnData.isClosed)
             {
                 // This check could have been done in the first if block, but that would have added another call to the
@@ -228,6 +228,18 @@ public abstract class AbstractContentReader extends AbstractContentAccessor impl
      */
     protected abstract ReadableByteChannel getDirectReadableChannel() throws ContentIOException;
 
+    /**
+     * Wrap a channel opened independently of the reader's own channel so that, like it,
+     * closing the channel makes the callbacks to this reader's listeners.
+     * 
+     * @param directChannel a channel onto the content
+     * @return Returns a channel that calls back to the listeners when it is closed
+     */
+    protected FileChannel getCallbackFileChannel(FileChannel directChannel)
+    {
+        return getCallbackFileChannel(directChannel, listeners);
+    }
+
     /**
      * Create a channel that performs callbacks to the given listeners.
      *  
@@ -47,11 +47,13 @@ import org.alfresco.repo.content.transform.ContentTransformerRegistry;
 import org.alfresco.repo.content.transform.TransformerDebug;
 import org.alfresco.repo.content.transform.UnimportantTransformException;
 import org.alfresco.repo.content.transform.UnsupportedTransformationException;
+import org.alfresco.repo.domain.contentdata.ContentDataDAO;
 import org.alfresco.repo.node.NodeServicePolicies;
 import org.alfresco.repo.policy.ClassPolicyDelegate;
 import org.alfresco.repo.policy.JavaBehaviour;
 import org.alfresco.repo.policy.PolicyComponent;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
 import org.alfresco.service.cmr.dictionary.DictionaryService;
 import org.alfresco.service.cmr.dictionary.InvalidTypeException;
@@ -60,6 +62,7 @@ import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.ContentService;
+import org.alfresco.service.cmr.repository.ContentStreamListener;
 import org.alfresco.service.cmr.repository.ContentWriter;
 import org.alfresco.service.cmr.repository.MimetypeService;
 import org.alfresco.service.cmr.repository.MimetypeServiceAware;
@@ -105,6 +108,8 @@ public class ContentServiceImpl implements ContentService, ApplicationContextAwa
     private ContentTransformerRegistry transformerRegistry;
     /** The cleaner that will ensure that rollbacks clean up after themselves */
     private EagerContentStoreCleaner eagerContentStoreCleaner;
+    /** records deduplicated content as orphaned until it is referenced */
+    private ContentDataDAO contentDataDAO;
     /** the store to use.  Any multi-store support is provided by the store implementation. */
     private ContentStore store;
     /** the store for all temporarily created content */
@@ -156,6 +161,15 @@ public class ContentServiceImpl implements ContentService, ApplicationContextAwa
         this.eagerContentStoreCleaner = eagerContentStoreCleaner;
     }
 
+    /**
+     * @param contentDataDAO    used to record content moved by a deduplicating store on stream closure
+     *                          as orphaned, so that it is cleaned up if the transaction rolls back
+     */
+    public void setContentDataDAO(ContentDataDAO contentDataDAO)
+    {
+        this.contentDataDAO = contentDataDAO;
+    }
+
     public void setStore(ContentStore store)
     {
         this.store = store;
@@ -493,6 +507,7 @@ public class ContentServiceImpl implements ContentService, ApplicationContextAwa
             ContentWriter writer = store.getWriter(ctx);
             // Register the new URL for rollback cleanup
             eagerContentStoreCleaner.registerNewContentUrl(writer.getContentUrl());
+            addDeduplicatedContentListener(writer);
             // done
             return writer;
         }
@@ -506,6 +521,8 @@ public class ContentServiceImpl implements ContentService, ApplicationContextAwa
         ContentWriter writer = store.getWriter(ctx);
         // Register the new URL for rollback cleanup
         eagerContentStoreCleaner.registerNewContentUrl(writer.getContentUrl());
+        // Before the node is updated, so that the reference is made to the recorded URL
+        addDeduplicatedContentListener(writer);
 
         Serializable contentValue = nodeService.getProperty(nodeRef, propertyQName);
 
@@ -538,6 +555,18 @@ public class ContentServiceImpl implements ContentService, ApplicationContextAwa
         return writer;
     }
 
+    /**
+     * Deduplicating stores move the content on stream closure to a URL that may be shared with other
+     * writes, so it can not simply be deleted if the transaction rolls back.
+     */
+    private void addDeduplicatedContentListener(ContentWriter writer)
+    {
+        if (contentDataDAO != null)
+        {
+            writer.addListener(new DeduplicatedContentListener(writer));
+        }
+    }
+
     /**
      * @return Returns a writer to an anonymous location
      */
@@ -906,6 +935,52 @@ public class ContentServiceImpl implements ContentService, ApplicationContextAwa
         }
     }
 
+    /**
+     * Records content that was moved on stream closure, i.e. deduplicated, as orphaned if its URL is
+     * not known yet.  This is done in its own transaction so that the record survives a rollback;
+     * once the URL is referenced it is no longer an orphan, otherwise the content store cleaner
+     * deletes the content when it is no longer protected.
+     */
+    private class DeduplicatedContentListener implements ContentStreamListener
+    {
+        private final ContentWriter writer;
+        private final String originalContentUrl;
+
+        private DeduplicatedContentListener(ContentWriter writer)
+        {
+            this.writer = writer;
+            this.originalContentUrl = writer.getContentUrl();
+        }
+
+        @Override
+        public void contentStreamClosed() throws ContentIOException
+        {
+            final String contentUrl = writer.getContentUrl();
+            if (EqualsHelper.nullSafeEquals(originalContentUrl, contentUrl))
+            {
+                // The content was not moved
+                return;
+            }
+            RetryingTransactionCallback<Void> recordOrphanCallback = new RetryingTransactionCallback<Void>()
+            {
+                public Void execute() throws Throwable
+                {
+                    if (contentDataDAO.getContentUrl(contentUrl) == null)
+                    {
+                        // The committing write shares this row, so it must carry the real size
+                        contentDataDAO.createContentUrlOrphaned(contentUrl, writer.getSize(), null);
+                    }
+                    return null;
+                }
+            };
+            transactionHelper.doInTransaction(recordOrphanCallback, false, true);
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Recorded deduplicated content until it is referenced: " + contentUrl);
+            }
+        }
+    }
+
     /**
      * Ensures that, upon closure of the output stream, the node is updated with
      * the latest URL of the content to which it refers.
@@ -0,0 +1,76 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+
+/**
+ * A reader onto content held in a local file, which can hand the bytes to a client without copying them through
+ * heap buffers.
+ * <p>
+ * Unlike the other read methods, these do not use up the reader; each call works on a channel of its own. The
+ * reader's {@link org.alfresco.service.cmr.repository.ContentStreamListener listeners} are notified whenever one of
+ * these channels is closed.
+ * 
+ * @since 5.2
+ */
+public interface DirectContentReader extends ContentReader
+{
+    /**
+     * Open a new read-only channel onto the content. The caller must close it, which notifies the listeners.
+     * 
+     * @return a channel positioned at the start of the content
+     * @throws ContentIOException if the content cannot be opened
+     */
+    public FileChannel getDirectChannel() throws ContentIOException;
+
+    /**
+     * Transfer a range of the content to the given channel using {@link FileChannel#transferTo(long, long, WritableByteChannel)},
+     * letting the operating system move the bytes directly where the target supports it.
+     * 
+     * @param position the offset of the first byte to transfer
+     * @param count the maximum number of bytes to transfer
+     * @param target the channel to write to, which is not closed
+     * @return the number of bytes transferred, which is less than <tt>count</tt> if the content ends first
+     * @throws ContentIOException if the content cannot be read or the target cannot be written
+     */
+    public long transferTo(long position, long count, WritableByteChannel target) throws ContentIOException;
+
+    /**
+     * Map a range of the content into memory for reading.
+     * 
+     * @param position the offset of the first byte to map
+     * @param size the number of bytes to map, at most <tt>Integer.MAX_VALUE</tt>
+     * @return a read-only buffer onto the range
+     * @throws ContentIOException if the content cannot be mapped or the range is too large to map
+     */
+    public MappedByteBuffer mapRange(long position, long size) throws ContentIOException;
+}
@@ -32,6 +32,7 @@ import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.content.filestore.FileContentStore;
 import org.alfresco.repo.domain.contentdata.ContentDataDAO;
 import org.alfresco.repo.domain.contentdata.ContentDataDAO.ContentUrlHandler;
 import org.alfresco.repo.lock.JobLockService;
@@ -194,7 +195,8 @@ public class ContentStoreCleaner
 
     /**
      * Set the action to take in the event that an orphaned binary failed to get deleted.
-     * The default is {@link DeleteFailureAction#IGNORE}.
+     * The default is {@link DeleteFailureAction#IGNORE}.  This does not apply to deduplicated
+     * content, which is always recorded as orphaned again if its binary is kept.
      * 
      * @param deletionFailureAction     the action to take when deletes fail
      */
@@ -413,7 +415,14 @@ public class ContentStoreCleaner
             String contentUrl = urlsById.get(id);
             // Handle failures
             boolean deleted = eagerContentStoreCleaner.deleteFromStores(contentUrl);
-            if (!deleted)
+            if (!deleted && FileContentStore.isDeduplicatedUrl(contentUrl))
+            {
+                // Recently shared content is kept until its new reference is committed, so record
+                // it as orphaned again and let a later run delete it if it is still unreferenced
+                long size = contentService.getRawReader(contentUrl).getSize();
+                contentDataDAO.createContentUrlOrphaned(contentUrl, size, null);
+            }
+            else if (!deleted)
             {
                 switch (deletionFailureAction)
                 {
@@ -30,13 +30,17 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.text.MessageFormat;
 
 import org.alfresco.api.AlfrescoPublicApi;    
 import org.alfresco.repo.content.AbstractContentReader;
 import org.alfresco.repo.content.ContentStore;
+import org.alfresco.repo.content.DirectContentReader;
 import org.alfresco.repo.content.MimetypeMap;
 import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentReader;
@@ -54,7 +58,7 @@ import org.apache.commons.logging.LogFactory;
  */
 @AlfrescoPublicApi
 public class FileContentReader extends AbstractContentReader
-    implements org.alfresco.service.cmr.repository.FileContentReader
+    implements org.alfresco.service.cmr.repository.FileContentReader, DirectContentReader
 {
     /**
      * message key for missing content.  Parameters are
@@ -244,6 +248,72 @@ public class FileContentReader extends AbstractContentReader
         }
     }
 
+    @Override
+    public FileChannel getDirectChannel() throws ContentIOException
+    {
+        try
+        {
+            FileChannel channel = new RandomAccessFile(file, "r").getChannel();  // won't create it
+            return getCallbackFileChannel(channel);
+        }
+        catch (Throwable e)
+        {
+            throw new ContentIOException("Failed to open file channel: " + this, e);
+        }
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws ContentIOException
+    {
+        FileChannel channel = getDirectChannel();
+        try
+        {
+            long transferred = 0L;
+            while (transferred < count)
+            {
+                long written = channel.transferTo(position + transferred, count - transferred, target);
+                if (written <= 0L)
+                {
+                    // End of the file
+                    break;
+                }
+                transferred += written;
+            }
+            return transferred;
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to transfer content: " + this, e);
+        }
+        finally
+        {
+            try { channel.close(); } catch (IOException e) {}
+        }
+    }
+
+    @Override
+    public MappedByteBuffer mapRange(long position, long size) throws ContentIOException
+    {
+        if (position < 0L || size < 0L || size > Integer.MAX_VALUE)
+        {
+            throw new ContentIOException("Content range " + position + "+" + size + " cannot be mapped: " + this);
+        }
+        FileChannel channel = getDirectChannel();
+        try
+        {
+            // The mapping remains valid once the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to map content range " + position + "+" + size + ": " + this, e);
+        }
+        finally
+        {
+            try { channel.close(); } catch (IOException e) {}
+        }
+    }
+
     /**
      * @return Returns false as this is a reader
      * @deprecated Since 5.1.  This method has no value: a file reader can never write (DH: 2015/02/17)
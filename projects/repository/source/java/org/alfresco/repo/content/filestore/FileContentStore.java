@@ -28,6 +28,9 @@ package org.alfresco.repo.content.filestore;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.GregorianCalendar;
@@ -67,6 +70,13 @@ import org.springframework.context.event.ContextRefreshedEvent;
  *   <li><b>{@link #STORE_PROTOCOL store}</b>: These URLs can be generated by this implementation and are file references within the root directory.</li>
  *   <li><b>{@link #SPOOF_PROTOCOL spoof}</b>: These URLs are never generated by the implementation but represent spoofed binary text stream data.</li>
  * </ul>
+ * <p>
+ * When {@link #setDeduplicate(boolean) deduplication} is switched on, content written to a URL
+ * chosen by the store is kept under a URL derived from a hash of the content, so that identical
+ * content is only stored once.  Each content URL is recorded once in <b>alf_content_url</b> and is
+ * only orphaned, and so deleted by the cleaner, once no content data references it.  Deduplicated
+ * content that is not referenced yet is recorded as orphaned by the content service, so that it is
+ * also cleaned up if the transaction that wrote it rolls back.
  * 
  * @author Derek Hulley
  */
@@ -81,6 +91,12 @@ public class FileContentStore
      */
     public static final String STORE_PROTOCOL = "store";
     public static final String SPOOF_PROTOCOL = "spoof";
+    /** The directory under the root that deduplicated content is kept in */
+    public static final String DEDUPLICATED_PATH = "dedup";
+    /** The digest that identifies deduplicated content */
+    public static final String DEDUPLICATION_DIGEST = "SHA-256";
+    
+    private static final long DEFAULT_DEDUPLICATE_GRACE_PERIOD_MS = 3600000L;
     
     private static final Log logger = LogFactory.getLog(FileContentStore.class);
     
@@ -91,6 +107,8 @@ public class FileContentStore
     private ApplicationContext applicationContext;
     private boolean deleteEmptyDirs = true;
     private FileContentUrlProvider fileContentUrlProvider = new TimeBasedFileContentUrlProvider();
+    private boolean deduplicate;
+    private long deduplicateGracePeriodMs = DEFAULT_DEDUPLICATE_GRACE_PERIOD_MS;
 
     /**
      * Private: for Spring-constructed instances only.
@@ -212,6 +230,30 @@ public class FileContentStore
         this.fileContentUrlProvider = fileContentUrlProvider;
     }
 
+    /**
+     * Keep content written to URLs chosen by the store under a URL derived from a hash of the
+     * content, so that identical content is stored once and shared.  Writers from a deduplicating
+     * store do not allow random access and their content URL is only final once the stream has
+     * been closed.  The default is <tt>false</tt>.
+     * 
+     * @param deduplicate   <tt>true</tt> to store identical content once
+     */
+    public void setDeduplicate(boolean deduplicate)
+    {
+        this.deduplicate = deduplicate;
+    }
+
+    /**
+     * Shared content is not deleted for this long after it was last shared by a new write,
+     * giving the new reference time to be committed before an earlier orphan is cleaned up.
+     * 
+     * @param deduplicateGracePeriodSeconds the time in seconds (default one hour)
+     */
+    public void setDeduplicateGracePeriodSeconds(long deduplicateGracePeriodSeconds)
+    {
+        this.deduplicateGracePeriodMs = deduplicateGracePeriodSeconds * 1000L;
+    }
+
     /**
      * Generates a new URL and file appropriate to it.
      * 
@@ -520,6 +562,10 @@ public class FileContentStore
                 writer.setContentLimitProvider(contentLimitProvider);
             }
             writer.setAllowRandomAccess(allowRandomAccess);
+            if (deduplicate && newContentUrl == null)
+            {
+                writer.setDeduplicatingStore(this);
+            }
             
             // done
             if (logger.isDebugEnabled())
@@ -562,6 +608,16 @@ public class FileContentStore
             // File does not exist
             deleted = true;
         }
+        else if (isDeduplicatedUrl(contentUrl) &&
+                file.lastModified() > System.currentTimeMillis() - deduplicateGracePeriodMs)
+        {
+            // The content has just been shared by a new write whose reference may not be committed yet
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Not deleting recently shared content: " + contentUrl);
+            }
+            return false;
+        }
         else
         {
             deleted = file.delete();
@@ -583,6 +639,73 @@ public class FileContentStore
         return deleted;
     }
 
+    /**
+     * Keeps newly written content under the URL derived from its hash.  If identical content is
+     * already stored there, the new file is dropped and the existing content is shared instead.
+     * 
+     * @param file          the newly written file
+     * @param hash          the hex-encoded {@link #DEDUPLICATION_DIGEST} of the content
+     * @return              Returns the URL that the content is stored under
+     */
+    /*package*/ String deduplicate(File file, String hash)
+    {
+        String contentUrl = STORE_PROTOCOL + PROTOCOL_DELIMITER + DEDUPLICATED_PATH + "/" +
+                hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + ".bin";
+        File target = makeFile(contentUrl);
+        try
+        {
+            File dir = target.getParentFile();
+            if (!dir.exists())
+            {
+                makeDirectory(dir);
+            }
+            boolean shared = target.exists();
+            if (!shared)
+            {
+                try
+                {
+                    Files.move(file.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                }
+                catch (FileAlreadyExistsException e)
+                {
+                    // Identical content was written concurrently
+                    shared = true;
+                }
+            }
+            if (shared)
+            {
+                // Keep the shared content from being deleted until this reference is committed
+                target.setLastModified(System.currentTimeMillis());
+                file.delete();
+            }
+            if (deleteEmptyDirs)
+            {
+                Deleter.deleteEmptyParents(file, getRootLocation());
+            }
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Deduplicated content: \n" +
+                        "   file: " + file + "\n" +
+                        "   url: " + contentUrl + "\n" +
+                        "   shared: " + shared);
+            }
+            return contentUrl;
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to store deduplicated content: " + contentUrl, e);
+        }
+    }
+
+    /**
+     * @param contentUrl    the content URL to check
+     * @return              Returns <tt>true</tt> if the URL refers to deduplicated, and so possibly shared, content
+     */
+    public static boolean isDeduplicatedUrl(String contentUrl)
+    {
+        return contentUrl.startsWith(STORE_PROTOCOL + PROTOCOL_DELIMITER + DEDUPLICATED_PATH + "/");
+    }
+
     /**
      * Creates a new content URL.  This must be supported by all
      * stores that are compatible with Alfresco.
@@ -32,12 +32,16 @@ import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 
 import org.alfresco.api.AlfrescoPublicApi;     
 import org.alfresco.repo.content.AbstractContentWriter;
 import org.alfresco.repo.content.ContentStore;
 import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentStreamListener;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -55,6 +59,8 @@ public class FileContentWriter extends AbstractContentWriter
     
     private File file;
     private boolean allowRandomAccess;
+    private FileContentStore deduplicatingStore;
+    private MessageDigest digest;
     
     /**
      * Constructor that builds a URL based on the absolute path of the file.
@@ -103,6 +109,21 @@ public class FileContentWriter extends AbstractContentWriter
         this.allowRandomAccess = allow;
     }
 
+    /**
+     * Hash the content as it is written and, once the stream is closed, hand it to the store
+     * to be kept under a URL derived from the hash.  The content is streamed so that it is
+     * hashed in order, i.e. random access is not allowed.
+     * 
+     * @param store the store that keeps content by its hash
+     */
+    /* package */ void setDeduplicatingStore(FileContentStore store)
+    {
+        this.deduplicatingStore = store;
+        this.allowRandomAccess = false;
+        // Added before any of the client's listeners so that they see the final URL
+        addListener(new DeduplicatingOnCloseListener());
+    }
+
     /**
      * @return Returns the file that this writer accesses
      */
@@ -156,6 +177,11 @@ public class FileContentWriter extends AbstractContentWriter
             else
             {
                 OutputStream os = new FileOutputStream(file);
+                if (deduplicatingStore != null)
+                {
+                    digest = MessageDigest.getInstance(FileContentStore.DEDUPLICATION_DIGEST);
+                    os = new DigestOutputStream(os, digest);
+                }
                 channel = Channels.newChannel(os);
             }
             // done
@@ -180,4 +206,26 @@ public class FileContentWriter extends AbstractContentWriter
     {
         return true;    // this is a writer
     }
+
+    /**
+     * Moves the written content to the location derived from its hash, or drops it in favour
+     * of identical content already stored there.
+     */
+    private class DeduplicatingOnCloseListener implements ContentStreamListener
+    {
+        @Override
+        public void contentStreamClosed() throws ContentIOException
+        {
+            if (digest == null)
+            {
+                // Nothing was written through the stream
+                return;
+            }
+            String hash = Hex.encodeHexString(digest.digest());
+            digest = null;
+            String contentUrl = deduplicatingStore.deduplicate(file, hash);
+            file = deduplicatingStore.makeFile(contentUrl);
+            setContentUrl(contentUrl);
+        }
+    }
 }
@@ -45,6 +45,13 @@ public interface ActivityFeedDAO extends ActivitiesDAO
     
     public long insertFeedEntry(ActivityFeedEntity activityFeed) throws SQLException;
     
+    /**
+     * Insert feed entries using multi-row inserts.  The IDs of the new entries are not set.
+     * 
+     * @return                  Returns the number of feed entries inserted
+     */
+    public int insertFeedEntries(List<ActivityFeedEntity> activityFeeds) throws SQLException;
+    
     public int deleteFeedEntries(Integer maxIdRange) throws SQLException;
     public int deleteFeedEntries(Date keepDate) throws SQLException;
     
@@ -47,9 +47,11 @@ import org.apache.ibatis.session.RowBounds;
 public class ActivityFeedDAOImpl extends ActivitiesDAOImpl implements ActivityFeedDAO
 {
     private static final int DEFAULT_FETCH_BATCH_SIZE = 150;
+    private static final int DEFAULT_INSERT_BATCH_SIZE = 200;
 
     private TenantService tenantService;
     private int fetchBatchSize = DEFAULT_FETCH_BATCH_SIZE;
+    private int insertBatchSize = DEFAULT_INSERT_BATCH_SIZE;
     
     public void setTenantService(TenantService tenantService)
     {
@@ -61,6 +63,14 @@ public class ActivityFeedDAOImpl extends ActivitiesDAOImpl implements ActivityFe
         this.fetchBatchSize = fetchBatchSize;
     }
 
+    /**
+     * @param insertBatchSize   the maximum number of feed entries to insert with each statement
+     */
+    public void setInsertBatchSize(int insertBatchSize)
+    {
+        this.insertBatchSize = insertBatchSize;
+    }
+
     public long insertFeedEntry(ActivityFeedEntity activityFeed) throws SQLException
     {
         template.insert("alfresco.activities.insert.insert_activity_feed", activityFeed);
@@ -68,6 +78,19 @@ public class ActivityFeedDAOImpl extends ActivitiesDAOImpl implements ActivityFe
         return (id != null ? id : -1);
     }
     
+    @Override
+    public int insertFeedEntries(List<ActivityFeedEntity> activityFeeds) throws SQLException
+    {
+        int inserted = 0;
+        for (int i = 0; i < activityFeeds.size(); i += insertBatchSize)
+        {
+            List<ActivityFeedEntity> batch = activityFeeds.subList(i, Math.min(i + insertBatchSize, activityFeeds.size()));
+            template.insert("alfresco.activities.insert.insert_activity_feeds", batch);
+            inserted += batch.size();
+        }
+        return inserted;
+    }
+    
     @Override
     public int deleteFeedEntries(Integer maxIdRange) throws SQLException
     {
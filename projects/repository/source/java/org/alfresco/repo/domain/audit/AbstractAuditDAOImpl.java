@@ -31,6 +31,7 @@ import java.io.Serializable;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -347,7 +348,70 @@ public abstract class AbstractAuditDAOImpl implements AuditDAO
         return deleted;
     }
 
+    public int createAuditEntries(List<AuditEntryInfo> entries)
+    {
+        // Resolve each username once for the whole batch
+        Map<String, Long> usernameIds = new HashMap<String, Long>(31);
+        List<AuditEntryEntity> entities = new ArrayList<AuditEntryEntity>(entries.size());
+        for (AuditEntryInfo entry : entries)
+        {
+            String username = entry.getUsername();
+            Long usernameId = null;
+            if (username != null)
+            {
+                usernameId = usernameIds.get(username);
+                if (usernameId == null)
+                {
+                    usernameId = propertyValueDAO.getOrCreatePropertyValue(username).getFirst();
+                    usernameIds.put(username, usernameId);
+                }
+            }
+            Long valuesId = null;
+            Map<String, Serializable> values = entry.getValues();
+            if (values != null && values.size() > 0)
+            {
+                valuesId = propertyValueDAO.createProperty((Serializable)values);
+            }
+            AuditEntryEntity entity = new AuditEntryEntity();
+            entity.setAuditApplicationId(entry.getApplicationId());
+            entity.setAuditTime(entry.getTime());
+            entity.setAuditUserId(usernameId);
+            entity.setAuditValuesId(valuesId);
+            entities.add(entity);
+        }
+        
+        int created = 0;
+        List<AuditEntryEntity> batch = new ArrayList<AuditEntryEntity>(entities.size() > 256 ? 256 : entities.size());
+        for (AuditEntryEntity entity : entities)
+        {
+            batch.add(entity);
+            if (batch.size() >= 256)
+            {
+                created += createAuditEntriesImpl(batch);
+                batch.clear();
+            }
+        }
+        // Process remaining
+        if (batch.size() > 0)
+        {
+            created += createAuditEntriesImpl(batch);
+        }
+        // Done
+        if (logger.isDebugEnabled())
+        {
+            logger.debug(
+                    "Created " + created + " audit entries for " + usernameIds.size() + " users");
+        }
+        return created;
+    }
+    
     protected abstract AuditEntryEntity createAuditEntry(Long applicationId, long time, Long usernameId, Long valuesId);
+    /**
+     * @param entities          the entries to insert in a single statement
+     * @return                  Returns the number of entries inserted
+     * @since 5.2
+     */
+    protected abstract int createAuditEntriesImpl(List<AuditEntryEntity> entities);
     protected abstract int deleteAuditEntriesImpl(List<Long> auditEntryIds);
     
     /*
@@ -198,6 +198,68 @@ public interface AuditDAO
      */
     Long createAuditEntry(Long applicationId, long time, String username, Map<String, Serializable> values);
     
+    /**
+     * An audit entry that has yet to be persisted.
+     * 
+     * @since 5.2
+     */
+    public static class AuditEntryInfo
+    {
+        private final Long applicationId;
+        private final long time;
+        private final String username;
+        private final Map<String, Serializable> values;
+        
+        public AuditEntryInfo(Long applicationId, long time, String username, Map<String, Serializable> values)
+        {
+            this.applicationId = applicationId;
+            this.time = time;
+            this.username = username;
+            this.values = values;
+        }
+        
+        @Override
+        public String toString()
+        {
+            StringBuilder sb = new StringBuilder();
+            sb.append("AuditEntryInfo ")
+              .append("[ applicationId=").append(applicationId)
+              .append(", time=").append(time)
+              .append(", username=").append(username)
+              .append(", values=").append(values)
+              .append("]");
+            return sb.toString();
+        }
+        
+        public Long getApplicationId()
+        {
+            return applicationId;
+        }
+        public long getTime()
+        {
+            return time;
+        }
+        public String getUsername()
+        {
+            return username;
+        }
+        public Map<String, Serializable> getValues()
+        {
+            return values;
+        }
+    }
+    
+    /**
+     * Create audit entries in bulk.  Each distinct username is resolved once and the
+     * entries are inserted using multi-row statements.
+     * 
+     * @param entries           the entries to record
+     * @return                  Returns the number of entries created
+     * 
+     * @since 5.2
+     */
+    int createAuditEntries(List<AuditEntryInfo> entries);
+    
     /**
      * Find audit entries using the given parameters, any of which may be null
      * 
@@ -63,6 +63,7 @@ public class AuditDAOImpl extends AbstractAuditDAOImpl
     private static final String DELETE_ENTRIES = "alfresco.audit.delete_AuditEntries";
     private static final String DELETE_ENTRIES_BY_ID = "alfresco.audit.delete_AuditEntriesById";
     private static final String INSERT_ENTRY = "alfresco.audit.insert.insert_AuditEntry";
+    private static final String INSERT_ENTRIES = "alfresco.audit.insert.insert_AuditEntries";
     
     @SuppressWarnings("unused")
     private static final String SELECT_ENTRIES_SIMPLE = "alfresco.audit.select_AuditEntriesSimple";
@@ -201,6 +202,12 @@ public class AuditDAOImpl extends AbstractAuditDAOImpl
         return entity;
     }
 
+    @Override
+    protected int createAuditEntriesImpl(List<AuditEntryEntity> entities)
+    {
+        return template.insert(INSERT_ENTRIES, entities);
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     protected void findAuditEntries(
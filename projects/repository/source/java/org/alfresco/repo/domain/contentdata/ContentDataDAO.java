@@ -71,6 +71,18 @@ public interface ContentDataDAO
      */
     Pair<Long, String> createContentUrlOrphaned(String contentUrl, Date orphanTime);
     
+    /**
+     * Creates an immediately-orphaned content URL of a known size, if possible
+     * 
+     * @param contentUrl    the URL to create if it doesn't exist
+     * @param size          the size of the content
+     * @param orphanTime    the recorded orphan time or <tt>null</tt> to apply the current time
+     * @return              Returns the ID-URL pair
+     * @throws DataIntegrityViolationException      if the URL already exists
+     * @since 5.2
+     */
+    Pair<Long, String> createContentUrlOrphaned(String contentUrl, long size, Date orphanTime);
+    
     /**
      * @param id            the unique ID of the entity
      * @return              the ContentData pair (id, ContentData) or <tt>null</tt> if it doesn't exist
@@ -91,10 +91,16 @@ public class ContentDataDAOImpl extends AbstractContentDataDAOImpl
 
     @Override
     public Pair<Long, String> createContentUrlOrphaned(String contentUrl, Date orphanTime)
+    {
+        return createContentUrlOrphaned(contentUrl, 0L, orphanTime);
+    }
+
+    @Override
+    public Pair<Long, String> createContentUrlOrphaned(String contentUrl, long size, Date orphanTime)
     {
         ContentUrlEntity contentUrlEntity = new ContentUrlEntity();
         contentUrlEntity.setContentUrl(contentUrl);
-        contentUrlEntity.setSize(0L);
+        contentUrlEntity.setSize(size);
         contentUrlEntity.setOrphanTime(orphanTime == null ? System.currentTimeMillis() : orphanTime.getTime());
         template.insert(INSERT_CONTENT_URL, contentUrlEntity);
         Long id = contentUrlEntity.getId();
@@ -35,6 +35,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
@@ -2146,6 +2147,20 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         return props;
     }
 
+    @Override
+    public Map<Long, Map<QName, Serializable>> getNodesProperties(List<Long> nodeIds)
+    {
+        // The cm:auditable properties are only added if the aspect is present, so warm both
+        cacheNodePropertiesAndAspects(nodeIds, true, true);
+        
+        Map<Long, Map<QName, Serializable>> nodesProperties = new LinkedHashMap<Long, Map<QName, Serializable>>(nodeIds.size() * 2);
+        for (Long nodeId : nodeIds)
+        {
+            nodesProperties.put(nodeId, getNodeProperties(nodeId));
+        }
+        return nodesProperties;
+    }
+
     @Override
     public Serializable getNodeProperty(Long nodeId, QName propertyQName)
     {
@@ -2664,6 +2679,19 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         return nodeAspects;
     }
 
+    @Override
+    public Map<Long, Set<QName>> getNodesAspects(List<Long> nodeIds)
+    {
+        cacheNodePropertiesAndAspects(nodeIds, false, true);
+        
+        Map<Long, Set<QName>> nodesAspects = new LinkedHashMap<Long, Set<QName>>(nodeIds.size() * 2);
+        for (Long nodeId : nodeIds)
+        {
+            nodesAspects.put(nodeId, getNodeAspects(nodeId));
+        }
+        return nodesAspects;
+    }
+
     @Override
     public boolean hasNodeAspect(Long nodeId, QName aspectQName)
     {
@@ -4805,21 +4833,121 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             logger.debug("Pre-loaded " + propertiesNodeIds.size() + " aspects");
         }
         
+        cacheNodeAspectsNoBatch(aspectNodeIds, nodeVersionKeysFromCache);
+        cacheNodePropertiesNoBatch(propertiesNodeIds, nodeVersionKeysFromCache);
+    }
+    
+    /**
+     * Ensure that the given nodes and their aspects and, optionally, properties are cached.
+     * Anything missing is loaded in batches rather than node by node.
+     */
+    private void cacheNodePropertiesAndAspects(List<Long> nodeIds, boolean properties, boolean aspects)
+    {
+        // Nodes that are not cached at all are loaded along with their properties and aspects
+        List<Long> missingNodeIds = new ArrayList<Long>(nodeIds.size());
+        for (Long nodeId : nodeIds)
+        {
+            if (nodesCache.getValue(nodeId) == null)
+            {
+                missingNodeIds.add(nodeId);
+            }
+        }
+        cacheNodesBatch(missingNodeIds);
+        
+        // The remaining nodes may still be missing cache entries for their current versions
+        Map<Long, NodeVersionKey> nodeVersionKeys = new HashMap<Long, NodeVersionKey>(nodeIds.size() * 2);
+        SortedSet<Long> aspectNodeIds = new TreeSet<Long>();
+        SortedSet<Long> propertiesNodeIds = new TreeSet<Long>();
+        for (Long nodeId : nodeIds)
+        {
+            NodeVersionKey nodeVersionKey = getNodeNotNull(nodeId, false).getNodeVersionKey();
+            nodeVersionKeys.put(nodeId, nodeVersionKey);
+            if (aspects && aspectsCache.getValue(nodeVersionKey) == null)
+            {
+                aspectNodeIds.add(nodeId);
+            }
+            if (properties && propertiesCache.getValue(nodeVersionKey) == null)
+            {
+                propertiesNodeIds.add(nodeId);
+            }
+        }
+        
+        int batchSize = 256;
+        SortedSet<Long> batch = new TreeSet<Long>();
+        for (Long nodeId : aspectNodeIds)
+        {
+            batch.add(nodeId);
+            if (batch.size() >= batchSize)
+            {
+                cacheNodeAspectsNoBatch(batch, nodeVersionKeys);
+                batch.clear();
+            }
+        }
+        if (batch.size() > 0)
+        {
+            cacheNodeAspectsNoBatch(batch, nodeVersionKeys);
+            batch.clear();
+        }
+        for (Long nodeId : propertiesNodeIds)
+        {
+            batch.add(nodeId);
+            if (batch.size() >= batchSize)
+            {
+                cacheNodePropertiesNoBatch(batch, nodeVersionKeys);
+                batch.clear();
+            }
+        }
+        if (batch.size() > 0)
+        {
+            cacheNodePropertiesNoBatch(batch, nodeVersionKeys);
+        }
+        if (isDebugEnabled)
+        {
+            logger.debug(
+                    "Bulk-loaded " + aspectNodeIds.size() + " aspect sets and " + propertiesNodeIds.size() +
+                    " property maps for " + nodeIds.size() + " nodes (" + missingNodeIds.size() + " nodes not cached).");
+        }
+    }
+    
+    /**
+     * Bulk-load and cache the aspects for the given nodes with a single query.  Aspects are only cached
+     * against the expected node version; anything else is left for the individual lookup to deal with.
+     * 
+     * @param aspectNodeIds             the nodes to load aspects for (will be modified)
+     * @param nodeVersionKeys           the current version key of each node
+     */
+    private void cacheNodeAspectsNoBatch(SortedSet<Long> aspectNodeIds, Map<Long, NodeVersionKey> nodeVersionKeys)
+    {
         Map<NodeVersionKey, Set<QName>> nodeAspects = selectNodeAspects(aspectNodeIds);
         for (Map.Entry<NodeVersionKey, Set<QName>> entry : nodeAspects.entrySet())
         {
             NodeVersionKey nodeVersionKeyFromDb = entry.getKey();
             Long nodeId = nodeVersionKeyFromDb.getNodeId();
-            Set<QName> qnames = entry.getValue();
-            setNodeAspectsCached(nodeId, qnames);
             aspectNodeIds.remove(nodeId);
+            if (!nodeVersionKeyFromDb.equals(nodeVersionKeys.get(nodeId)))
+            {
+                // The node has moved on since it was cached
+                continue;
+            }
+            Set<QName> qnames = entry.getValue();
+            aspectsCache.setValue(nodeVersionKeyFromDb, Collections.unmodifiableSet(qnames));
         }
         // Cache the absence of aspects too!
         for (Long nodeId: aspectNodeIds)
         {
-            setNodeAspectsCached(nodeId, Collections.<QName>emptySet());
+            aspectsCache.setValue(nodeVersionKeys.get(nodeId), Collections.<QName>emptySet());
         }
-
+    }
+    
+    /**
+     * Bulk-load and cache the properties for the given nodes with a single query.  Properties are only cached
+     * against the expected node version; anything else is left for the individual lookup to deal with.
+     * 
+     * @param propertiesNodeIds         the nodes to load properties for (will be modified)
+     * @param nodeVersionKeys           the current version key of each node
+     */
+    private void cacheNodePropertiesNoBatch(SortedSet<Long> propertiesNodeIds, Map<Long, NodeVersionKey> nodeVersionKeys)
+    {
         // First ensure all content data are pre-cached, so we don't have to load them individually when converting properties
         contentDataDAO.cacheContentDataForNodes(propertiesNodeIds);
         
@@ -4827,10 +4955,22 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         Map<NodeVersionKey, Map<NodePropertyKey, NodePropertyValue>> propsByNodeId = selectNodeProperties(propertiesNodeIds);
         for (Map.Entry<NodeVersionKey, Map<NodePropertyKey, NodePropertyValue>> entry : propsByNodeId.entrySet())
         {
-            Long nodeId = entry.getKey().getNodeId();
+            NodeVersionKey nodeVersionKeyFromDb = entry.getKey();
+            Long nodeId = nodeVersionKeyFromDb.getNodeId();
+            propertiesNodeIds.remove(nodeId);
+            if (!nodeVersionKeyFromDb.equals(nodeVersionKeys.get(nodeId)))
+            {
+                // The node has moved on since it was cached
+                continue;
+            }
             Map<NodePropertyKey, NodePropertyValue> propertyValues = entry.getValue();
             Map<QName, Serializable> props = nodePropertyHelper.convertToPublicProperties(propertyValues);
-            setNodePropertiesCached(nodeId, props);
+            propertiesCache.setValue(nodeVersionKeyFromDb, Collections.unmodifiableMap(props));
+        }
+        // Cache the absence of properties too
+        for (Long nodeId : propertiesNodeIds)
+        {
+            propertiesCache.setValue(nodeVersionKeys.get(nodeId), Collections.<QName, Serializable>emptyMap());
         }
     }
 
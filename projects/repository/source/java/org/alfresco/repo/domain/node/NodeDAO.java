@@ -346,6 +346,18 @@ public interface NodeDAO extends NodeBulkLoader
 
     public Map<QName, Serializable> getNodeProperties(Long nodeId);
     
+    /**
+     * Get the properties of several nodes at once.  Properties that are not already cached
+     * are loaded in bulk and cached before the results are assembled.
+     * 
+     * @param nodeIds           the IDs of the nodes, which must all exist
+     * @return                  the properties of each node, keyed and ordered by node ID as given,
+     *                          as would be returned by {@link #getNodeProperties(Long)}
+     * 
+     * @since 5.2
+     */
+    public Map<Long, Map<QName, Serializable>> getNodesProperties(List<Long> nodeIds);
+    
     public boolean setNodeProperties(Long nodeId, Map<QName, Serializable> properties);
     
     public boolean addNodeProperty(Long nodeId, QName qname, Serializable value);
@@ -384,6 +396,18 @@ public interface NodeDAO extends NodeBulkLoader
     
     public Set<QName> getNodeAspects(Long nodeId);
     
+    /**
+     * Get the aspects of several nodes at once.  Aspects that are not already cached
+     * are loaded in bulk and cached before the results are assembled.
+     * 
+     * @param nodeIds           the IDs of the nodes, which must all exist
+     * @return                  the aspects of each node, keyed and ordered by node ID as given,
+     *                          as would be returned by {@link #getNodeAspects(Long)}
+     * 
+     * @since 5.2
+     */
+    public Map<Long, Set<QName>> getNodesAspects(List<Long> nodeIds);
+    
     public boolean hasNodeAspect(Long nodeId, QName aspectQName);
     
     public boolean addNodeAspects(Long nodeId, Set<QName> aspectQNames);
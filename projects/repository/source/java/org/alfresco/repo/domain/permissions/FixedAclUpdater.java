@@ -90,6 +90,7 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
 
     private int maxItemBatchSize = 100;
     private int numThreads = 4;
+    private boolean pipelined = true;
 
     private ClassPolicyDelegate<OnInheritPermissionsDisabled> onInheritPermissionsDisabledDelegate;    
     private PolicyComponent policyComponent;    
@@ -100,6 +101,15 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
         this.numThreads = numThreads;
     }
 
+    /**
+     * @param pipelined         <tt>true</tt> to fetch the next nodes while the current batches are updated
+     *                          and adapt the batch size to the transaction latency
+     */
+    public void setPipelined(boolean pipelined)
+    {
+        this.pipelined = pipelined;
+    }
+
     @Override
     public void setApplicationContext(ApplicationContext applicationContext) throws BeansException
     {
@@ -307,7 +317,8 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
 
         void init()
         {
-            nodes.clear();
+            // A new list, as the previous one may still be queued for the workers
+            nodes = new ArrayList<>();
         }
 
         void done()
@@ -399,6 +410,7 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
                     numThreads, maxItemBatchSize,
                     applicationContext,
                     log, 100);
+            bp.setPipelined(pipelined);
             int count = bp.process(worker, true);
             return count;
         }
@@ -0,0 +1,83 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.tagging;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DAO services for the number of times each tag is used within a tag scope.
+ * <p/>
+ *     <b>alf_tag_scope_count</b>
+ * <p/>
+ * Counts are changed in place by the database, so a change to a tag scope does not need
+ * to read or rewrite the counts of the other tags in the scope.
+ * 
+ * @since 5.2
+ */
+public interface TagScopeCountDAO
+{
+    /**
+     * Apply changes to the tag counts of a tag scope.  Tags that are new to the scope are added
+     * and tags that are no longer used within the scope are removed.
+     * 
+     * @param scopeNodeId       the ID of the tag scope node
+     * @param changes           the change to the count of each tag, positive or negative
+     */
+    public void updateTagCounts(Long scopeNodeId, Map<String, Integer> changes);
+    
+    /**
+     * Replace all the tag counts of a tag scope.
+     * 
+     * @param scopeNodeId       the ID of the tag scope node
+     * @param counts            the number of times each tag is used within the scope
+     */
+    public void setTagCounts(Long scopeNodeId, Map<String, Integer> counts);
+    
+    /**
+     * Delete all the tag counts of a tag scope.
+     * 
+     * @param scopeNodeId       the ID of the tag scope node
+     * @return                  Returns the number of tags removed
+     */
+    public int deleteTagCounts(Long scopeNodeId);
+    
+    /**
+     * Get a page of the tag counts of a tag scope, most used tags first.
+     * 
+     * @param scopeNodeId       the ID of the tag scope node
+     * @param skipCount         the number of tags to skip
+     * @param maxItems          the maximum number of tags to return or <tt>Integer.MAX_VALUE</tt> for all
+     * @return                  Returns the tag counts, ordered by count and then by name
+     */
+    public List<TagScopeCountEntity> getTagCounts(Long scopeNodeId, int skipCount, int maxItems);
+    
+    /**
+     * @param scopeNodeId       the ID of the tag scope node
+     * @return                  Returns the number of distinct tags used within the tag scope
+     */
+    public int countTags(Long scopeNodeId);
+}
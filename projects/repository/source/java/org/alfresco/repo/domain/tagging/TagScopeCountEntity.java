@@ -0,0 +1,126 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.tagging;
+
+import org.alfresco.repo.domain.CrcHelper;
+import org.alfresco.util.Pair;
+
+/**
+ * Entity bean for <b>alf_tag_scope_count</b> table.
+ * <p/>
+ * The tag name is keyed on a short version of the name and its CRC, so that tag names of any
+ * length can be counted.
+ * 
+ * @since 5.2
+ */
+public class TagScopeCountEntity
+{
+    private static final int TAG_SHORT_LENGTH = 32;
+    
+    private Long scopeNodeId;
+    private String tagName;
+    private long tagCount;
+    
+    /**
+     * Default constructor required
+     */
+    public TagScopeCountEntity()
+    {
+    }
+    
+    public TagScopeCountEntity(Long scopeNodeId, String tagName, long tagCount)
+    {
+        this.scopeNodeId = scopeNodeId;
+        this.tagName = tagName;
+        this.tagCount = tagCount;
+    }
+    
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(512);
+        sb.append("TagScopeCountEntity")
+          .append("[ scopeNodeId=").append(scopeNodeId)
+          .append(", tagName=").append(tagName)
+          .append(", tagCount=").append(tagCount)
+          .append("]");
+        return sb.toString();
+    }
+    
+    public Long getScopeNodeId()
+    {
+        return scopeNodeId;
+    }
+    
+    public void setScopeNodeId(Long scopeNodeId)
+    {
+        this.scopeNodeId = scopeNodeId;
+    }
+    
+    public String getTagName()
+    {
+        return tagName;
+    }
+    
+    public void setTagName(String tagName)
+    {
+        this.tagName = tagName;
+    }
+    
+    /**
+     * @return                  Returns the short, persistable version of the tag name
+     */
+    public String getTagShort()
+    {
+        return getTagCrcPair().getFirst();
+    }
+    
+    /**
+     * @return                  Returns the CRC of the tag name
+     */
+    public Long getTagCrc()
+    {
+        return getTagCrcPair().getSecond();
+    }
+    
+    private Pair<String, Long> getTagCrcPair()
+    {
+        return CrcHelper.getStringCrcPair(tagName, TAG_SHORT_LENGTH, true, true);
+    }
+    
+    /**
+     * @return                  Returns the number of times the tag is used or, when updating, the change to it
+     */
+    public long getTagCount()
+    {
+        return tagCount;
+    }
+    
+    public void setTagCount(long tagCount)
+    {
+        this.tagCount = tagCount;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.tagging.ibatis;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.domain.tagging.TagScopeCountDAO;
+import org.alfresco.repo.domain.tagging.TagScopeCountEntity;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ibatis.session.RowBounds;
+import org.mybatis.spring.SqlSessionTemplate;
+
+/**
+ * iBatis-specific implementation of the Tag Scope Count DAO.
+ * <p/>
+ * Counts are changed with a single <tt>update</tt> per tag; a tag is only inserted when the update
+ * finds no row for it.  Tags are changed in name order so that transactions changing the same
+ * tags lock the rows in the same order.  Any change to a tag scope removes it from the tag scope
+ * summary cache.
+ * 
+ * @since 5.2
+ */
+public class TagScopeCountDAOImpl implements TagScopeCountDAO
+{
+    private static Log logger = LogFactory.getLog(TagScopeCountDAOImpl.class);
+    
+    private static final String INSERT_TAG_SCOPE_COUNT = "alfresco.tagging.insert_TagScopeCount";
+    private static final String UPDATE_TAG_SCOPE_COUNT = "alfresco.tagging.update_TagScopeCount";
+    private static final String DELETE_EMPTY_TAG_SCOPE_COUNTS = "alfresco.tagging.delete_EmptyTagScopeCounts";
+    private static final String DELETE_TAG_SCOPE_COUNTS = "alfresco.tagging.delete_TagScopeCounts";
+    private static final String SELECT_TAG_SCOPE_COUNTS = "alfresco.tagging.select_TagScopeCounts";
+    private static final String SELECT_COUNT_TAG_SCOPE_COUNTS = "alfresco.tagging.select_CountTagScopeCounts";
+    
+    private SqlSessionTemplate template;
+    private SimpleCache<Long, List<String>> tagScopeSummaryCache;
+    
+    public final void setSqlSessionTemplate(SqlSessionTemplate sqlSessionTemplate) 
+    {
+        this.template = sqlSessionTemplate;
+    }
+    
+    /**
+     * @param tagScopeSummaryCache      the cache of tag scope summaries, keyed by tag scope node ID
+     */
+    public void setTagScopeSummaryCache(SimpleCache<Long, List<String>> tagScopeSummaryCache)
+    {
+        this.tagScopeSummaryCache = tagScopeSummaryCache;
+    }
+    
+    @Override
+    public void updateTagCounts(Long scopeNodeId, Map<String, Integer> changes)
+    {
+        boolean decremented = false;
+        for (Map.Entry<String, Integer> change : new TreeMap<String, Integer>(changes).entrySet())
+        {
+            int delta = (change.getValue() == null) ? 0 : change.getValue().intValue();
+            if (delta == 0)
+            {
+                continue;
+            }
+            TagScopeCountEntity entity = new TagScopeCountEntity(scopeNodeId, change.getKey(), delta);
+            int updated = template.update(UPDATE_TAG_SCOPE_COUNT, entity);
+            if (updated == 0 && delta > 0)
+            {
+                template.insert(INSERT_TAG_SCOPE_COUNT, entity);
+            }
+            else if (delta < 0)
+            {
+                decremented = true;
+            }
+        }
+        if (decremented)
+        {
+            template.delete(DELETE_EMPTY_TAG_SCOPE_COUNTS, scopeNodeId);
+        }
+        tagScopeSummaryCache.remove(scopeNodeId);
+        
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Updated tag counts of tag scope " + scopeNodeId + " with " + changes);
+        }
+    }
+    
+    @Override
+    public void setTagCounts(Long scopeNodeId, Map<String, Integer> counts)
+    {
+        template.delete(DELETE_TAG_SCOPE_COUNTS, scopeNodeId);
+        for (Map.Entry<String, Integer> count : new TreeMap<String, Integer>(counts).entrySet())
+        {
+            if (count.getValue() != null && count.getValue().intValue() > 0)
+            {
+                template.insert(INSERT_TAG_SCOPE_COUNT, new TagScopeCountEntity(scopeNodeId, count.getKey(), count.getValue()));
+            }
+        }
+        tagScopeSummaryCache.remove(scopeNodeId);
+    }
+    
+    @Override
+    public int deleteTagCounts(Long scopeNodeId)
+    {
+        int deleted = template.delete(DELETE_TAG_SCOPE_COUNTS, scopeNodeId);
+        tagScopeSummaryCache.remove(scopeNodeId);
+        return deleted;
+    }
+    
+    @Override
+    public List<TagScopeCountEntity> getTagCounts(Long scopeNodeId, int skipCount, int maxItems)
+    {
+        if (maxItems <= 0)
+        {
+            return Collections.emptyList();
+        }
+        if (skipCount <= 0 && maxItems == Integer.MAX_VALUE)
+        {
+            return template.selectList(SELECT_TAG_SCOPE_COUNTS, scopeNodeId);
+        }
+        return template.selectList(SELECT_TAG_SCOPE_COUNTS, scopeNodeId, new RowBounds(skipCount, maxItems));
+    }
+    
+    @Override
+    public int countTags(Long scopeNodeId)
+    {
+        Integer count = template.selectOne(SELECT_COUNT_TAG_SCOPE_COUNTS, scopeNodeId);
+        return count == null ? 0 : count.intValue();
+    }
+}
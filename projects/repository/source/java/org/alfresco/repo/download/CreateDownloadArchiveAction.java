@@ -29,7 +29,9 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.model.ForumModel;
@@ -48,9 +50,11 @@ import org.alfresco.service.cmr.download.DownloadStatus;
 import org.alfresco.service.cmr.download.DownloadStatus.Status;
 import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.view.ExporterCrawlerParameters;
+import org.alfresco.service.cmr.view.ExporterException;
 import org.alfresco.service.cmr.view.ExporterService;
 import org.alfresco.service.cmr.view.Location;
 import org.alfresco.service.namespace.QName;
@@ -84,8 +88,12 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
     private NodeService nodeService;
     private RetryingTransactionHelper transactionHelper;
     private DownloadStatusUpdateService updateService;
+    private ContentService contentService;
+    private ExecutorService prefetchExecutor;
 
     private long maximumContentSize = -1l;
+    private int prefetchCount = 8;
+    private long prefetchMaxEntrySize = 1024 * 1024;
     
     private static class SizeEstimator extends BaseExporter 
     {
@@ -166,6 +174,40 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
     {
         this.updateService = updateService;
     }
+    
+    /**
+     * Set the content service used to read content ahead of adding it to the archive.
+     */
+    public void setContentService(ContentService contentService)
+    {
+        this.contentService = contentService;
+    }
+    
+    /**
+     * Set the thread pool used to read content ahead of adding it to a streamed archive.
+     * If not set, content is read as it is added.  Archives stored as the content of the
+     * download node are written in the background, so they always read content as it is added.
+     */
+    public void setPrefetchExecutor(ExecutorService prefetchExecutor)
+    {
+        this.prefetchExecutor = prefetchExecutor;
+    }
+    
+    /**
+     * Set the number of entries to read ahead of the entry being added to the archive. 
+     */
+    public void setPrefetchCount(int prefetchCount)
+    {
+        this.prefetchCount = prefetchCount;
+    }
+    
+    /**
+     * Set the maximum size of content that is read ahead into memory.  Larger content is only opened ahead. 
+     */
+    public void setPrefetchMaxEntrySize(long prefetchMaxEntrySize)
+    {
+        this.prefetchMaxEntrySize = prefetchMaxEntrySize;
+    }
 
     /**
      * Create an archive file containing content from the repository.
@@ -190,14 +232,7 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
             public Object doWork() throws Exception
             {
         
-                ExporterCrawlerParameters crawlerParameters = new ExporterCrawlerParameters();
-                
-                Location exportFrom = new Location(downloadRequest.getRequetedNodeRefs());
-                crawlerParameters.setExportFrom(exportFrom);
-                
-                crawlerParameters.setCrawlSelf(true);
-                crawlerParameters.setExcludeChildAssocs(new QName[] {RenditionModel.ASSOC_RENDITION, ForumModel.ASSOC_DISCUSSION});
-                crawlerParameters.setExcludeAspects(new QName[] {ContentModel.ASPECT_WORKING_COPY});
+                ExporterCrawlerParameters crawlerParameters = getCrawlerParameters(downloadRequest);
         
                 // Get an estimate of the size for statuses
                 SizeEstimator estimator = new SizeEstimator(checkOutCheckInService, nodeService);
@@ -218,11 +253,112 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
 
     }
 
+    /**
+     * Write the archive for a download straight to a stream, rather than storing it as the content of the
+     * download node.  The status of the download is updated as the archive is written, as usual.
+     * 
+     * @param downloadNodeRef Download node containing information required to create the archive, which
+     *   must not have been started yet.
+     * @param output Stream to write the archive to
+     */
+    public void streamArchive(final NodeRef downloadNodeRef, OutputStream output)
+    {
+        DownloadRequest downloadRequest = downloadStorage.getDownloadRequest(downloadNodeRef);
+        ExporterCrawlerParameters crawlerParameters = getCrawlerParameters(downloadRequest);
+        
+        // Get an estimate of the size for statuses
+        SizeEstimator estimator = new SizeEstimator(checkOutCheckInService, nodeService);
+        exporterService.exportView(estimator, crawlerParameters, null);
+        
+        if (maximumContentSize > 0 && estimator.getSize() > maximumContentSize) 
+        {
+            maximumContentSizeExceeded(downloadNodeRef, estimator.getSize(), estimator.getFileCount());
+            throw new DownloadServiceException("Maximum content size exceeded for download " + downloadNodeRef, null);
+        }
+        
+        final ZipDownloadExporter handler = new ZipDownloadExporter(output, checkOutCheckInService, nodeService, transactionHelper, updateService, downloadStorage, downloadNodeRef, estimator.getSize(), estimator.getFileCount());
+        setPrefetch(handler);
+        
+        // Claim the download, so that it is only ever streamed once
+        transactionHelper.doInTransaction(new RetryingTransactionCallback<Object>()
+        {
+            @Override
+            public Object execute() throws Throwable
+            {
+                DownloadStatus status = downloadStorage.getDownloadStatus(downloadNodeRef);
+                if (status.getStatus() != Status.PENDING)
+                {
+                    throw new DownloadServiceException("Download " + downloadNodeRef + " has already been started", null);
+                }
+                status = new DownloadStatus(Status.IN_PROGRESS, 0, handler.getTotal(), 0, handler.getTotalFiles());
+                updateService.update(downloadNodeRef, status, handler.getNextSequenceNumber());
+                return null;
+            }
+        }, false, true);
+        
+        try
+        {
+            exporterService.exportView(handler, crawlerParameters, null);
+            archiveStreamingComplete(downloadNodeRef, handler);
+        }
+        catch (DownloadCancelledException ex) 
+        {
+            downloadCancelled(downloadNodeRef, handler);
+        }
+        catch (ExporterException ex)
+        {
+            // Most likely the client has gone away, so the archive can not be completed
+            downloadFailed(downloadNodeRef, handler);
+            throw new DownloadServiceException(CREATION_ERROR, ex);
+        }
+        catch (ContentIOException ex)
+        {
+            downloadFailed(downloadNodeRef, handler);
+            throw new DownloadServiceException(CREATION_ERROR, ex);
+        }
+        catch (RuntimeException ex)
+        {
+            // The download has been claimed, so it must not be left in progress
+            downloadFailed(downloadNodeRef, handler);
+            throw ex;
+        }
+        catch (Error ex)
+        {
+            downloadFailed(downloadNodeRef, handler);
+            throw ex;
+        }
+        finally
+        {
+            handler.cancelPrefetch();
+        }
+    }
+
     @Override
     protected void addParameterDefinitions(List<ParameterDefinition> paramList)
     {
     }
 
+    private ExporterCrawlerParameters getCrawlerParameters(DownloadRequest downloadRequest)
+    {
+        ExporterCrawlerParameters crawlerParameters = new ExporterCrawlerParameters();
+        
+        Location exportFrom = new Location(downloadRequest.getRequetedNodeRefs());
+        crawlerParameters.setExportFrom(exportFrom);
+        
+        crawlerParameters.setCrawlSelf(true);
+        crawlerParameters.setExcludeChildAssocs(new QName[] {RenditionModel.ASSOC_RENDITION, ForumModel.ASSOC_DISCUSSION});
+        crawlerParameters.setExcludeAspects(new QName[] {ContentModel.ASPECT_WORKING_COPY});
+        return crawlerParameters;
+    }
+    
+    private void setPrefetch(ZipDownloadExporter handler)
+    {
+        if (prefetchExecutor != null && contentService != null && prefetchCount > 0)
+        {
+            handler.setPrefetch(contentService, prefetchExecutor, prefetchCount, prefetchMaxEntrySize);
+        }
+    }
+
 
     private void maximumContentSizeExceeded(final NodeRef actionedUponNodeRef, final long size, final long fileCount)
     {
@@ -263,6 +399,22 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
     }
 
 
+    private void archiveStreamingComplete(final NodeRef actionedUponNodeRef, final ZipDownloadExporter handler)
+    {
+        //Set the status to done - the archive itself is not stored. 
+        transactionHelper.doInTransaction(new RetryingTransactionCallback<Object>()
+        {
+            @Override
+            public Object execute() throws Throwable
+            {
+                DownloadStatus status = new DownloadStatus(Status.DONE, handler.getDone(), handler.getTotal(), handler.getFilesAdded(), handler.getTotalFiles());
+                updateService.update(actionedUponNodeRef, status, handler.getNextSequenceNumber());
+                return null;
+            }
+        }, false, true);
+    }
+
+
     private void archiveCreationComplete(final NodeRef actionedUponNodeRef, final File tempFile,
                 final ZipDownloadExporter handler)
     {
@@ -316,4 +468,21 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
 
     }
 
+
+    private void downloadFailed(final NodeRef actionedUponNodeRef, final ZipDownloadExporter handler)
+    {
+        //Set the status to failed, so that the download is not left in progress. 
+        transactionHelper.doInTransaction(new RetryingTransactionCallback<Object>()
+        {
+            @Override
+            public Object execute() throws Throwable
+            {
+                DownloadStatus status = new DownloadStatus(Status.FAILED, handler.getDone(), handler.getTotal(), handler.getFilesAdded(), handler.getTotalFiles());
+                updateService.update(actionedUponNodeRef, status, handler.getNextSequenceNumber());
+                
+                return null;
+            }
+        }, false, true);
+    }
+
 }
@@ -25,6 +25,7 @@
  */
 package org.alfresco.repo.download;
 
+import java.io.OutputStream;
 import java.util.Date;
 import java.util.List;
 
@@ -50,6 +51,7 @@ public class DownloadServiceImpl implements DownloadService {
     private ActionServiceHelper actionServiceHelper;
     private DownloadStorage downloadStorage;
     private RetryingTransactionHelper transactionHelper;
+    private CreateDownloadArchiveAction createDownloadArchiveAction;
     
     // Dependency setters
     public void setActionServiceHelper(ActionServiceHelper actionServiceHelper)
@@ -67,8 +69,37 @@ public class DownloadServiceImpl implements DownloadService {
         this.downloadStorage = downloadStorage;
     }
     
+    public void setCreateDownloadArchiveAction(CreateDownloadArchiveAction createDownloadArchiveAction)
+    {
+        this.createDownloadArchiveAction = createDownloadArchiveAction;
+    }
+    
 	@Override
 	public NodeRef createDownload(final NodeRef[] requestedNodes, final boolean recursive) {
+	    NodeRef downloadNode = createDownloadNode(requestedNodes, recursive);
+	    
+	    //Trigger the action.
+	    actionServiceHelper.executeAction(downloadNode);
+	    
+	    return downloadNode;
+	}
+	
+	@Override
+	public NodeRef createStreamingDownload(NodeRef[] requestedNodes, boolean recursive)
+	{
+	    // The archive is created by streamDownload, rather than the action
+	    return createDownloadNode(requestedNodes, recursive);
+	}
+	
+	@Override
+	public void streamDownload(NodeRef downloadNode, OutputStream output)
+	{
+	    ParameterCheck.mandatory("downloadNode", downloadNode);
+	    ParameterCheck.mandatory("output", output);
+	    createDownloadArchiveAction.streamArchive(downloadNode, output);
+	}
+	
+	private NodeRef createDownloadNode(final NodeRef[] requestedNodes, final boolean recursive) {
 	    ParameterCheck.mandatory("nodeRefs", requestedNodes);
 	    if (requestedNodes.length < 1)
 	    {
@@ -96,9 +127,6 @@ public class DownloadServiceImpl implements DownloadService {
             }
         }, false, true);
 	    
-	    //Trigger the action.
-	    actionServiceHelper.executeAction(downloadNode);
-	    
 	    return downloadNode;
 	}
 
@@ -25,23 +25,37 @@
  */
 package org.alfresco.repo.download;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 
 import org.alfresco.model.ContentModel;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.cmr.coci.CheckOutCheckInService;
 import org.alfresco.service.cmr.download.DownloadStatus;
 import org.alfresco.service.cmr.download.DownloadStatus.Status;
 import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.view.ExporterContext;
@@ -56,7 +70,11 @@ import org.slf4j.LoggerFactory;
 
 
 /**
- * Handler for exporting node content to a ZIP file
+ * Handler for exporting node content to a ZIP file, or streaming it as a ZIP.
+ * <p>
+ * When {@link #setPrefetch(ContentService, ExecutorService, int, long) prefetching} is enabled, the content of
+ * the next few entries is read in parallel while the current entry is written.  Content with an already compressed
+ * mimetype is stored in the archive without compressing it again.
  * 
  * @author Alex Miller
  */
@@ -65,6 +83,33 @@ public class ZipDownloadExporter extends BaseExporter
     private static Logger log = LoggerFactory.getLogger(ZipDownloadExporter.class);
     
     private static final String PATH_SEPARATOR = "/";
+    private static final int BUFFER_SIZE = 2048 * 10;
+
+    /** Mimetypes of content that is already compressed, so not worth compressing again */
+    private static final Set<String> COMPRESSED_MIMETYPES = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            "application/zip",
+            "application/x-gzip",
+            "application/x-bzip2",
+            "application/x-7z-compressed",
+            "application/x-rar-compressed",
+            "application/java-archive",
+            "application/vnd.openxmlformats-officedocument.wordprocessingml.document",
+            "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
+            "application/vnd.openxmlformats-officedocument.presentationml.presentation",
+            "application/vnd.oasis.opendocument.text",
+            "application/vnd.oasis.opendocument.spreadsheet",
+            "application/vnd.oasis.opendocument.presentation",
+            "image/jpeg",
+            "image/png",
+            "image/gif",
+            "audio/mpeg",
+            "audio/mp4",
+            "audio/ogg",
+            "video/mp4",
+            "video/mpeg",
+            "video/quicktime",
+            "video/webm",
+            "video/ogg")));
 
     protected ZipArchiveOutputStream zipStream;
 
@@ -82,8 +127,16 @@ public class ZipDownloadExporter extends BaseExporter
     private Deque<Pair<String, NodeRef>> path = new LinkedList<Pair<String, NodeRef>>();
     private String currentName;
 
+    private File zipFile;
     private OutputStream outputStream;
 
+    private ContentService contentService;
+    private ExecutorService prefetchExecutor;
+    private int prefetchCount;
+    private long prefetchMaxEntrySize;
+    private Deque<PendingEntry> pendingEntries = new LinkedList<PendingEntry>();
+    private volatile boolean prefetchCancelled;
+
     /**
      * Construct
      *
@@ -98,29 +151,72 @@ public class ZipDownloadExporter extends BaseExporter
      * @param totalFileCount long
      */
     public ZipDownloadExporter(File zipFile, CheckOutCheckInService checkOutCheckInService, NodeService nodeService, RetryingTransactionHelper transactionHelper, DownloadStatusUpdateService updateService, DownloadStorage downloadStorage, NodeRef downloadNodeRef, long total, long totalFileCount)
+    {
+        this((OutputStream) null, checkOutCheckInService, nodeService, transactionHelper, updateService, downloadStorage, downloadNodeRef, total, totalFileCount);
+        this.zipFile = zipFile;
+    }
+
+    /**
+     * Construct an exporter that streams the ZIP as it is created
+     *
+     * @param outputStream OutputStream to write the ZIP to
+     * @param checkOutCheckInService CheckOutCheckInService
+     * @param nodeService NodeService
+     * @param transactionHelper RetryingTransactionHelper
+     * @param updateService DownloadStatusUpdateService
+     * @param downloadStorage DownloadStorage
+     * @param downloadNodeRef NodeRef
+     * @param total long
+     * @param totalFileCount long
+     */
+    public ZipDownloadExporter(OutputStream outputStream, CheckOutCheckInService checkOutCheckInService, NodeService nodeService, RetryingTransactionHelper transactionHelper, DownloadStatusUpdateService updateService, DownloadStorage downloadStorage, NodeRef downloadNodeRef, long total, long totalFileCount)
     {
         super(checkOutCheckInService, nodeService);
-        try
-        {
-            this.outputStream = new FileOutputStream(zipFile);
-            this.updateService = updateService;
-            this.transactionHelper = transactionHelper;
-            this.downloadStorage = downloadStorage;
-            
-            this.downloadNodeRef = downloadNodeRef;
-            this.total = total;
-            this.totalFileCount = totalFileCount;
-        }
-        catch (FileNotFoundException e)
-        {
-            throw new ExporterException("Failed to create zip file", e);
-        }
+        this.outputStream = outputStream;
+        this.updateService = updateService;
+        this.transactionHelper = transactionHelper;
+        this.downloadStorage = downloadStorage;
+        
+        this.downloadNodeRef = downloadNodeRef;
+        this.total = total;
+        this.totalFileCount = totalFileCount;
+    }
+
+    /**
+     * Read the content of upcoming entries in parallel with writing the current entry.
+     *
+     * @param contentService ContentService used to read the content by URL
+     * @param prefetchExecutor ExecutorService to read the content with
+     * @param prefetchCount the number of entries to read ahead
+     * @param prefetchMaxEntrySize content up to this size is read into memory ahead, larger content is only opened
+     */
+    public void setPrefetch(ContentService contentService, ExecutorService prefetchExecutor, int prefetchCount, long prefetchMaxEntrySize)
+    {
+        this.contentService = contentService;
+        this.prefetchExecutor = prefetchExecutor;
+        this.prefetchCount = prefetchCount;
+        this.prefetchMaxEntrySize = prefetchMaxEntrySize;
     }
 
     @Override
     public void start(final ExporterContext context)
     {
-        zipStream = new ZipArchiveOutputStream(outputStream);
+        if (zipFile != null)
+        {
+            // A file allows entries to be stored without knowing their size and CRC up front
+            try
+            {
+                zipStream = new ZipArchiveOutputStream(zipFile);
+            }
+            catch (IOException e)
+            {
+                throw new ExporterException("Failed to create zip file", e);
+            }
+        }
+        else
+        {
+            zipStream = new ZipArchiveOutputStream(outputStream);
+        }
         // NOTE: This encoding allows us to workaround bug...
         //       http://bugs.sun.com/bugdatabase/view_bug.do;:WuuT?bug_id=4820807
         zipStream.setEncoding("UTF-8");
@@ -137,19 +233,33 @@ public class ZipDownloadExporter extends BaseExporter
         if (ContentModel.TYPE_FOLDER.equals(nodeService.getType(nodeRef)))
         {
             String path = getPath() + PATH_SEPARATOR;
-            ZipArchiveEntry archiveEntry = new ZipArchiveEntry(path);
-            try
+            if (prefetchExecutor != null)
             {
-                zipStream.putArchiveEntry(archiveEntry);
-                zipStream.closeArchiveEntry();
+                // Keep the entries in order
+                pendingEntries.add(new PendingEntry(path, null, null));
+                writePendingEntries(prefetchCount);
             }
-            catch (IOException e)
+            else
             {
-                throw new ExporterException("Unexpected IOException adding folder entry", e);
+                writeFolderEntry(path);
             }
         }
     }
     
+    private void writeFolderEntry(String path)
+    {
+        ZipArchiveEntry archiveEntry = new ZipArchiveEntry(path);
+        try
+        {
+            zipStream.putArchiveEntry(archiveEntry);
+            zipStream.closeArchiveEntry();
+        }
+        catch (IOException e)
+        {
+            throw new ExporterException("Unexpected IOException adding folder entry", e);
+        }
+    }
+    
     @Override
     public void contentImpl(NodeRef nodeRef, QName property, InputStream content, ContentData contentData, int index)
     {
@@ -159,21 +269,202 @@ public class ZipDownloadExporter extends BaseExporter
             return;
         }
         
+        if (prefetchExecutor != null)
+        {
+            // The export stream is closed once this returns, so read the content again ahead of writing it
+            final String contentUrl = contentData.getContentUrl();
+            final String runAsUser = AuthenticationUtil.getRunAsUser();
+            Future<PrefetchedContent> prefetched = prefetchExecutor.submit(new Callable<PrefetchedContent>()
+            {
+                @Override
+                public PrefetchedContent call() throws Exception
+                {
+                    return AuthenticationUtil.runAs(new RunAsWork<PrefetchedContent>()
+                    {
+                        @Override
+                        public PrefetchedContent doWork() throws Exception
+                        {
+                            return prefetch(contentUrl);
+                        }
+                    }, runAsUser);
+                }
+            });
+            pendingEntries.add(new PendingEntry(getPath(), contentData.getMimetype(), prefetched));
+            writePendingEntries(prefetchCount);
+            return;
+        }
+        
+        try
+        {
+            writeContentEntry(getPath(), contentData.getMimetype(), content, null);
+        }
+        catch (IOException e)
+        {
+            throw new ExporterException("Failed to zip export stream", e);
+        }
+    }
+    
+    private void writeContentEntry(String path, String mimetype, InputStream content, PrefetchedContent prefetched) throws IOException
+    {
+        // ALF-2016
+        ZipArchiveEntry zipEntry=new ZipArchiveEntry(path);
+        boolean uncompressed = false;
+        if (mimetype != null && COMPRESSED_MIMETYPES.contains(mimetype))
+        {
+            if (zipStream.isSeekable())
+            {
+                zipEntry.setMethod(ZipArchiveEntry.STORED);
+            }
+            else if (prefetched != null && prefetched.bytes != null)
+            {
+                // When streaming, the size and CRC of a stored entry must be known before it is written
+                zipEntry.setMethod(ZipArchiveEntry.STORED);
+                zipEntry.setSize(prefetched.bytes.length);
+                zipEntry.setCrc(prefetched.crc);
+            }
+            else
+            {
+                zipStream.setLevel(Deflater.NO_COMPRESSION);
+                uncompressed = true;
+            }
+        }
+        zipStream.putArchiveEntry(zipEntry);
+        
+        // copy export stream to zip
+        copyStream(zipStream, content);
+        
+        zipStream.closeArchiveEntry();
+        if (uncompressed)
+        {
+            zipStream.setLevel(Deflater.DEFAULT_COMPRESSION);
+        }
+        filesAddedCount = filesAddedCount + 1;
+    }
+    
+    /**
+     * Read content ahead of writing it.
+     * 
+     * @return the content, or <tt>null</tt> if it no longer exists
+     */
+    private PrefetchedContent prefetch(String contentUrl) throws IOException
+    {
+        ContentReader reader = contentService.getRawReader(contentUrl);
+        if (prefetchCancelled || !reader.exists())
+        {
+            return null;
+        }
+        InputStream in = reader.getContentInputStream();
+        if (reader.getSize() > prefetchMaxEntrySize)
+        {
+            return new PrefetchedContent(in);
+        }
         try
         {
-            // ALF-2016
-            ZipArchiveEntry zipEntry=new ZipArchiveEntry(getPath());
-            zipStream.putArchiveEntry(zipEntry);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) reader.getSize());
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                bytes.write(buffer, 0, read);
+            }
+            return new PrefetchedContent(bytes.toByteArray());
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+    
+    /**
+     * Write pending entries, oldest first, until no more than the given number are left.
+     */
+    private void writePendingEntries(int keep)
+    {
+        while (pendingEntries.size() > keep)
+        {
+            PendingEntry entry = pendingEntries.removeFirst();
+            if (entry.prefetched == null)
+            {
+                writeFolderEntry(entry.path);
+                continue;
+            }
             
-            // copy export stream to zip
-            copyStream(zipStream, content);
+            PrefetchedContent prefetched;
+            try
+            {
+                prefetched = entry.prefetched.get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new ExporterException("Interrupted reading content for " + entry.path, e);
+            }
+            catch (ExecutionException e)
+            {
+                throw new ExporterException("Failed to read content for " + entry.path, e.getCause());
+            }
+            if (prefetched == null)
+            {
+                log.warn("Skipping {} since its content no longer exists", entry.path);
+                continue;
+            }
             
-            zipStream.closeArchiveEntry();
-            filesAddedCount = filesAddedCount + 1;
+            InputStream content = prefetched.bytes != null ? new ByteArrayInputStream(prefetched.bytes) : prefetched.stream;
+            try
+            {
+                writeContentEntry(entry.path, entry.mimetype, content, prefetched);
+            }
+            catch (IOException e)
+            {
+                throw new ExporterException("Failed to zip export stream", e);
+            }
+            finally
+            {
+                closeQuietly(content);
+            }
+        }
+    }
+    
+    /**
+     * Discard any content read ahead but not written, e.g. if the export fails or is cancelled.
+     */
+    public void cancelPrefetch()
+    {
+        prefetchCancelled = true;
+        for (PendingEntry entry : pendingEntries)
+        {
+            if (entry.prefetched != null && !entry.prefetched.cancel(false))
+            {
+                try
+                {
+                    PrefetchedContent prefetched = entry.prefetched.get();
+                    if (prefetched != null && prefetched.stream != null)
+                    {
+                        closeQuietly(prefetched.stream);
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                catch (ExecutionException e)
+                {
+                    // Nothing was opened
+                }
+            }
+        }
+        pendingEntries.clear();
+    }
+    
+    private static void closeQuietly(InputStream in)
+    {
+        try
+        {
+            in.close();
         }
         catch (IOException e)
         {
-            throw new ExporterException("Failed to zip export stream", e);
+            log.debug("Failed to close content stream", e);
         }
     }
     
@@ -186,6 +477,7 @@ public class ZipDownloadExporter extends BaseExporter
     @Override
     public void end()
     {
+        writePendingEntries(0);
         try
         {
             zipStream.close();
@@ -230,8 +522,8 @@ public class ZipDownloadExporter extends BaseExporter
     private void copyStream(OutputStream output, InputStream in)
         throws IOException
     {
-        byte[] buffer = new byte[2048 * 10];
-        int read = in.read(buffer, 0, 2048 *10);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read = in.read(buffer, 0, BUFFER_SIZE);
         int i = 0;
         while (read != -1)
         {
@@ -245,7 +537,7 @@ public class ZipDownloadExporter extends BaseExporter
                 checkCancelled();
             }
             
-            read = in.read(buffer, 0, 2048 *10);
+            read = in.read(buffer, 0, BUFFER_SIZE);
         }
     }
     
@@ -306,4 +598,47 @@ public class ZipDownloadExporter extends BaseExporter
     {
         return totalFileCount;
     }
+    
+    /**
+     * An entry waiting to be written, with its content being read ahead.  Folders have no content.
+     */
+    private static class PendingEntry
+    {
+        private final String path;
+        private final String mimetype;
+        private final Future<PrefetchedContent> prefetched;
+        
+        private PendingEntry(String path, String mimetype, Future<PrefetchedContent> prefetched)
+        {
+            this.path = path;
+            this.mimetype = mimetype;
+            this.prefetched = prefetched;
+        }
+    }
+    
+    /**
+     * Content read into memory, with its CRC, or an opened stream for large content.
+     */
+    private static class PrefetchedContent
+    {
+        private final byte[] bytes;
+        private final long crc;
+        private final InputStream stream;
+        
+        private PrefetchedContent(byte[] bytes)
+        {
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            this.bytes = bytes;
+            this.crc = crc.getValue();
+            this.stream = null;
+        }
+        
+        private PrefetchedContent(InputStream stream)
+        {
+            this.bytes = null;
+            this.crc = -1L;
+            this.stream = stream;
+        }
+    }
 }
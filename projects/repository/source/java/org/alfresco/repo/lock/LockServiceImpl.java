@@ -31,6 +31,7 @@ import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -104,6 +105,7 @@ public class LockServiceImpl implements LockService,
     /** Key to the nodes ref's to ignore when checking for locks */
     private static final String KEY_IGNORE_NODES = "lockService.ignoreNodes";
     private static final Object KEY_MODIFIED_NODES = "lockService.lockedNode";
+    private static final String KEY_EPHEMERAL_BATCH = "lockService.ephemeralBatch";
     
     private NodeService nodeService;
     private TenantService tenantService;
@@ -326,14 +328,27 @@ public class LockServiceImpl implements LockService,
     @Extend(traitAPI=LockServiceTrait.class,extensionAPI=LockServiceExtension.class)
     public void lock(NodeRef nodeRef, LockType lockType, int timeToExpire, Lifetime lifetime, boolean lockChildren)
     {
-        lock(nodeRef, lockType, timeToExpire, lifetime);
+        boolean batch = lockChildren && beginEphemeralBatch();
+        boolean done = false;
+        try
+        {
+            lock(nodeRef, lockType, timeToExpire, lifetime);
 
-        if (lockChildren)
+            if (lockChildren)
+            {
+                Collection<ChildAssociationRef> childAssocRefs = this.nodeService.getChildAssocs(nodeRef);
+                for (ChildAssociationRef childAssocRef : childAssocRefs)
+                {
+                    lock(childAssocRef.getChildRef(), lockType, timeToExpire, lifetime, lockChildren);
+                }
+            }
+            done = true;
+        }
+        finally
         {
-            Collection<ChildAssociationRef> childAssocRefs = this.nodeService.getChildAssocs(nodeRef);
-            for (ChildAssociationRef childAssocRef : childAssocRefs)
+            if (batch)
             {
-                lock(childAssocRef.getChildRef(), lockType, timeToExpire, lifetime, lockChildren);
+                endEphemeralBatch(done);
             }
         }
     }
@@ -404,7 +419,7 @@ public class LockServiceImpl implements LockService,
                 // Store the lock only in memory.
                 LockState lock = LockState.createLock(nodeRef, lockType, userName,
                             expiryDate, lifetime, additionalInfo);
-                lockStore.set(nodeRef, lock);
+                setEphemeralLockState(nodeRef, lock);
                 // Record the NodeRef being locked and its last known lockstate. This allows
                 // it to be reverted to this state on rollback.
                 TransactionalResourceHelper.getMap(KEY_MODIFIED_NODES).put(nodeRef, currentLockInfo);
@@ -475,10 +490,23 @@ public class LockServiceImpl implements LockService,
     public void lock(Collection<NodeRef> nodeRefs, LockType lockType, int timeToExpire)
             throws UnableToAquireLockException
     {
-        // Lock each of the specifed nodes
-        for (NodeRef nodeRef : nodeRefs)
+        boolean batch = beginEphemeralBatch();
+        boolean done = false;
+        try
+        {
+            // Lock each of the specifed nodes
+            for (NodeRef nodeRef : nodeRefs)
+            {
+                lock(nodeRef, lockType, timeToExpire);
+            }
+            done = true;
+        }
+        finally
         {
-            lock(nodeRef, lockType, timeToExpire);
+            if (batch)
+            {
+                endEphemeralBatch(done);
+            }
         }
     }    
 
@@ -509,6 +537,24 @@ public class LockServiceImpl implements LockService,
     @Extend(traitAPI=LockServiceTrait.class,extensionAPI=LockServiceExtension.class)
     public void unlock(NodeRef nodeRef, boolean unlockChildren, boolean allowCheckedOut)
             throws UnableToReleaseLockException
+    {
+        boolean batch = unlockChildren && beginEphemeralBatch();
+        boolean done = false;
+        try
+        {
+            unlockImpl(nodeRef, unlockChildren, allowCheckedOut);
+            done = true;
+        }
+        finally
+        {
+            if (batch)
+            {
+                endEphemeralBatch(done);
+            }
+        }
+    }
+
+    private void unlockImpl(NodeRef nodeRef, boolean unlockChildren, boolean allowCheckedOut)
     {
         // Unlock the parent
         nodeRef = tenantService.getName(nodeRef);
@@ -548,7 +594,7 @@ public class LockServiceImpl implements LockService,
             else if (lifetime == Lifetime.EPHEMERAL)
             {
                 // Remove the ephemeral lock.
-                lockStore.set(nodeRef, LockState.createUnlocked(nodeRef));
+                setEphemeralLockState(nodeRef, LockState.createUnlocked(nodeRef));
                 nodeIndexer.indexUpdateNode(nodeRef);
             }
             else
@@ -574,10 +620,81 @@ public class LockServiceImpl implements LockService,
     @Extend(traitAPI=LockServiceTrait.class,extensionAPI=LockServiceExtension.class)
     public void unlock(Collection<NodeRef> nodeRefs) throws UnableToReleaseLockException
     {
-        for (NodeRef nodeRef : nodeRefs)
+        boolean batch = beginEphemeralBatch();
+        boolean done = false;
+        try
+        {
+            for (NodeRef nodeRef : nodeRefs)
+            {
+                unlock(nodeRef);
+            }
+            done = true;
+        }
+        finally
+        {
+            if (batch)
+            {
+                endEphemeralBatch(done);
+            }
+        }
+    }
+
+    /**
+     * Start collecting the ephemeral lock states set in this transaction, so that they can be placed into
+     * the lock store together.  Used when locking or unlocking many nodes, such as a folder and its children.
+     * 
+     * @return              <tt>true</tt> if a batch was started or <tt>false</tt> if one is already in progress
+     */
+    private boolean beginEphemeralBatch()
+    {
+        if (AlfrescoTransactionSupport.getResource(KEY_EPHEMERAL_BATCH) != null)
+        {
+            return false;
+        }
+        AlfrescoTransactionSupport.bindResource(KEY_EPHEMERAL_BATCH, new LinkedHashMap<NodeRef, LockState>());
+        return true;
+    }
+
+    /**
+     * Finish the batch started by {@link #beginEphemeralBatch()}.
+     * 
+     * @param apply         <tt>true</tt> to place the collected lock states into the lock store or
+     *                      <tt>false</tt> to discard them
+     */
+    @SuppressWarnings("unchecked")
+    private void endEphemeralBatch(boolean apply)
+    {
+        Map<NodeRef, LockState> batch = (Map<NodeRef, LockState>) AlfrescoTransactionSupport.getResource(KEY_EPHEMERAL_BATCH);
+        AlfrescoTransactionSupport.unbindResource(KEY_EPHEMERAL_BATCH);
+        if (apply && !batch.isEmpty())
+        {
+            lockStore.setAll(batch);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void setEphemeralLockState(NodeRef nodeRef, LockState lockState)
+    {
+        Map<NodeRef, LockState> batch = (Map<NodeRef, LockState>) AlfrescoTransactionSupport.getResource(KEY_EPHEMERAL_BATCH);
+        if (batch != null)
+        {
+            batch.put(nodeRef, lockState);
+        }
+        else
+        {
+            lockStore.set(nodeRef, lockState);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private LockState getEphemeralLockState(NodeRef nodeRef)
+    {
+        Map<NodeRef, LockState> batch = (Map<NodeRef, LockState>) AlfrescoTransactionSupport.getResource(KEY_EPHEMERAL_BATCH);
+        if (batch != null && batch.containsKey(nodeRef))
         {
-            unlock(nodeRef);
+            return batch.get(nodeRef);
         }
+        return lockStore.get(nodeRef);
     }
 
     /**
@@ -917,7 +1034,7 @@ public class LockServiceImpl implements LockService,
     {
         // Check in-memory for ephemeral locks first.
         nodeRef = tenantService.getName(nodeRef);
-        LockState lockState = lockStore.get(nodeRef);
+        LockState lockState = getEphemeralLockState(nodeRef);
         
         if (lockState != null)
         {
@@ -25,9 +25,14 @@
  */
 package org.alfresco.repo.lock.mem;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
 
 import org.alfresco.repo.transaction.TransactionalResourceHelper;
 import org.alfresco.service.cmr.repository.NodeRef;
@@ -106,6 +111,12 @@ public abstract class AbstractLockStore<T extends ConcurrentMap<NodeRef, LockSta
             // Use ConcurrentMap.replace(key, old, new) so that we can ensure we don't encounter a
             // 'lost update' (i.e. someone else has locked a node while we were thinking about it).
             updated = map.replace(nodeRef, previousLockState, lockState);
+            if (!updated && !isLive(previousLockState, currentTimeMillis()))
+            {
+                // The previous state was not a lock and may since have been evicted,
+                // in which case nobody else has locked the node in the meantime.
+                updated = (map.putIfAbsent(nodeRef, lockState) == null);
+            }
         }
         else
         {
@@ -117,6 +128,7 @@ public abstract class AbstractLockStore<T extends ConcurrentMap<NodeRef, LockSta
         
         if (!updated)
         {
+            onConflict(nodeRef);
             String msg = String.format("Attempt to update lock state failed, old=%s, new=%s, noderef=%s",
                         previousLockState, lockState, nodeRef);
             throw new ConcurrencyFailureException(msg);
@@ -128,7 +140,108 @@ public abstract class AbstractLockStore<T extends ConcurrentMap<NodeRef, LockSta
             {
                 txMap.put(nodeRef, lockState);
             }
+            onSet(nodeRef, lockState);
+        }
+    }
+
+    @Override
+    public void setAll(Map<NodeRef, LockState> lockStates)
+    {
+        Map<NodeRef, LockState> previousLockStates = new HashMap<NodeRef, LockState>(lockStates.size() * 2);
+        List<NodeRef> updatedNodeRefs = new ArrayList<NodeRef>(lockStates.size());
+        try
+        {
+            for (Map.Entry<NodeRef, LockState> entry : lockStates.entrySet())
+            {
+                NodeRef nodeRef = entry.getKey();
+                previousLockStates.put(nodeRef, get(nodeRef));
+                set(nodeRef, entry.getValue());
+                updatedNodeRefs.add(nodeRef);
+            }
+        }
+        catch (ConcurrencyFailureException e)
+        {
+            // Put back the lock states that were set, so that none of the batch is applied.
+            Map<NodeRef, LockState> txMap = getTxMap();
+            for (NodeRef nodeRef : updatedNodeRefs)
+            {
+                LockState previousLockState = previousLockStates.get(nodeRef);
+                if (restore(nodeRef, lockStates.get(nodeRef), previousLockState) && previousLockState != null)
+                {
+                    onSet(nodeRef, previousLockState);
+                }
+                if (txMap != null)
+                {
+                    txMap.put(nodeRef, previousLockState);
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Puts back the previous lock state of a node, but only if the store still holds this very
+     * lock state: an equal one set by someone else since must be left alone.
+     * 
+     * @param lockState         the lock state that was set
+     * @param previousLockState the lock state to put back or <tt>null</tt> to remove the lock state
+     * @return                  <tt>true</tt> if the previous lock state was put back
+     */
+    private boolean restore(NodeRef nodeRef, final LockState lockState, final LockState previousLockState)
+    {
+        final boolean[] restored = new boolean[1];
+        map.computeIfPresent(nodeRef, new BiFunction<NodeRef, LockState, LockState>()
+        {
+            @Override
+            public LockState apply(NodeRef key, LockState currentLockState)
+            {
+                restored[0] = (currentLockState == lockState);
+                return restored[0] ? previousLockState : currentLockState;
+            }
+        });
+        return restored[0];
+    }
+
+    /**
+     * Called once a lock state has been placed into the store.
+     * 
+     * @param nodeRef           the node
+     * @param lockState         the new lock state of the node
+     */
+    protected void onSet(NodeRef nodeRef, LockState lockState)
+    {
+    }
+
+    /**
+     * Called when a lock state could not be placed into the store because the node's
+     * lock state was changed by someone else.
+     * 
+     * @param nodeRef           the node
+     */
+    protected void onConflict(NodeRef nodeRef)
+    {
+    }
+
+    /**
+     * @return                  the current time, in milliseconds, that lock states expire by
+     */
+    protected long currentTimeMillis()
+    {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * @param now               the current time, in milliseconds
+     * @return                  <tt>true</tt> if the lock state is a lock that has not expired by the given time
+     */
+    protected static boolean isLive(LockState lockState, long now)
+    {
+        if (!lockState.isLockInfo())
+        {
+            return false;
         }
+        Date expires = lockState.getExpires();
+        return (expires == null || expires.getTime() > now);
     }
 
 
@@ -25,6 +25,10 @@
  */
 package org.alfresco.repo.lock.mem;
 
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.alfresco.repo.management.DynamicMBeanExportOperations;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -36,6 +40,17 @@ import org.apache.commons.logging.LogFactory;
 public class DefaultLockStoreFactory implements LockStoreFactory
 {
     private static final Log log = LogFactory.getLog(DefaultLockStoreFactory.class);
+    private static final String MBEAN_NAME = "Alfresco:Name=LockStore";
+    
+    private DynamicMBeanExportOperations mbeanExporter;
+    
+    /**
+     * @param mbeanExporter         optional exporter used to expose the lock store's statistics over JMX
+     */
+    public void setMbeanExporter(DynamicMBeanExportOperations mbeanExporter)
+    {
+        this.mbeanExporter = mbeanExporter;
+    }
     
     @Override
     public LockStore createLockStore()
@@ -44,7 +59,18 @@ public class DefaultLockStoreFactory implements LockStoreFactory
         {
             log.debug("Creating LockStore.");
         }
-        LockStore lockStore = new LockStoreImpl();
+        LockStoreImpl lockStore = new LockStoreImpl();
+        if (mbeanExporter != null)
+        {
+            try
+            {
+                mbeanExporter.registerMBean(lockStore, new ObjectName(MBEAN_NAME));
+            }
+            catch (MalformedObjectNameException e)
+            {
+                throw new IllegalStateException("Invalid MBean name: " + MBEAN_NAME, e);
+            }
+        }
         return lockStore;
     }
 
@@ -25,6 +25,7 @@
  */
 package org.alfresco.repo.lock.mem;
 
+import java.util.Map;
 import java.util.Set;
 
 import org.alfresco.service.cmr.repository.NodeRef;
@@ -40,6 +41,15 @@ public interface LockStore
 {
     LockState get(NodeRef nodeRef);
     void set(NodeRef nodeRef, LockState lockState);
+    
+    /**
+     * Set the lock state of several nodes at once, such as when locking a folder and its children.
+     * Either all of the lock states are set or, if any of them cannot be set, none are.
+     * 
+     * @param lockStates        the lock state to set for each node
+     * @since 5.2
+     */
+    void setAll(Map<NodeRef, LockState> lockStates);
     public Set<NodeRef> getNodes();
     
     /**
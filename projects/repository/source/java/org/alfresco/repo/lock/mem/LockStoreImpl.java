@@ -25,28 +25,59 @@
  */
 package org.alfresco.repo.lock.mem;
 
+import java.time.Clock;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
 
 import org.alfresco.repo.lock.LockServiceImpl;
 import org.alfresco.service.cmr.repository.NodeRef;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-
 /**
- * {@link LockStore} implementation backed by a Google {@link ConcurrentMap}.
+ * {@link LockStore} implementation backed by a striped {@link ConcurrentHashMap}.
+ * <p>
+ * Each lock state is removed from the store once the lock expires or, at the latest, once the
+ * store's time-to-live has passed since it was set.  Lock states that are not locks, such as those
+ * left by an unlock, are removed on the next tick.  Expiry is driven by a hashed timing wheel with
+ * one bucket per tick: setting a lock state adds it to the bucket of the tick it expires on and each
+ * tick only the entries in its own bucket are looked at.  Each node has at most one entry in the
+ * wheel: setting a new lock state replaces the entry of the previous one.  The wheel is advanced by
+ * the callers of the store as time passes, so no thread is needed to expire lock states.
  * 
  * @author Matt Ward
  */
-public class LockStoreImpl extends AbstractLockStore<ConcurrentMap<NodeRef, LockState>>
+public class LockStoreImpl extends AbstractLockStore<ConcurrentMap<NodeRef, LockState>> implements LockStoreImplMBean
 {
+    /** The number of buckets in the timing wheel, a power of two */
+    private static final int WHEEL_SIZE = 1024;
+    /** The time covered by each bucket of the timing wheel */
+    private static final long TICK_MS = 1000L;
+    private static final int CONCURRENCY_LEVEL = 64;
+    
+    private final long ttlMs;
+    private final Clock clock;
+    private final Set<Expiry>[] wheel;
+    /** The entry in the timing wheel of each node's current lock state */
+    private final ConcurrentMap<NodeRef, Expiry> expiries;
+    /** The last tick whose bucket has been (or is being) expired */
+    private final AtomicLong lastTick;
+    
+    private final AtomicLong setCount = new AtomicLong();
+    private final AtomicLong conflictCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+    
     /**
      * Default constructor.
      */
     public LockStoreImpl()
     {
-        super(createMap(LockServiceImpl.MAX_EPHEMERAL_LOCK_SECONDS, TimeUnit.SECONDS));
+        this(LockServiceImpl.MAX_EPHEMERAL_LOCK_SECONDS);
     }
     
     /**
@@ -56,15 +87,226 @@ public class LockStoreImpl extends AbstractLockStore<ConcurrentMap<NodeRef, Lock
      */
     public LockStoreImpl(int ephemeralTTLSeconds)
     {
-        super(createMap(ephemeralTTLSeconds, TimeUnit.SECONDS));
+        this(ephemeralTTLSeconds, Clock.systemUTC());
     }
     
-    private static ConcurrentMap<NodeRef, LockState> createMap(long expiry, TimeUnit timeUnit)
+    /**
+     * Constructor allowing specification of TTLs and of the clock that lock states expire by.
+     * 
+     * @param ephemeralTTLSeconds int
+     * @param clock Clock
+     */
+    @SuppressWarnings("unchecked")
+    public LockStoreImpl(int ephemeralTTLSeconds, Clock clock)
+    {
+        super(new ConcurrentHashMap<NodeRef, LockState>(1024, 0.75f, CONCURRENCY_LEVEL));
+        this.ttlMs = TimeUnit.SECONDS.toMillis(ephemeralTTLSeconds);
+        this.clock = clock;
+        this.wheel = new Set[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++)
+        {
+            wheel[i] = Collections.newSetFromMap(new ConcurrentHashMap<Expiry, Boolean>());
+        }
+        this.expiries = new ConcurrentHashMap<NodeRef, Expiry>(1024, 0.75f, CONCURRENCY_LEVEL);
+        this.lastTick = new AtomicLong(clock.millis() / TICK_MS);
+    }
+    
+    @Override
+    public LockState get(NodeRef nodeRef)
+    {
+        expire(clock.millis());
+        return super.get(nodeRef);
+    }
+
+    @Override
+    public void set(NodeRef nodeRef, LockState lockState)
+    {
+        expire(clock.millis());
+        super.set(nodeRef, lockState);
+    }
+
+    @Override
+    protected void onSet(NodeRef nodeRef, LockState lockState)
+    {
+        setCount.incrementAndGet();
+        long now = clock.millis();
+        long expiresAt = now + ttlMs;
+        if (!lockState.isLockInfo())
+        {
+            expiresAt = now;
+        }
+        else
+        {
+            Date expires = lockState.getExpires();
+            if (expires != null && expires.getTime() < expiresAt)
+            {
+                expiresAt = expires.getTime();
+            }
+        }
+        // An entry is only expired once its tick has completely passed
+        long tick = Math.max(expiresAt / TICK_MS, lastTick.get()) + 1L;
+        Expiry expiry = new Expiry(nodeRef, lockState, tick);
+        Expiry previous = expiries.put(nodeRef, expiry);
+        if (previous != null)
+        {
+            // The previous lock state has been replaced, so must not be expired
+            getBucket(previous.tick).remove(previous);
+        }
+        getBucket(tick).add(expiry);
+    }
+
+    @Override
+    protected long currentTimeMillis()
+    {
+        return clock.millis();
+    }
+
+    @Override
+    protected void onConflict(NodeRef nodeRef)
+    {
+        conflictCount.incrementAndGet();
+    }
+
+    /**
+     * Advance the timing wheel to the given time, removing the lock states that have expired.
+     * Each tick is claimed by a single caller; other callers carry on without waiting.
+     */
+    private void expire(long now)
+    {
+        long nowTick = now / TICK_MS;
+        long tick = lastTick.get();
+        if (nowTick - tick > WHEEL_SIZE)
+        {
+            // Nothing has been expired for a whole turn of the wheel: each bucket need only be looked at once
+            if (lastTick.compareAndSet(tick, nowTick - WHEEL_SIZE))
+            {
+                tick = nowTick - WHEEL_SIZE;
+            }
+            else
+            {
+                tick = lastTick.get();
+            }
+        }
+        while (tick < nowTick)
+        {
+            if (lastTick.compareAndSet(tick, tick + 1L))
+            {
+                expireBucket(tick + 1L);
+            }
+            tick = lastTick.get();
+        }
+    }
+
+    private void expireBucket(long tick)
+    {
+        Iterator<Expiry> iterator = getBucket(tick).iterator();
+        while (iterator.hasNext())
+        {
+            final Expiry expiry = iterator.next();
+            if (expiry.tick > tick)
+            {
+                // Due on a later turn of the wheel
+                continue;
+            }
+            iterator.remove();
+            if (!expiries.remove(expiry.nodeRef, expiry))
+            {
+                // The lock state has been replaced since
+                continue;
+            }
+            // Only remove this very lock state: an equal one set since must be left alone
+            final boolean[] removed = new boolean[1];
+            map.computeIfPresent(expiry.nodeRef, new BiFunction<NodeRef, LockState, LockState>()
+            {
+                @Override
+                public LockState apply(NodeRef nodeRef, LockState lockState)
+                {
+                    removed[0] = (lockState == expiry.lockState);
+                    return removed[0] ? null : lockState;
+                }
+            });
+            if (removed[0])
+            {
+                expiredCount.incrementAndGet();
+            }
+        }
+    }
+
+    private Set<Expiry> getBucket(long tick)
+    {
+        return wheel[(int) (tick & (WHEEL_SIZE - 1))];
+    }
+
+    @Override
+    public void clear()
+    {
+        super.clear();
+        expiries.clear();
+        for (Set<Expiry> bucket : wheel)
+        {
+            bucket.clear();
+        }
+    }
+
+    @Override
+    public int getSize()
+    {
+        return map.size();
+    }
+
+    @Override
+    public int getLockCount()
+    {
+        int count = 0;
+        long now = clock.millis();
+        for (LockState lockState : map.values())
+        {
+            if (isLive(lockState, now))
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public long getSetCount()
+    {
+        return setCount.get();
+    }
+
+    @Override
+    public long getConflictCount()
+    {
+        return conflictCount.get();
+    }
+
+    @Override
+    public long getExpiredCount()
+    {
+        return expiredCount.get();
+    }
+
+    @Override
+    public long getTimeToLiveSeconds()
+    {
+        return TimeUnit.MILLISECONDS.toSeconds(ttlMs);
+    }
+
+    /**
+     * A lock state waiting in the timing wheel to be expired.
+     */
+    private static class Expiry
     {
-        Cache<NodeRef, LockState> cache = CacheBuilder.newBuilder()
-                    .concurrencyLevel(32)
-                    .expireAfterWrite(expiry, timeUnit)
-                    .build();
-        return cache.asMap();
+        private final NodeRef nodeRef;
+        private final LockState lockState;
+        private final long tick;
+        
+        private Expiry(NodeRef nodeRef, LockState lockState, long tick)
+        {
+            this.nodeRef = nodeRef;
+            this.lockState = lockState;
+            this.tick = tick;
+        }
     }
 }
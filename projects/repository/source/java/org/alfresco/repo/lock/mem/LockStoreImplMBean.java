@@ -0,0 +1,65 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.lock.mem;
+
+/**
+ * Management interface of the {@link LockStoreImpl}.
+ * 
+ * @since 5.2
+ */
+public interface LockStoreImplMBean
+{
+    /**
+     * @return              the number of lock states held, including expired locks not yet removed
+     */
+    int getSize();
+    
+    /**
+     * @return              the number of locks held that have not expired
+     */
+    int getLockCount();
+    
+    /**
+     * @return              the number of lock states set since startup
+     */
+    long getSetCount();
+    
+    /**
+     * @return              the number of lock states that could not be set because the node's
+     *                      lock state had been changed by someone else
+     */
+    long getConflictCount();
+    
+    /**
+     * @return              the number of lock states removed by expiry since startup
+     */
+    long getExpiredCount();
+    
+    /**
+     * @return              the longest time a lock state is held for
+     */
+    long getTimeToLiveSeconds();
+}
@@ -47,6 +47,7 @@ public class FilterSortNodeEntity
     private NodePropertyEntity prop1;
     private NodePropertyEntity prop2;
     private NodePropertyEntity prop3;
+    private String keysetValue;
     
     // Supplemental query-related parameters
     private Long parentNodeId;
@@ -62,6 +63,12 @@ public class FilterSortNodeEntity
 
     private Boolean isPrimary;
     
+    // Keyset (seek) paging parameters
+    private String keysetSortProp;
+    private boolean keysetAscending = true;
+    private String keysetLastValue;
+    private Long keysetLastId;
+    
     /**
      * Default constructor
      */
@@ -177,6 +184,19 @@ public class FilterSortNodeEntity
         this.node = childNode;
     }
     
+    /**
+     * @return              the value of the keyset sort column for this row (as held by the database)
+     */
+    public String getKeysetValue()
+    {
+        return keysetValue;
+    }
+    
+    public void setKeysetValue(String keysetValue)
+    {
+        this.keysetValue = keysetValue;
+    }
+    
     // Supplemental query-related parameters
     
     public Long getParentNodeId()
@@ -258,4 +278,50 @@ public class FilterSortNodeEntity
     {
         this.isPrimary = isPrimary;
     }
+    
+    public String getKeysetSortProp()
+    {
+        return keysetSortProp;
+    }
+    
+    /**
+     * @param keysetSortProp    the keyset sort column - one of <b>name</b>, <b>created</b> or <b>modified</b> - or
+     *                          <tt>null</tt> if the query is not keyset paged
+     */
+    public void setKeysetSortProp(String keysetSortProp)
+    {
+        this.keysetSortProp = keysetSortProp;
+    }
+    
+    public boolean isKeysetAscending()
+    {
+        return keysetAscending;
+    }
+    
+    public void setKeysetAscending(boolean keysetAscending)
+    {
+        this.keysetAscending = keysetAscending;
+    }
+    
+    public String getKeysetLastValue()
+    {
+        return keysetLastValue;
+    }
+    
+    public Long getKeysetLastId()
+    {
+        return keysetLastId;
+    }
+    
+    /**
+     * Seek past the given row i.e. the next page starts with the row that follows it in keyset order
+     * 
+     * @param keysetLastValue   the sort column value of the last row seen
+     * @param keysetLastId      the node id of the last row seen (tie-breaker)
+     */
+    public void setKeysetLast(String keysetLastValue, Long keysetLastId)
+    {
+        this.keysetLastValue = keysetLastValue;
+        this.keysetLastId = keysetLastId;
+    }
 }
\ No newline at end of file
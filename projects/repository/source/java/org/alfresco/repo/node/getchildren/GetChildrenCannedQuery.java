@@ -35,7 +35,9 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import org.alfresco.error.AlfrescoRuntimeException;
@@ -89,6 +91,15 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
     private static final String QUERY_NAMESPACE = "alfresco.node";
     private static final String QUERY_SELECT_GET_CHILDREN_WITH_PROPS = "select_GetChildrenCannedQueryWithProps";
     private static final String QUERY_SELECT_GET_CHILDREN_WITHOUT_PROPS = "select_GetChildrenCannedQueryWithoutProps";
+    private static final String QUERY_SELECT_GET_CHILDREN_KEYSET = "select_GetChildrenCannedQueryKeyset";
+    
+    // note: keyset sort columns (see select_GetChildrenCannedQueryKeyset_SortColumn)
+    private static final String KEYSET_SORT_NAME = "name";
+    private static final String KEYSET_SORT_CREATED = "created";
+    private static final String KEYSET_SORT_MODIFIED = "modified";
+    
+    private static final int KEYSET_BATCH_SIZE_MIN = 64;
+    private static final int KEYSET_BATCH_SIZE_MAX = 256 * 4;
     
     public static final int MAX_FILTER_SORT_PROPS = 3;
     
@@ -110,6 +121,8 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
     
     private boolean applyPostQueryPermissions = false; // if true, the permissions will be applied post-query (else should be applied as part of the "queryAndFilter")
     
+    private boolean keysetPaging = false;
+    
     public GetChildrenCannedQuery(
             NodeDAO nodeDAO,
             QNameDAO qnameDAO,
@@ -142,6 +155,22 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
         }
     }
     
+    /**
+     * Enable keyset (seek) paging. If enabled, and the children are sorted by a single indexed column
+     * ({@link ContentModel#PROP_NAME cm:name}, {@link ContentModel#PROP_CREATED cm:created} or
+     * {@link ContentModel#PROP_MODIFIED cm:modified}) with no property filters, then the sort and paging are
+     * pushed into the query. The children are streamed in bounded batches - each batch seeks past the last row
+     * of the previous one - and permissions are applied incrementally until enough results have been found.
+     * <p/>
+     * Note: the order of <b>cm:name</b> is then determined by the database collation rather than the content locale.
+     * 
+     * @param keysetPaging          <tt>true</tt> to use keyset paging when the sort allows it
+     */
+    public void setKeysetPaging(boolean keysetPaging)
+    {
+        this.keysetPaging = keysetPaging;
+    }
+    
     protected FilterSortChildQueryCallback getFilterSortChildQuery(final List<FilterSortNode> children, final List<FilterProp> filterProps, GetChildrenCannedQueryParams paramBean)
     {
         Set<QName> inclusiveAspects = paramBean.getInclusiveAspects();
@@ -246,6 +275,7 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
         
         filterSortPropCnt = setFilterSortParams(sortFilterProps, params);
         
+        String keysetSortProp = getKeysetSortProp(filterProps, sortPairs);
         
         List<NodeRef> result = new ArrayList<>(0);
         
@@ -294,7 +324,40 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
 	            params.setPattern(pattern);
 	        }
 	        
-	        if (filterSortPropCnt > 0)
+	        if (keysetSortProp != null)
+	        {
+	            // keyset paged - sorted and paged by the query - note: permissions are applied per batch to allow early cutoff
+	            if (params.getNamePropertyQNameId() == null)
+	            {
+	                Pair<Long, QName> nameQName = qnameDAO.getQName(ContentModel.PROP_NAME);
+	                if (nameQName == null)
+	                {
+	                    throw new AlfrescoRuntimeException("Unable to determine qname id of name property");
+	                }
+	                params.setNamePropertyQNameId(nameQName.getFirst());
+	            }
+	            params.setKeysetSortProp(keysetSortProp);
+	            params.setKeysetAscending(sortPairs.get(0).getSecond() == SortOrder.ASCENDING);
+	            
+	            final int requestedCount = parameters.getResultsRequired();
+	            int batchSize = Math.max(KEYSET_BATCH_SIZE_MIN, Math.min(requestedCount, KEYSET_BATCH_SIZE_MAX));
+	            
+	            final List<NodeRef> rawResult = new ArrayList<NodeRef>(Math.min(1000, requestedCount));
+	            UnsortedChildQueryCallback callback = getUnsortedChildQueryCallback(rawResult, requestedCount, paramBean);
+	            Iterator<NodeRef> children = new KeysetChildIterator(params, batchSize);
+	            while (children.hasNext())
+	            {
+	                if (! callback.handle(children.next()))
+	                {
+	                    break;
+	                }
+	            }
+	            
+	            // permissions have been applied
+	            applyPostQueryPermissions = false;
+	            result = PermissionCheckedValueMixin.create(rawResult);
+	        }
+	        else if (filterSortPropCnt > 0)
 	        {
 	            // filtered and/or sorted - note: permissions will be applied post query
 	            final List<FilterSortNode> children = new ArrayList<FilterSortNode>(100);
@@ -342,7 +405,7 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
         {
 	        if (start != null)
 	        {
-	            logger.debug("Base query "+(filterSortPropCnt > 0 ? "(sort=y, perms=n)" : "(sort=n, perms=y)")+": "+result.size()+" in "+(System.currentTimeMillis()-start)+" msecs");
+	            logger.debug("Base query "+(keysetSortProp != null ? "(keyset="+keysetSortProp+", perms=y)" : (filterSortPropCnt > 0 ? "(sort=y, perms=n)" : "(sort=n, perms=y)"))+": "+result.size()+" in "+(System.currentTimeMillis()-start)+" msecs");
 	        }
         }
         
@@ -403,6 +466,30 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
         return cnt;
     }
     
+    // Keyset paging is only used for a single sort on an indexed column (and no property filters)
+    private String getKeysetSortProp(List<FilterProp> filterProps, List<Pair<QName, SortOrder>> sortPairs)
+    {
+        if ((! keysetPaging) || (sortPairs.size() != 1) || (filterProps.size() > 0))
+        {
+            return null;
+        }
+        
+        QName sortQName = sortPairs.get(0).getFirst();
+        if (ContentModel.PROP_NAME.equals(sortQName))
+        {
+            return KEYSET_SORT_NAME;
+        }
+        else if (ContentModel.PROP_CREATED.equals(sortQName))
+        {
+            return KEYSET_SORT_CREATED;
+        }
+        else if (ContentModel.PROP_MODIFIED.equals(sortQName))
+        {
+            return KEYSET_SORT_MODIFIED;
+        }
+        return null;
+    }
+    
     private Long getQNameId(QName sortPropQName)
     {
         if (sortPropQName.equals(SORT_QNAME_CONTENT_SIZE) || sortPropQName.equals(SORT_QNAME_CONTENT_MIMETYPE))
@@ -920,6 +1007,77 @@ public class GetChildrenCannedQuery extends AbstractCannedQueryPermissions<NodeR
         }
     }
     
+    /**
+     * Streams keyset paged children in bounded batches. Each batch seeks past the last row of the
+     * previous batch and is pre-loaded and permission checked before any of its children are returned.
+     */
+    private class KeysetChildIterator implements Iterator<NodeRef>
+    {
+        private final FilterSortNodeEntity params;
+        private final int batchSize;
+        
+        private final LinkedList<NodeRef> nodeRefs = new LinkedList<NodeRef>();
+        private boolean more = true;
+        
+        private KeysetChildIterator(FilterSortNodeEntity params, int batchSize)
+        {
+            this.params = params;
+            this.batchSize = batchSize;
+        }
+        
+        @Override
+        public boolean hasNext()
+        {
+            while (nodeRefs.isEmpty() && more)
+            {
+                nextBatch();
+            }
+            return (! nodeRefs.isEmpty());
+        }
+        
+        @Override
+        public NodeRef next()
+        {
+            if (! hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            return nodeRefs.removeFirst();
+        }
+        
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+        
+        private void nextBatch()
+        {
+            List<FilterSortNodeEntity> batch = cannedQueryDAO.executeQuery(QUERY_NAMESPACE, QUERY_SELECT_GET_CHILDREN_KEYSET, params, 0, batchSize);
+            if (batch.size() < batchSize)
+            {
+                more = false;
+            }
+            if (batch.isEmpty())
+            {
+                return;
+            }
+            
+            // seek past the last row for the next batch
+            FilterSortNodeEntity last = batch.get(batch.size() - 1);
+            params.setKeysetLast(last.getKeysetValue(), last.getId());
+            
+            List<NodeRef> batchNodeRefs = new ArrayList<NodeRef>(batch.size());
+            for (FilterSortNodeEntity result : batch)
+            {
+                batchNodeRefs.add(result.getNode().getNodeRef());
+            }
+            
+            // note: pre-loads the batch
+            nodeRefs.addAll(applyPostQueryPermissions(batchNodeRefs, batchNodeRefs.size()));
+        }
+    }
+    
     private class UnsortedResultHandler implements CannedQueryDAO.ResultHandler<NodeEntity>
     {
         private final UnsortedChildQueryCallback resultsCallback;
@@ -71,6 +71,8 @@ public class GetChildrenCannedQueryFactory extends AbstractCannedQueryFactory<No
     
     protected MethodSecurityBean<NodeRef> methodSecurity;
     
+    protected boolean keysetPaging = false;
+    
     public void setDictionaryService(DictionaryService dictionaryService)
     {
         this.dictionaryService = dictionaryService;
@@ -115,13 +117,24 @@ public class GetChildrenCannedQueryFactory extends AbstractCannedQueryFactory<No
     {
         this.methodSecurity = methodSecurity;
     }
+    
+    /**
+     * @param keysetPaging      <tt>true</tt> to sort and page by <b>cm:name</b>, <b>cm:created</b> or <b>cm:modified</b>
+     *                          in the query (see {@link GetChildrenCannedQuery#setKeysetPaging(boolean)})
+     */
+    public void setKeysetPaging(boolean keysetPaging)
+    {
+        this.keysetPaging = keysetPaging;
+    }
 
     @Override
     public CannedQuery<NodeRef> getCannedQuery(CannedQueryParameters parameters)
     {
         NodePropertyHelper nodePropertyHelper = new NodePropertyHelper(dictionaryService, qnameDAO, localeDAO, contentDataDAO);
         
-        return (CannedQuery<NodeRef>) new GetChildrenCannedQuery(nodeDAO, qnameDAO, cannedQueryDAO, nodePropertyHelper, tenantService, nodeService, methodSecurity, parameters);
+        GetChildrenCannedQuery cq = new GetChildrenCannedQuery(nodeDAO, qnameDAO, cannedQueryDAO, nodePropertyHelper, tenantService, nodeService, methodSecurity, parameters);
+        cq.setKeysetPaging(keysetPaging);
+        return (CannedQuery<NodeRef>) cq;
     }
     
     /**
@@ -0,0 +1,393 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.authority;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An immutable snapshot of the authority container hierarchy used to find the ancestors of an authority.
+ * <p>
+ * Authority names are interned to dense int ids and the direct parents of each authority are held as a
+ * sorted <tt>int[]</tt>. Applying link changes is copy-on-write: only the rows of the children that change
+ * are replaced, all other rows and the name table are shared with the previous snapshot, so readers of an
+ * older snapshot are never affected.
+ * 
+ * @since 5.2
+ */
+public class AuthorityBridgeGraph
+{
+    private static final int[] NO_IDS = new int[0];
+
+    private final AuthorityNames names;
+
+    /** The direct parent ids of each authority, indexed by the child id; <tt>null</tt> for no parents */
+    private final int[][] parents;
+
+    private final int linkCount;
+
+    /** Ancestors are resolved lazily and kept for the life of the snapshot */
+    private final ConcurrentMap<Integer, Set<String>> ancestors = new ConcurrentHashMap<Integer, Set<String>>();
+
+    private AuthorityBridgeGraph(AuthorityNames names, int[][] parents, int linkCount)
+    {
+        this.names = names;
+        this.parents = parents;
+        this.linkCount = linkCount;
+    }
+
+    /**
+     * Build a snapshot from the full set of parent-child links.
+     * 
+     * @param links all the authority links
+     * @return the snapshot
+     */
+    public static AuthorityBridgeGraph build(Collection<AuthorityBridgeLink> links)
+    {
+        AuthorityNames names = new AuthorityNames();
+        int[] childIds = new int[links.size()];
+        int[] parentIds = new int[links.size()];
+        int i = 0;
+        for (AuthorityBridgeLink link : links)
+        {
+            parentIds[i] = names.getOrCreateId(link.getParentName());
+            childIds[i] = names.getOrCreateId(link.getChildName());
+            i++;
+        }
+
+        // Size each row exactly before filling it
+        int[] counts = new int[names.size()];
+        for (int childId : childIds)
+        {
+            counts[childId]++;
+        }
+        int[][] parents = new int[names.size()][];
+        for (int id = 0; id < counts.length; id++)
+        {
+            if (counts[id] > 0)
+            {
+                parents[id] = new int[counts[id]];
+                counts[id] = 0;
+            }
+        }
+        for (i = 0; i < childIds.length; i++)
+        {
+            int childId = childIds[i];
+            parents[childId][counts[childId]++] = parentIds[i];
+        }
+
+        int linkCount = 0;
+        for (int id = 0; id < parents.length; id++)
+        {
+            if (parents[id] != null)
+            {
+                parents[id] = sortedDistinct(parents[id]);
+                linkCount += parents[id].length;
+            }
+        }
+        return new AuthorityBridgeGraph(names, parents, linkCount);
+    }
+
+    /**
+     * Create a new snapshot with the given changes applied, in order. This snapshot is not modified.
+     * 
+     * @param changes the links added and removed
+     * @return the new snapshot
+     */
+    public AuthorityBridgeGraph apply(List<LinkChange> changes)
+    {
+        // Intern any new names first so that the row table is only copied once
+        for (LinkChange change : changes)
+        {
+            names.getOrCreateId(change.getParentName());
+            names.getOrCreateId(change.getChildName());
+        }
+        int[][] newParents = Arrays.copyOf(parents, Math.max(parents.length, names.size()));
+        int newLinkCount = linkCount;
+        for (LinkChange change : changes)
+        {
+            int parentId = names.getId(change.getParentName());
+            int childId = names.getId(change.getChildName());
+            int[] row = newParents[childId] == null ? NO_IDS : newParents[childId];
+            int pos = Arrays.binarySearch(row, parentId);
+            if (change.isAdded() && pos < 0)
+            {
+                int insert = -(pos + 1);
+                int[] newRow = new int[row.length + 1];
+                System.arraycopy(row, 0, newRow, 0, insert);
+                newRow[insert] = parentId;
+                System.arraycopy(row, insert, newRow, insert + 1, row.length - insert);
+                newParents[childId] = newRow;
+                newLinkCount++;
+            }
+            else if (!change.isAdded() && pos >= 0)
+            {
+                int[] newRow = new int[row.length - 1];
+                System.arraycopy(row, 0, newRow, 0, pos);
+                System.arraycopy(row, pos + 1, newRow, pos, row.length - pos - 1);
+                newParents[childId] = newRow.length == 0 ? null : newRow;
+                newLinkCount--;
+            }
+        }
+        return new AuthorityBridgeGraph(names, newParents, newLinkCount);
+    }
+
+    /**
+     * Get all the authorities that directly or indirectly contain the given authority.
+     * 
+     * @param authority the authority name
+     * @return the ancestor authority names - never <tt>null</tt>
+     */
+    public Set<String> getAncestors(String authority)
+    {
+        int id = names.getId(authority);
+        if (id < 0 || id >= parents.length || parents[id] == null)
+        {
+            return Collections.emptySet();
+        }
+        Set<String> result = ancestors.get(id);
+        if (result == null)
+        {
+            BitSet found = findAncestors(id);
+            Set<String> ancestorNames = new HashSet<String>(found.cardinality() * 2);
+            for (int ancestor = found.nextSetBit(0); ancestor >= 0; ancestor = found.nextSetBit(ancestor + 1))
+            {
+                ancestorNames.add(names.getName(ancestor));
+            }
+            result = Collections.unmodifiableSet(ancestorNames);
+            ancestors.putIfAbsent(id, result);
+        }
+        return result;
+    }
+
+    private BitSet findAncestors(int id)
+    {
+        BitSet found = new BitSet();
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = id;
+        while (top > 0)
+        {
+            int[] row = parents[stack[--top]];
+            if (row == null)
+            {
+                continue;
+            }
+            for (int parentId : row)
+            {
+                if (!found.get(parentId))
+                {
+                    found.set(parentId);
+                    if (top == stack.length)
+                    {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[top++] = parentId;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return <tt>true</tt> if adding a link from the parent to the child would create a cycle
+     */
+    public boolean wouldCreateCycle(String parentName, String childName)
+    {
+        return parentName.equals(childName) || getAncestors(parentName).contains(childName);
+    }
+
+    /**
+     * @return <tt>true</tt> if any authority is its own ancestor
+     */
+    public boolean hasCycle()
+    {
+        // Iterative depth first search colouring each authority as unvisited, on the current path or done
+        byte[] state = new byte[parents.length];
+        int[] stack = new int[16];
+        int[] next = new int[16];
+        for (int start = 0; start < parents.length; start++)
+        {
+            if (state[start] != 0)
+            {
+                continue;
+            }
+            int top = 0;
+            stack[top] = start;
+            next[top] = 0;
+            top++;
+            state[start] = 1;
+            while (top > 0)
+            {
+                int id = stack[top - 1];
+                int[] row = parents[id] == null ? NO_IDS : parents[id];
+                if (next[top - 1] < row.length)
+                {
+                    int parentId = row[next[top - 1]++];
+                    if (state[parentId] == 1)
+                    {
+                        return true;
+                    }
+                    if (state[parentId] == 0)
+                    {
+                        if (top == stack.length)
+                        {
+                            stack = Arrays.copyOf(stack, stack.length * 2);
+                            next = Arrays.copyOf(next, next.length * 2);
+                        }
+                        stack[top] = parentId;
+                        next[top] = 0;
+                        top++;
+                        state[parentId] = 1;
+                    }
+                }
+                else
+                {
+                    state[id] = 2;
+                    top--;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of distinct parent-child links
+     */
+    public int getLinkCount()
+    {
+        return linkCount;
+    }
+
+    /**
+     * @return the number of authorities known to this snapshot
+     */
+    public int getAuthorityCount()
+    {
+        return parents.length;
+    }
+
+    private static int[] sortedDistinct(int[] ids)
+    {
+        Arrays.sort(ids);
+        int size = 0;
+        for (int i = 0; i < ids.length; i++)
+        {
+            if (i == 0 || ids[i] != ids[i - 1])
+            {
+                ids[size++] = ids[i];
+            }
+        }
+        return size == ids.length ? ids : Arrays.copyOf(ids, size);
+    }
+
+    /**
+     * A link added or removed between two authorities.
+     */
+    public static class LinkChange
+    {
+        private final String parentName;
+        private final String childName;
+        private final boolean added;
+
+        public LinkChange(String parentName, String childName, boolean added)
+        {
+            this.parentName = parentName;
+            this.childName = childName;
+            this.added = added;
+        }
+
+        public String getParentName()
+        {
+            return parentName;
+        }
+
+        public String getChildName()
+        {
+            return childName;
+        }
+
+        public boolean isAdded()
+        {
+            return added;
+        }
+
+        @Override
+        public String toString()
+        {
+            return (added ? "+" : "-") + parentName + "->" + childName;
+        }
+    }
+
+    /**
+     * Append only name table shared by a snapshot and the snapshots derived from it.
+     */
+    private static class AuthorityNames
+    {
+        private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+        private volatile String[] names = new String[64];
+        private int size;
+
+        int getId(String name)
+        {
+            Integer id = ids.get(name);
+            return id == null ? -1 : id;
+        }
+
+        synchronized int getOrCreateId(String name)
+        {
+            Integer id = ids.get(name);
+            if (id == null)
+            {
+                if (size == names.length)
+                {
+                    names = Arrays.copyOf(names, size * 2);
+                }
+                id = size;
+                names[size++] = name;
+                ids.put(name, id);
+            }
+            return id;
+        }
+
+        String getName(int id)
+        {
+            return names[id];
+        }
+
+        synchronized int size()
+        {
+            return size;
+        }
+    }
+}
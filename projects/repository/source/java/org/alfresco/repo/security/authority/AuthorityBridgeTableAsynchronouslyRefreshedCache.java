@@ -25,36 +25,64 @@
  */
 package org.alfresco.repo.security.authority;
 
-import java.util.ConcurrentModificationException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.cache.AbstractMTAsynchronouslyRefreshedCache;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
+import org.alfresco.repo.security.authority.AuthorityBridgeGraph.LinkChange;
 import org.alfresco.repo.tenant.TenantAdminService;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
-import org.alfresco.util.BridgeTable;
 import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.transaction.TransactionListenerAdapter;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.InitializingBean;
 
 /**
+ * Holds the authority container hierarchy for each tenant.
+ * <p>
+ * Membership changes made through {@link #linksAdded(Collection, String)} and {@link #linkRemoved(String, String)}
+ * are published when their transaction commits and the next refresh applies just those links to a copy of the
+ * previous {@link AuthorityBridgeGraph}. Any other {@link #refresh()} rebuilds the whole hierarchy from the database,
+ * as does a refresh with nothing to apply when {@link #setIncrementalRefresh(boolean) incremental refresh} is disabled.
+ * Incremental refresh must be disabled if refresh events can be received from other cluster members as their changes
+ * are not known locally.
+ * 
  * @author Andy
  * @since 4.1.3
  */
-public class AuthorityBridgeTableAsynchronouslyRefreshedCache extends  AbstractMTAsynchronouslyRefreshedCache<BridgeTable<String>> implements InitializingBean
+public class AuthorityBridgeTableAsynchronouslyRefreshedCache extends  AbstractMTAsynchronouslyRefreshedCache<AuthorityBridgeGraph> implements InitializingBean
 {
+    private static final String KEY_TXN_CHANGES = AuthorityBridgeTableAsynchronouslyRefreshedCache.class.getName() + ".changes";
+
     private AuthorityBridgeDAO authorityBridgeDAO;
     private RetryingTransactionHelper retryingTransactionHelper;
     private TenantAdminService tenantAdminService;
     private AuthorityDAO authorityDAO;
+    private boolean incrementalRefresh = false;
+    private long commitWaitMillis = 10000L;
+
+    private final ConcurrentMap<String, TenantState> tenantStates = new ConcurrentHashMap<String, TenantState>();
+
+    private final AtomicLong fullRefreshCount = new AtomicLong();
+    private final AtomicLong incrementalRefreshCount = new AtomicLong();
+    private volatile long lastRefreshDuration;
+    private volatile int lastRefreshChangeCount;
+    private volatile int lastRefreshLinkCount;
 
     private Log logger = LogFactory.getLog(getClass());
 
@@ -90,45 +118,251 @@ public class AuthorityBridgeTableAsynchronouslyRefreshedCache extends  AbstractM
         this.tenantAdminService = tenantAdminService;
     }
 
+    /**
+     * @param incrementalRefresh <tt>true</tt> to apply recorded membership changes to the previous
+     *            hierarchy rather than rebuilding it on every refresh. Only changes made on this node
+     *            are recorded so this must stay <tt>false</tt> in a cluster.
+     */
+    public void setIncrementalRefresh(boolean incrementalRefresh)
+    {
+        this.incrementalRefresh = incrementalRefresh;
+    }
+
+    /**
+     * @param commitWaitMillis how long a refresh waits for committing transactions to publish their
+     *            membership changes before falling back to a full rebuild
+     */
+    public void setCommitWaitMillis(long commitWaitMillis)
+    {
+        this.commitWaitMillis = commitWaitMillis;
+    }
+
+    /**
+     * Record that the child has been added to the parents in the current transaction and refresh the cache
+     * 
+     * @param parentNames the parent authority names
+     * @param childName the child authority name
+     */
+    public void linksAdded(Collection<String> parentNames, String childName)
+    {
+        LinkChanges changes = getTransactionChanges();
+        if (changes != null)
+        {
+            for (String parentName : parentNames)
+            {
+                changes.add(new LinkChange(parentName, childName, true));
+            }
+        }
+        super.refresh();
+    }
+
+    /**
+     * Record that the child has been removed from the parent in the current transaction and refresh the cache
+     * 
+     * @param parentName the parent authority name
+     * @param childName the child authority name
+     */
+    public void linkRemoved(String parentName, String childName)
+    {
+        LinkChanges changes = getTransactionChanges();
+        if (changes != null)
+        {
+            changes.add(new LinkChange(parentName, childName, false));
+        }
+        super.refresh();
+    }
+
+    /**
+     * Refresh the cache by rebuilding the whole hierarchy
+     */
+    @Override
+    public void refresh()
+    {
+        LinkChanges changes = getTransactionChanges();
+        if (changes != null)
+        {
+            changes.requestFullRebuild();
+        }
+        super.refresh();
+    }
+
+    /**
+     * @return the number of refreshes that rebuilt the whole hierarchy
+     */
+    public long getFullRefreshCount()
+    {
+        return fullRefreshCount.get();
+    }
+
+    /**
+     * @return the number of refreshes that applied membership changes to the previous hierarchy
+     */
+    public long getIncrementalRefreshCount()
+    {
+        return incrementalRefreshCount.get();
+    }
+
+    /**
+     * @return the time taken by the last refresh in milliseconds
+     */
+    public long getLastRefreshDuration()
+    {
+        return lastRefreshDuration;
+    }
+
+    /**
+     * @return the number of link changes applied by the last refresh, zero for a full rebuild
+     */
+    public int getLastRefreshChangeCount()
+    {
+        return lastRefreshChangeCount;
+    }
+
+    /**
+     * @return the number of links held after the last refresh
+     */
+    public int getLastRefreshLinkCount()
+    {
+        return lastRefreshLinkCount;
+    }
+
+    /**
+     * Get the changes recorded by the current transaction for the current tenant, or <tt>null</tt>
+     * if there is no transaction in which case the next refresh is a full rebuild.
+     */
+    private LinkChanges getTransactionChanges()
+    {
+        String tenantId = tenantAdminService.getCurrentUserDomain();
+        if (AlfrescoTransactionSupport.getTransactionReadState() == TxnReadState.TXN_NONE)
+        {
+            getTenantState(tenantId).requestFullRebuild();
+            return null;
+        }
+        ChangesListener listener = (ChangesListener) AlfrescoTransactionSupport.getResource(KEY_TXN_CHANGES);
+        if (listener == null)
+        {
+            listener = new ChangesListener();
+            AlfrescoTransactionSupport.bindResource(KEY_TXN_CHANGES, listener);
+            AlfrescoTransactionSupport.bindListener(listener);
+        }
+        return listener.getChanges(tenantId);
+    }
+
+    private TenantState getTenantState(String tenantId)
+    {
+        TenantState state = tenantStates.get(tenantId);
+        if (state == null)
+        {
+            state = new TenantState();
+            TenantState existing = tenantStates.putIfAbsent(tenantId, state);
+            if (existing != null)
+            {
+                state = existing;
+            }
+        }
+        return state;
+    }
+
     @Override
-    protected BridgeTable<String> buildCache(final String tenantId)
+    protected AuthorityBridgeGraph buildCache(final String tenantId)
     {
-        return AuthenticationUtil.runAs(new RunAsWork<BridgeTable<String>>()
+        final TenantState state = getTenantState(tenantId);
+        // Changes not yet committed by this thread's own transaction can only be seen by reading the database
+        ChangesListener ownListener = AlfrescoTransactionSupport.getTransactionReadState() == TxnReadState.TXN_NONE ? null
+                : (ChangesListener) AlfrescoTransactionSupport.getResource(KEY_TXN_CHANGES);
+        final boolean ownChanges = ownListener != null && ownListener.hasChanges(tenantId);
+        // Only a refresh applying the changes of other transactions needs to wait for them to be published.  A full
+        // rebuild reads them from the database and this thread's own transaction can not commit while it waits.
+        final boolean settled = !incrementalRefresh || ownChanges || state.awaitCommits(commitWaitMillis);
+        final LinkChanges pending = state.drain();
+        try
         {
-            public BridgeTable<String> doWork() throws Exception
+            return AuthenticationUtil.runAs(new RunAsWork<AuthorityBridgeGraph>()
             {
-                return retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<BridgeTable<String>>()
+                public AuthorityBridgeGraph doWork() throws Exception
                 {
-                    @Override
-                    public BridgeTable<String> execute() throws Throwable
+                    return retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<AuthorityBridgeGraph>()
                     {
-                        return doBuildCache(tenantId);
-                    }
-                }, true, false);
+                        @Override
+                        public AuthorityBridgeGraph execute() throws Throwable
+                        {
+                            return doBuildCache(tenantId, state, pending, ownChanges || !settled);
+                        }
+                    }, true, false);
 
-            }
-        }, tenantAdminService.getDomainUser(AuthenticationUtil.getSystemUserName(), tenantId));
+                }
+            }, tenantAdminService.getDomainUser(AuthenticationUtil.getSystemUserName(), tenantId));
+        }
+        catch (RuntimeException e)
+        {
+            // The drained changes are lost so the next refresh must start from the database
+            state.requestFullRebuild();
+            throw e;
+        }
     }
 
-    private BridgeTable<String> doBuildCache(String tenantId)
+    private AuthorityBridgeGraph doBuildCache(String tenantId, TenantState state, LinkChanges pending, boolean forceFullRebuild)
     {
-        List<AuthorityBridgeLink> links = authorityBridgeDAO.getAuthorityBridgeLinks();
-        BridgeTable<String> bridgeTable = new BridgeTable<String>();
-        try
+        long start = System.currentTimeMillis();
+        AuthorityBridgeGraph previous = state.getGraph();
+        List<LinkChange> changes = pending.getChanges();
+        AuthorityBridgeGraph graph = null;
+        if (incrementalRefresh && !forceFullRebuild && !pending.isFullRebuild() && previous != null)
         {
-            for (AuthorityBridgeLink link : links)
+            graph = changes.isEmpty() ? previous : applyChanges(previous, changes);
+        }
+        boolean fullRebuild = (graph == null);
+        if (fullRebuild)
+        {
+            graph = doFullBuild();
+            changes = new ArrayList<LinkChange>(0);
+            fullRefreshCount.incrementAndGet();
+        }
+        else
+        {
+            incrementalRefreshCount.incrementAndGet();
+        }
+        state.setGraph(graph);
+
+        lastRefreshDuration = System.currentTimeMillis() - start;
+        lastRefreshChangeCount = changes.size();
+        lastRefreshLinkCount = graph.getLinkCount();
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Refreshed authority bridge table for tenant '" + tenantId + "' " +
+                    (fullRebuild ? "by full rebuild" : "applying " + changes.size() + " link changes") +
+                    " in " + lastRefreshDuration + "ms: " + lastRefreshLinkCount + " links");
+        }
+        return graph;
+    }
+
+    /**
+     * @return the previous hierarchy with the changes applied or <tt>null</tt> if they introduce a cycle
+     */
+    private AuthorityBridgeGraph applyChanges(AuthorityBridgeGraph previous, List<LinkChange> changes)
+    {
+        AuthorityBridgeGraph graph = previous.apply(changes);
+        for (LinkChange change : changes)
+        {
+            if (change.isAdded() && graph.getAncestors(change.getChildName()).contains(change.getChildName()))
             {
-                bridgeTable.addLink(link.getParentName(), link.getChildName());
+                // Let the full rebuild find and fix the cycle
+                return null;
             }
         }
-        catch (ConcurrentModificationException e)
+        return graph;
+    }
+
+    private AuthorityBridgeGraph doFullBuild()
+    {
+        List<AuthorityBridgeLink> links = authorityBridgeDAO.getAuthorityBridgeLinks();
+        AuthorityBridgeGraph graph = AuthorityBridgeGraph.build(links);
+        if (graph.hasCycle())
         {
-            // Explain exception
+            // Explain and fix
             checkCyclic(links);
-            // If cyclic groups is not the cause then rethrow
-            throw e;
         }
-        return bridgeTable;
+        return graph;
     }
 
     private void checkCyclic(List<AuthorityBridgeLink> links)
@@ -236,6 +470,181 @@ public class AuthorityBridgeTableAsynchronouslyRefreshedCache extends  AbstractM
         }, false, true);
     }
 
+    /**
+     * The changes recorded by a transaction, per tenant. They are published to the tenant
+     * when the transaction commits.
+     */
+    private class ChangesListener extends TransactionListenerAdapter
+    {
+        private final Map<String, LinkChanges> changesByTenant = new HashMap<String, LinkChanges>(3);
+        private boolean committing;
+
+        private LinkChanges getChanges(String tenantId)
+        {
+            LinkChanges changes = changesByTenant.get(tenantId);
+            if (changes == null)
+            {
+                changes = new LinkChanges();
+                changesByTenant.put(tenantId, changes);
+                if (committing)
+                {
+                    // Recorded by another commit listener
+                    getTenantState(tenantId).beginCommit();
+                }
+            }
+            return changes;
+        }
+
+        private boolean hasChanges(String tenantId)
+        {
+            return changesByTenant.containsKey(tenantId);
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly)
+        {
+            if (!committing)
+            {
+                committing = true;
+                for (String tenantId : changesByTenant.keySet())
+                {
+                    getTenantState(tenantId).beginCommit();
+                }
+            }
+        }
+
+        @Override
+        public void afterCommit()
+        {
+            for (Map.Entry<String, LinkChanges> entry : changesByTenant.entrySet())
+            {
+                getTenantState(entry.getKey()).endCommit(committing ? entry.getValue() : null);
+            }
+        }
+
+        @Override
+        public void afterRollback()
+        {
+            if (committing)
+            {
+                for (String tenantId : changesByTenant.keySet())
+                {
+                    getTenantState(tenantId).endCommit(null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Link changes in the order they were made, plus whether a full rebuild is needed.
+     */
+    private static class LinkChanges
+    {
+        private final List<LinkChange> changes = new ArrayList<LinkChange>();
+        private boolean fullRebuild;
+
+        private void add(LinkChange change)
+        {
+            changes.add(change);
+        }
+
+        private void addAll(LinkChanges other)
+        {
+            changes.addAll(other.changes);
+            fullRebuild |= other.fullRebuild;
+        }
+
+        private void requestFullRebuild()
+        {
+            fullRebuild = true;
+        }
+
+        private List<LinkChange> getChanges()
+        {
+            return changes;
+        }
+
+        private boolean isFullRebuild()
+        {
+            return fullRebuild;
+        }
+    }
+
+    /**
+     * The current hierarchy for a tenant and the committed changes not yet applied to it.
+     */
+    private static class TenantState
+    {
+        private volatile AuthorityBridgeGraph graph;
+        private LinkChanges pending = new LinkChanges();
+        private int committing;
+
+        private AuthorityBridgeGraph getGraph()
+        {
+            return graph;
+        }
+
+        private void setGraph(AuthorityBridgeGraph graph)
+        {
+            this.graph = graph;
+        }
+
+        private synchronized void requestFullRebuild()
+        {
+            pending.requestFullRebuild();
+        }
+
+        private synchronized void beginCommit()
+        {
+            committing++;
+        }
+
+        private synchronized void endCommit(LinkChanges committed)
+        {
+            if (committed != null)
+            {
+                pending.addAll(committed);
+            }
+            committing--;
+            notifyAll();
+        }
+
+        /**
+         * Wait for transactions that are committing changes to publish them.
+         * 
+         * @return <tt>true</tt> if all committing transactions finished in time
+         */
+        private synchronized boolean awaitCommits(long waitMillis)
+        {
+            long end = System.currentTimeMillis() + waitMillis;
+            try
+            {
+                while (committing > 0)
+                {
+                    long remaining = end - System.currentTimeMillis();
+                    if (remaining <= 0)
+                    {
+                        return false;
+                    }
+                    wait(remaining);
+                }
+                return true;
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        private synchronized LinkChanges drain()
+        {
+            LinkChanges drained = pending;
+            pending = new LinkChanges();
+            return drained;
+        }
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception
     {
@@ -85,7 +85,6 @@ import org.alfresco.service.namespace.NamespacePrefixResolver;
 import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.service.namespace.RegexQNamePattern;
-import org.alfresco.util.BridgeTable;
 import org.alfresco.util.EqualsHelper;
 import org.alfresco.util.ISO9075;
 import org.alfresco.util.Pair;
@@ -368,7 +367,13 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
         else
         {
             userAuthorityCache.clear();
-            authorityBridgeTableCache.refresh();
+            // The bridge table holds the parents by their stored authority names
+            List<String> parentAuthorityNames = new ArrayList<String>(parentRefs.size());
+            for (NodeRef parentRef : parentRefs)
+            {
+                parentAuthorityNames.add((String) nodeService.getProperty(parentRef, ContentModel.PROP_AUTHORITY_NAME));
+            }
+            authorityBridgeTableCache.linksAdded(parentAuthorityNames, childName);
         }
     }
 
@@ -795,6 +800,18 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
         {
             throw new UnknownAuthorityException("An authority was not found for " + childName);
         }
+        // The bridge table holds the children by their association names
+        List<String> linkChildNames = new ArrayList<String>(1);
+        if (cacheRefresh && AuthorityType.getAuthorityType(childName) != AuthorityType.USER)
+        {
+            for (ChildAssociationRef assoc : nodeService.getParentAssocs(childRef, ContentModel.ASSOC_MEMBER, RegexQNamePattern.MATCH_ALL))
+            {
+                if (assoc.getParentRef().equals(parentRef))
+                {
+                    linkChildNames.add(assoc.getQName().getLocalName());
+                }
+            }
+        }
         nodeService.removeChild(parentRef, childRef);
         childAuthorityCache.remove(parentRef);
         if (AuthorityType.getAuthorityType(childName) == AuthorityType.USER)
@@ -808,7 +825,15 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
             userAuthorityCache.clear();
             if (cacheRefresh)
             {
-                authorityBridgeTableCache.refresh();
+                String parentAuthorityName = (String) nodeService.getProperty(parentRef, ContentModel.PROP_AUTHORITY_NAME);
+                for (String linkChildName : linkChildNames)
+                {
+                    authorityBridgeTableCache.linkRemoved(parentAuthorityName, linkChildName);
+                }
+                if (linkChildNames.isEmpty())
+                {
+                    authorityBridgeTableCache.refresh();
+                }
             }
         }
     }
@@ -818,7 +843,7 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
      */
     private void listAuthoritiesByBridgeTable(Set<String> authorities, String name)
     {
-        BridgeTable<String> bridgeTable = authorityBridgeTableCache.get();
+        AuthorityBridgeGraph bridgeTable = authorityBridgeTableCache.get();
         
         AuthorityType type = AuthorityType.getAuthorityType(name);
         switch(type)
@@ -25,6 +25,7 @@
  */
 package org.alfresco.repo.security.permissions;
 
+import java.util.List;
 import java.util.Set;
 
 import org.alfresco.service.cmr.repository.NodeRef;
@@ -158,4 +159,14 @@ public interface PermissionServiceSPI extends PermissionService
      * @return - the node permission entry
      */
     public NodePermissionEntry getSetPermissions(StoreRef storeRef);
+    
+    /**
+     * Check the read permission for a list of nodes. The answer for each node is the same as
+     * {@link #hasReadPermission(NodeRef)} but the nodes are grouped by ACL and each distinct
+     * ACL is evaluated only once.
+     * 
+     * @param nodeRefs the nodes to check
+     * @return the access status for each node - in the same order as the given nodes
+     */
+    public List<AccessStatus> hasReadPermission(List<NodeRef> nodeRefs);
 }
@@ -0,0 +1,90 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interns authority names to small, dense integer ids so that sets of authorities can be held
+ * as bit sets. Ids are only meaningful within this JVM and are never reused.
+ * 
+ * @since 5.2
+ */
+public class AuthorityIndex
+{
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
+    private final List<String> authorities = new ArrayList<String>();
+
+    /**
+     * Get the id for an authority, assigning one if it has not been seen before.
+     * 
+     * @param authority the authority name
+     * @return the id of the authority
+     */
+    public int getId(String authority)
+    {
+        Integer id = ids.get(authority);
+        if (id != null)
+        {
+            return id;
+        }
+        synchronized (authorities)
+        {
+            id = ids.get(authority);
+            if (id == null)
+            {
+                id = authorities.size();
+                authorities.add(authority);
+                ids.put(authority, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * @param id an id previously returned by {@link #getId(String)}
+     * @return the authority name
+     */
+    public String getAuthority(int id)
+    {
+        synchronized (authorities)
+        {
+            return authorities.get(id);
+        }
+    }
+
+    /**
+     * @return the number of authorities interned
+     */
+    public int size()
+    {
+        return ids.size();
+    }
+}
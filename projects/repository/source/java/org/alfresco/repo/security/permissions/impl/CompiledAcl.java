@@ -0,0 +1,135 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl;
+
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.alfresco.repo.security.permissions.AccessControlListProperties;
+import org.alfresco.repo.security.permissions.PermissionReference;
+
+/**
+ * The compiled form of an ACL used for context free permission evaluation.
+ * <p>
+ * For each permission group evaluated against the ACL the authorities that are unconditionally
+ * allowed, or denied, the permission are held as bit sets over the ids assigned by an
+ * {@link AuthorityIndex}. Permission groups are compiled on first use and then shared by every
+ * node that has the ACL.
+ * <p>
+ * The ACL properties the instance was built from identify the version of the ACL. Any change to
+ * the ACL produces new properties so a stale instance is detected by comparing the properties.
+ * As the bit sets depend on the JVM specific authority ids, instances must only be held in local caches.
+ * 
+ * @since 5.2
+ */
+public class CompiledAcl
+{
+    private final AccessControlListProperties properties;
+
+    private final ConcurrentMap<PermissionReference, PermissionBits> permissionBits = new ConcurrentHashMap<PermissionReference, PermissionBits>();
+
+    /**
+     * @param properties the properties of the ACL version being compiled
+     */
+    public CompiledAcl(AccessControlListProperties properties)
+    {
+        this.properties = properties;
+    }
+
+    /**
+     * @return the properties of the ACL version this instance was built from
+     */
+    public AccessControlListProperties getProperties()
+    {
+        return properties;
+    }
+
+    /**
+     * @param permission the permission group
+     * @return the compiled permission group or <tt>null</tt> if it has not been compiled yet
+     */
+    public PermissionBits getPermissionBits(PermissionReference permission)
+    {
+        return permissionBits.get(permission);
+    }
+
+    /**
+     * Add a compiled permission group. If another thread got there first its result is kept.
+     * 
+     * @param permission the permission group
+     * @param bits the compiled permission group
+     * @return the compiled permission group to use
+     */
+    public PermissionBits putPermissionBits(PermissionReference permission, PermissionBits bits)
+    {
+        PermissionBits existing = permissionBits.putIfAbsent(permission, bits);
+        return existing == null ? bits : existing;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CompiledAcl[properties=" + properties + ", permissions=" + permissionBits.keySet() + "]";
+    }
+
+    /**
+     * The authorities unconditionally allowed and denied a permission group on an ACL.
+     * The bit sets must not be modified once built.
+     */
+    public static class PermissionBits
+    {
+        private final BitSet allowed;
+
+        private final BitSet denied;
+
+        /**
+         * @param allowed the ids of the authorities allowed the permission
+         * @param denied the ids of the authorities denied the permission
+         */
+        public PermissionBits(BitSet allowed, BitSet denied)
+        {
+            this.allowed = allowed;
+            this.denied = denied;
+        }
+
+        /**
+         * @return the ids of the authorities allowed the permission
+         */
+        public BitSet getAllowed()
+        {
+            return allowed;
+        }
+
+        /**
+         * @return the ids of the authorities denied the permission
+         */
+        public BitSet getDenied()
+        {
+            return denied;
+        }
+    }
+}
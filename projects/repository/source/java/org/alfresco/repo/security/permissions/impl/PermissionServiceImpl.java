@@ -28,17 +28,26 @@ package org.alfresco.repo.security.permissions.impl;
 import static org.apache.commons.lang3.BooleanUtils.toBoolean;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import net.sf.acegisecurity.Authentication;
 import net.sf.acegisecurity.GrantedAuthority;
 import net.sf.acegisecurity.providers.dao.User;
 
+import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.domain.permissions.AclDAO;
@@ -66,7 +75,11 @@ import org.alfresco.repo.security.permissions.PermissionServiceSPI;
 import org.alfresco.repo.security.permissions.impl.traitextender.PermissionServiceExtension;
 import org.alfresco.repo.security.permissions.impl.traitextender.PermissionServiceTrait;
 import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.repo.tenant.TenantUtil;
+import org.alfresco.repo.tenant.TenantUtil.TenantRunAsWork;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.repo.version.Version2Model;
 import org.alfresco.repo.version.VersionModel;
 import org.alfresco.repo.version.common.VersionUtil;
@@ -83,6 +96,7 @@ import org.alfresco.service.cmr.security.PermissionContext;
 import org.alfresco.service.cmr.security.PermissionService;
 import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
 import org.alfresco.traitextender.AJProxyTrait;
 import org.alfresco.traitextender.Extend;
 import org.alfresco.traitextender.ExtendedTrait;
@@ -111,12 +125,19 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
 
     private static Log log = LogFactory.getLog(PermissionServiceImpl.class);
 
+    private static final String KEY_AUTHORITY_MEMBERSHIP = PermissionServiceImpl.class.getName() + ".authorityMembership";
+
     /** a transactionally-safe cache to be injected */
     protected SimpleCache<Serializable, AccessStatus> accessCache;
     
     protected SimpleCache<Serializable, Set<String>> readersCache;
     
     protected SimpleCache<Serializable, Set<String>> readersDeniedCache;
+    
+    protected SimpleCache<Long, CompiledAcl> compiledAclCache;
+    
+    /** JVM specific ids for the authorities held in compiled ACLs */
+    private final AuthorityIndex authorityIndex = new AuthorityIndex();
 
     /*
      * Access to the model
@@ -167,6 +188,12 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     protected FixedAclUpdater fixedAclUpdater;
 
     protected boolean anyDenyDenies = false;
+    
+    protected ThreadPoolExecutor readPermissionExecutor;
+    
+    protected TransactionService transactionService;
+    
+    protected int readPermissionParallelThreshold = 0;
 
     private final ExtendedTrait<PermissionServiceTrait> permissionServiceTrait;
     
@@ -328,6 +355,18 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         this.readersDeniedCache = readersDeniedCache;
     }
     
+    /**
+     * Set the cache of compiled ACLs, keyed by ACL id. Entries are validated against the current
+     * ACL properties so a change to an ACL only invalidates that ACL. The values hold JVM specific
+     * authority ids so the shared cache must not be replicated.
+     * 
+     * @param compiledAclCache the compiledAclCache to set
+     */
+    public void setCompiledAclCache(SimpleCache<Long, CompiledAcl> compiledAclCache)
+    {
+        this.compiledAclCache = compiledAclCache;
+    }
+    
     /**
      * Set the policy component
      * 
@@ -342,6 +381,37 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     {
         this.policyIgnoreUtil = policyIgnoreUtil;
     }
+    
+    /**
+     * Set the (optional) pool used to evaluate distinct ACLs in parallel for batch read permission checks
+     * 
+     * @param readPermissionExecutor a bounded thread pool
+     */
+    public void setReadPermissionExecutor(ThreadPoolExecutor readPermissionExecutor)
+    {
+        this.readPermissionExecutor = readPermissionExecutor;
+    }
+    
+    /**
+     * Set the transaction service - required to evaluate ACLs in parallel
+     * 
+     * @param transactionService TransactionService
+     */
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+    
+    /**
+     * Set the number of distinct ACLs in a batch read permission check at which the ACLs
+     * are evaluated in parallel. Zero or less means always evaluate serially.
+     * 
+     * @param readPermissionParallelThreshold int
+     */
+    public void setReadPermissionParallelThreshold(int readPermissionParallelThreshold)
+    {
+        this.readPermissionParallelThreshold = readPermissionParallelThreshold;
+    }
 
     /**
      * Cache clear on move node
@@ -385,6 +455,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         PropertyCheck.mandatory(this, "authorityService", authorityService);
         PropertyCheck.mandatory(this, "accessCache", accessCache);
         PropertyCheck.mandatory(this, "readersCache", readersCache);
+        PropertyCheck.mandatory(this, "compiledAclCache", compiledAclCache);
         PropertyCheck.mandatory(this, "policyComponent", policyComponent);
         PropertyCheck.mandatory(this, "aclDaoComponent", aclDaoComponent);
 
@@ -1271,8 +1342,100 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             return AccessStatus.ALLOWED;
         }
 
-        // any dynamic authorities other than those defined in the default permissions model with full
-        // control or read permission force hasPermission check
+        if(isForceHasPermission())
+        {
+            return hasPermission(nodeRef, PermissionService.READ);
+        }
+
+        Long aclID = nodeService.getNodeAclId(nodeRef);
+        if(aclID == null)
+        {
+            // ACLID is null - need to call default permissions evaluation
+            // This will end up calling the old-style ACL code that walks up the ACL tree
+            status = hasPermission(nodeRef, getPermissionReference(null, PermissionService.READ));
+        }
+        else
+        {
+            status = (canRead(aclID) == AccessStatus.ALLOWED ||
+                    adminRead() == AccessStatus.ALLOWED ||
+                    ownerRead(runAsUser, nodeRef) == AccessStatus.ALLOWED) ? AccessStatus.ALLOWED : AccessStatus.DENIED;
+        }
+
+        return status;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Extend(traitAPI = PermissionServiceTrait.class, extensionAPI = PermissionServiceExtension.class)
+    public List<AccessStatus> hasReadPermission(List<NodeRef> nodeRefs)
+    {
+        List<AccessStatus> statuses = new ArrayList<AccessStatus>(nodeRefs.size());
+
+        String runAsUser = AuthenticationUtil.getRunAsUser();
+        if (runAsUser == null || AuthenticationUtil.isRunAsUserTheSystemUser() || isForceHasPermission())
+        {
+            // Nothing to share between the nodes
+            for (NodeRef nodeRef : nodeRefs)
+            {
+                statuses.add(hasReadPermission(nodeRef));
+            }
+            return statuses;
+        }
+
+        // Group the nodes by ACL
+        Long[] aclIds = new Long[nodeRefs.size()];
+        Set<Long> distinctAclIds = new HashSet<Long>();
+        for (int i = 0; i < nodeRefs.size(); i++)
+        {
+            NodeRef nodeRef = nodeRefs.get(i);
+            if (nodeRef == null || !nodeService.exists(nodeRef))
+            {
+                statuses.add(AccessStatus.ALLOWED);
+                continue;
+            }
+            Long aclID = nodeService.getNodeAclId(nodeRef);
+            if (aclID == null)
+            {
+                // ACLID is null - need to call default permissions evaluation
+                statuses.add(hasPermission(nodeRef, getPermissionReference(null, PermissionService.READ)));
+                continue;
+            }
+            aclIds[i] = aclID;
+            distinctAclIds.add(aclID);
+            statuses.add(null);
+        }
+
+        if (distinctAclIds.isEmpty())
+        {
+            return statuses;
+        }
+
+        // Each distinct ACL is evaluated once
+        Map<Long, AccessStatus> aclStatuses = canRead(distinctAclIds);
+        boolean adminRead = (adminRead() == AccessStatus.ALLOWED);
+        for (int i = 0; i < aclIds.length; i++)
+        {
+            if (aclIds[i] == null)
+            {
+                continue;
+            }
+            boolean allowed = (aclStatuses.get(aclIds[i]) == AccessStatus.ALLOWED ||
+                    adminRead ||
+                    ownerRead(runAsUser, nodeRefs.get(i)) == AccessStatus.ALLOWED);
+            statuses.set(i, allowed ? AccessStatus.ALLOWED : AccessStatus.DENIED);
+        }
+
+        return statuses;
+    }
+
+    /**
+     * Any dynamic authorities other than those defined in the default permissions model with full
+     * control or read permission force a full hasPermission check for read.
+     */
+    private boolean isForceHasPermission()
+    {
         Boolean forceHasPermission = (Boolean)AlfrescoTransactionSupport.getResource("forceHasPermission");
         if(forceHasPermission == null)
         {
@@ -1293,27 +1456,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             }
             AlfrescoTransactionSupport.bindResource("forceHasPermission", forceHasPermission);            
         }
-
-        if(forceHasPermission == Boolean.TRUE)
-        {
-            return hasPermission(nodeRef, PermissionService.READ);
-        }
-
-        Long aclID = nodeService.getNodeAclId(nodeRef);
-        if(aclID == null)
-        {
-            // ACLID is null - need to call default permissions evaluation
-            // This will end up calling the old-style ACL code that walks up the ACL tree
-            status = hasPermission(nodeRef, getPermissionReference(null, PermissionService.READ));
-        }
-        else
-        {
-            status = (canRead(aclID) == AccessStatus.ALLOWED ||
-                    adminRead() == AccessStatus.ALLOWED ||
-                    ownerRead(runAsUser, nodeRef) == AccessStatus.ALLOWED) ? AccessStatus.ALLOWED : AccessStatus.DENIED;
-        }
-
-        return status;
+        return forceHasPermission == Boolean.TRUE;
     }
 
     protected AccessStatus adminRead()
@@ -1412,7 +1555,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         {
             return Collections.emptySet();
         }
-        Set<String> denied = readersDeniedCache.get(aclId);
+        Set<String> denied = readersDeniedCache.get((Serializable)acl.getProperties());
         if (denied != null)
         {
             return denied;
@@ -1441,39 +1584,250 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
 
     protected AccessStatus canRead(Long aclId)
     {
-        Set<String> authorities = getAuthorisations();
+        return canRead(aclId, getAuthorisations());
+    }
 
-        // test denied 
-        
-        if(anyDenyDenies)
+    /**
+     * Evaluate read access to each of the given ACLs for the current user. If there are enough ACLs
+     * and a {@link #setReadPermissionExecutor(ThreadPoolExecutor) pool} is available then the ACLs
+     * are split between the pool threads, each evaluating its share in a read-only transaction.
+     * The pool is never used from a read-write transaction as the pool threads would not see
+     * its uncommitted ACL changes.
+     * 
+     * @param aclIds the distinct ACL ids
+     * @return the access status for each ACL
+     */
+    protected Map<Long, AccessStatus> canRead(Set<Long> aclIds)
+    {
+        final Set<String> authorities = getAuthorisations();
+        Map<Long, AccessStatus> aclStatuses = new HashMap<Long, AccessStatus>(aclIds.size() * 2);
+
+        if (readPermissionExecutor == null || transactionService == null ||
+                readPermissionParallelThreshold <= 0 || aclIds.size() < readPermissionParallelThreshold ||
+                AlfrescoTransactionSupport.getTransactionReadState() == TxnReadState.TXN_READ_WRITE)
         {
+            for (Long aclId : aclIds)
+            {
+                aclStatuses.put(aclId, canRead(aclId, authorities));
+            }
+            return aclStatuses;
+        }
 
-            Set<String> aclReadersDenied = getReadersDenied(aclId);
+        // Split the ACLs between the pool threads
+        int partitionCount = Math.min(aclIds.size(), Math.max(1, readPermissionExecutor.getMaximumPoolSize()));
+        List<List<Long>> partitions = new ArrayList<List<Long>>(partitionCount);
+        // The pool threads evaluate as the calling user in the calling tenant
+        final String runAsUser = AuthenticationUtil.getRunAsUser();
+        final String tenantDomain = TenantUtil.getCurrentDomain();
+        for (int i = 0; i < partitionCount; i++)
+        {
+            partitions.add(new ArrayList<Long>(aclIds.size() / partitionCount + 1));
+        }
+        int idx = 0;
+        for (Long aclId : aclIds)
+        {
+            partitions.get(idx++ % partitionCount).add(aclId);
+        }
 
-            for(String auth : aclReadersDenied)
+        List<Future<Map<Long, AccessStatus>>> futures = new ArrayList<Future<Map<Long, AccessStatus>>>(partitionCount);
+        try
+        {
+            for (final List<Long> partition : partitions)
             {
-                if(authorities.contains(auth))
+                Callable<Map<Long, AccessStatus>> task = new Callable<Map<Long, AccessStatus>>()
                 {
-                    return AccessStatus.DENIED;
+                    public Map<Long, AccessStatus> call() throws Exception
+                    {
+                        final RetryingTransactionCallback<Map<Long, AccessStatus>> callback = new RetryingTransactionCallback<Map<Long, AccessStatus>>()
+                        {
+                            public Map<Long, AccessStatus> execute() throws Throwable
+                            {
+                                Map<Long, AccessStatus> partitionStatuses = new HashMap<Long, AccessStatus>(partition.size() * 2);
+                                for (Long aclId : partition)
+                                {
+                                    partitionStatuses.put(aclId, canRead(aclId, authorities));
+                                }
+                                return partitionStatuses;
+                            }
+                        };
+                        return TenantUtil.runAsUserTenant(new TenantRunAsWork<Map<Long, AccessStatus>>()
+                        {
+                            public Map<Long, AccessStatus> doWork() throws Exception
+                            {
+                                return transactionService.getRetryingTransactionHelper().doInTransaction(callback, true, true);
+                            }
+                        }, runAsUser, tenantDomain);
+                    }
+                };
+                try
+                {
+                    futures.add(readPermissionExecutor.submit(task));
+                }
+                catch (RejectedExecutionException e)
+                {
+                    // The pool is saturated - evaluate this share on the calling thread
+                    for (Long aclId : partition)
+                    {
+                        aclStatuses.put(aclId, canRead(aclId, authorities));
+                    }
                 }
             }
-            
+            for (Future<Map<Long, AccessStatus>> future : futures)
+            {
+                aclStatuses.putAll(future.get());
+            }
         }
-        
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new AlfrescoRuntimeException("Interrupted while evaluating read permissions", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to evaluate read permissions", e.getCause());
+        }
+        finally
+        {
+            for (Future<Map<Long, AccessStatus>> future : futures)
+            {
+                future.cancel(true);
+            }
+        }
+        return aclStatuses;
+    }
 
+    protected AccessStatus canRead(Long aclId, Set<String> authorities)
+    {
+        CompiledAcl.PermissionBits readBits = getCompiledPermission(aclId, getPermissionReference(PermissionService.READ));
+        if (readBits == null)
+        {
+            return AccessStatus.DENIED;
+        }
+        AuthorityMembership membership = getAuthorityMembership(authorities);
+
+        // test denied 
+        if (anyDenyDenies && membership.intersects(readBits.getDenied()))
+        {
+            return AccessStatus.DENIED;
+        }
 
         // test acl readers
-        Set<String> aclReaders = getReaders(aclId);
-        
-        for(String auth : aclReaders)
+        return membership.intersects(readBits.getAllowed()) ? AccessStatus.ALLOWED : AccessStatus.DENIED;
+    }
+
+    /**
+     * Get the authorities unconditionally allowed and denied a permission on an ACL, compiling
+     * the ACL and the permission group on first use.
+     * 
+     * @param aclId the ACL id
+     * @param permission the permission group
+     * @return the compiled permission group or <tt>null</tt> if the ACL does not exist
+     */
+    protected CompiledAcl.PermissionBits getCompiledPermission(Long aclId, PermissionReference permission)
+    {
+        AccessControlListProperties properties = aclDaoComponent.getAccessControlListProperties(aclId);
+        if (properties == null)
+        {
+            return null;
+        }
+        CompiledAcl compiledAcl = compiledAclCache.get(aclId);
+        if (compiledAcl == null || !compiledAcl.getProperties().equals(properties))
+        {
+            // Not seen before or the ACL has changed - only this ACL is recompiled
+            compiledAcl = new CompiledAcl(properties);
+            compiledAclCache.put(aclId, compiledAcl);
+        }
+
+        CompiledAcl.PermissionBits bits = compiledAcl.getPermissionBits(permission);
+        if (bits != null)
+        {
+            return bits;
+        }
+
+        AccessControlList acl = aclDaoComponent.getAccessControlList(aclId);
+        if (acl == null)
         {
-            if(authorities.contains(auth))
+            return null;
+        }
+        Set<String> assigned = new HashSet<String>();
+        for (AccessControlEntry ace : acl.getEntries())
+        {
+            assigned.add(ace.getAuthority());
+        }
+
+        BitSet allowed = new BitSet();
+        BitSet denied = new BitSet();
+        UnconditionalAclTest allowedTest = new UnconditionalAclTest(permission);
+        UnconditionalDeniedAclTest deniedTest = new UnconditionalDeniedAclTest(permission);
+        for (String authority : assigned)
+        {
+            int id = authorityIndex.getId(authority);
+            if (allowedTest.evaluate(authority, aclId))
             {
-                return AccessStatus.ALLOWED;
+                allowed.set(id);
             }
+            if (deniedTest.evaluate(authority, aclId))
+            {
+                denied.set(id);
+            }
+        }
+        return compiledAcl.putPermissionBits(permission, new CompiledAcl.PermissionBits(allowed, denied));
+    }
+
+    /**
+     * Get the membership tracker for the given authorities. One is kept per transaction so that
+     * each authority found on the ACLs is only looked up once however many ACLs are evaluated.
+     */
+    private AuthorityMembership getAuthorityMembership(Set<String> authorities)
+    {
+        AuthorityMembership membership = (AuthorityMembership) AlfrescoTransactionSupport.getResource(KEY_AUTHORITY_MEMBERSHIP);
+        if (membership == null || membership.authorities != authorities)
+        {
+            membership = new AuthorityMembership(authorities);
+            AlfrescoTransactionSupport.bindResource(KEY_AUTHORITY_MEMBERSHIP, membership);
+        }
+        return membership;
+    }
+
+    /**
+     * Tracks which of the interned authorities are held by a set of authorities. Membership
+     * is resolved lazily so large, lazily loaded authority sets are never fully expanded.
+     */
+    private class AuthorityMembership
+    {
+        private final Set<String> authorities;
+
+        private final BitSet known = new BitSet();
+
+        private final BitSet members = new BitSet();
+
+        private AuthorityMembership(Set<String> authorities)
+        {
+            this.authorities = authorities;
         }
 
-        return AccessStatus.DENIED;
+        /**
+         * @return <tt>true</tt> if any of the given authority ids is held
+         */
+        private boolean intersects(BitSet ids)
+        {
+            for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1))
+            {
+                if (!known.get(id))
+                {
+                    known.set(id);
+                    if (authorities.contains(authorityIndex.getAuthority(id)))
+                    {
+                        members.set(id);
+                    }
+                }
+                if (members.get(id))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
     }
   
     //
@@ -2925,10 +3279,11 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         }
         if (auths == null)
         {
-            auths = getCoreAuthorisations(auth);
+            // Bind the read-only view so that callers see the same instance for the transaction
+            auths = Collections.unmodifiableSet(getCoreAuthorisations(auth));
             AlfrescoTransactionSupport.bindResource("MyAuthCache", auths);
         }
-        return Collections.unmodifiableSet(auths);   
+        return auths;   
     }
 
     @Override
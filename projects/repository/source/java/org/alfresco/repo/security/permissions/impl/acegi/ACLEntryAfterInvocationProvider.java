@@ -42,6 +42,7 @@ import net.sf.acegisecurity.ConfigAttribute;
 import net.sf.acegisecurity.ConfigAttributeDefinition;
 import net.sf.acegisecurity.afterinvocation.AfterInvocationProvider;
 
+import org.alfresco.model.ContentModel;
 import org.alfresco.opencmis.search.CMISResultSet;
 import org.alfresco.repo.search.SimpleResultSetMetaData;
 import org.alfresco.repo.search.impl.lucene.PagingLuceneResultSet;
@@ -52,6 +53,7 @@ import org.alfresco.repo.security.permissions.PermissionCheckCollection;
 import org.alfresco.repo.security.permissions.PermissionCheckValue;
 import org.alfresco.repo.security.permissions.PermissionCheckedCollection.PermissionCheckedCollectionMixin;
 import org.alfresco.repo.security.permissions.PermissionCheckedValue;
+import org.alfresco.repo.security.permissions.PermissionServiceSPI;
 import org.alfresco.repo.security.permissions.impl.SimplePermissionReference;
 import org.alfresco.service.cmr.repository.AssociationRef;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
@@ -619,6 +621,10 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
 
         try
         {
+           // read permissions are evaluated in batches (nodes sharing an ACL are evaluated together)
+           List<AccessStatus> readStatuses = null;
+           int readStatusesStart = 0;
+           
            for (int i = 0; i < returnedObject.length(); i++)
            {
                long currentTimeMillis = System.currentTimeMillis();
@@ -647,9 +653,23 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
                    filteringResultSet.setIncluded(i, false);
                }
    
-               if (filteringResultSet.getIncluded(i) && permissionService.hasReadPermission(nodeRef) == AccessStatus.DENIED)
+               if (filteringResultSet.getIncluded(i))
                {
-                   filteringResultSet.setIncluded(i, false);
+                   if ((readStatuses == null) || (i >= readStatusesStart + readStatuses.size()))
+                   {
+                       // only look as far ahead as could be needed
+                       int batchSize = Math.min(Math.max(optimisePermissionsBulkFetchSize, 1), maxChecks - i);
+                       if (maxSize != null)
+                       {
+                           batchSize = Math.min(batchSize, Math.max(maxSize.intValue() + 1 - filteringResultSet.length(), 1));
+                       }
+                       readStatusesStart = i;
+                       readStatuses = hasReadPermission(returnedObject, i, Math.min(i + batchSize, returnedObject.length()));
+                   }
+                   if (readStatuses.get(i - readStatusesStart) == AccessStatus.DENIED)
+                   {
+                       filteringResultSet.setIncluded(i, false);
+                   }
                }
    
                // Bug out if we are limiting by size
@@ -674,6 +694,85 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
     }
 
 
+    /**
+     * Can a collection check be answered by the batch read check? That is the case for a single check of
+     * <b>Read</b> or <b>ReadProperties</b> on the returned nodes, as <b>Read</b> includes <b>ReadProperties</b>.
+     * Only an allowed answer is final.
+     */
+    private boolean isBatchReadCheck(List<ConfigAttributeDefintion> supportedDefinitions)
+    {
+        if (!(permissionService instanceof PermissionServiceSPI) || (supportedDefinitions.size() != 1))
+        {
+            return false;
+        }
+        ConfigAttributeDefintion cad = supportedDefinitions.get(0);
+        return cad.typeString.equals(AFTER_ACL_NODE) &&
+                ContentModel.TYPE_BASE.equals(cad.required.getQName()) &&
+                (PermissionService.READ.equals(cad.required.getName()) || PermissionService.READ_PROPERTIES.equals(cad.required.getName()));
+    }
+
+    @SuppressWarnings("rawtypes")
+    private NodeRef getTestNodeRef(Object nextObject)
+    {
+        if (StoreRef.class.isAssignableFrom(nextObject.getClass()))
+        {
+            return nodeService.getRootNode((StoreRef) nextObject);
+        }
+        else if (NodeRef.class.isAssignableFrom(nextObject.getClass()))
+        {
+            return (NodeRef) nextObject;
+        }
+        else if (ChildAssociationRef.class.isAssignableFrom(nextObject.getClass()))
+        {
+            return ((ChildAssociationRef) nextObject).getChildRef();
+        }
+        else if (Pair.class.isAssignableFrom(nextObject.getClass()))
+        {
+            return (NodeRef) ((Pair)nextObject).getSecond();
+        }
+        else if (PermissionCheckValue.class.isAssignableFrom(nextObject.getClass()))
+        {
+            return ((PermissionCheckValue) nextObject).getNodeRef();
+        }
+        else if (AssociationRef.class.isAssignableFrom(nextObject.getClass()))
+        {
+            return ((AssociationRef) nextObject).getTargetRef();
+        }
+        else
+        {
+            throw new ACLEntryVoterException("The specified parameter is not recognized: " + nextObject.getClass());
+        }
+    }
+
+    private List<AccessStatus> hasReadPermission(List<Object> objects, int from, int to)
+    {
+        List<NodeRef> nodeRefs = new ArrayList<NodeRef>(to - from);
+        for (int i = from; i < to; i++)
+        {
+            nodeRefs.add(getTestNodeRef(objects.get(i)));
+        }
+        return ((PermissionServiceSPI) permissionService).hasReadPermission(nodeRefs);
+    }
+
+    private List<AccessStatus> hasReadPermission(ResultSet resultSet, int from, int to)
+    {
+        List<NodeRef> nodeRefs = new ArrayList<NodeRef>(to - from);
+        for (int i = from; i < to; i++)
+        {
+            nodeRefs.add(resultSet.getNodeRef(i));
+        }
+        if (permissionService instanceof PermissionServiceSPI)
+        {
+            return ((PermissionServiceSPI) permissionService).hasReadPermission(nodeRefs);
+        }
+        List<AccessStatus> statuses = new ArrayList<AccessStatus>(nodeRefs.size());
+        for (NodeRef nodeRef : nodeRefs)
+        {
+            statuses.add(permissionService.hasReadPermission(nodeRef));
+        }
+        return statuses;
+    }
+
     private ResultSet decideOld(Authentication authentication, Object object, ConfigAttributeDefinition config, ResultSet returnedObject) throws AccessDeniedException
 
     {
@@ -883,8 +982,16 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
         // Keep values explicitly
         List<Object> keepValues = new ArrayList<Object>(returnedObject.size());
         
+        // A read check on the nodes themselves is evaluated in batches (nodes sharing an ACL are evaluated together)
+        boolean batchRead = optimisePermissionsCheck && isBatchReadCheck(supportedDefinitions);
+        List<Object> objects = batchRead ? new ArrayList<Object>(returnedObject) : null;
+        List<AccessStatus> readStatuses = null;
+        int readStatusesStart = 0;
+        int index = -1;
+        
         for (Object nextObject : returnedObject)
         {
+            index++;
             // if the maximum result size or time has been exceeded, then we have to remove only
             long currentTimeMillis = System.currentTimeMillis();
             
@@ -920,34 +1027,7 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
                 NodeRef testNodeRef = null;
                 if (cad.typeString.equals(AFTER_ACL_NODE))
                 {
-                    if (StoreRef.class.isAssignableFrom(nextObject.getClass()))
-                    {
-                        testNodeRef = nodeService.getRootNode((StoreRef) nextObject);
-                    }
-                    else if (NodeRef.class.isAssignableFrom(nextObject.getClass()))
-                    {
-                        testNodeRef = (NodeRef) nextObject;
-                    }
-                    else if (ChildAssociationRef.class.isAssignableFrom(nextObject.getClass()))
-                    {
-                        testNodeRef = ((ChildAssociationRef) nextObject).getChildRef();
-                    }
-                    else if (Pair.class.isAssignableFrom(nextObject.getClass()))
-                    {
-                        testNodeRef = (NodeRef) ((Pair)nextObject).getSecond();
-                    }
-                    else if (PermissionCheckValue.class.isAssignableFrom(nextObject.getClass()))
-                    {
-                        testNodeRef = ((PermissionCheckValue) nextObject).getNodeRef();
-                    }
-                    else if (AssociationRef.class.isAssignableFrom(nextObject.getClass()))
-                    {
-                        testNodeRef = ((AssociationRef) nextObject).getTargetRef();
-                    }
-                    else
-                    {
-                        throw new ACLEntryVoterException("The specified parameter is not recognized: " + nextObject.getClass());
-                    }
+                    testNodeRef = getTestNodeRef(nextObject);
                 }
                 else if (cad.typeString.equals(AFTER_ACL_PARENT))
                 {
@@ -993,6 +1073,23 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
                     continue;                       // Continue to next ConfigAttributeDefintion
                 }
                 
+                if (batchRead && (testNodeRef != null))
+                {
+                    if ((readStatuses == null) || (index >= readStatusesStart + readStatuses.size()))
+                    {
+                        // only look as far ahead as could be needed
+                        long batchSize = Math.min(Math.max(optimisePermissionsBulkFetchSize, 1), maxPermissionChecks - count);
+                        batchSize = Math.max(Math.min(batchSize, targetResultCount - keepValues.size()), 1);
+                        readStatusesStart = index;
+                        readStatuses = hasReadPermission(objects, index, (int) Math.min(index + batchSize, objects.size()));
+                    }
+                    if (readStatuses.get(index - readStatusesStart) == AccessStatus.ALLOWED)
+                    {
+                        continue;                   // Read includes the required permission
+                    }
+                    // Otherwise the exact check below decides
+                }
+                
                 if (allowed && (testNodeRef != null) && (permissionService.hasPermission(testNodeRef, cad.required.toString()) == AccessStatus.DENIED))
                 {
                     allowed = false;
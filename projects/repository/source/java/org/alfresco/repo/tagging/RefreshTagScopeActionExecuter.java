@@ -25,22 +25,20 @@
  */
 package org.alfresco.repo.tagging;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.action.executer.ActionExecuterAbstractBase;
-import org.alfresco.repo.content.MimetypeMap;
+import org.alfresco.repo.domain.tagging.TagScopeCountDAO;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.service.cmr.action.Action;
 import org.alfresco.service.cmr.action.ParameterDefinition;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
 import org.alfresco.service.cmr.repository.ContentService;
-import org.alfresco.service.cmr.repository.ContentWriter;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
-import org.alfresco.service.cmr.tagging.TagDetails;
 import org.alfresco.service.cmr.tagging.TaggingService;
 
 /**
@@ -61,6 +59,9 @@ public class RefreshTagScopeActionExecuter extends ActionExecuterAbstractBase
     /** Tagging Service */
     private TaggingService taggingService;
     
+    /** The tag counts of each tag scope */
+    private TagScopeCountDAO tagScopeCountDAO;
+    
     /** Action name and parameters */
     public static final String NAME = "refresh-tagscope";
     
@@ -94,6 +95,16 @@ public class RefreshTagScopeActionExecuter extends ActionExecuterAbstractBase
         this.taggingService = taggingService;
     }
     
+    /**
+     * Set the tag scope count DAO
+     * 
+     * @param tagScopeCountDAO    the DAO holding the tag counts of each tag scope
+     */
+    public void setTagScopeCountDAO(TagScopeCountDAO tagScopeCountDAO)
+    {
+        this.tagScopeCountDAO = tagScopeCountDAO;
+    }
+    
     /**
      * @see org.alfresco.repo.action.executer.ActionExecuterAbstractBase#executeImpl(org.alfresco.service.cmr.action.Action, org.alfresco.service.cmr.repository.NodeRef)
      */
@@ -109,25 +120,13 @@ public class RefreshTagScopeActionExecuter extends ActionExecuterAbstractBase
                 @SuppressWarnings("unchecked")
                 public Object doWork() throws Exception
                 {
-                    // Create a new list of tag details
-                    List<TagDetails> tags = new ArrayList<TagDetails>(10);
-                    
                     // Count the tags found in all the (primary) children of the node
-                    countTags(actionedUponNodeRef, tags);
-                    
-                    // Order the list
-                    Collections.sort(tags);
+                    Map<String, Integer> tagCounts = new HashMap<String, Integer>(10);
+                    countTags(actionedUponNodeRef, tagCounts);
                     
-                    // Write new content back to tag scope
-                    String tagContent = TaggingServiceImpl.tagDetailsToString(tags);
-                    if(tagContent.length() > 0)
-                    {
-                    	// Write out tag content only if non-zero in size
-	                    ContentWriter contentWriter = contentService.getWriter(actionedUponNodeRef, ContentModel.PROP_TAGSCOPE_CACHE, true);
-	                    contentWriter.setEncoding("UTF-8");
-	                    contentWriter.setMimetype(MimetypeMap.MIMETYPE_TEXT_PLAIN);
-	                    contentWriter.putContent(tagContent);
-                    }
+                    // Replace the counts held for the tag scope
+                    Long scopeNodeId = (Long) nodeService.getProperty(actionedUponNodeRef, ContentModel.PROP_NODE_DBID);
+                    tagScopeCountDAO.setTagCounts(scopeNodeId, tagCounts);
 
                     return null;
                 }
@@ -136,13 +135,14 @@ public class RefreshTagScopeActionExecuter extends ActionExecuterAbstractBase
         }
     }
 
-    private void countTags(NodeRef nodeRef, List<TagDetails> tagDetailsList)
+    private void countTags(NodeRef nodeRef, Map<String, Integer> tagCounts)
     {
         // Add the tags of passed node
         List<String> tags = this.taggingService.getTags(nodeRef);
         for (String tag : tags)
         {
-            addDetails(tag, tagDetailsList);
+            Integer count = tagCounts.get(tag);
+            tagCounts.put(tag, (count == null) ? 1 : count + 1);
         }
         
         // Iterate over the children of the node
@@ -151,32 +151,10 @@ public class RefreshTagScopeActionExecuter extends ActionExecuterAbstractBase
         {
             if (assoc.isPrimary() == true)
             {
-                countTags(assoc.getChildRef(), tagDetailsList);
+                countTags(assoc.getChildRef(), tagCounts);
             }
         }
     }
-    
-    private void addDetails(String tag, List<TagDetails> tagDetailsList)
-    {
-        TagDetails currentTag = null;
-        for (TagDetails tagDetails : tagDetailsList)
-        {
-            if (tagDetails.getName().equals(tag) == true)
-            {
-                currentTag = tagDetails;
-                break;
-            }
-        }
-        
-        if (currentTag == null)
-        {
-            tagDetailsList.add(new TagDetailsImpl(tag, 1));
-        }
-        else
-        {
-            ((TagDetailsImpl)currentTag).incrementCount();
-        }
-    }
 
     /**
      * @see org.alfresco.repo.action.ParameterizedItemAbstractBase#addParameterDefinitions(java.util.List)
@@ -33,26 +33,24 @@ import java.util.Map;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.cache.SimpleCache;
-import org.alfresco.service.cmr.repository.ContentData;
-import org.alfresco.service.cmr.repository.ContentReader;
-import org.alfresco.service.cmr.repository.ContentService;
+import org.alfresco.repo.domain.tagging.TagScopeCountDAO;
+import org.alfresco.repo.domain.tagging.TagScopeCountEntity;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
-import org.alfresco.service.cmr.tagging.TagDetails;
 import org.alfresco.service.namespace.QName;
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
 
 /**
- * This class is an interceptor of the NodeService that converts the content of the tagScopeCache property 
+ * This class is an interceptor of the NodeService that converts the tag counts held for a tag scope 
  * into a pseudo, multi-value text property (cm:tagScopeSummary) 
  * with each value of the spoofed property taking the form "<tag name>=<tag count>".
  * This interceptor can be enabled by calling its 
  * static {@link TagScopePropertyMethodInterceptor#setEnabled(Boolean)} method. It is enabled by default. When enabled, 
  * a call to getProperties
- * for a node that has a cm:tagScopeCache property will include the calculated cm:tagScopeSummary property. A call to 
+ * for a node that has the cm:tagscopable aspect will include the calculated cm:tagScopeSummary property. A call to 
  * getProperty specifying cm:tagScopeSummary as the property name will return the calculated property value or null
- * if the node has no cm:tagScopeCache property value. 
+ * if the tag scope holds no tags. 
  * 
  * @author Brian Remmington
  *
@@ -68,22 +66,22 @@ public class TagScopePropertyMethodInterceptor implements MethodInterceptor
         }
     };
     
-    private ContentService contentService;
     private NodeService nodeService;
-    private SimpleCache<String, List<String>> cache;
+    private TagScopeCountDAO tagScopeCountDAO;
+    private SimpleCache<Long, List<String>> cache;
     
 
-    public void setContentService(ContentService contentService)
+    public void setNodeService(NodeService nodeService)
     {
-        this.contentService = contentService;
+        this.nodeService = nodeService;
     }
 
-    public void setNodeService(NodeService nodeService)
+    public void setTagScopeCountDAO(TagScopeCountDAO tagScopeCountDAO)
     {
-        this.nodeService = nodeService;
+        this.tagScopeCountDAO = tagScopeCountDAO;
     }
 
-    public void setCache(SimpleCache<String, List<String>> cache)
+    public void setCache(SimpleCache<Long, List<String>> cache)
     {
         this.cache = cache;
     }
@@ -170,38 +168,33 @@ public class TagScopePropertyMethodInterceptor implements MethodInterceptor
      */
     protected List<String> getTagSummary(NodeRef nodeRef, Map<QName, Serializable> allNodeProperties)
     {
-        List<String> tagSummary = null;
-        ContentData tagScopeCache = null;
+        if (!nodeService.hasAspect(nodeRef, ContentModel.ASPECT_TAGSCOPE))
+        {
+            return null;
+        }
+        Long scopeNodeId = null;
         if (allNodeProperties != null)
         {
-            tagScopeCache = (ContentData) allNodeProperties.get(ContentModel.PROP_TAGSCOPE_CACHE);
+            scopeNodeId = (Long) allNodeProperties.get(ContentModel.PROP_NODE_DBID);
         }
-        else
+        if (scopeNodeId == null)
         {
-            tagScopeCache = (ContentData) nodeService.getProperty(nodeRef, ContentModel.PROP_TAGSCOPE_CACHE);
+            scopeNodeId = (Long) nodeService.getProperty(nodeRef, ContentModel.PROP_NODE_DBID);
         }
-        if (tagScopeCache != null)
+        List<String> tagSummary = cache.get(scopeNodeId);
+        if (tagSummary == null)
         {
-            String contentUrl = tagScopeCache.getContentUrl();
-            tagSummary = cache.get(contentUrl);
-            if (tagSummary == null)
+            List<TagScopeCountEntity> tagCounts = tagScopeCountDAO.getTagCounts(scopeNodeId, 0, Integer.MAX_VALUE);
+            tagSummary = new ArrayList<String>(tagCounts.size());
+            for (TagScopeCountEntity tagCount : tagCounts)
             {
-                ContentReader contentReader = contentService.getRawReader(contentUrl);
-                if (contentReader != null && contentReader.exists())
-                {
-                    List<TagDetails> tagDetails = TaggingServiceImpl.readTagDetails(contentReader.getContentInputStream());
-                    tagSummary = new ArrayList<String>(tagDetails.size());
-                    for (TagDetails tagDetail : tagDetails)
-                    {
-                        tagSummary.add(tagDetail.getName() + "=" + tagDetail.getCount());
-                    }
-                    //Push into the cache
-                    tagSummary = Collections.unmodifiableList(tagSummary);
-                    cache.put(contentUrl, tagSummary);
-                }
+                tagSummary.add(tagCount.getTagName() + "=" + tagCount.getTagCount());
             }
+            //Push into the cache
+            tagSummary = Collections.unmodifiableList(tagSummary);
+            cache.put(scopeNodeId, tagSummary);
         }
-        return tagSummary;
+        return tagSummary.isEmpty() ? null : tagSummary;
     }
 
     public static final Boolean getEnabled()
@@ -53,6 +53,8 @@ import org.alfresco.repo.coci.CheckOutCheckInServicePolicies;
 import org.alfresco.repo.copy.CopyServicePolicies;
 import org.alfresco.repo.copy.CopyServicePolicies.BeforeCopyPolicy;
 import org.alfresco.repo.copy.CopyServicePolicies.OnCopyCompletePolicy;
+import org.alfresco.repo.domain.tagging.TagScopeCountDAO;
+import org.alfresco.repo.domain.tagging.TagScopeCountEntity;
 import org.alfresco.repo.node.NodeServicePolicies;
 import org.alfresco.repo.node.NodeServicePolicies.OnCreateNodePolicy;
 import org.alfresco.repo.node.NodeServicePolicies.OnMoveNodePolicy;
@@ -67,7 +69,6 @@ import org.alfresco.repo.transaction.TransactionListener;
 import org.alfresco.service.cmr.action.Action;
 import org.alfresco.service.cmr.action.ActionService;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
-import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
@@ -118,6 +119,7 @@ public class TaggingServiceImpl implements TaggingService,
     private NamespaceService namespaceService;
     private PolicyComponent policyComponent;
     private AuditComponent auditComponent;
+    private TagScopeCountDAO tagScopeCountDAO;
     
     /** Tag Details Delimiter */
     private static final String TAG_DETAILS_DELIMITER = "|";
@@ -130,6 +132,14 @@ public class TaggingServiceImpl implements TaggingService,
     private JavaBehaviour updateTagBehaviour;
     private JavaBehaviour createTagBehaviour;
     
+    /**
+     * Set the DAO holding the tag counts of each tag scope
+     */
+    public void setTagScopeCountDAO(TagScopeCountDAO tagScopeCountDAO)
+    {
+        this.tagScopeCountDAO = tagScopeCountDAO;
+    }
+    
     /**
      * Set the cateogry service
      */
@@ -1100,6 +1110,7 @@ public class TaggingServiceImpl implements TaggingService,
         if (this.nodeService.hasAspect(nodeRef, ContentModel.ASPECT_TAGSCOPE) == true)
         {
             this.nodeService.removeAspect(nodeRef, ContentModel.ASPECT_TAGSCOPE);
+            this.tagScopeCountDAO.deleteTagCounts(getNodeId(nodeRef));
         }
     }
 
@@ -1131,14 +1142,78 @@ public class TaggingServiceImpl implements TaggingService,
      */
     private List<TagDetails> getTagDetails(NodeRef nodeRef)
     {
-        List<TagDetails> tagDetails = new ArrayList<TagDetails>(13);
-        ContentReader reader = this.contentService.getReader(nodeRef, ContentModel.PROP_TAGSCOPE_CACHE);
-        if (reader != null)
+        return toTagDetails(this.tagScopeCountDAO.getTagCounts(getNodeId(nodeRef), 0, Integer.MAX_VALUE));
+    }
+    
+    /**
+     * @see org.alfresco.service.cmr.tagging.TaggingService#getTagScope(org.alfresco.service.cmr.repository.NodeRef, org.alfresco.query.PagingRequest)
+     */
+    public PagingResults<TagDetails> getTagScope(NodeRef nodeRef, PagingRequest pagingRequest)
+    {
+        ParameterCheck.mandatory("nodeRef", nodeRef);
+        ParameterCheck.mandatory("pagingRequest", pagingRequest);
+        
+        if (this.nodeService.hasAspect(nodeRef, ContentModel.ASPECT_TAGSCOPE) == false)
+        {
+            return new EmptyPagingResults<TagDetails>();
+        }
+        
+        Long scopeNodeId = getNodeId(nodeRef);
+        int maxItems = pagingRequest.getMaxItems();
+        
+        // Get one more than asked for to find out if there are more
+        List<TagScopeCountEntity> tagCounts = this.tagScopeCountDAO.getTagCounts(
+                scopeNodeId, pagingRequest.getSkipCount(), maxItems == Integer.MAX_VALUE ? maxItems : maxItems + 1);
+        final boolean hasMoreItems = tagCounts.size() > maxItems;
+        if (hasMoreItems)
+        {
+            tagCounts = tagCounts.subList(0, maxItems);
+        }
+        final List<TagDetails> page = toTagDetails(tagCounts);
+        final Integer totalItems = pagingRequest.getRequestTotalCountMax() > 0 ? Integer.valueOf(this.tagScopeCountDAO.countTags(scopeNodeId)) : null;
+        
+        return new PagingResults<TagDetails>()
+        {
+            @Override
+            public List<TagDetails> getPage()
+            {
+                return page;
+            }
+            
+            @Override
+            public boolean hasMoreItems()
+            {
+                return hasMoreItems;
+            }
+            
+            @Override
+            public Pair<Integer, Integer> getTotalResultCount()
+            {
+                return new Pair<Integer, Integer>(totalItems, totalItems);
+            }
+            
+            @Override
+            public String getQueryExecutionId()
+            {
+                return null;
+            }
+        };
+    }
+    
+    private List<TagDetails> toTagDetails(List<TagScopeCountEntity> tagCounts)
+    {
+        List<TagDetails> tagDetails = new ArrayList<TagDetails>(tagCounts.size());
+        for (TagScopeCountEntity tagCount : tagCounts)
         {
-            tagDetails = TaggingServiceImpl.readTagDetails(reader.getContentInputStream());
+            tagDetails.add(new TagDetailsImpl(tagCount.getTagName(), (int) tagCount.getTagCount()));
         }
         return tagDetails;
     }
+    
+    private Long getNodeId(NodeRef nodeRef)
+    {
+        return (Long) this.nodeServiceInternal.getProperty(nodeRef, ContentModel.PROP_NODE_DBID);
+    }
 
     /**
      * @see org.alfresco.service.cmr.tagging.TaggingService#findAllTagScopes(org.alfresco.service.cmr.repository.NodeRef)
@@ -1290,7 +1365,7 @@ public class TaggingServiceImpl implements TaggingService,
      * @param is                    input stream
      * @return List<TagDetails>     list of tag details
      */
-    /*package*/ static List<TagDetails> readTagDetails(InputStream is)
+    public static List<TagDetails> readTagDetails(InputStream is)
     {
         List<TagDetails> result = new ArrayList<TagDetails>(25);
         BufferedReader reader = null;
@@ -1382,14 +1457,25 @@ public class TaggingServiceImpl implements TaggingService,
     /**
      * Triggers an async update of all the relevant tag scopes when a tag is 
      *  added or removed from a node.
-     * Uses the audit service as a persisted queue to hold the list of changes,
-     *  and triggers an sync action to work on the entries in the queue for us.
-     *  This should avoid contention problems and race conditions.
      * 
      * @param nodeRef       node reference
      * @param updates Map<String, Boolean>
      */
     private void updateTagScope(NodeRef nodeRef, Map<String, Boolean> updates)
+    {
+       Map<NodeRef, HashMap<String, Integer>> scopeChanges = new HashMap<NodeRef, HashMap<String, Integer>>(5);
+       addTagScopeChanges(nodeRef, updates, scopeChanges);
+       updateTagScopes(scopeChanges);
+    }
+    
+    /**
+     * Adds the changes to the tags of a node to the changes for each of its tag scopes.
+     * 
+     * @param nodeRef       node reference
+     * @param updates       tags added (true) to or removed (false) from the node
+     * @param scopeChanges  the change to the count of each tag, by tag scope
+     */
+    private void addTagScopeChanges(NodeRef nodeRef, Map<String, Boolean> updates, Map<NodeRef, HashMap<String, Integer>> scopeChanges)
     {
        // First up, locate all the tag scopes for this node
        // (Need to do a recursive search up to the root)
@@ -1405,28 +1491,60 @@ public class TaggingServiceImpl implements TaggingService,
           return;
        }
        
-       // Turn from tag+yes/no into tag+1/-1
-       // (Later we may roll things up better to be tag+#/-#)
-       HashMap<String,Integer> changes = new HashMap<String, Integer>(updates.size());
-       for(String tag : updates.keySet())
+       // Turn from tag+yes/no into tag+1/-1 and roll up with the other changes to the scope
+       for(NodeRef tagScopeNode : tagScopeNodeRefs)
        {
-          int val = -1;
-          if(updates.get(tag))
-             val = 1;
-          changes.put(tag, val);
+          HashMap<String, Integer> changes = scopeChanges.get(tagScopeNode);
+          if (changes == null)
+          {
+             changes = new HashMap<String, Integer>(updates.size());
+             scopeChanges.put(tagScopeNode, changes);
+          }
+          for(String tag : updates.keySet())
+          {
+             Integer count = changes.get(tag);
+             int val = (count == null) ? 0 : count.intValue();
+             val += updates.get(tag) ? 1 : -1;
+             changes.put(tag, val);
+          }
        }
-       
-       // Next, queue the updates for each tag scope
-       for(NodeRef tagScopeNode : tagScopeNodeRefs)
+    }
+    
+    /**
+     * Queues the changes to the tag counts of each tag scope and triggers an async update of the tag scopes.
+     * Uses the audit service as a persisted queue to hold the list of changes,
+     *  and triggers an async action to work on the entries in the queue for us.
+     *  This should avoid contention problems and race conditions.
+     * 
+     * @param scopeChanges  the change to the count of each tag, by tag scope
+     */
+    private void updateTagScopes(Map<NodeRef, HashMap<String, Integer>> scopeChanges)
+    {
+       // Queue the updates for each tag scope, dropping changes that cancel out
+       ArrayList<NodeRef> tagScopeNodeRefs = new ArrayList<NodeRef>(scopeChanges.size());
+       for(Map.Entry<NodeRef, HashMap<String, Integer>> scopeChange : scopeChanges.entrySet())
        {
+          HashMap<String, Integer> changes = scopeChange.getValue();
+          changes.values().removeAll(Collections.singleton(0));
+          if (changes.isEmpty())
+          {
+             continue;
+          }
+          NodeRef tagScopeNode = scopeChange.getKey();
           Map<String,Serializable> auditValues = new HashMap<String, Serializable>();
           auditValues.put(TAGGING_AUDIT_KEY_TAGS, changes);
           auditValues.put(TAGGING_AUDIT_KEY_NODEREF, tagScopeNode.toString());
           auditComponent.recordAuditValues(TAGGING_AUDIT_ROOT_PATH, auditValues);
+          tagScopeNodeRefs.add(tagScopeNode);
+          
+          if(logger.isDebugEnabled())
+          {
+             logger.debug("Queueing async tag scope update to tag scope " + tagScopeNode + " of " + changes);
+          }
        }
-       if(logger.isDebugEnabled())
+       if (tagScopeNodeRefs.isEmpty())
        {
-          logger.debug("Queueing async tag scope updates to tag scopes " + tagScopeNodeRefs + " of " + changes);
+          return;
        }
        
        // Finally, trigger the action to process the updates
@@ -1508,6 +1626,8 @@ public class TaggingServiceImpl implements TaggingService,
         Map<NodeRef, Map<String, Boolean>> updates = (Map<NodeRef, Map<String, Boolean>>)AlfrescoTransactionSupport.getResource(TAG_UPDATES);
         if (updates != null)
         {
+            // Roll the changes to all the nodes up into one set of changes per tag scope
+            Map<NodeRef, HashMap<String, Integer>> scopeChanges = new HashMap<NodeRef, HashMap<String, Integer>>(5);
             for (NodeRef nodeRef : updates.keySet())
             {
                 Map<String, Boolean> tagUpdates = updates.get(nodeRef);
@@ -1518,9 +1638,10 @@ public class TaggingServiceImpl implements TaggingService,
                     {
                         continue;
                     }
-                    updateTagScope(nodeRef, tagUpdates);
+                    addTagScopeChanges(nodeRef, tagUpdates, scopeChanges);
                 }
             }
+            updateTagScopes(scopeChanges);
         }
     }
 
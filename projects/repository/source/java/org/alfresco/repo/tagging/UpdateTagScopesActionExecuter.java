@@ -27,7 +27,6 @@ package org.alfresco.repo.tagging;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -37,7 +36,7 @@ import java.util.Set;
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.action.ParameterDefinitionImpl;
 import org.alfresco.repo.action.executer.ActionExecuterAbstractBase;
-import org.alfresco.repo.content.MimetypeMap;
+import org.alfresco.repo.domain.tagging.TagScopeCountDAO;
 import org.alfresco.repo.lock.JobLockService;
 import org.alfresco.repo.lock.LockAcquisitionException;
 import org.alfresco.repo.policy.BehaviourFilter;
@@ -49,12 +48,9 @@ import org.alfresco.service.cmr.audit.AuditQueryParameters;
 import org.alfresco.service.cmr.audit.AuditService;
 import org.alfresco.service.cmr.audit.AuditService.AuditQueryCallback;
 import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
-import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.ContentService;
-import org.alfresco.service.cmr.repository.ContentWriter;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
-import org.alfresco.service.cmr.tagging.TagDetails;
 import org.alfresco.service.cmr.tagging.TaggingService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.service.transaction.TransactionService;
@@ -94,6 +90,9 @@ public class UpdateTagScopesActionExecuter extends ActionExecuterAbstractBase
     /** Used to disable policies/behaviours when changing tag scope properties */
     private BehaviourFilter behaviourFilter;
     
+    /** The tag counts of each tag scope */
+    private TagScopeCountDAO tagScopeCountDAO;
+    
     /** Action name and parameters */
     public static final String NAME = "update-tagscope";
     public static final String PARAM_TAG_SCOPES = "tag_scopes";
@@ -183,6 +182,16 @@ public class UpdateTagScopesActionExecuter extends ActionExecuterAbstractBase
         this.behaviourFilter = behaviourFilter;
     }
     
+    /**
+     * Set the tag scope count DAO
+     * 
+     * @param tagScopeCountDAO    the DAO holding the tag counts of each tag scope
+     */
+    public void setTagScopeCountDAO(TagScopeCountDAO tagScopeCountDAO)
+    {
+        this.tagScopeCountDAO = tagScopeCountDAO;
+    }
+    
     /**
      * @see org.alfresco.repo.action.executer.ActionExecuterAbstractBase#executeImpl(org.alfresco.service.cmr.action.Action, org.alfresco.service.cmr.repository.NodeRef)
      */
@@ -375,115 +384,22 @@ public class UpdateTagScopesActionExecuter extends ActionExecuterAbstractBase
     
     /**
      * For the given tag scope node, which should have been locked,
-     *  update the tag scope cache with the given updates.
+     *  apply the given changes to the tag counts of the tag scope.
      */
     private void performUpdates(NodeRef tagScopeNode, Map<String,Integer> updates)
     {
        if(nodeService.exists(tagScopeNode))
        {
-          List<TagDetails> tags = null;
-          
-          // Changing the tag scope values is a system operation
-          // As such, don't fire policies/behaviours during this
-          behaviourFilter.disableBehaviour();
-          
-          // Get the current tags
-          ContentReader contentReader = contentService.getReader(tagScopeNode, ContentModel.PROP_TAGSCOPE_CACHE);
-          if (contentReader == null)
-          {
-              tags = new ArrayList<TagDetails>(1);
-          }
-          else
-          {
-              tags = TaggingServiceImpl.readTagDetails(contentReader.getContentInputStream());
-          }
-          String previousTagState = tags.toString();
-          
-          // Figure out what changes to make
-          for (String tagName : updates.keySet())
-          {
-              int change = updates.get(tagName);
-              if(change == 0)
-                 continue;
-             
-              // Get the current count for this tag, if we can
-              TagDetailsImpl currentTag = null;
-              for (TagDetails tag : tags)
-              {
-                  if (tag.getName().equals(tagName) == true)
-                  {
-                      currentTag = (TagDetailsImpl)tag;
-                      break;
-                  }
-              }
-              
-              // If we're incrementing, increase our counts
-              if (change > 0)
-              {
-                  if (currentTag == null)
-                  {
-                      currentTag = new TagDetailsImpl(tagName, 0);
-                      tags.add(currentTag);
-                  }
-                  
-                  for(int i=0; i<change; i++)
-                     currentTag.incrementCount();
-              }
-              else
-              {
-                  if (currentTag != null)
-                  {
-                     for(int i=change; i<0; i++)
-                     {
-                        currentTag.decrementCount();
-                     }
-                     
-                     if(currentTag.getCount() <= 0)
-                     {
-                        // All gone
-                        tags.remove(currentTag);
-                     }
-                  }
-              }
-          }
+          // The counts are changed in place, so there's no need to
+          //  read and rewrite the whole list of tags
+          Long scopeNodeId = (Long) nodeService.getProperty(tagScopeNode, ContentModel.PROP_NODE_DBID);
+          tagScopeCountDAO.updateTagCounts(scopeNodeId, updates);
 
-          // ACE-1979: emptying tag scope cache by setting content property for the cache to null to avoid zero-size writes. Orphaned content will be deleted with content store
-          // cleaner job 
-          if (tags.isEmpty())
+          // Log this if required
+          if(logger.isDebugEnabled())
           {
-             nodeService.setProperty(tagScopeNode, ContentModel.PROP_TAGSCOPE_CACHE, null);
-
-             if (logger.isDebugEnabled())
-             {
-                logger.debug("Updated tag scope: '" + tagScopeNode + "'. No tags were found. Emptying tags cache by setting content property to null...");
-             }
+             logger.debug("Updated tag scope " + tagScopeNode + " with " + updates);
           }
-          else
-          {
-              // Order the list
-              Collections.sort(tags);
-
-              // Write new content back to tag scope
-              String tagContent = TaggingServiceImpl.tagDetailsToString(tags);
-              ContentWriter contentWriter = contentService.getWriter(tagScopeNode, ContentModel.PROP_TAGSCOPE_CACHE, true);
-              contentWriter.setEncoding("UTF-8");
-              contentWriter.setMimetype(MimetypeMap.MIMETYPE_TEXT_PLAIN);
-              contentWriter.putContent(tagContent);
-
-              // Log this if required
-              if(logger.isDebugEnabled())
-              {
-                 logger.debug(
-                       "Updated tag scope " + tagScopeNode + " with " + updates + ", " +
-                       "new contents are { " + tagContent.replace("\n", " : ") + " } " +
-                       "from old contents of " + previousTagState
-                 );
-              }
-          }
-
-          // We're done making our changes
-          // Allow behaviours to fire again if they want to
-          behaviourFilter.enableBehaviour();
        }
     }
     
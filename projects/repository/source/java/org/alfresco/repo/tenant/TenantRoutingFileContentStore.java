@@ -44,6 +44,7 @@ public class TenantRoutingFileContentStore extends AbstractTenantRoutingContentS
 {
     private ContentLimitProvider contentLimitProvider = new NoLimitProvider();
     private FileContentUrlProvider fileContentUrlProvider;
+    private boolean deduplicate;
     
     /**
      * Sets a new {@link ContentLimitProvider} which will provide a maximum filesize for content.
@@ -61,6 +62,16 @@ public class TenantRoutingFileContentStore extends AbstractTenantRoutingContentS
         this.fileContentUrlProvider = fileContentUrlProvider;
     }
     
+    /**
+     * Store identical content once.
+     * 
+     * @see FileContentStore#setDeduplicate(boolean)
+     */
+    public void setDeduplicate(boolean deduplicate)
+    {
+        this.deduplicate = deduplicate;
+    }
+    
     protected ContentStore initContentStore(ApplicationContext ctx, String contentRoot)
     {
     	Map<String, Serializable> extendedEventParams = new HashMap<String, Serializable>();
@@ -81,6 +92,7 @@ public class TenantRoutingFileContentStore extends AbstractTenantRoutingContentS
         {
             fileContentStore.setFileContentUrlProvider(fileContentUrlProvider);
         }
+        fileContentStore.setDeduplicate(deduplicate);
         return fileContentStore;
     }
 }
@@ -422,6 +422,12 @@ public class VirtualPermissionServiceExtension extends
         return getTrait().hasReadPermission(nodeRef);
     }
 
+    @Override
+    public List<AccessStatus> hasReadPermission(List<NodeRef> nodeRefs)
+    {
+        return getTrait().hasReadPermission(nodeRefs);
+    }
+
     @Override
     public Set<String> getReaders(Long aclId)
     {
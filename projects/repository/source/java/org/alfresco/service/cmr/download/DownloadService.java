@@ -25,6 +25,7 @@
  */
 package org.alfresco.service.cmr.download;
 
+import java.io.OutputStream;
 import java.util.Date;
 
 import org.alfresco.service.cmr.repository.NodeRef;
@@ -55,6 +56,31 @@ public interface DownloadService
      */
     public NodeRef createDownload(NodeRef[] nodeRefs, boolean recusirsive);
     
+    /**
+     * Create a download whose archive file is not created in the background.
+     * 
+     * Instead, clients write the archive file to a stream as it is created,
+     * using {@link #streamDownload(NodeRef, OutputStream)}.
+     * 
+     * @param nodeRefs NodeRefs of content to be added to the archive file
+     * @param recursive Recurse into container nodes
+     * @return Reference to the download node
+     */
+    public NodeRef createStreamingDownload(NodeRef[] nodeRefs, boolean recursive);
+    
+    /**
+     * Write the archive file for a download created by {@link #createStreamingDownload(NodeRef[], boolean)}
+     * to the given stream, as it is created. The status of the download is
+     * updated as usual, but the archive file is not stored. 
+     * 
+     * A download can only be streamed once.  If the archive file can not be written,
+     * the status of the download is set to FAILED.
+     * 
+     * @param downloadNode Reference to the download node
+     * @param output Stream to write the archive file to
+     */
+    public void streamDownload(NodeRef downloadNode, OutputStream output);
+    
     /**
      * Get the status of the of the download identified by downloadNode.
      */
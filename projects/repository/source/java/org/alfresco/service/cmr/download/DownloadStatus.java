@@ -45,7 +45,8 @@ public class DownloadStatus implements Serializable
 	    IN_PROGRESS,
 	    DONE,
 	    MAX_CONTENT_SIZE_EXCEEDED,
-	    CANCELLED
+	    CANCELLED,
+	    FAILED
 	}
 	
 	private long done;
@@ -252,6 +252,20 @@ public interface TaggingService
     @NotAuditable
     TagScope findTagScope(NodeRef nodeRef);
     
+    /**
+     * Get a paged list of the tags counted by a tag scope, ordered by count, highest first.
+     * <p>
+     * If the node is not a tag scope an empty page is returned.
+     * 
+     * @param tagScope          the tag scope node
+     * @param pagingRequest     the page to get
+     * @return                  the tags and their counts
+     * 
+     * @since 5.2
+     */
+    @NotAuditable
+    PagingResults<TagDetails> getTagScope(NodeRef tagScope, PagingRequest pagingRequest);
+    
     /**
      * Finds all the tag scopes for the specified node.
      * <p>
@@ -57,6 +57,7 @@ public class AllUnitTestsSuite extends TestSuite
         suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.attributes.PropTablesCleanupJobTest.class));
         suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.cache.DefaultCacheFactoryTest.class));
         suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.cache.DefaultSimpleCacheTest.class));
+        suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.cache.OffHeapSimpleCacheTest.class));
         suite.addTestSuite(org.alfresco.repo.cache.lookup.EntityLookupCacheTest.class);
         suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.calendar.CalendarHelpersTest.class));
         suite.addTestSuite(org.alfresco.repo.dictionary.RepoDictionaryDAOTest.class);
@@ -95,6 +95,7 @@ public class Repository01TestSuite extends TestSuite
         suite.addTestSuite(org.alfresco.repo.activities.ActivityServiceImplTest.class);
         suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.activities.feed.FeedNotifierTest.class));
         suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.activities.feed.FeedNotifierJobTest.class));
+        suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.activities.feed.local.LocalFeedTaskProcessorTest.class));
         suite.addTestSuite(org.alfresco.repo.admin.RepoAdminServiceImplTest.class);
         suite.addTestSuite(org.alfresco.repo.admin.patch.PatchTest.class);
         suite.addTestSuite(org.alfresco.repo.admin.registry.RegistryServiceImplTest.class);
@@ -108,6 +109,7 @@ public class Repository01TestSuite extends TestSuite
     
     static void tests13(TestSuite suite)
     {
+        suite.addTestSuite(org.alfresco.repo.batch.BatchProcessorTest.class);
         suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.blog.BlogServiceImplTest.class));
         suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.bulkimport.impl.BulkImportTest.class));
         suite.addTest(new JUnit4TestAdapter(org.alfresco.repo.bulkimport.impl.StripingFilesystemTrackerTest.class));
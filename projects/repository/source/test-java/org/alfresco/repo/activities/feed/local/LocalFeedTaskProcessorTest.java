@@ -0,0 +1,250 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.activities.feed.local;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.activities.post.lookup.PostLookup;
+import org.alfresco.repo.domain.activities.ActivityFeedDAO;
+import org.alfresco.repo.domain.activities.ActivityFeedEntity;
+import org.alfresco.repo.domain.node.NodeDAO;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.security.PermissionService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.ApplicationContextHelper;
+import org.alfresco.util.GUID;
+import org.alfresco.util.Pair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Tests the bulk parts of generating activity feeds in the repository: the multi-row insert of feed
+ * entries and the read permission checks that are shared by the nodes with the same ACL.
+ *
+ * @see LocalFeedTaskProcessor
+ * @since 5.2
+ */
+public class LocalFeedTaskProcessorTest
+{
+    private ApplicationContext ctx;
+
+    private ActivityFeedDAO feedDAO;
+    private NodeService nodeService;
+    private NodeDAO nodeDAO;
+    private PermissionService permissionService;
+    private RetryingTransactionHelper transactionHelper;
+    private LocalFeedTaskProcessor processor;
+    /** The number of read permission checks made by the processor */
+    private AtomicInteger permissionChecks;
+
+    private String siteId;
+    private String userA;
+    private String userB;
+    private NodeRef folderNodeRef;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        ctx = ApplicationContextHelper.getApplicationContext();
+        feedDAO = (ActivityFeedDAO) ctx.getBean("feedDAO");
+        nodeService = (NodeService) ctx.getBean("NodeService");
+        nodeDAO = (NodeDAO) ctx.getBean("nodeDAO");
+        permissionService = (PermissionService) ctx.getBean("PermissionService");
+        transactionHelper = (RetryingTransactionHelper) ctx.getBean("retryingTransactionHelper");
+
+        permissionChecks = new AtomicInteger();
+        PermissionService countingPermissionService = (PermissionService) Proxy.newProxyInstance(
+                PermissionService.class.getClassLoader(),
+                new Class<?>[] {PermissionService.class},
+                new InvocationHandler()
+                {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+                    {
+                        if (method.getName().equals("hasPermission"))
+                        {
+                            permissionChecks.incrementAndGet();
+                        }
+                        try
+                        {
+                            return method.invoke(permissionService, args);
+                        }
+                        catch (InvocationTargetException e)
+                        {
+                            throw e.getCause();
+                        }
+                    }
+                });
+
+        processor = new LocalFeedTaskProcessor();
+        processor.setFeedDAO(feedDAO);
+        processor.setNodeService(nodeService);
+        processor.setPermissionService(countingPermissionService);
+        processor.setTenantService((TenantService) ctx.getBean("tenantService"));
+        processor.setNodeDAO(nodeDAO);
+
+        siteId = "feedTaskProcessorTest" + GUID.generate();
+        userA = "feedTaskProcessorTestA" + GUID.generate();
+        userB = "feedTaskProcessorTestB" + GUID.generate();
+
+        AuthenticationUtil.setFullyAuthenticatedUser(AuthenticationUtil.getAdminUserName());
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        feedDAO.deleteSiteFeedEntries(siteId);
+        feedDAO.deleteUserFeedEntries(userA);
+        if (folderNodeRef != null)
+        {
+            RetryingTransactionCallback<Void> deleteCallback = new RetryingTransactionCallback<Void>()
+            {
+                public Void execute() throws Throwable
+                {
+                    nodeService.addAspect(folderNodeRef, ContentModel.ASPECT_TEMPORARY, null);
+                    nodeService.deleteNode(folderNodeRef);
+                    return null;
+                }
+            };
+            transactionHelper.doInTransaction(deleteCallback);
+        }
+        AuthenticationUtil.clearCurrentSecurityContext();
+    }
+
+    @Test
+    public void testInsertFeedEntries() throws Exception
+    {
+        // insert site and user feed entries together, over more than one statement
+        List<ActivityFeedEntity> feedEntries = new ArrayList<ActivityFeedEntity>();
+        for (int i = 0; i < 450; i++)
+        {
+            ActivityFeedEntity feedEntry = new ActivityFeedEntity();
+
+            feedEntry.setPostDate(new Date(System.currentTimeMillis()-(i*60*1000L)));
+            feedEntry.setSiteNetwork(siteId);
+            feedEntry.setActivityType("testActivityType");
+            feedEntry.setPostUserId(userB);
+            feedEntry.setFeedUserId(i % 3 == 0 ? "" : userA);
+            feedEntry.setFeedDate(new Date());
+
+            feedEntries.add(feedEntry);
+        }
+        assertEquals(450, processor.insertFeedEntries(feedEntries));
+        // Check
+        assertEquals(150, feedDAO.selectSiteFeedEntries(siteId, -1).size());
+        assertEquals(300, feedDAO.selectUserFeedEntries(userA, siteId, false, false, -1L, -1).size());
+    }
+
+    @Test
+    public void testReadersCachedPerAcl() throws Exception
+    {
+        // Two documents sharing the ACL of a folder that only user A can read
+        RetryingTransactionCallback<NodeRef[]> createCallback = new RetryingTransactionCallback<NodeRef[]>()
+        {
+            public NodeRef[] execute() throws Throwable
+            {
+                NodeRef rootNodeRef = nodeService.getRootNode(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE);
+                folderNodeRef = nodeService.createNode(
+                        rootNodeRef, ContentModel.ASSOC_CHILDREN,
+                        QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, siteId),
+                        ContentModel.TYPE_FOLDER).getChildRef();
+                permissionService.setInheritParentPermissions(folderNodeRef, false);
+                permissionService.setPermission(folderNodeRef, userA, PermissionService.READ, true);
+                NodeRef[] docNodeRefs = new NodeRef[2];
+                for (int i = 0; i < docNodeRefs.length; i++)
+                {
+                    docNodeRefs[i] = nodeService.createNode(
+                            folderNodeRef, ContentModel.ASSOC_CONTAINS,
+                            QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "doc" + i),
+                            ContentModel.TYPE_CONTENT).getChildRef();
+                }
+                return docNodeRefs;
+            }
+        };
+        final NodeRef[] docNodeRefs = transactionHelper.doInTransaction(createCallback);
+
+        RetryingTransactionCallback<Void> checkCallback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                Long aclId = nodeDAO.getNodeAclId(nodeDAO.getNodePair(docNodeRefs[0]).getFirst());
+                assertEquals("The documents should share an ACL",
+                        aclId, nodeDAO.getNodeAclId(nodeDAO.getNodePair(docNodeRefs[1]).getFirst()));
+
+                Map<Pair<Long, String>, Boolean> readCache = new HashMap<Pair<Long, String>, Boolean>();
+                Set<String> connectedUsers = new HashSet<String>(Arrays.asList(userA, userB));
+                assertEquals(Collections.singleton(userA), processor.getReaders(null, connectedUsers, getModel(docNodeRefs[0]), readCache));
+                assertEquals("Each user should be checked once", 2, permissionChecks.get());
+                assertEquals(Boolean.TRUE, readCache.get(new Pair<Long, String>(aclId, userA)));
+                assertEquals(Boolean.FALSE, readCache.get(new Pair<Long, String>(aclId, userB)));
+
+                assertEquals(Collections.singleton(userA), processor.getReaders(null, connectedUsers, getModel(docNodeRefs[1]), readCache));
+                assertEquals("The checks should be reused for a node with the same ACL", 2, permissionChecks.get());
+
+                // The owner of a node is always checked against the node itself
+                String owner = AuthenticationUtil.getAdminUserName();
+                connectedUsers.add(owner);
+                assertTrue(processor.getReaders(null, connectedUsers, getModel(docNodeRefs[0]), readCache).contains(owner));
+                assertTrue(processor.getReaders(null, connectedUsers, getModel(docNodeRefs[1]), readCache).contains(owner));
+                assertEquals(4, permissionChecks.get());
+                assertNull(readCache.get(new Pair<Long, String>(aclId, owner)));
+                return null;
+            }
+        };
+        transactionHelper.doInTransaction(checkCallback);
+    }
+
+    private Map<String, Object> getModel(NodeRef nodeRef)
+    {
+        Map<String, Object> model = new HashMap<String, Object>();
+        model.put(PostLookup.JSON_NODEREF, nodeRef.toString());
+        return model;
+    }
+}
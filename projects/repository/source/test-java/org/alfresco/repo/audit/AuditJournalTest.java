@@ -0,0 +1,260 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.audit;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.alfresco.repo.domain.audit.AuditDAO.AuditEntryInfo;
+import org.alfresco.util.GUID;
+import org.alfresco.util.TempFileProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A low level unit test of the journal used to record audit entries behind the transaction.
+ *
+ * @since 5.2
+ */
+public class AuditJournalTest
+{
+    private File directory;
+    private AuditJournal journal;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        directory = new File(TempFileProvider.getTempDir(), "AuditJournalTest-" + GUID.generate());
+        journal = new AuditJournal(directory);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        journal.close();
+    }
+
+    private List<AuditEntryInfo> createEntries(int from, int count)
+    {
+        List<AuditEntryInfo> entries = new ArrayList<AuditEntryInfo>(count);
+        for (int i = from; i < from + count; i++)
+        {
+            Map<String, Serializable> values = new HashMap<String, Serializable>();
+            values.put("/test/value", "value-" + i);
+            entries.add(new AuditEntryInfo(1L, i, (i % 2 == 0) ? null : "user-" + i, values));
+        }
+        return entries;
+    }
+
+    /**
+     * Append one record per entry, as if each was recorded by its own transaction
+     */
+    private void appendEach(int from, int count) throws Exception
+    {
+        for (int i = from; i < from + count; i++)
+        {
+            journal.append("txn-" + i, createEntries(i, 1));
+        }
+    }
+
+    private List<AuditJournal.Record> readAll(File pending, long drained) throws Exception
+    {
+        List<AuditJournal.Record> records = new ArrayList<AuditJournal.Record>();
+        AuditJournal.Reader reader = journal.openReader(pending, drained);
+        try
+        {
+            AuditJournal.Record record;
+            while ((record = reader.next()) != null)
+            {
+                records.add(record);
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return records;
+    }
+
+    private File getQuarantine()
+    {
+        return new File(directory, "quarantine");
+    }
+
+    @Test
+    public void testAppendAndDrain() throws Exception
+    {
+        assertTrue("New journal should be empty", journal.isEmpty());
+        assertFalse("Nothing to roll over", journal.roll());
+
+        journal.append("txn-a", createEntries(0, 10));
+        assertFalse(journal.isEmpty());
+        assertEquals(1L, journal.getNextPendingNumber());
+        assertTrue(journal.roll());
+        journal.append("txn-b", createEntries(10, 3));
+        journal.append("txn-c", createEntries(13, 2));
+        assertTrue(journal.roll());
+
+        Map<Long, File> pendingFiles = journal.getPendingFiles();
+        assertEquals(2, pendingFiles.size());
+        int expectedTime = 0;
+        List<String> txnIds = new ArrayList<String>();
+        for (Map.Entry<Long, File> pending : pendingFiles.entrySet())
+        {
+            for (AuditJournal.Record record : readAll(pending.getValue(), 0L))
+            {
+                txnIds.add(record.getTxnId());
+                for (AuditEntryInfo entry : record.getEntries())
+                {
+                    assertEquals("Entries must be read in the order they were appended", expectedTime, entry.getTime());
+                    assertEquals("value-" + expectedTime, entry.getValues().get("/test/value"));
+                    assertEquals((expectedTime % 2 == 0) ? null : "user-" + expectedTime, entry.getUsername());
+                    expectedTime++;
+                }
+            }
+            journal.complete(pending.getKey());
+        }
+        assertEquals(15, expectedTime);
+        assertEquals("[txn-a, txn-b, txn-c]", txnIds.toString());
+        assertTrue("Drained journal should be empty", journal.isEmpty());
+        assertFalse("Nothing should have been moved aside", getQuarantine().exists());
+    }
+
+    @Test
+    public void testResumeAfterRestart() throws Exception
+    {
+        String id = journal.getId();
+        appendEach(0, 10);
+        journal.roll();
+
+        // Reopen as if after a restart
+        journal.close();
+        journal = new AuditJournal(directory);
+        assertEquals("The journal must keep its identity", id, journal.getId());
+        assertEquals(1, journal.getPendingFiles().size());
+        assertEquals(2L, journal.getNextPendingNumber());
+        List<AuditJournal.Record> records = readAll(journal.getPendingFiles().get(1L), 4L);
+        assertEquals("Drained records should be skipped", 6, records.size());
+        assertEquals(5L, records.get(0).getPosition());
+        assertEquals(4L, records.get(0).getEntries().get(0).getTime());
+
+        // Numbers of files drained and deleted before the restart must not be used again
+        journal.complete(1L);
+        journal.skipPendingNumbers(7L);
+        appendEach(10, 1);
+        journal.roll();
+        assertEquals(8L, (long) journal.getPendingFiles().firstKey());
+    }
+
+    @Test
+    public void testIncompleteRecordDropped() throws Exception
+    {
+        appendEach(0, 3);
+        journal.close();
+
+        // Simulate a failure part way through an append
+        RandomAccessFile file = new RandomAccessFile(new File(directory, "audit.journal"), "rw");
+        file.seek(file.length());
+        file.write(new byte[] {0, 0, 1, 0, 42});
+        file.close();
+
+        journal = new AuditJournal(directory);
+        appendEach(3, 2);
+        journal.roll();
+        List<AuditJournal.Record> records = readAll(journal.getPendingFiles().get(1L), 0L);
+        assertEquals(5, records.size());
+        assertEquals(4L, records.get(4).getEntries().get(0).getTime());
+        assertFalse("An incomplete append is not moved aside", getQuarantine().exists());
+    }
+
+    @Test
+    public void testCorruptRecordMovedAside() throws Exception
+    {
+        appendEach(0, 3);
+        journal.roll();
+        File pending = journal.getPendingFiles().get(1L);
+
+        // Flip a byte in the middle of the second record
+        RandomAccessFile file = new RandomAccessFile(pending, "rw");
+        int firstLength = file.readInt();
+        long second = 8L + firstLength;
+        file.seek(second);
+        int secondLength = file.readInt();
+        file.seek(second + 4L + secondLength / 2);
+        int b = file.read();
+        file.seek(second + 4L + secondLength / 2);
+        file.write(b ^ 0xFF);
+        file.close();
+
+        List<AuditJournal.Record> records = readAll(pending, 0L);
+        assertEquals("Reading must carry on after a corrupt record", 2, records.size());
+        assertEquals("txn-0", records.get(0).getTxnId());
+        assertEquals("txn-2", records.get(1).getTxnId());
+        assertEquals("The corrupt record still counts", 3L, records.get(1).getPosition());
+        assertTrue("The corrupt record should be moved aside", new File(getQuarantine(), pending.getName() + ".2").exists());
+    }
+
+    @Test
+    public void testUnreadableRecordMovedAside() throws Exception
+    {
+        appendEach(0, 1);
+        journal.close();
+
+        // A record that is intact but does not hold entries
+        byte[] garbage = "not a journal record".getBytes("UTF-8");
+        CRC32 crc = new CRC32();
+        crc.update(garbage);
+        RandomAccessFile file = new RandomAccessFile(new File(directory, "audit.journal"), "rw");
+        file.seek(file.length());
+        file.writeInt(garbage.length);
+        file.write(garbage);
+        file.writeInt((int) crc.getValue());
+        file.close();
+
+        journal = new AuditJournal(directory);
+        appendEach(1, 1);
+        journal.roll();
+        File pending = journal.getPendingFiles().get(1L);
+        List<AuditJournal.Record> records = readAll(pending, 0L);
+        assertEquals(2, records.size());
+        assertEquals("txn-1", records.get(1).getTxnId());
+        File quarantined = new File(getQuarantine(), pending.getName() + ".2");
+        assertEquals("The record is moved aside as it was", 8L + garbage.length, quarantined.length());
+
+        // Records moved aside for failing to be written are kept in the same way
+        journal.quarantine(records.get(1));
+        assertTrue(new File(getQuarantine(), pending.getName() + ".3").exists());
+    }
+}
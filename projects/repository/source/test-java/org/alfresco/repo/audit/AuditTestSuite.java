@@ -49,8 +49,10 @@ public class AuditTestSuite extends TestSuite
         suite.addTestSuite(AuditComponentTest.class);
         suite.addTestSuite(UserAuditFilterTest.class);
         suite.addTestSuite(AuditMethodInterceptorTest.class);
+        suite.addTestSuite(AuditWriteBehindRecorderTest.class);
         
         suite.addTest(new JUnit4TestAdapter(PropertyAuditFilterTest.class));
+        suite.addTest(new JUnit4TestAdapter(AuditJournalTest.class));
         suite.addTest(new JUnit4TestAdapter(AccessAuditorTest.class));
                 
         return suite;
@@ -0,0 +1,336 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.audit;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.domain.audit.AuditDAO;
+import org.alfresco.repo.domain.audit.AuditDAO.AuditEntryInfo;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.test_category.OwnJVMTestsCategory;
+import org.alfresco.util.ApplicationContextHelper;
+import org.alfresco.util.GUID;
+import org.alfresco.util.TempFileProvider;
+import org.junit.experimental.categories.Category;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Tests the path of audit entries from the transaction that records them, through the journal,
+ * to the database.  The database writes of the entries themselves are replaced, so that they can
+ * be checked and made to fail.
+ *
+ * @see AuditWriteBehindRecorder
+ * @since 5.2
+ */
+@Category(OwnJVMTestsCategory.class)
+public class AuditWriteBehindRecorderTest extends TestCase
+{
+    private static ApplicationContext ctx = ApplicationContextHelper.getApplicationContext();
+
+    private TransactionService transactionService;
+    private AttributeService attributeService;
+    private RetryingTransactionHelper txnHelper;
+    private File directory;
+    private AuditWriteBehindRecorder recorder;
+    /** The entries written to the database, in order */
+    private List<AuditEntryInfo> written;
+    /** Usernames that cannot be written */
+    private List<String> failingUsernames;
+    private boolean databaseDown;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        transactionService = (TransactionService) ctx.getBean("transactionService");
+        attributeService = (AttributeService) ctx.getBean("attributeService");
+        txnHelper = transactionService.getRetryingTransactionHelper();
+        directory = new File(TempFileProvider.getTempDir(), "AuditWriteBehindRecorderTest-" + GUID.generate());
+        written = Collections.synchronizedList(new ArrayList<AuditEntryInfo>());
+        failingUsernames = new ArrayList<String>();
+        databaseDown = false;
+        recorder = createRecorder();
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        recorder.destroy();
+        String journalId = new AuditJournal(directory).getId();
+        attributeService.removeAttributes(".auditWriteBehind", journalId);
+    }
+
+    /**
+     * A recorder over the test journal, which only writes when told to
+     */
+    @SuppressWarnings("unchecked")
+    private AuditWriteBehindRecorder createRecorder()
+    {
+        AuditDAO auditDAO = mock(AuditDAO.class);
+        doAnswer(new Answer<Integer>()
+        {
+            public Integer answer(InvocationOnMock invocation) throws Throwable
+            {
+                List<AuditEntryInfo> entries = (List<AuditEntryInfo>) invocation.getArguments()[0];
+                for (AuditEntryInfo entry : entries)
+                {
+                    if (databaseDown || failingUsernames.contains(entry.getUsername()))
+                    {
+                        throw new AlfrescoRuntimeException("Failed to write audit entry: " + entry);
+                    }
+                }
+                // Only visible once the transaction commits
+                final List<AuditEntryInfo> copy = new ArrayList<AuditEntryInfo>(entries);
+                AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter()
+                {
+                    @Override
+                    public void afterCommit()
+                    {
+                        written.addAll(copy);
+                    }
+                });
+                return entries.size();
+            }
+        }).when(auditDAO).createAuditEntries(any(List.class));
+
+        AuditWriteBehindRecorder recorder = new AuditWriteBehindRecorder();
+        recorder.setEnabled(true);
+        recorder.setJournalDirectory(directory.getAbsolutePath());
+        recorder.setBatchSize(10);
+        recorder.setDrainIntervalMs(3600000L);
+        recorder.setMaxWriteAttempts(2);
+        recorder.setAuditDAO(auditDAO);
+        recorder.setAttributeService(attributeService);
+        recorder.setTransactionService(transactionService);
+        recorder.init();
+        return recorder;
+    }
+
+    /**
+     * Record entries for the given users in a transaction of their own
+     */
+    private void record(final String ... usernames)
+    {
+        RetryingTransactionCallback<Void> callback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                for (String username : usernames)
+                {
+                    recorder.record(1L, System.currentTimeMillis(), username, Collections.<String, Serializable>emptyMap());
+                }
+                return null;
+            }
+        };
+        txnHelper.doInTransaction(callback, false, true);
+    }
+
+    private String getWrittenUsernames()
+    {
+        List<String> usernames = new ArrayList<String>();
+        for (AuditEntryInfo entry : written)
+        {
+            usernames.add(entry.getUsername());
+        }
+        return usernames.toString();
+    }
+
+    private int getQuarantinedCount()
+    {
+        String[] names = new File(directory, "quarantine").list();
+        return names == null ? 0 : names.length;
+    }
+
+    public void testCommittedEntriesWritten() throws Exception
+    {
+        record("a", "b", "c");
+        record("d");
+        assertEquals("Nothing is written before the journal is drained", "[]", getWrittenUsernames());
+
+        assertEquals(4, recorder.flush());
+        assertEquals("[a, b, c, d]", getWrittenUsernames());
+        assertEquals("Entries must only be written once", 0, recorder.flush());
+        assertEquals(4, written.size());
+    }
+
+    public void testRolledBackEntriesDiscarded() throws Exception
+    {
+        RetryingTransactionCallback<Void> callback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                recorder.record(1L, System.currentTimeMillis(), "rolledBack", Collections.<String, Serializable>emptyMap());
+                // Fails after the entries are journalled
+                AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter()
+                {
+                    @Override
+                    public void beforeCommit(boolean readOnly)
+                    {
+                        throw new AlfrescoRuntimeException("Commit failed");
+                    }
+                });
+                return null;
+            }
+        };
+        try
+        {
+            txnHelper.doInTransaction(callback, false, true);
+            fail("The transaction should have rolled back");
+        }
+        catch (AlfrescoRuntimeException e)
+        {
+            // Expected
+        }
+        record("committed");
+
+        assertEquals(1, recorder.flush());
+        assertEquals("[committed]", getWrittenUsernames());
+    }
+
+    public void testEntriesRecordedDuringCommit() throws Exception
+    {
+        RetryingTransactionCallback<Void> callback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                recorder.record(1L, System.currentTimeMillis(), "first", Collections.<String, Serializable>emptyMap());
+                // As the access auditor does, after the recorder has journalled the entries
+                AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter()
+                {
+                    @Override
+                    public void beforeCommit(boolean readOnly)
+                    {
+                        recorder.record(1L, System.currentTimeMillis(), "second", Collections.<String, Serializable>emptyMap());
+                    }
+                });
+                return null;
+            }
+        };
+        txnHelper.doInTransaction(callback, false, true);
+
+        assertEquals(2, recorder.flush());
+        assertEquals("[first, second]", getWrittenUsernames());
+    }
+
+    public void testFailedWritesRetried() throws Exception
+    {
+        record("a");
+        record("b");
+        record("c");
+        databaseDown = true;
+        try
+        {
+            recorder.flush();
+            fail("The write should have failed");
+        }
+        catch (RuntimeException e)
+        {
+            // Expected
+        }
+        assertEquals("[]", getWrittenUsernames());
+        assertEquals("Nothing should be moved aside while the database is down", 0, getQuarantinedCount());
+
+        databaseDown = false;
+        assertEquals(3, recorder.flush());
+        assertEquals("[a, b, c]", getWrittenUsernames());
+    }
+
+    public void testEntriesThatCannotBeWrittenMovedAside() throws Exception
+    {
+        record("a");
+        record("poison");
+        record("c");
+        failingUsernames.add("poison");
+
+        assertEquals("The other entries must still be written", 2, recorder.flush());
+        assertEquals("[a, c]", getWrittenUsernames());
+        assertEquals(1, getQuarantinedCount());
+        assertEquals(0, recorder.flush());
+
+        // An entry that fails on its own is moved aside once the attempts run out
+        record("poison");
+        try
+        {
+            recorder.flush();
+            fail("The first attempt should fail");
+        }
+        catch (RuntimeException e)
+        {
+            // Expected
+        }
+        assertEquals(1, getQuarantinedCount());
+        assertEquals(0, recorder.flush());
+        assertEquals(2, getQuarantinedCount());
+        record("d");
+        assertEquals(1, recorder.flush());
+        assertEquals("[a, c, d]", getWrittenUsernames());
+    }
+
+    public void testResumeAfterRestart() throws Exception
+    {
+        record("a");
+        record("b");
+        record("c");
+        // Write the first entries and then fail, leaving the rest in the journal
+        failingUsernames.add("c");
+        try
+        {
+            recorder.flush();
+            fail("The second batch should fail");
+        }
+        catch (RuntimeException e)
+        {
+            // Expected
+        }
+        assertEquals("[a, b]", getWrittenUsernames());
+        assertEquals(0, getQuarantinedCount());
+
+        // Restart
+        failingUsernames.clear();
+        recorder.destroy();
+        recorder = createRecorder();
+        record("d");
+        assertEquals("Only the entries not yet written should be written", 2, recorder.flush());
+        assertEquals("[a, b, c, d]", getWrittenUsernames());
+    }
+}
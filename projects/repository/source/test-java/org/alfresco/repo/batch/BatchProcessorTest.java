@@ -0,0 +1,229 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.batch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.alfresco.repo.batch.BatchProcessor.BatchProcessWorkerAdaptor;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.service.ServiceRegistry;
+import org.alfresco.util.ApplicationContextHelper;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Tests the pipelined mode of the {@link BatchProcessor}.
+ * 
+ * @since 5.2
+ */
+public class BatchProcessorTest extends TestCase
+{
+    private ApplicationContext ctx = ApplicationContextHelper.getApplicationContext();
+
+    private RetryingTransactionHelper txnHelper;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        ServiceRegistry serviceRegistry = (ServiceRegistry) ctx.getBean(ServiceRegistry.SERVICE_REGISTRY);
+        txnHelper = serviceRegistry.getTransactionService().getRetryingTransactionHelper();
+    }
+
+    private BatchProcessor<Integer> createProcessor(BatchProcessWorkProvider<Integer> workProvider, int workerThreads, int batchSize)
+    {
+        BatchProcessor<Integer> batchProcessor = new BatchProcessor<Integer>(
+                getName(), txnHelper, workProvider, workerThreads, batchSize, null, null, 1000);
+        batchProcessor.setPipelined(true);
+        return batchProcessor;
+    }
+
+    public void testPipelinedProcessesEveryEntryInOrder()
+    {
+        final List<Integer> processed = Collections.synchronizedList(new ArrayList<Integer>());
+        BatchProcessor<Integer> batchProcessor = createProcessor(new ChunkedWorkProvider(100, 7, -1), 1, 5);
+        batchProcessor.process(new BatchProcessWorkerAdaptor<Integer>()
+        {
+            public void process(Integer entry) throws Throwable
+            {
+                processed.add(entry);
+            }
+        }, true);
+
+        // A single worker sees the entries in the order they were provided
+        assertEquals(100, processed.size());
+        for (int i = 0; i < 100; i++)
+        {
+            assertEquals(Integer.valueOf(i), processed.get(i));
+        }
+        assertEquals(100, batchProcessor.getSuccessfullyProcessedEntries());
+        assertEquals(0, batchProcessor.getTotalErrors());
+    }
+
+    public void testPipelinedProcessesEveryEntryOnceWithManyWorkers()
+    {
+        final int[] counts = new int[1000];
+        BatchProcessor<Integer> batchProcessor = createProcessor(new ChunkedWorkProvider(1000, 33, -1), 4, 10);
+        batchProcessor.process(new BatchProcessWorkerAdaptor<Integer>()
+        {
+            public void process(Integer entry) throws Throwable
+            {
+                synchronized (counts)
+                {
+                    counts[entry]++;
+                }
+            }
+        }, true);
+
+        for (int i = 0; i < counts.length; i++)
+        {
+            assertEquals("Entry " + i, 1, counts[i]);
+        }
+        assertEquals(1000, batchProcessor.getSuccessfullyProcessedEntries());
+    }
+
+    public void testPipelinedPropagatesProviderFailure()
+    {
+        final List<Integer> processed = Collections.synchronizedList(new ArrayList<Integer>());
+        BatchProcessor<Integer> batchProcessor = createProcessor(new ChunkedWorkProvider(100, 10, 3), 1, 5);
+        try
+        {
+            batchProcessor.process(new BatchProcessWorkerAdaptor<Integer>()
+            {
+                public void process(Integer entry) throws Throwable
+                {
+                    processed.add(entry);
+                }
+            }, true);
+            fail("The failure to fetch work must be propagated");
+        }
+        catch (IllegalStateException e)
+        {
+            assertEquals("Chunk 3", e.getMessage());
+        }
+        // Only the chunks fetched before the failure were processed
+        assertEquals(30, processed.size());
+        assertNotNull(batchProcessor.getEndTime());
+    }
+
+    public void testPipelinedCountsErrorsAndCarriesOn()
+    {
+        final List<Integer> processed = Collections.synchronizedList(new ArrayList<Integer>());
+        BatchProcessor<Integer> batchProcessor = createProcessor(new ChunkedWorkProvider(100, 10, -1), 2, 5);
+        batchProcessor.process(new BatchProcessWorkerAdaptor<Integer>()
+        {
+            public void process(Integer entry) throws Throwable
+            {
+                if (entry % 10 == 0)
+                {
+                    throw new IllegalArgumentException("Bad entry " + entry);
+                }
+                processed.add(entry);
+            }
+        }, true);
+
+        // An entry failing does not stop the rest of its batch nor the following batches
+        assertEquals(90, processed.size());
+        assertEquals(90, batchProcessor.getSuccessfullyProcessedEntries());
+        assertEquals(10, batchProcessor.getTotalErrors());
+        assertNotNull(batchProcessor.getLastError());
+        assertTrue(Integer.parseInt(batchProcessor.getLastErrorEntryId()) % 10 == 0);
+    }
+
+    public void testPipelinedGrowsBatchSizeForFastTransactions()
+    {
+        BatchProcessor<Integer> batchProcessor = createProcessor(new ChunkedWorkProvider(2000, 100, -1), 1, 10);
+        batchProcessor.setBatchSizeLimits(2, 40);
+        batchProcessor.setTargetTransactionMillis(60000L);
+        batchProcessor.process(new BatchProcessWorkerAdaptor<Integer>()
+        {
+            public void process(Integer entry) throws Throwable
+            {
+            }
+        }, true);
+
+        assertEquals(2000, batchProcessor.getSuccessfullyProcessedEntries());
+        assertEquals("Fast transactions grow the batch up to the limit", 40, batchProcessor.getCurrentBatchSize());
+    }
+
+    public void testPipelinedShrinksBatchSizeForSlowTransactions()
+    {
+        BatchProcessor<Integer> batchProcessor = createProcessor(new ChunkedWorkProvider(100, 20, -1), 1, 20);
+        batchProcessor.setBatchSizeLimits(2, 20);
+        batchProcessor.setTargetTransactionMillis(10L);
+        batchProcessor.process(new BatchProcessWorkerAdaptor<Integer>()
+        {
+            public void process(Integer entry) throws Throwable
+            {
+                Thread.sleep(5L);
+            }
+        }, true);
+
+        assertEquals(100, batchProcessor.getSuccessfullyProcessedEntries());
+        assertEquals("Slow transactions shrink the batch down to the limit", 2, batchProcessor.getCurrentBatchSize());
+    }
+
+    /**
+     * Provides the integers from zero in chunks, optionally failing when asked for a given chunk.
+     */
+    private static class ChunkedWorkProvider implements BatchProcessWorkProvider<Integer>
+    {
+        private final int total;
+        private final int chunkSize;
+        private final int failingChunk;
+        private int next;
+        private int chunk;
+
+        private ChunkedWorkProvider(int total, int chunkSize, int failingChunk)
+        {
+            this.total = total;
+            this.chunkSize = chunkSize;
+            this.failingChunk = failingChunk;
+        }
+
+        public int getTotalEstimatedWorkSize()
+        {
+            return total;
+        }
+
+        public Collection<Integer> getNextWork()
+        {
+            if (chunk++ == failingChunk)
+            {
+                throw new IllegalStateException("Chunk " + failingChunk);
+            }
+            List<Integer> work = new ArrayList<Integer>(chunkSize);
+            while (next < total && work.size() < chunkSize)
+            {
+                work.add(next++);
+            }
+            return work;
+        }
+    }
+}
@@ -224,6 +224,59 @@ public class BulkImportTest extends AbstractBulkImportTests
                 });
     }
 
+    @Test
+    public void testCopyImportPipelined() throws Throwable
+    {
+        txn = transactionService.getUserTransaction();
+        txn.begin();
+
+        NodeRef folderNode = topLevelFolder.getNodeRef();
+        MultiThreadedBulkFilesystemImporter pipelinedImporter = (MultiThreadedBulkFilesystemImporter)ctx.getBean("pipelinedBulkFilesystemImporter");
+
+        try
+        {
+            NodeImporter nodeImporter = streamingNodeImporterFactory.getNodeImporter(ResourceUtils.getFile("classpath:bulkimport"));
+            BulkImportParameters bulkImportParameters = new BulkImportParameters();
+            bulkImportParameters.setTarget(folderNode);
+            bulkImportParameters.setReplaceExisting(true);
+            bulkImportParameters.setDisableRulesService(true);
+            bulkImportParameters.setBatchSize(5);
+            pipelinedImporter.bulkImport(bulkImportParameters, nodeImporter);
+        }
+        catch(Throwable e)
+        {
+            fail(e.getMessage());
+        }
+
+        System.out.println(pipelinedImporter.getStatus());
+        assertEquals(false, pipelinedImporter.getStatus().inProgress());
+
+        // The same tree as the striping import
+        checkFiles(folderNode, null, 2, 9, null,
+                new ExpectedFolder[]
+                {
+                    new ExpectedFolder("folder1"),
+                    new ExpectedFolder("folder2")
+                });
+        NodeRef folder1 = getFolders(folderNode, "folder1").get(0).getNodeRef();
+        NodeRef folder2 = getFolders(folderNode, "folder2").get(0).getNodeRef();
+        checkFiles(folder1, null, 1, 0, null, null);
+        checkFiles(folder2, null, 1, 0, null, null);
+        NodeRef folder1_1 = getFolders(folder1, "folder1.1").get(0).getNodeRef();
+        checkFiles(folder1_1, null, 2, 12,
+                new ExpectedFile[]
+                {
+                    new ExpectedFile("quick.txt", MimetypeMap.MIMETYPE_TEXT_PLAIN, "The quick brown fox jumps over the lazy dog"),
+                },
+                new ExpectedFolder[]
+                {
+                    new ExpectedFolder("folder1.1.1"),
+                    new ExpectedFolder("folder1.1.2")
+                });
+        NodeRef folder2_1 = getFolders(folder2, "folder2.1").get(0).getNodeRef();
+        checkFiles(folder2_1, null, 0, 17, null, null);
+    }
+
     protected Rule createCopyRule(NodeRef targetNode, boolean isAppliedToChildren)
     {
         Rule rule = new Rule();
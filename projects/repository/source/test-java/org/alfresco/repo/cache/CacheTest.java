@@ -26,7 +26,9 @@
 package org.alfresco.repo.cache;
 
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Map;
 
 import javax.transaction.Status;
 import javax.transaction.UserTransaction;
@@ -92,6 +94,7 @@ public class CacheTest extends TestCase
         // Make the cache mutable (default)
         transactionalCache.setMutable(true);
         transactionalCache.setAllowEqualsChecks(false);
+        transactionalCache.setReadOnlyFastPath(false);
         
         transactionalCacheNoStats.setMutable(true);
         transactionalCacheNoStats.setAllowEqualsChecks(false);
@@ -403,6 +406,80 @@ public class CacheTest extends TestCase
         }
     }
     
+    public void testReadOnlyFastPath() throws Throwable
+    {
+        TransactionalCache.putSharedCacheValue(backingCache, NEW_GLOBAL_ONE, NEW_GLOBAL_ONE, null);
+        TransactionalCache.putSharedCacheValue(backingCache, NEW_GLOBAL_TWO, NEW_GLOBAL_TWO, null);
+        transactionalCache.setReadOnlyFastPath(true);
+        
+        RetryingTransactionHelper txnHelper = serviceRegistry.getTransactionService().getRetryingTransactionHelper();
+        RetryingTransactionCallback<Void> readOnlyCallback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                assertEquals(NEW_GLOBAL_ONE, transactionalCache.get(NEW_GLOBAL_ONE));
+                assertTrue(transactionalCache.contains(NEW_GLOBAL_TWO));
+                // Nothing was bound to the transaction, so the shared value is seen directly
+                TransactionalCache.putSharedCacheValue(backingCache, NEW_GLOBAL_ONE, NEW_GLOBAL_ONE + "-updated", null);
+                assertEquals(NEW_GLOBAL_ONE + "-updated", transactionalCache.get(NEW_GLOBAL_ONE));
+                
+                // Once the transaction has written, the usual layering applies
+                transactionalCache.remove(NEW_GLOBAL_TWO);
+                assertNull("Transactional removal not respected", transactionalCache.get(NEW_GLOBAL_TWO));
+                assertTrue("Removal must not reach the shared cache before commit", backingCache.contains(NEW_GLOBAL_TWO));
+                return null;
+            }
+        };
+        txnHelper.doInTransaction(readOnlyCallback, true);
+        assertFalse("Removal not committed to the shared cache", backingCache.contains(NEW_GLOBAL_TWO));
+        
+        // Read-write transactions never use the fast path
+        TransactionalCache.putSharedCacheValue(backingCache, NEW_GLOBAL_TWO, NEW_GLOBAL_TWO, null);
+        RetryingTransactionCallback<Void> readWriteCallback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                assertEquals(NEW_GLOBAL_TWO, transactionalCache.get(NEW_GLOBAL_TWO));
+                TransactionalCache.putSharedCacheValue(backingCache, NEW_GLOBAL_TWO, NEW_GLOBAL_TWO + "-updated", null);
+                assertEquals("Read-committed not preserved", NEW_GLOBAL_TWO, transactionalCache.get(NEW_GLOBAL_TWO));
+                return null;
+            }
+        };
+        txnHelper.doInTransaction(readWriteCallback, false);
+    }
+    
+    public void testGetAll() throws Throwable
+    {
+        TransactionalCache.putSharedCacheValue(backingCache, NEW_GLOBAL_ONE, NEW_GLOBAL_ONE, null);
+        TransactionalCache.putSharedCacheValue(backingCache, NEW_GLOBAL_TWO, NEW_GLOBAL_TWO, null);
+        TransactionalCache.putSharedCacheValue(backingCache, NEW_GLOBAL_THREE, NEW_GLOBAL_THREE, null);
+        
+        // No transaction
+        Map<String, Object> values = transactionalCache.getAll(Arrays.asList(NEW_GLOBAL_ONE, NEW_GLOBAL_TWO, UPDATE_TXN_THREE));
+        assertEquals(2, values.size());
+        assertEquals(NEW_GLOBAL_ONE, values.get(NEW_GLOBAL_ONE));
+        assertEquals(NEW_GLOBAL_TWO, values.get(NEW_GLOBAL_TWO));
+        
+        RetryingTransactionHelper txnHelper = serviceRegistry.getTransactionService().getRetryingTransactionHelper();
+        RetryingTransactionCallback<Void> callback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                transactionalCache.remove(NEW_GLOBAL_ONE);
+                transactionalCache.put(UPDATE_TXN_THREE, "XXX");
+                Map<String, Object> values = transactionalCache.getAll(
+                        Arrays.asList(NEW_GLOBAL_ONE, NEW_GLOBAL_TWO, NEW_GLOBAL_THREE, UPDATE_TXN_THREE));
+                assertEquals(3, values.size());
+                assertFalse("Transactionally removed value returned", values.containsKey(NEW_GLOBAL_ONE));
+                assertEquals(NEW_GLOBAL_TWO, values.get(NEW_GLOBAL_TWO));
+                assertEquals(NEW_GLOBAL_THREE, values.get(NEW_GLOBAL_THREE));
+                assertEquals("Transactional update not returned", "XXX", values.get(UPDATE_TXN_THREE));
+                return null;
+            }
+        };
+        txnHelper.doInTransaction(callback, false);
+    }
+    
     /**
      * Preloads the cache, then performs a simultaneous addition of N new values and
      * removal of the N preloaded values.
@@ -62,6 +62,13 @@ public class DefaultCacheFactoryTest
         properties.setProperty("cache.withMaxIdle.maxItems", "0");
         properties.setProperty("cache.withMaxIdle.eviction-policy", "NONE");
         properties.setProperty("cache.withMaxIdle.maxIdleSeconds", "7");
+        // cache.offHeap
+        properties.setProperty("cache.offHeap.maxItems", "1000");
+        properties.setProperty("cache.offHeap.eviction-policy", "LRU");
+        properties.setProperty("cache.offHeap.timeToLiveSeconds", "5");
+        properties.setProperty("cache.offHeap.offHeap.enabled", "true");
+        properties.setProperty("cache.offHeap.offHeap.maxMemoryMB", "2");
+        properties.setProperty("cache.offHeap.offHeap.segments", "4");
         
         cacheFactory.setProperties(properties);
     }
@@ -100,4 +107,17 @@ public class DefaultCacheFactoryTest
         assertEquals(0, cache.getTTLSecs());        
         assertEquals(7, cache.getMaxIdleSecs());        
     }
+    
+    @Test
+    public void canCreateOffHeapCache()
+    {
+        OffHeapSimpleCache<String, String> offHeapCache =
+                    (OffHeapSimpleCache<String, String>) cacheFactory.createCache("cache.offHeap");
+        assertEquals("cache.offHeap", offHeapCache.getCacheName());
+        assertEquals(1000, offHeapCache.getMaxItems());
+        assertTrue(offHeapCache.isUseMaxItems());
+        assertEquals(5, offHeapCache.getTTLSecs());
+        assertEquals(2 * 1024 * 1024, offHeapCache.getMaxMemoryBytes());
+        assertEquals(4, offHeapCache.getSegmentCount());
+    }
 }
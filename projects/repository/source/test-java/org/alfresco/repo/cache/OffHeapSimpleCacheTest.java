@@ -0,0 +1,229 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.alfresco.repo.cache.TransactionStats.OpType;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link OffHeapSimpleCache} class.
+ */
+public class OffHeapSimpleCacheTest
+{
+    private static final long ONE_MB = 1024L * 1024L;
+    private OffHeapSimpleCache<Long, String> cache;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        cache = new OffHeapSimpleCache<Long, String>(ONE_MB, 4, 0, false, 0, getClass().getName());
+    }
+
+    @Test
+    public void putGetRemove()
+    {
+        assertNull(cache.get(1L));
+        assertFalse(cache.contains(1L));
+
+        cache.put(1L, "ONE");
+        cache.put(2L, "TWO");
+        assertTrue(cache.contains(1L));
+        assertEquals("ONE", cache.get(1L));
+        assertEquals("TWO", cache.get(2L));
+
+        // Replace a value
+        cache.put(1L, "UNO");
+        assertEquals("UNO", cache.get(1L));
+        assertEquals(2, cache.size());
+
+        cache.remove(1L);
+        assertFalse(cache.contains(1L));
+        assertNull(cache.get(1L));
+        assertEquals("TWO", cache.get(2L));
+
+        cache.clear();
+        assertFalse(cache.contains(2L));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void nullValuesAreCached()
+    {
+        cache.put(1L, null);
+        assertTrue(cache.contains(1L));
+        assertNull(cache.get(1L));
+    }
+
+    @Test
+    public void valuesAreCopies()
+    {
+        OffHeapSimpleCache<Long, HashMap<String, String>> mapCache =
+                    new OffHeapSimpleCache<Long, HashMap<String, String>>(ONE_MB, 1, 0, false, 0, getClass().getName());
+        HashMap<String, String> value = new HashMap<String, String>();
+        value.put("a", "b");
+        mapCache.put(1L, value);
+        value.put("c", "d");
+
+        Map<String, String> cached = mapCache.get(1L);
+        assertEquals(1, cached.size());
+        assertEquals("b", cached.get("a"));
+        assertNotSame(cached, mapCache.get(1L));
+    }
+
+    @Test
+    public void getKeys()
+    {
+        for (long i = 0; i < 100; i++)
+        {
+            cache.put(i, "V" + i);
+        }
+        cache.remove(50L);
+        Collection<Long> keys = cache.getKeys();
+        assertEquals(99, keys.size());
+        assertTrue(keys.contains(0L));
+        assertTrue(keys.contains(99L));
+        assertFalse(keys.contains(50L));
+    }
+
+    @Test
+    public void boundedSizeCache()
+    {
+        // Single segment so that the item limit applies exactly
+        cache = new OffHeapSimpleCache<Long, String>(ONE_MB, 1, 3, true, 0, getClass().getName());
+
+        cache.put(1L, "1");
+        cache.put(2L, "2");
+        cache.put(3L, "3");
+        cache.put(4L, "4");
+        cache.put(5L, "5");
+
+        // Lost the first two items
+        assertFalse(cache.contains(1L));
+        assertFalse(cache.contains(2L));
+
+        // Last three are still present
+        assertEquals("3", cache.get(3L));
+        assertEquals("4", cache.get(4L));
+        assertEquals("5", cache.get(5L));
+        assertEquals(2, cache.getEvictionCount());
+    }
+
+    @Test
+    public void boundedMemoryCache()
+    {
+        // Far too small to hold everything: the ring must wrap many times
+        cache = new OffHeapSimpleCache<Long, String>(16 * 1024, 1, 0, false, 0, getClass().getName());
+        for (long i = 0; i < 10000; i++)
+        {
+            cache.put(i, "VALUE-" + i);
+            // The latest value is always available
+            assertEquals("VALUE-" + i, cache.get(i));
+        }
+        assertFalse(cache.contains(0L));
+        assertTrue(cache.size() > 0);
+        assertTrue(cache.size() < 10000);
+        assertTrue(cache.getUsedMemoryBytes() <= cache.getMaxMemoryBytes());
+        assertEquals(10000 - cache.size(), cache.getEvictionCount());
+
+        // Everything that is still indexed can be read back
+        for (Long key : cache.getKeys())
+        {
+            assertEquals("VALUE-" + key, cache.get(key));
+        }
+    }
+
+    @Test
+    public void oversizedValuesAreNotCached()
+    {
+        cache = new OffHeapSimpleCache<Long, String>(1024, 1, 0, false, 0, getClass().getName());
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2048; i++)
+        {
+            sb.append('x');
+        }
+        cache.put(1L, "small");
+        cache.put(1L, sb.toString());
+        // The old value must not survive the failed put
+        assertFalse(cache.contains(1L));
+    }
+
+    @Test
+    public void statistics()
+    {
+        cache.put(1L, "1");
+        cache.get(1L);
+        cache.get(1L);
+        cache.get(2L);
+        cache.remove(1L);
+
+        assertEquals(1, cache.count(OpType.PUT));
+        assertEquals(2, cache.count(OpType.GET_HIT));
+        assertEquals(1, cache.count(OpType.GET_MISS));
+        assertEquals(1, cache.count(OpType.REMOVE));
+        assertEquals(3, cache.numGets());
+        assertEquals(2.0 / 3.0, cache.hitMissRatio(), 0.0001);
+        assertEquals(2, cache.allStats().get(OpType.GET_HIT).getCount());
+    }
+
+    @Test
+    public void segmentsRoundedToPowerOfTwo()
+    {
+        cache = new OffHeapSimpleCache<Long, String>(ONE_MB, 5, 0, false, 0, getClass().getName());
+        assertEquals(8, cache.getSegmentCount());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void noNegativeMaxItems()
+    {
+        cache = new OffHeapSimpleCache<Long, String>(ONE_MB, 1, -1, true, 0, getClass().getName());
+    }
+
+    @Test
+    public void indexRemovalKeepsProbeSequences()
+    {
+        OffHeapSimpleCache.LongIntIndex index = new OffHeapSimpleCache.LongIntIndex();
+        for (int i = 0; i < 1000; i++)
+        {
+            index.put(i * 64L, i);
+        }
+        for (int i = 0; i < 1000; i += 2)
+        {
+            index.remove(i * 64L);
+        }
+        assertEquals(500, index.size());
+        for (int i = 0; i < 1000; i++)
+        {
+            assertEquals(i % 2 == 0 ? -1 : i, index.get(i * 64L));
+        }
+    }
+}
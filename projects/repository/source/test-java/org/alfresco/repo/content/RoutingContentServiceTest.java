@@ -38,11 +38,16 @@ import javax.transaction.UserTransaction;
 import junit.framework.TestCase;
 
 import org.alfresco.model.ContentModel;
+import org.alfresco.repo.content.cleanup.EagerContentStoreCleaner;
+import org.alfresco.repo.content.filestore.FileContentStore;
 import org.alfresco.repo.content.filestore.FileContentWriter;
 import org.alfresco.repo.content.transform.ContentTransformer;
+import org.alfresco.repo.domain.contentdata.ContentDataDAO;
+import org.alfresco.repo.domain.contentdata.ContentUrlEntity;
 import org.alfresco.repo.policy.JavaBehaviour;
 import org.alfresco.repo.policy.PolicyComponent;
 import org.alfresco.repo.security.authentication.AuthenticationComponent;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.ServiceRegistry;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
@@ -939,4 +944,63 @@ public class RoutingContentServiceTest extends TestCase
         // Make sure that the content has been cleaned up
         assertFalse("Content was not cleaned up after having been created in-transaction", readers[0].exists());
     }
+
+    /**
+     * Deduplicated content may be shared, so instead of being deleted when the transaction rolls back
+     * it must be recorded as orphaned for the content store cleaner.
+     */
+    public void testRollbackCleanupOfDeduplicatedContent() throws Exception
+    {
+        txn.rollback();
+        txn = null;
+
+        final RetryingTransactionHelper txnHelper = transactionService.getRetryingTransactionHelper();
+        final ContentDataDAO contentDataDAO = (ContentDataDAO) ctx.getBean("contentDataDAO");
+        FileContentStore store = new FileContentStore(ctx,
+                TempFileProvider.getTempDir().getAbsolutePath() + File.separatorChar + getName());
+        store.setDeduplicate(true);
+        final ContentServiceImpl deduplicatingContentService = new ContentServiceImpl();
+        deduplicatingContentService.setStore(store);
+        deduplicatingContentService.setEagerContentStoreCleaner((EagerContentStoreCleaner) ctx.getBean("eagerContentStoreCleaner"));
+        deduplicatingContentService.setContentDataDAO(contentDataDAO);
+        deduplicatingContentService.setRetryingTransactionHelper(txnHelper);
+
+        final String[] contentUrls = new String[1];
+        RetryingTransactionCallback<Void> rollbackCallback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                ContentWriter writer = deduplicatingContentService.getWriter(null, null, false);
+                writer.putContent("UNLUCKY CONTENT " + GUID.generate());
+                contentUrls[0] = writer.getContentUrl();
+                throw new RuntimeException("aaa");
+            }
+        };
+        try
+        {
+            txnHelper.doInTransaction(rollbackCallback);
+        }
+        catch (RuntimeException e)
+        {
+            if (!e.getMessage().equals("aaa"))
+            {
+                throw e;
+            }
+            // Expected
+        }
+        assertTrue("Content was not deduplicated: " + contentUrls[0], contentUrls[0].contains(FileContentStore.DEDUPLICATED_PATH));
+
+        RetryingTransactionCallback<ContentUrlEntity> getContentUrlCallback = new RetryingTransactionCallback<ContentUrlEntity>()
+        {
+            public ContentUrlEntity execute() throws Throwable
+            {
+                return contentDataDAO.getContentUrl(contentUrls[0]);
+            }
+        };
+        ContentUrlEntity contentUrlEntity = txnHelper.doInTransaction(getContentUrlCallback, true);
+        assertNotNull("Deduplicated content was not recorded after rollback", contentUrlEntity);
+        assertNotNull("Deduplicated content was not recorded as orphaned", contentUrlEntity.getOrphanTime());
+        // Left for the content store cleaner
+        assertTrue(store.exists(contentUrls[0]));
+    }
 }
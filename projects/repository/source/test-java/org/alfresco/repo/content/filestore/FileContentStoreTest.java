@@ -25,8 +25,10 @@
  */
 package org.alfresco.repo.content.filestore;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.util.Locale;
 
 import org.alfresco.repo.content.AbstractWritableContentStoreTest;
@@ -36,8 +38,10 @@ import org.alfresco.repo.content.ContentLimitProvider;
 import org.alfresco.repo.content.ContentLimitProvider.SimpleFixedLimitProvider;
 import org.alfresco.repo.content.ContentLimitViolationException;
 import org.alfresco.repo.content.ContentStore;
+import org.alfresco.repo.content.DirectContentReader;
 import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentStreamListener;
 import org.alfresco.service.cmr.repository.ContentWriter;
 import org.alfresco.test_category.OwnJVMTestsCategory;
 import org.alfresco.util.TempFileProvider;
@@ -116,6 +120,71 @@ public class FileContentStoreTest extends AbstractWritableContentStoreTest
         }
     }
 
+    /**
+     * Checks the transfer and mapping of content ranges, which do not use up the reader.
+     */
+    @Test
+    public void testDirectReads() throws Exception
+    {
+        ContentWriter writer = getWriter();
+        writer.putContent("The quick brown fox");
+        ContentReader reader = writer.getReader();
+        assertTrue("File store readers must support direct reads", reader instanceof DirectContentReader);
+        DirectContentReader directReader = (DirectContentReader) reader;
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        assertEquals(5L, directReader.transferTo(4L, 5L, Channels.newChannel(os)));
+        assertEquals("quick", os.toString("UTF-8"));
+
+        // Asking for more than there is stops at the end of the content
+        os.reset();
+        assertEquals(3L, directReader.transferTo(16L, 100L, Channels.newChannel(os)));
+        assertEquals("fox", os.toString("UTF-8"));
+
+        ByteBuffer mapped = directReader.mapRange(10L, 5L);
+        byte[] bytes = new byte[mapped.remaining()];
+        mapped.get(bytes);
+        assertEquals("brown", new String(bytes, "UTF-8"));
+
+        // The reader can still be used as normal
+        assertEquals("The quick brown fox", reader.getContentString());
+    }
+
+    /**
+     * Checks that direct reads notify the reader's listeners and that a range too large to map is refused.
+     */
+    @Test
+    public void testDirectReadsNotifyListeners() throws Exception
+    {
+        ContentWriter writer = getWriter();
+        writer.putContent("The quick brown fox");
+        ContentReader reader = writer.getReader();
+        DirectContentReader directReader = (DirectContentReader) reader;
+        final int[] closed = new int[1];
+        reader.addListener(new ContentStreamListener()
+        {
+            public void contentStreamClosed() throws ContentIOException
+            {
+                closed[0]++;
+            }
+        });
+
+        directReader.transferTo(0L, 3L, Channels.newChannel(new ByteArrayOutputStream()));
+        assertEquals("Listeners must be called after a transfer", 1, closed[0]);
+        directReader.mapRange(4L, 5L);
+        assertEquals("Listeners must be called after mapping a range", 2, closed[0]);
+
+        try
+        {
+            directReader.mapRange(0L, Integer.MAX_VALUE + 1L);
+            fail("Ranges over 2GB cannot be mapped");
+        }
+        catch (ContentIOException e)
+        {
+            // Expected
+        }
+    }
+
     @Override
     @Test
     public void testRootLocation() throws Exception
@@ -348,6 +417,47 @@ public class FileContentStoreTest extends AbstractWritableContentStoreTest
         assertEquals(1024L, reader.getContentString().getBytes("UTF-8").length);
     }
     
+    /**
+     * Identical content written to a deduplicating store is kept once, under a URL derived from the content.
+     * 
+     * @since 5.2
+     */
+    @Test
+    public void testDeduplicatedContent() throws Exception
+    {
+        store.setDeduplicate(true);
+        
+        ContentWriter firstWriter = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        String firstTempUrl = firstWriter.getContentUrl();
+        firstWriter.putContent("The quick brown fox");
+        String firstUrl = firstWriter.getContentUrl();
+        assertTrue("Content URL should be derived from the content: " + firstUrl,
+                firstUrl.startsWith(FileContentStore.STORE_PROTOCOL + ContentStore.PROTOCOL_DELIMITER + FileContentStore.DEDUPLICATED_PATH + "/"));
+        assertFalse("Content should have been moved from the writer's original URL", store.exists(firstTempUrl));
+        assertEquals("The quick brown fox", firstWriter.getReader().getContentString());
+        assertEquals(19L, firstWriter.getContentData().getSize());
+        
+        ContentWriter secondWriter = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        String secondTempUrl = secondWriter.getContentUrl();
+        secondWriter.putContent("The quick brown fox");
+        assertEquals("Identical content should share a URL", firstUrl, secondWriter.getContentUrl());
+        assertFalse("Duplicate content should have been dropped", store.exists(secondTempUrl));
+        assertEquals("The quick brown fox", store.getReader(firstUrl).getContentString());
+        
+        ContentWriter thirdWriter = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        thirdWriter.putContent("The lazy dog");
+        assertFalse("Different content should not share a URL", firstUrl.equals(thirdWriter.getContentUrl()));
+        
+        // Recently shared content is protected from deletion
+        assertFalse("Recently shared content should not be deleted", store.delete(firstUrl));
+        assertTrue(store.exists(firstUrl));
+        store.setDeduplicateGracePeriodSeconds(0L);
+        new File(store.getRootLocation(), firstUrl.substring(firstUrl.indexOf(FileContentStore.DEDUPLICATED_PATH)))
+                .setLastModified(System.currentTimeMillis() - 1000L);
+        assertTrue(store.delete(firstUrl));
+        assertFalse(store.exists(firstUrl));
+    }
+    
     private void assertDirExists(File root, String dir)
     {
         assertTrue("Directory [" + dir + "] should exist", new File(root, dir).exists());
@@ -42,6 +42,7 @@ import javax.transaction.UserTransaction;
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.content.transform.AbstractContentTransformerTest;
 import org.alfresco.repo.domain.audit.AuditDAO.AuditApplicationInfo;
+import org.alfresco.repo.domain.audit.AuditDAO.AuditEntryInfo;
 import org.alfresco.repo.domain.contentdata.ContentDataDAO;
 import org.alfresco.repo.domain.hibernate.dialect.AlfrescoMySQLClusterNDBDialect;
 import org.alfresco.repo.domain.propval.PropValGenerator;
@@ -205,6 +206,86 @@ public class AuditDAOTest extends TestCase
         return appName;
     }
 
+    /**
+     * Checks the multi-row insert used to write journalled audit entries, over more than one statement
+     */
+    public void testCreateAuditEntries() throws Exception
+    {
+        final int count = 300;
+        final String[] usernames = new String[] {"alexi", "fred", null};
+        RetryingTransactionCallback<AuditApplicationInfo> createCallback = new RetryingTransactionCallback<AuditApplicationInfo>()
+        {
+            public AuditApplicationInfo execute() throws Throwable
+            {
+                AuditApplicationInfo appInfo = createAuditApp();
+                long now = System.currentTimeMillis();
+                List<AuditEntryInfo> entries = new ArrayList<AuditEntryInfo>(count);
+                for (int i = 0; i < count; i++)
+                {
+                    Map<String, Serializable> values = (i % 2 == 0) ?
+                            Collections.singletonMap("/a/b/c", (Serializable) new Integer(i)) :
+                            Collections.<String, Serializable>emptyMap();
+                    entries.add(new AuditEntryInfo(appInfo.getId(), now + i, usernames[i % 3], values));
+                }
+                assertEquals(count, auditDAO.createAuditEntries(entries));
+                return appInfo;
+            }
+        };
+        final AuditApplicationInfo appInfo = txnHelper.doInTransaction(createCallback);
+
+        final List<Long> times = new ArrayList<Long>(count);
+        final AuditQueryCallback callback = new AuditQueryCallback()
+        {
+            public boolean valuesRequired()
+            {
+                return true;
+            }
+
+            public boolean handleAuditEntry(
+                    Long entryId,
+                    String applicationName,
+                    String user,
+                    long time,
+                    Map<String, Serializable> values)
+            {
+                int i = times.size();
+                assertEquals(appInfo.getName(), applicationName);
+                assertEquals(usernames[i % 3], user);
+                if (i % 2 == 0)
+                {
+                    assertEquals(new Integer(i), values.get("/a/b/c"));
+                }
+                else
+                {
+                    assertTrue("Expected no values", values == null || values.isEmpty());
+                }
+                times.add(time);
+                return true;
+            }
+
+            public boolean handleAuditEntryError(Long entryId, String errorMsg, Throwable error)
+            {
+                throw new AlfrescoRuntimeException(errorMsg, error);
+            }
+        };
+        final AuditQueryParameters params = new AuditQueryParameters();
+        params.setApplicationName(appInfo.getName());
+        RetryingTransactionCallback<Void> findCallback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                auditDAO.findAuditEntries(callback, params, Integer.MAX_VALUE);
+                return null;
+            }
+        };
+        txnHelper.doInTransaction(findCallback);
+        assertEquals("All entries should have been inserted", count, times.size());
+        for (int i = 1; i < count; i++)
+        {
+            assertEquals("Entries should be found in the order they were created", times.get(0) + i, (long) times.get(i));
+        }
+    }
+
     public synchronized void testAuditQuery() throws Exception
     {
         // Some entries
@@ -281,6 +281,28 @@ public class ContentDataDAOTest extends TestCase
         assertEquals("The content URL does not match.", url, contentUrlEntity.getContentUrl());
     }
     
+    /**
+     * Check that content recorded as orphaned before it is referenced keeps its size.
+     */
+    public void testContentUrlOrphanedWithSize() throws Exception
+    {
+        final ContentData contentData = getContentData();
+        RetryingTransactionCallback<Void> callback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                contentDataDAO.createContentUrlOrphaned(contentData.getContentUrl(), contentData.getSize(), null);
+                return null;
+            }
+        };
+        txnHelper.doInTransaction(callback, false, false);
+        // Reference the URL
+        Pair<Long, ContentData> resultPair = create(contentData);
+        getAndCheck(resultPair.getFirst(), contentData);
+        ContentUrlEntity contentUrlEntity = contentDataDAO.getContentUrl(contentData.getContentUrl());
+        assertEquals("The size does not match.", contentData.getSize(), contentUrlEntity.getSize());
+    }
+    
     /**
      * Check that orphaned content can be re-instated.
      */
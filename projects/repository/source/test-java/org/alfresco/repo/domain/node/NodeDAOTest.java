@@ -29,7 +29,9 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -335,6 +337,36 @@ public class NodeDAOTest extends TestCase
         txnHelper.doInTransaction(callback, true);
     }
     
+    public void testGetNodesPropertiesAndAspects() throws Throwable
+    {
+        final List<Long> nodeIds = new ArrayList<Long>();
+        for (Pair<Long, StoreRef> storePair : nodeDAO.getStores())
+        {
+            nodeIds.add(nodeDAO.getRootNode(storePair.getSecond()).getFirst());
+        }
+        RetryingTransactionCallback<Void> callback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                // Start cold so that everything is bulk-loaded
+                nodeDAO.clear();
+                Map<Long, Set<QName>> nodesAspects = nodeDAO.getNodesAspects(nodeIds);
+                Map<Long, Map<QName, Serializable>> nodesProperties = nodeDAO.getNodesProperties(nodeIds);
+                assertEquals("Ordering not preserved", nodeIds, new ArrayList<Long>(nodesAspects.keySet()));
+                assertEquals("Ordering not preserved", nodeIds, new ArrayList<Long>(nodesProperties.keySet()));
+                for (Long nodeId : nodeIds)
+                {
+                    assertEquals(nodeDAO.getNodeAspects(nodeId), nodesAspects.get(nodeId));
+                    assertEquals(
+                            new HashMap<QName, Serializable>(nodeDAO.getNodeProperties(nodeId)),
+                            new HashMap<QName, Serializable>(nodesProperties.get(nodeId)));
+                }
+                return null;
+            }
+        };
+        txnHelper.doInTransaction(callback, true);
+    }
+    
     /**
      * Ensure that the {@link NodeEntity} values cached as root nodes are valid instances.
      * <p/>
@@ -27,12 +27,16 @@ package org.alfresco.repo.download;
 
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
 import net.sf.acegisecurity.Authentication;
@@ -244,6 +248,96 @@ public class DownloadServiceIntegrationTest
         validateEntries(entryNames, allEntries, true);
     }
 
+    @Test public void streamDownload() throws IOException
+    {
+        final NodeRef downloadNode = DOWNLOAD_SERVICE.createStreamingDownload(new NodeRef[] {rootFile, rootFolder},  true);
+        Assert.assertNotNull(downloadNode);
+
+        testNodes.addNodeRef(downloadNode);
+        
+        // The archive is only created when it is streamed
+        Assert.assertEquals(Status.PENDING, getDownloadStatus(downloadNode).getStatus());
+        
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        DOWNLOAD_SERVICE.streamDownload(downloadNode, output);
+        
+        DownloadStatus status = getDownloadStatus(downloadNode);
+        Assert.assertEquals(Status.DONE, status.getStatus());
+        Assert.assertEquals(6l, status.getTotalFiles());
+        Assert.assertEquals(6l, status.getFilesAdded());
+        
+        // Validate the content, including the bytes of each file, whether it was read ahead or not.
+        Map<String, String> entryContent = new TreeMap<String, String>();
+        ZipArchiveInputStream zipInputStream = new ZipArchiveInputStream(new ByteArrayInputStream(output.toByteArray()));
+        try 
+        {
+            ZipArchiveEntry zipEntry = zipInputStream.getNextZipEntry();
+            while (zipEntry != null)
+            {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[1024];
+                int read;
+                while ((read = zipInputStream.read(buffer)) != -1)
+                {
+                    bytes.write(buffer, 0, read);
+                }
+                entryContent.put(zipEntry.getName(), new String(bytes.toByteArray(), "UTF-8"));
+                zipEntry = zipInputStream.getNextZipEntry();
+            }
+        }
+        finally
+        {
+            zipInputStream.close();
+        }
+        validateEntries(entryContent.keySet(), allEntries, true);
+        Assert.assertEquals("Root file content", entryContent.get("rootFile.txt"));
+        Assert.assertEquals("Level 1 file content", entryContent.get("rootFolder/level1File.txt"));
+        Assert.assertEquals("Level 2 file content", entryContent.get("rootFolder/level1Folder1/level2File.txt"));
+        Assert.assertEquals("Level 2 file content", entryContent.get("rootFolder/level1Folder2/level2File.txt"));
+        Assert.assertEquals("Level 2 file content", entryContent.get("rootFolder/level1Folder2/fileToCheckout.txt"));
+        Assert.assertEquals("Secondary node", entryContent.get("rootFolder/secondaryNodeFile.txt"));
+        Assert.assertEquals("", entryContent.get("rootFolder/level1EmptyFolder/"));
+        
+        // A download can only be streamed once
+        try
+        {
+            DOWNLOAD_SERVICE.streamDownload(downloadNode, new ByteArrayOutputStream());
+            fail("Download should not be streamed twice");
+        }
+        catch (DownloadServiceException expected)
+        {
+            // Expected
+        }
+    }
+
+    @Test public void streamDownloadFails() throws IOException
+    {
+        final NodeRef downloadNode = DOWNLOAD_SERVICE.createStreamingDownload(new NodeRef[] {rootFile, rootFolder},  true);
+        testNodes.addNodeRef(downloadNode);
+        
+        // As when the client goes away part way through the download
+        OutputStream output = new OutputStream()
+        {
+            @Override
+            public void write(int b) throws IOException
+            {
+                throw new IOException("Connection reset");
+            }
+        };
+        try
+        {
+            DOWNLOAD_SERVICE.streamDownload(downloadNode, output);
+            fail("Download should fail when the archive can not be written");
+        }
+        catch (DownloadServiceException expected)
+        {
+            // Expected
+        }
+        
+        // The download is not left in progress
+        Assert.assertEquals(Status.FAILED, getDownloadStatus(downloadNode).getStatus());
+    }
+
     private void validateEntries(final Set<String> entryNames, final Set<String> expectedEntries, boolean onlyExpected)
     {
         Set<String> copy = new TreeSet<String>(entryNames);
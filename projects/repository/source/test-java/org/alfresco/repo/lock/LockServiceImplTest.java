@@ -64,6 +64,7 @@ import org.alfresco.util.BaseSpringTest;
 import org.alfresco.util.TestWithUserUtils;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
+import org.springframework.dao.ConcurrencyFailureException;
 
 /**
  * Simple lock service test
@@ -684,6 +685,90 @@ public class LockServiceImplTest extends BaseSpringTest
     {
     }
     
+    /**
+     * Test lock and unlock with lockChildren == true for ephemeral locks, which are placed into the lock store together
+     */
+    public void testLockAndUnlockChildrenEphemeral()
+    {
+        TestWithUserUtils.authenticateUser(GOOD_USER_NAME, PWD, rootNodeRef, this.authenticationService);
+        LockStore lockStore = (LockStore) applicationContext.getBean("lockStore");
+        
+        this.lockService.lock(this.parentNode, LockType.WRITE_LOCK, 0, Lifetime.EPHEMERAL, true);
+        for (NodeRef nodeRef : new NodeRef[] {parentNode, childNode1, childNode2})
+        {
+            assertEquals(LockStatus.LOCK_OWNER, this.lockService.getLockStatus(nodeRef));
+            LockState lockState = lockStore.get(nodeRef);
+            assertNotNull(lockState);
+            assertEquals(Lifetime.EPHEMERAL, lockState.getLifetime());
+            assertEquals(GOOD_USER_NAME, lockState.getOwner());
+        }
+        
+        TestWithUserUtils.authenticateUser(BAD_USER_NAME, PWD, rootNodeRef, this.authenticationService);
+        assertEquals(LockStatus.LOCKED, this.lockService.getLockStatus(this.childNode2));
+        
+        TestWithUserUtils.authenticateUser(GOOD_USER_NAME, PWD, rootNodeRef, this.authenticationService);
+        this.lockService.unlock(this.parentNode, true, false);
+        for (NodeRef nodeRef : new NodeRef[] {parentNode, childNode1, childNode2})
+        {
+            assertEquals(LockStatus.NO_LOCK, this.lockService.getLockStatus(nodeRef));
+            assertFalse(lockStore.get(nodeRef).isLockInfo());
+        }
+    }
+    
+    /**
+     * Test that when an ephemeral lock of a recursive lock conflicts with a lock set by someone else,
+     * none of the ephemeral locks are placed into the lock store
+     */
+    public void testLockChildrenEphemeralConflictIsRolledBack() throws InterruptedException
+    {
+        TestWithUserUtils.authenticateUser(GOOD_USER_NAME, PWD, rootNodeRef, this.authenticationService);
+        final LockStore lockStore = (LockStore) applicationContext.getBean("lockStore");
+        
+        // This transaction reads that childNode2 is not locked...
+        assertEquals(LockStatus.NO_LOCK, this.lockService.getLockStatus(this.childNode2));
+        
+        // ...and in the meantime it is locked by someone else
+        final LockState otherLock = LockState.createLock(childNode2, LockType.WRITE_LOCK, BAD_USER_NAME, null, Lifetime.EPHEMERAL, null);
+        Thread otherThread = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                lockStore.set(childNode2, otherLock);
+            }
+        };
+        otherThread.start();
+        otherThread.join();
+        
+        try
+        {
+            try
+            {
+                this.lockService.lock(this.parentNode, LockType.WRITE_LOCK, 0, Lifetime.EPHEMERAL, true);
+                fail("The locks should conflict with the lock set by someone else.");
+            }
+            catch (ConcurrencyFailureException e)
+            {
+                // Expected
+            }
+            
+            // None of the locks have been placed into the lock store
+            assertFalse(lockStore.getNodes().contains(parentNode));
+            assertFalse(lockStore.getNodes().contains(childNode1));
+            assertEquals(LockStatus.NO_LOCK, this.lockService.getLockStatus(this.parentNode));
+            assertEquals(LockStatus.NO_LOCK, this.lockService.getLockStatus(this.childNode1));
+            assertTrue(lockStore.getNodes().contains(childNode2));
+            
+            // The batch has ended, so locks are placed into the lock store as usual again
+            this.lockService.lock(this.childNode1, LockType.WRITE_LOCK, 0, Lifetime.EPHEMERAL);
+            assertTrue(lockStore.getNodes().contains(childNode1));
+        }
+        finally
+        {
+            lockStore.clear();
+        }
+    }
+    
     /**
      * Test getLockStatus
      */
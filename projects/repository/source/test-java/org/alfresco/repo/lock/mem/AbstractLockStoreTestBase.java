@@ -28,7 +28,9 @@ package org.alfresco.repo.lock.mem;
 import static org.junit.Assert.*;
 
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -85,6 +87,24 @@ public abstract class AbstractLockStoreTestBase<T extends LockStore>
         assertEquals(persistentLock, newLockState);
     }
 
+    @Test
+    public void testSetAll()
+    {
+        NodeRef nodeRef1 = new NodeRef("workspace://SpacesStore/1");
+        NodeRef nodeRef2 = new NodeRef("workspace://SpacesStore/2");
+        LockState lock1 = LockState.createLock(nodeRef1, LockType.NODE_LOCK, "owner", null, Lifetime.EPHEMERAL, null);
+        LockState lock2 = LockState.createLock(nodeRef2, LockType.NODE_LOCK, "owner", null, Lifetime.EPHEMERAL, null);
+        lockStore.set(nodeRef1, LockState.createUnlocked(nodeRef1));
+        
+        Map<NodeRef, LockState> lockStates = new HashMap<NodeRef, LockState>();
+        lockStates.put(nodeRef1, lock1);
+        lockStates.put(nodeRef2, lock2);
+        lockStore.setAll(lockStates);
+        
+        assertEquals(lock1, lockStore.get(nodeRef1));
+        assertEquals(lock2, lockStore.get(nodeRef2));
+    }
+
     @Test
     public void testContains()
     {
@@ -25,6 +25,20 @@
  */
 package org.alfresco.repo.lock.mem;
 
+import static org.junit.Assert.*;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.alfresco.service.cmr.lock.LockType;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.junit.Test;
+import org.springframework.dao.ConcurrencyFailureException;
 
 /**
  * Tests for the {@link LockStoreImpl} class.
@@ -38,4 +52,179 @@ public class LockStoreImplTest extends AbstractLockStoreTestBase<LockStoreImpl>
     {
         return new LockStoreImpl(20);
     }
+
+    @Test
+    public void testSetAllIsAllOrNothing()
+    {
+        final NodeRef nodeRef1 = new NodeRef("workspace://SpacesStore/1");
+        final NodeRef nodeRef2 = new NodeRef("workspace://SpacesStore/2");
+        final NodeRef nodeRef3 = new NodeRef("workspace://SpacesStore/3");
+        lockStore = new LockStoreImpl(20)
+        {
+            @Override
+            public void set(NodeRef nodeRef, LockState lockState)
+            {
+                if (nodeRef.equals(nodeRef3))
+                {
+                    // Someone else got there first
+                    throw new ConcurrencyFailureException("Test");
+                }
+                super.set(nodeRef, lockState);
+            }
+        };
+        LockState otherLock = LockState.createLock(nodeRef1, LockType.NODE_LOCK, "other", null, Lifetime.EPHEMERAL, null);
+        lockStore.set(nodeRef1, otherLock);
+        
+        Map<NodeRef, LockState> lockStates = new LinkedHashMap<NodeRef, LockState>();
+        lockStates.put(nodeRef1, LockState.createLock(nodeRef1, LockType.NODE_LOCK, "owner", null, Lifetime.EPHEMERAL, null));
+        lockStates.put(nodeRef2, LockState.createLock(nodeRef2, LockType.NODE_LOCK, "owner", null, Lifetime.EPHEMERAL, null));
+        lockStates.put(nodeRef3, LockState.createLock(nodeRef3, LockType.NODE_LOCK, "owner", null, Lifetime.EPHEMERAL, null));
+        try
+        {
+            lockStore.setAll(lockStates);
+            fail("Expected the batch to fail");
+        }
+        catch (ConcurrencyFailureException e)
+        {
+            // Expected
+        }
+        
+        // None of the batch should have been applied
+        assertEquals(otherLock, lockStore.get(nodeRef1));
+        assertNull(lockStore.get(nodeRef2));
+        assertNull(lockStore.get(nodeRef3));
+    }
+
+    @Test
+    public void testSetAllLeavesEqualLockStateSetSince()
+    {
+        final NodeRef nodeRef1 = new NodeRef("workspace://SpacesStore/1");
+        final NodeRef nodeRef2 = new NodeRef("workspace://SpacesStore/2");
+        final LockState sameLock = LockState.createLock(nodeRef1, LockType.NODE_LOCK, "owner", null, Lifetime.EPHEMERAL, null);
+        lockStore = new LockStoreImpl(20)
+        {
+            @Override
+            public void set(NodeRef nodeRef, LockState lockState)
+            {
+                if (nodeRef.equals(nodeRef2))
+                {
+                    // Someone else has set an equal lock state on the first node and locked the second
+                    map.put(nodeRef1, sameLock);
+                    throw new ConcurrencyFailureException("Test");
+                }
+                super.set(nodeRef, lockState);
+            }
+        };
+        
+        Map<NodeRef, LockState> lockStates = new LinkedHashMap<NodeRef, LockState>();
+        LockState lock = LockState.createLock(nodeRef1, LockType.NODE_LOCK, "owner", null, Lifetime.EPHEMERAL, null);
+        assertEquals(lock, sameLock);
+        lockStates.put(nodeRef1, lock);
+        lockStates.put(nodeRef2, LockState.createLock(nodeRef2, LockType.NODE_LOCK, "owner", null, Lifetime.EPHEMERAL, null));
+        try
+        {
+            lockStore.setAll(lockStates);
+            fail("Expected the batch to fail");
+        }
+        catch (ConcurrencyFailureException e)
+        {
+            // Expected
+        }
+        
+        // Only the batch's own lock state is taken back
+        assertSame(sameLock, lockStore.get(nodeRef1));
+    }
+
+    @Test
+    public void testExpiry() throws Exception
+    {
+        ManualClock clock = new ManualClock();
+        lockStore = new LockStoreImpl(20, clock);
+        NodeRef expiringNodeRef = new NodeRef("workspace://SpacesStore/1");
+        NodeRef unlockedNodeRef = new NodeRef("workspace://SpacesStore/2");
+        NodeRef lockedNodeRef = new NodeRef("workspace://SpacesStore/3");
+        Date expires = new Date(clock.millis() + 500L);
+        lockStore.set(expiringNodeRef, LockState.createLock(expiringNodeRef, LockType.NODE_LOCK, "owner", expires, Lifetime.EPHEMERAL, null));
+        lockStore.set(unlockedNodeRef, LockState.createUnlocked(unlockedNodeRef));
+        LockState lock = LockState.createLock(lockedNodeRef, LockType.NODE_LOCK, "owner", null, Lifetime.EPHEMERAL, null);
+        lockStore.set(lockedNodeRef, lock);
+        assertEquals(3, lockStore.getSize());
+        assertEquals(2, lockStore.getLockCount());
+        
+        // Let the expiry and unlocked state ticks pass
+        clock.advance(3000L);
+        
+        assertNull(lockStore.get(expiringNodeRef));
+        assertNull(lockStore.get(unlockedNodeRef));
+        assertEquals(lock, lockStore.get(lockedNodeRef));
+        assertEquals(1, lockStore.getSize());
+        assertEquals(2L, lockStore.getExpiredCount());
+        
+        // An expired lock may be replaced
+        LockState newLock = LockState.createLock(expiringNodeRef, LockType.NODE_LOCK, "other", null, Lifetime.EPHEMERAL, null);
+        lockStore.set(expiringNodeRef, newLock);
+        assertEquals(newLock, lockStore.get(expiringNodeRef));
+    }
+
+    @Test
+    public void testReplacedLockIsNotExpiredEarly()
+    {
+        ManualClock clock = new ManualClock();
+        lockStore = new LockStoreImpl(20, clock);
+        NodeRef nodeRef = new NodeRef("workspace://SpacesStore/1");
+        LockState lock = LockState.createLock(nodeRef, LockType.NODE_LOCK, "owner", null, Lifetime.EPHEMERAL, null);
+        lockStore.set(nodeRef, lock);
+        
+        // Set an equal lock state part way through the time-to-live of the first
+        clock.advance(10000L);
+        LockState sameLock = LockState.createLock(nodeRef, LockType.NODE_LOCK, "owner", null, Lifetime.EPHEMERAL, null);
+        assertEquals(lock, sameLock);
+        lockStore.set(nodeRef, sameLock);
+        
+        // The first lock state's time-to-live has passed, but not that of the lock state replacing it
+        clock.advance(15000L);
+        assertSame(sameLock, lockStore.get(nodeRef));
+        assertEquals(0L, lockStore.getExpiredCount());
+        
+        clock.advance(10000L);
+        assertNull(lockStore.get(nodeRef));
+        assertEquals(1L, lockStore.getExpiredCount());
+    }
+
+    /**
+     * Clock that only moves when told to, starting at the current time.
+     */
+    private static class ManualClock extends Clock
+    {
+        private long millis = System.currentTimeMillis();
+
+        private void advance(long ms)
+        {
+            millis += ms;
+        }
+
+        @Override
+        public long millis()
+        {
+            return millis;
+        }
+
+        @Override
+        public Instant instant()
+        {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone()
+        {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone)
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
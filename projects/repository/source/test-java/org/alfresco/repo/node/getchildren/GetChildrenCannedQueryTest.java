@@ -1575,4 +1575,73 @@ public class GetChildrenCannedQueryTest extends TestCase
             AuthenticationUtil.clearCurrentSecurityContext();
         }
     }
+
+    public void testKeysetPaging() throws Exception
+    {
+        GetChildrenCannedQueryFactory getChildrenCannedQueryFactory = (GetChildrenCannedQueryFactory)cannedQueryRegistry.getNamedObject(CQ_FACTORY_NAME);
+        try
+        {
+            int itemCount = 150;
+            
+            AuthenticationUtil.setFullyAuthenticatedUser(AuthenticationUtil.getAdminUserName());
+            
+            NodeRef parentFolder = createFolder(repositoryHelper.getCompanyHome(), "testKeysetPaging-"+GUID.generate(), ContentModel.TYPE_FOLDER);
+            for (int i = itemCount; i > 0; i--)
+            {
+                // note: names are unaffected by database vs locale collation
+                createFolder(parentFolder, String.format("keyset-%04d", i), ContentModel.TYPE_FOLDER);
+            }
+            
+            for (boolean ascending : new boolean[] {true, false})
+            {
+                List<Pair<QName, Boolean>> sortPairs = new ArrayList<Pair<QName, Boolean>>(1);
+                sortPairs.add(new Pair<QName, Boolean>(ContentModel.PROP_NAME, ascending));
+                
+                getChildrenCannedQueryFactory.setKeysetPaging(false);
+                List<NodeRef> expected = list(parentFolder, 0, itemCount, 0, null, null, null, sortPairs, null, null).getPage();
+                assertEquals(itemCount, expected.size());
+                
+                getChildrenCannedQueryFactory.setKeysetPaging(true);
+                List<NodeRef> actual = new ArrayList<NodeRef>(itemCount);
+                boolean hasMore = true;
+                int skipCount = 0;
+                int maxItems = 40;
+                while (hasMore)
+                {
+                    PagingResults<NodeRef> results = list(parentFolder, skipCount, maxItems, 0, null, null, null, sortPairs, null, null);
+                    actual.addAll(results.getPage());
+                    hasMore = results.hasMoreItems();
+                    skipCount = skipCount + maxItems;
+                }
+                assertEquals(expected, actual);
+            }
+            
+            // sorted by cm:created - note: may have the same value (tie-breaker is the node id)
+            List<Pair<QName, Boolean>> sortPairs = new ArrayList<Pair<QName, Boolean>>(1);
+            sortPairs.add(new Pair<QName, Boolean>(ContentModel.PROP_CREATED, true));
+            
+            PagingResults<NodeRef> results = list(parentFolder, 0, itemCount, 0, null, null, null, sortPairs, null, null);
+            assertEquals(itemCount, results.getPage().size());
+            assertFalse(results.hasMoreItems());
+            
+            Set<NodeRef> nodeRefs = new HashSet<NodeRef>(itemCount);
+            Date previous = null;
+            for (NodeRef nodeRef : results.getPage())
+            {
+                Date created = (Date)nodeService.getProperty(nodeRef, ContentModel.PROP_CREATED);
+                if (previous != null)
+                {
+                    assertFalse(created.before(previous));
+                }
+                previous = created;
+                nodeRefs.add(nodeRef);
+            }
+            assertEquals(itemCount, nodeRefs.size());
+        }
+        finally
+        {
+            getChildrenCannedQueryFactory.setKeysetPaging(false);
+            AuthenticationUtil.clearCurrentSecurityContext();
+        }
+    }
 }
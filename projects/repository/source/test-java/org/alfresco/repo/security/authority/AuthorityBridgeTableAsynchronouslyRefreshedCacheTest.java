@@ -31,6 +31,7 @@ import static org.mockito.Mockito.anyBoolean;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
 import java.util.LinkedList;
 import java.util.List;
@@ -40,6 +41,7 @@ import junit.framework.TestCase;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.authority.AuthorityBridgeGraph.LinkChange;
 import org.alfresco.repo.tenant.TenantAdminService;
 import org.alfresco.repo.tenant.TenantService;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
@@ -255,6 +257,43 @@ public class AuthorityBridgeTableAsynchronouslyRefreshedCacheTest extends TestCa
         }
     }
     
+    public void testGraphChangesMatchFullBuild()
+    {
+        List<AuthorityBridgeLink> links = new ArrayList<AuthorityBridgeLink>();
+        links.add(createAuthorityBridgeLink("g1", "g2"));
+        links.add(createAuthorityBridgeLink("g2", "g3"));
+        links.add(createAuthorityBridgeLink("g4", "g3"));
+        AuthorityBridgeGraph graph = AuthorityBridgeGraph.build(links);
+        assertEquals(3, graph.getLinkCount());
+        assertEquals(3, graph.getAncestors("g3").size());
+        assertFalse(graph.hasCycle());
+
+        List<LinkChange> changes = new ArrayList<LinkChange>();
+        changes.add(new LinkChange("g5", "g1", true));
+        changes.add(new LinkChange("g4", "g3", false));
+        changes.add(new LinkChange("g1", "g2", true));
+        AuthorityBridgeGraph changed = graph.apply(changes);
+
+        // The original snapshot is untouched
+        assertEquals(3, graph.getLinkCount());
+        assertTrue(graph.getAncestors("g3").contains("g4"));
+        assertTrue(graph.getAncestors("g1").isEmpty());
+
+        links.remove(2);
+        links.add(createAuthorityBridgeLink("g5", "g1"));
+        AuthorityBridgeGraph rebuilt = AuthorityBridgeGraph.build(links);
+        assertEquals(rebuilt.getLinkCount(), changed.getLinkCount());
+        for (String authority : new String[] {"g1", "g2", "g3", "g4", "g5"})
+        {
+            assertEquals(rebuilt.getAncestors(authority), changed.getAncestors(authority));
+        }
+
+        changes.clear();
+        changes.add(new LinkChange("g3", "g5", true));
+        assertTrue(changed.wouldCreateCycle("g3", "g5"));
+        assertTrue(changed.apply(changes).hasCycle());
+    }
+
     private AuthorityBridgeLink createAuthorityBridgeLink(String parentName, String childName)
     {
         AuthorityBridgeLink link = new AuthorityBridgeLink();
@@ -4004,6 +4004,74 @@ public class PermissionServiceTest extends AbstractPermissionTest
         verify(onInheritPermissionsEnabled).onInheritPermissionsEnabled(rootNodeRef);
     }
     
+    public void testBatchReadPermission()
+    {
+        personService.getPerson("andy");
+        runAs("admin");
+
+        NodeRef one = nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN, QName.createQName("{namespace}one"), ContentModel.TYPE_FOLDER).getChildRef();
+        permissionService.setInheritParentPermissions(one, false);
+        permissionService.setPermission(one, "andy", PermissionService.READ, true);
+        NodeRef two = nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN, QName.createQName("{namespace}two"), ContentModel.TYPE_FOLDER).getChildRef();
+        permissionService.setInheritParentPermissions(two, false);
+        List<NodeRef> nodeRefs = new ArrayList<NodeRef>();
+        for (int i = 0; i < 5; i++)
+        {
+            // Children share the ACL of their parent
+            nodeRefs.add(nodeService.createNode(one, ContentModel.ASSOC_CHILDREN, QName.createQName("{namespace}one" + i), ContentModel.TYPE_FOLDER).getChildRef());
+            nodeRefs.add(nodeService.createNode(two, ContentModel.ASSOC_CHILDREN, QName.createQName("{namespace}two" + i), ContentModel.TYPE_FOLDER).getChildRef());
+        }
+        nodeRefs.add(one);
+        nodeRefs.add(two);
+        nodeRefs.add(null);
+
+        runAs("andy");
+        List<AccessStatus> statuses = permissionService.hasReadPermission(nodeRefs);
+        assertEquals(nodeRefs.size(), statuses.size());
+        for (int i = 0; i < nodeRefs.size(); i++)
+        {
+            NodeRef nodeRef = nodeRefs.get(i);
+            AccessStatus expected = nodeRef == null ? AccessStatus.ALLOWED : permissionService.hasReadPermission(nodeRef);
+            assertEquals("Mismatch for " + nodeRef, expected, statuses.get(i));
+        }
+        assertEquals(AccessStatus.ALLOWED, statuses.get(nodeRefs.indexOf(one)));
+        assertEquals(AccessStatus.DENIED, statuses.get(nodeRefs.indexOf(two)));
+    }
+
+    public void testCompiledAclIsOnlyReplacedWhenTheAclChanges()
+    {
+        personService.getPerson("andy");
+        runAs("admin");
+        authorityService.createAuthority(AuthorityType.GROUP, "COMPILED");
+
+        NodeRef node = nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN, QName.createQName("{namespace}compiled"), ContentModel.TYPE_FOLDER).getChildRef();
+        permissionService.setInheritParentPermissions(node, false);
+        permissionService.setPermission(node, "GROUP_COMPILED", PermissionService.READ, true);
+        Long aclId = nodeService.getNodeAclId(node);
+
+        runAs("andy");
+        assertEquals(AccessStatus.DENIED, permissionService.hasReadPermission(node));
+        CompiledAcl compiledAcl = permissionServiceImpl.compiledAclCache.get(aclId);
+        assertNotNull(compiledAcl);
+
+        // Group membership changes leave the compiled ACL alone
+        runAs("admin");
+        authorityService.addAuthority("GROUP_COMPILED", "andy");
+        AlfrescoTransactionSupport.bindResource("MyAuthCache", null);
+
+        runAs("andy");
+        assertEquals(AccessStatus.ALLOWED, permissionService.hasReadPermission(node));
+        assertSame(compiledAcl, permissionServiceImpl.compiledAclCache.get(aclId));
+
+        // Changing the ACL replaces its compiled form
+        runAs("admin");
+        permissionService.setPermission(node, "andy", PermissionService.READ, false);
+
+        runAs("andy");
+        assertEquals(AccessStatus.DENIED, permissionService.hasReadPermission(node));
+        assertNotSame(compiledAcl, permissionServiceImpl.compiledAclCache.get(nodeService.getNodeAclId(node)));
+    }
+
     private <T extends Policy> T createClassPolicy(Class<T> policyInterface, QName policyQName, QName triggerOnClass)
     {
         T policy = mock(policyInterface);
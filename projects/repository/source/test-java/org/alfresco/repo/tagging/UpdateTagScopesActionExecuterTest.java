@@ -37,6 +37,8 @@ import javax.transaction.UserTransaction;
 import junit.framework.TestCase;
 
 import org.alfresco.model.ContentModel;
+import org.alfresco.query.PagingRequest;
+import org.alfresco.query.PagingResults;
 import org.alfresco.repo.nodelocator.CompanyHomeNodeLocator;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
@@ -48,9 +50,9 @@ import org.alfresco.service.cmr.action.ExecutionSummary;
 import org.alfresco.service.cmr.model.FileFolderService;
 import org.alfresco.service.cmr.model.FileInfo;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
-import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.tagging.TagDetails;
 import org.alfresco.service.cmr.tagging.TaggingService;
 import org.alfresco.service.transaction.TransactionService;
 import org.alfresco.util.ApplicationContextHelper;
@@ -233,7 +235,7 @@ public class UpdateTagScopesActionExecuterTest extends TestCase
     }
 
     /**
-     * Tests that tag scopes are properly updated. Cache on the first layer MUST NOT be empty. All other tag scopes MUST BE null
+     * Tests that tag scopes are properly updated. Tags on the first layer MUST NOT be empty. All other tag scopes MUST BE empty
      * 
      * @throws Exception
      */
@@ -250,23 +252,26 @@ public class UpdateTagScopesActionExecuterTest extends TestCase
         NodeRef taggedTagScope = iterator.next();
         assertNotNull(taggedTagScope);
 
-        ContentData contentData = getTagScopeCacheContentDataProperty(taggedTagScope);
-        assertNotNull(contentData);
-        assertTrue(contentData.getSize() > 0L);
+        List<TagDetails> tags = getTagScopeTags(taggedTagScope, new PagingRequest(0, Integer.MAX_VALUE)).getPage();
+        assertEquals(TEST_TAGS_AMOUNT * TEST_DOCUMENTS_AMOUNT, tags.size());
+        for (TagDetails tag : tags)
+        {
+            assertTrue(testTags.contains(tag.getName()));
+            assertEquals(1, tag.getCount());
+        }
 
         assertTrue(iterator.hasNext());
 
         for (NodeRef tagScopeFolder = iterator.next(); iterator.hasNext(); tagScopeFolder = iterator.next())
         {
             assertNotNull(tagScopeFolder);
-            contentData = getTagScopeCacheContentDataProperty(tagScopeFolder);
-            assertNull(contentData);
+            tags = getTagScopeTags(tagScopeFolder, new PagingRequest(0, Integer.MAX_VALUE)).getPage();
+            assertTrue(tags.isEmpty());
         }
     }
 
     /**
-     * <a href="https://issues.alfresco.com/jira/browse/ACE-1979">ACE-1979</a>: tag scope cache must be emptied when tag scope doesn't contain tags anymore. The fix nullifies
-     * content data property for the tag scope cache. This approach allows avoiding immediate update in content store and postponing it untill content store cleaner job is executed
+     * <a href="https://issues.alfresco.com/jira/browse/ACE-1979">ACE-1979</a>: tag scope must be emptied when tag scope doesn't contain tags anymore
      * 
      * @throws Exception
      */
@@ -282,10 +287,8 @@ public class UpdateTagScopesActionExecuterTest extends TestCase
         final NodeRef taggedTagScope = expectedTagScopes.iterator().next();
         assertNotNull(taggedTagScope);
 
-        ContentData contentData = getTagScopeCacheContentDataProperty(taggedTagScope);
-        assertNotNull(contentData);
-        actionTrackingService.getExecutingActions(UpdateTagScopesActionExecuter.NAME);
-        assertTrue(contentData.getSize() > 0L);
+        List<TagDetails> tags = getTagScopeTags(taggedTagScope, new PagingRequest(0, Integer.MAX_VALUE)).getPage();
+        assertFalse(tags.isEmpty());
 
         transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Void>()
         {
@@ -308,33 +311,74 @@ public class UpdateTagScopesActionExecuterTest extends TestCase
         for (NodeRef tagScopeFolder : expectedTagScopes)
         {
             assertNotNull(tagScopeFolder);
-            contentData = getTagScopeCacheContentDataProperty(tagScopeFolder);
-            assertNull(contentData);
+            tags = getTagScopeTags(tagScopeFolder, new PagingRequest(0, Integer.MAX_VALUE)).getPage();
+            assertTrue(tags.isEmpty());
         }
     }
 
     /**
-     * @param nodeRef - {@link NodeRef} instance which represents tag scope folder
-     * @return {@link ContentModel#PROP_TAGSCOPE_CACHE} {@link ContentData} property instance for the given <code>nodeRef</code> or
+     * Tests that the tags of a tag scope are paged, highest count first
+     * 
+     * @throws Exception
      */
-    private ContentData getTagScopeCacheContentDataProperty(final NodeRef nodeRef)
+    @Test
+    public void testPagedTagScope() throws Exception
     {
-        ContentData result = null;
+        Action tagScopeUpdateAction = actionService.createAction(UpdateTagScopesActionExecuter.NAME);
+        tagScopeUpdateAction.setParameterValue(UpdateTagScopesActionExecuter.PARAM_TAG_SCOPES, (Serializable) expectedTagScopes);
+        actionExecuter.execute(tagScopeUpdateAction, null);
 
-        Serializable contentProperty = transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Serializable>()
+        final NodeRef taggedTagScope = expectedTagScopes.iterator().next();
+        final String popularTag = testTags.get(0);
+
+        // Tag every document with the same tag so that it has the highest count
+        transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Void>()
         {
             @Override
-            public Serializable execute() throws Throwable
+            public Void execute() throws Throwable
             {
-                return nodeService.getProperty(nodeRef, ContentModel.PROP_TAGSCOPE_CACHE);
+                for (ChildAssociationRef child : nodeService.getChildAssocs(taggedTagScope, Collections.singleton(ContentModel.TYPE_CONTENT)))
+                {
+                    taggingService.addTag(child.getChildRef(), popularTag);
+                }
+
+                return null;
             }
         }, false, true);
 
-        if (contentProperty instanceof ContentData)
-        {
-            result = (ContentData) contentProperty;
-        }
+        waitForTagScopeUpdate();
 
-        return result;
+        actionExecuter.execute(tagScopeUpdateAction, null);
+
+        int tagCount = TEST_TAGS_AMOUNT * TEST_DOCUMENTS_AMOUNT;
+        PagingRequest pagingRequest = new PagingRequest(0, 4);
+        pagingRequest.setRequestTotalCountMax(Integer.MAX_VALUE);
+        PagingResults<TagDetails> page = getTagScopeTags(taggedTagScope, pagingRequest);
+        assertEquals(4, page.getPage().size());
+        assertTrue(page.hasMoreItems());
+        assertEquals(Integer.valueOf(tagCount), page.getTotalResultCount().getFirst());
+        assertEquals(popularTag, page.getPage().get(0).getName());
+        assertEquals(TEST_DOCUMENTS_AMOUNT, page.getPage().get(0).getCount());
+
+        page = getTagScopeTags(taggedTagScope, new PagingRequest(tagCount - 1, 4));
+        assertEquals(1, page.getPage().size());
+        assertFalse(page.hasMoreItems());
+    }
+
+    /**
+     * @param nodeRef - {@link NodeRef} instance which represents tag scope folder
+     * @param pagingRequest - the page of tags to get
+     * @return the page of tags counted by the given <code>nodeRef</code>
+     */
+    private PagingResults<TagDetails> getTagScopeTags(final NodeRef nodeRef, final PagingRequest pagingRequest)
+    {
+        return transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<PagingResults<TagDetails>>()
+        {
+            @Override
+            public PagingResults<TagDetails> execute() throws Throwable
+            {
+                return taggingService.getTagScope(nodeRef, pagingRequest);
+            }
+        }, false, true);
     }
 }
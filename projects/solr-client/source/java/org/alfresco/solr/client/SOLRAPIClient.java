@@ -45,6 +45,7 @@ import org.alfresco.httpclient.AlfrescoHttpClient;
 import org.alfresco.httpclient.AuthenticationException;
 import org.alfresco.httpclient.GetRequest;
 import org.alfresco.httpclient.PostRequest;
+import org.alfresco.httpclient.Request;
 import org.alfresco.httpclient.Response;
 import org.alfresco.repo.dictionary.M2Model;
 import org.alfresco.repo.dictionary.NamespaceDAO;
@@ -110,6 +111,7 @@ public class SOLRAPIClient
     private DictionaryService dictionaryService;
     private JsonFactory jsonFactory;
     private NamespaceDAO namespaceDAO;
+    private boolean binaryEncoding;
 
     public SOLRAPIClient(AlfrescoHttpClient repositoryHttpClient,
             DictionaryService dictionaryService,
@@ -121,6 +123,32 @@ public class SOLRAPIClient
         this.deserializer = new SOLRDeserializer(namespaceDAO);
         this.jsonFactory = new JsonFactory();
     }
+
+    /**
+     * Ask the repository for nodes, node meta data and ACL readers in the binary encoding rather than JSON. The JSON
+     * response of a repository that does not support the binary encoding is still read.
+     * 
+     * @param binaryEncoding                <tt>true</tt> to ask for the binary encoding
+     */
+    public void setBinaryEncoding(boolean binaryEncoding)
+    {
+        this.binaryEncoding = binaryEncoding;
+    }
+
+    private void requestEncoding(Request req)
+    {
+        if (binaryEncoding)
+        {
+            Map<String, String> headers = new HashMap<String, String>(1, 1.0f);
+            headers.put(SOLRBinaryEncoding.ENCODING_HEADER, SOLRBinaryEncoding.ENCODING_BINARY);
+            req.setHeaders(headers);
+        }
+    }
+
+    private boolean isBinary(Response response)
+    {
+        return SOLRBinaryEncoding.isBinary(response.getHeader(SOLRBinaryEncoding.ENCODING_HEADER));
+    }
     
     /**
      * Get the ACL ChangeSets
@@ -315,6 +343,7 @@ public class SOLRAPIClient
         jsonReq.put("aclIds", aclIdsJSON);
 
         PostRequest req = new PostRequest(url.toString(), jsonReq.toString(), "application/json");
+        requestEncoding(req);
         Response response = null;
         JSONObject json = null;
         try
@@ -325,6 +354,10 @@ public class SOLRAPIClient
             {
                 throw new AlfrescoRuntimeException(GET_ACLS_READERS + " return status:" + response.getStatus());
             }
+            if (isBinary(response))
+            {
+                return new SOLRBinaryReader(response.getContentAsStream()).readAclReaders();
+            }
         
             Reader reader = new BufferedReader(new InputStreamReader(response.getContentAsStream(), "UTF-8"));
             json = new JSONObject(new JSONTokener(reader));
@@ -609,6 +642,7 @@ public class SOLRAPIClient
         }
         
         PostRequest req = new PostRequest(url.toString(), body.toString(), "application/json");
+        requestEncoding(req);
  
         Response response = null;
         JSONObject json = null;
@@ -619,6 +653,10 @@ public class SOLRAPIClient
             {
                 throw new AlfrescoRuntimeException("GetNodes return status is " + response.getStatus());
             }
+            if(isBinary(response))
+            {
+                return new SOLRBinaryReader(response.getContentAsStream()).readNodes();
+            }
 
             Reader reader = new BufferedReader(new InputStreamReader(response.getContentAsStream(), "UTF-8"));
             json = new JSONObject(new JSONTokener(reader));
@@ -860,6 +898,7 @@ public class SOLRAPIClient
         body.put("maxResults", maxResults);
 
         PostRequest req = new PostRequest(url.toString(), body.toString(), "application/json");
+        requestEncoding(req);
         Response response = null;
         JSONObject json = null;
         try
@@ -869,6 +908,10 @@ public class SOLRAPIClient
             {
                 throw new AlfrescoRuntimeException("GetNodeMetaData return status is " + response.getStatus());
             }
+            if(isBinary(response))
+            {
+                return new SOLRBinaryReader(response.getContentAsStream()).readNodesMetaData();
+            }
         
             Reader reader = new BufferedReader(new InputStreamReader(response.getContentAsStream(), "UTF-8"));
             json = new JSONObject(new JSONTokener(reader));
@@ -76,6 +76,7 @@ public class SOLRAPIClientFactory
     private int maxTotalConnections = 40;
     private int maxHostConnections = 40;
     private int socketTimeout = 120000;
+    private boolean binaryEncoding = true;
 
 
     public static void close() {
@@ -172,8 +173,10 @@ public class SOLRAPIClientFactory
             maxTotalConnections = Integer.parseInt(props.getProperty("alfresco.maxTotalConnections", "40"));
             maxHostConnections = Integer.parseInt(props.getProperty("alfresco.maxHostConnections", "40"));
             socketTimeout = Integer.parseInt(props.getProperty("alfresco.socketTimeout", "60000"));
+            binaryEncoding = Boolean.parseBoolean(props.getProperty("alfresco.binaryEncoding", "true"));
 
             client = new SOLRAPIClient(getRepoClient(keyResourceLoader), dictionaryService, namespaceDAO);
+            client.setBinaryEncoding(binaryEncoding);
             setCachedClient(alfrescoHost, alfrescoPort, alfrescoPortSSL, client);
         }
 
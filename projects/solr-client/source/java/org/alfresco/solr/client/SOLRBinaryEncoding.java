@@ -0,0 +1,101 @@
+/*
+ * #%L
+ * Alfresco Solr Client
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.solr.client;
+
+/**
+ * The constants of the compact binary encoding of SOLR tracking results, shared by the repository that writes it and
+ * the {@link SOLRBinaryReader} that reads it.
+ * <p/>
+ * The encoding is asked for with the {@link #ENCODING_HEADER} request header and is only used if the response carries
+ * the same header; otherwise the response is JSON.
+ * <p/>
+ * The stream starts with a {@link #VERSION} byte and is followed by records. Each record is introduced by a <tt>1</tt>
+ * and holds a sequence of field tags and values terminated by {@link #FIELD_END}. A <tt>0</tt> in place of a record
+ * ends the stream. Integers are zig-zag variable length integers and strings are length prefixed UTF-8, with a length
+ * of <tt>0</tt> for <tt>null</tt>. QNames, paths and authorities are written to dictionaries: the first occurrence of a
+ * value is written in full and later occurrences as its index in the dictionary. A field whose value is <tt>null</tt>
+ * is left out of the record.
+ *
+ * @since 5.2
+ */
+public final class SOLRBinaryEncoding
+{
+    public static final String ENCODING_HEADER = "X-Alfresco-Solr-Encoding";
+    public static final String ENCODING_BINARY = "binary";
+    public static final String MIMETYPE_BINARY = "application/x-alfresco-solr-binary";
+    public static final int VERSION = 1;
+
+    public static final int RECORD_END_OF_STREAM = 0;
+    public static final int RECORD_START = 1;
+
+    public static final int FIELD_END = 0;
+    public static final int FIELD_ID = 1;
+    public static final int FIELD_TENANT = 2;
+    public static final int FIELD_NODE_REF = 3;
+    public static final int FIELD_TYPE = 4;
+    public static final int FIELD_ACL_ID = 5;
+    public static final int FIELD_TXN_ID = 6;
+    public static final int FIELD_PROPERTIES = 7;
+    public static final int FIELD_ASPECTS = 8;
+    public static final int FIELD_PATHS = 9;
+    public static final int FIELD_ANCESTORS = 10;
+    public static final int FIELD_NAME_PATHS = 11;
+    public static final int FIELD_PARENT_ASSOCS = 12;
+    public static final int FIELD_PARENT_ASSOCS_CRC = 13;
+    public static final int FIELD_CHILD_ASSOCS = 14;
+    public static final int FIELD_CHILD_IDS = 15;
+    public static final int FIELD_OWNER = 16;
+    public static final int FIELD_STATUS = 17;
+    public static final int FIELD_SHARD_PROPERTY_VALUE = 18;
+    public static final int FIELD_ACL_CHANGE_SET_ID = 19;
+    public static final int FIELD_READERS = 20;
+    public static final int FIELD_DENIED = 21;
+
+    public static final int VALUE_NULL = 0;
+    public static final int VALUE_STRING = 1;
+    public static final int VALUE_MLTEXT = 2;
+    public static final int VALUE_CONTENT = 3;
+    public static final int VALUE_MULTI = 4;
+
+    /** Dictionary reference to a <tt>null</tt> value */
+    public static final int DICTIONARY_NULL = 0;
+    /** Dictionary reference introducing a new value; later references are its index plus {@link #DICTIONARY_FIRST_INDEX} */
+    public static final int DICTIONARY_NEW = 1;
+    public static final int DICTIONARY_FIRST_INDEX = 2;
+
+    private SOLRBinaryEncoding()
+    {
+    }
+
+    /**
+     * @param encodingHeader the value of the {@link #ENCODING_HEADER} header
+     * @return <tt>true</tt> if the header asks for, or announces, the binary encoding
+     */
+    public static boolean isBinary(String encodingHeader)
+    {
+        return ENCODING_BINARY.equals(encodingHeader);
+    }
+}
@@ -0,0 +1,492 @@
+/*
+ * #%L
+ * Alfresco Solr Client
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.solr.client;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.datatype.DefaultTypeConverter;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+
+/**
+ * Reads SOLR tracking results written in the repository's compact binary encoding, described by
+ * {@link SOLRBinaryEncoding}. Records are read one at a time straight from the response stream.
+ * <p/>
+ * A field that is not in a record is left unset, so a <tt>null</tt> value written by the repository reads back as
+ * <tt>null</tt>, as it does from JSON.
+ *
+ * @since 5.2
+ */
+public class SOLRBinaryReader
+{
+    private final DataInputStream in;
+    private final List<QName> qnames = new ArrayList<QName>(256);
+    private final List<String> paths = new ArrayList<String>(1024);
+    private final List<String> authorities = new ArrayList<String>(256);
+
+    public SOLRBinaryReader(InputStream in) throws IOException
+    {
+        this.in = new DataInputStream(new BufferedInputStream(in, 8192));
+        int version = this.in.read();
+        if (version != SOLRBinaryEncoding.VERSION)
+        {
+            throw new IOException("Unsupported binary encoding version: " + version);
+        }
+    }
+
+    /**
+     * @return <tt>true</tt> if a record follows, <tt>false</tt> at the end of the stream
+     */
+    public boolean nextRecord() throws IOException
+    {
+        int marker = in.read();
+        if (marker < 0)
+        {
+            throw new EOFException("Binary response ended without an end marker");
+        }
+        return marker != SOLRBinaryEncoding.RECORD_END_OF_STREAM;
+    }
+
+    /**
+     * @return the tag of the next field of the record, or {@link SOLRBinaryEncoding#FIELD_END}
+     */
+    public int readField() throws IOException
+    {
+        return (int) readUnsigned();
+    }
+
+    public int readCount() throws IOException
+    {
+        return (int) readUnsigned();
+    }
+
+    public int readValueType() throws IOException
+    {
+        return (int) readUnsigned();
+    }
+
+    public long readLong() throws IOException
+    {
+        long value = readUnsigned();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public String readString() throws IOException
+    {
+        long length = readUnsigned();
+        if (length == 0)
+        {
+            return null;
+        }
+        byte[] bytes = new byte[(int) (length - 1)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public QName readQName() throws IOException
+    {
+        long index = readUnsigned();
+        if (index == SOLRBinaryEncoding.DICTIONARY_NULL)
+        {
+            return null;
+        }
+        else if (index == SOLRBinaryEncoding.DICTIONARY_NEW)
+        {
+            // Only parsed once for each QName in the stream
+            QName qname = QName.createQName(readString());
+            qnames.add(qname);
+            return qname;
+        }
+        return get(qnames, index);
+    }
+
+    public String readPath() throws IOException
+    {
+        return readInterned(paths);
+    }
+
+    public String readAuthority() throws IOException
+    {
+        return readInterned(authorities);
+    }
+
+    /**
+     * Reads the rest of the stream as ACL readers.
+     */
+    public List<AclReaders> readAclReaders() throws IOException
+    {
+        List<AclReaders> aclsReaders = new ArrayList<AclReaders>();
+        while (nextRecord())
+        {
+            long aclId = 0;
+            long aclChangeSetId = 0;
+            String tenantDomain = null;
+            List<String> readers = null;
+            List<String> denied = null;
+            for (int field = readField(); field != SOLRBinaryEncoding.FIELD_END; field = readField())
+            {
+                switch (field)
+                {
+                case SOLRBinaryEncoding.FIELD_ACL_ID:
+                    aclId = readLong();
+                    break;
+                case SOLRBinaryEncoding.FIELD_ACL_CHANGE_SET_ID:
+                    aclChangeSetId = readLong();
+                    break;
+                case SOLRBinaryEncoding.FIELD_TENANT:
+                    tenantDomain = readString();
+                    break;
+                case SOLRBinaryEncoding.FIELD_READERS:
+                    readers = readAuthorities();
+                    break;
+                case SOLRBinaryEncoding.FIELD_DENIED:
+                    denied = readAuthorities();
+                    break;
+                default:
+                    throw new IOException("Unexpected field in ACL readers: " + field);
+                }
+            }
+            if (tenantDomain == null)
+            {
+                tenantDomain = TenantService.DEFAULT_DOMAIN;
+            }
+            aclsReaders.add(new AclReaders(aclId, readers, denied, aclChangeSetId, tenantDomain));
+        }
+        return aclsReaders;
+    }
+
+    private List<String> readAuthorities() throws IOException
+    {
+        int count = readCount();
+        List<String> authorities = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++)
+        {
+            authorities.add(readAuthority());
+        }
+        return authorities;
+    }
+
+    /**
+     * Reads the rest of the stream as nodes.
+     */
+    public List<Node> readNodes() throws IOException
+    {
+        List<Node> nodes = new ArrayList<Node>();
+        while(nextRecord())
+        {
+            Node nodeInfo = new Node();
+            for(int field = readField(); field != SOLRBinaryEncoding.FIELD_END; field = readField())
+            {
+                switch(field)
+                {
+                case SOLRBinaryEncoding.FIELD_ID:
+                    nodeInfo.setId(readLong());
+                    break;
+                case SOLRBinaryEncoding.FIELD_NODE_REF:
+                    nodeInfo.setNodeRef(readString());
+                    break;
+                case SOLRBinaryEncoding.FIELD_TXN_ID:
+                    nodeInfo.setTxnId(readLong());
+                    break;
+                case SOLRBinaryEncoding.FIELD_ACL_ID:
+                    nodeInfo.setAclId(readLong());
+                    break;
+                case SOLRBinaryEncoding.FIELD_SHARD_PROPERTY_VALUE:
+                    nodeInfo.setShardPropertyValue(readString());
+                    break;
+                case SOLRBinaryEncoding.FIELD_TENANT:
+                    nodeInfo.setTenant(readString());
+                    break;
+                case SOLRBinaryEncoding.FIELD_STATUS:
+                    String statusStr = readString();
+                    if("u".equals(statusStr))
+                    {
+                        nodeInfo.setStatus(Node.SolrApiNodeStatus.UPDATED);
+                    }
+                    else if("d".equals(statusStr))
+                    {
+                        nodeInfo.setStatus(Node.SolrApiNodeStatus.DELETED);
+                    }
+                    else
+                    {
+                        nodeInfo.setStatus(Node.SolrApiNodeStatus.UNKNOWN);
+                    }
+                    break;
+                default:
+                    throw new IOException("Unexpected field in node: " + field);
+                }
+            }
+            nodes.add(nodeInfo);
+        }
+        return nodes;
+    }
+
+    /**
+     * Reads the rest of the stream as node meta data.
+     */
+    public List<NodeMetaData> readNodesMetaData() throws IOException
+    {
+        List<NodeMetaData> nodes = new ArrayList<NodeMetaData>();
+        while(nextRecord())
+        {
+            NodeMetaData metaData = new NodeMetaData();
+            for(int field = readField(); field != SOLRBinaryEncoding.FIELD_END; field = readField())
+            {
+                switch(field)
+                {
+                case SOLRBinaryEncoding.FIELD_ID:
+                    metaData.setId(readLong());
+                    break;
+                case SOLRBinaryEncoding.FIELD_TENANT:
+                    metaData.setTenantDomain(readString());
+                    break;
+                case SOLRBinaryEncoding.FIELD_TXN_ID:
+                    metaData.setTxnId(readLong());
+                    break;
+                case SOLRBinaryEncoding.FIELD_ACL_ID:
+                    metaData.setAclId(readLong());
+                    break;
+                case SOLRBinaryEncoding.FIELD_NODE_REF:
+                    metaData.setNodeRef(new NodeRef(readString()));
+                    break;
+                case SOLRBinaryEncoding.FIELD_TYPE:
+                    metaData.setType(readQName());
+                    break;
+                case SOLRBinaryEncoding.FIELD_ASPECTS:
+                {
+                    int count = readCount();
+                    Set<QName> aspects = new HashSet<QName>(count * 2);
+                    for(int j = 0; j < count; j++)
+                    {
+                        aspects.add(readQName());
+                    }
+                    metaData.setAspects(aspects);
+                    break;
+                }
+                case SOLRBinaryEncoding.FIELD_PATHS:
+                {
+                    int count = readCount();
+                    List<Pair<String, QName>> paths = new ArrayList<Pair<String, QName>>(count);
+                    List<String> ancestorPaths = new ArrayList<String>(count);
+                    for(int j = 0; j < count; j++)
+                    {
+                        String pathValue = readPath();
+                        QName qname = readQName();
+                        paths.add(new Pair<String, QName>(pathValue, qname));
+                        ancestorPaths.add(readPath());
+                    }
+                    metaData.setPaths(paths);
+                    metaData.setAncestorPaths(ancestorPaths);
+                    break;
+                }
+                case SOLRBinaryEncoding.FIELD_NAME_PATHS:
+                {
+                    int count = readCount();
+                    List<List<String>> namePaths = new ArrayList<List<String>>(count);
+                    for(int j = 0; j < count; j++)
+                    {
+                        int length = readCount();
+                        List<String> namePath = new ArrayList<String>(length);
+                        for(int k = 0; k < length; k++)
+                        {
+                            namePath.add(readPath());
+                        }
+                        namePaths.add(namePath);
+                    }
+                    metaData.setNamePaths(namePaths);
+                    break;
+                }
+                case SOLRBinaryEncoding.FIELD_ANCESTORS:
+                {
+                    int count = readCount();
+                    HashSet<NodeRef> ancestors = new HashSet<NodeRef>(count * 2);
+                    for(int j = 0; j < count; j++)
+                    {
+                        ancestors.add(new NodeRef(readPath()));
+                    }
+                    metaData.setAncestors(ancestors);
+                    break;
+                }
+                case SOLRBinaryEncoding.FIELD_PROPERTIES:
+                {
+                    int count = readCount();
+                    Map<QName, PropertyValue> properties = new HashMap<QName, PropertyValue>(count * 2);
+                    for(int j = 0; j < count; j++)
+                    {
+                        QName propQName = readQName();
+                        properties.put(propQName, readPropertyValue());
+                    }
+                    metaData.setProperties(properties);
+                    break;
+                }
+                case SOLRBinaryEncoding.FIELD_PARENT_ASSOCS_CRC:
+                    metaData.setParentAssocsCrc(readLong());
+                    break;
+                case SOLRBinaryEncoding.FIELD_PARENT_ASSOCS:
+                    metaData.setParentAssocs(readChildAssociationRefs());
+                    break;
+                case SOLRBinaryEncoding.FIELD_CHILD_ASSOCS:
+                    metaData.setChildAssocs(readChildAssociationRefs());
+                    break;
+                case SOLRBinaryEncoding.FIELD_CHILD_IDS:
+                {
+                    int count = readCount();
+                    List<Long> childIds = new ArrayList<Long>(count);
+                    for(int j = 0; j < count; j++)
+                    {
+                        childIds.add(readLong());
+                    }
+                    metaData.setChildIds(childIds);
+                    break;
+                }
+                case SOLRBinaryEncoding.FIELD_OWNER:
+                    metaData.setOwner(readString());
+                    break;
+                default:
+                    throw new IOException("Unexpected field in node meta data: " + field);
+                }
+            }
+            nodes.add(metaData);
+        }
+        return nodes;
+    }
+
+    private List<ChildAssociationRef> readChildAssociationRefs() throws IOException
+    {
+        int count = readCount();
+        List<ChildAssociationRef> assocs = new ArrayList<ChildAssociationRef>(count);
+        for(int j = 0; j < count; j++)
+        {
+            assocs.add(new ChildAssociationRef(readString()));
+        }
+        return assocs;
+    }
+
+    private PropertyValue readPropertyValue() throws IOException
+    {
+        int valueType = readValueType();
+        switch(valueType)
+        {
+        case SOLRBinaryEncoding.VALUE_NULL:
+            return null;
+        case SOLRBinaryEncoding.VALUE_STRING:
+            return new StringPropertyValue(readString());
+        case SOLRBinaryEncoding.VALUE_MLTEXT:
+        {
+            int count = readCount();
+            Map<Locale, String> mlValues = new HashMap<Locale, String>(count * 2);
+            for(int k = 0; k < count; k++)
+            {
+                Locale locale = DefaultTypeConverter.INSTANCE.convert(Locale.class, readString());
+                mlValues.put(locale, readString());
+            }
+            return new MLTextPropertyValue(mlValues);
+        }
+        case SOLRBinaryEncoding.VALUE_CONTENT:
+        {
+            long id = readLong();
+            String localeStr = readString();
+            Locale locale = (localeStr != null ? DefaultTypeConverter.INSTANCE.convert(Locale.class, localeStr) : null);
+            long size = readLong();
+            String encoding = readString();
+            String mimetype = readString();
+            return new ContentPropertyValue(locale, size, encoding, mimetype, id < 0 ? null : id);
+        }
+        case SOLRBinaryEncoding.VALUE_MULTI:
+        {
+            int count = readCount();
+            MultiPropertyValue multi = new MultiPropertyValue();
+            for(int j = 0; j < count; j++)
+            {
+                multi.addValue(readPropertyValue());
+            }
+            return multi;
+        }
+        default:
+            throw new IOException("Unexpected property value type: " + valueType);
+        }
+    }
+
+    private String readInterned(List<String> dictionary) throws IOException
+    {
+        long index = readUnsigned();
+        if (index == SOLRBinaryEncoding.DICTIONARY_NULL)
+        {
+            return null;
+        }
+        else if (index == SOLRBinaryEncoding.DICTIONARY_NEW)
+        {
+            String value = readString();
+            dictionary.add(value);
+            return value;
+        }
+        return get(dictionary, index);
+    }
+
+    private <T> T get(List<T> dictionary, long index) throws IOException
+    {
+        long position = index - SOLRBinaryEncoding.DICTIONARY_FIRST_INDEX;
+        if (position >= dictionary.size())
+        {
+            throw new IOException("Unknown dictionary entry: " + position);
+        }
+        return dictionary.get((int) position);
+    }
+
+    private long readUnsigned() throws IOException
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            int b = in.read();
+            if (b < 0)
+            {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+}
@@ -31,6 +31,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.alfresco.solr.InformationServerCollectionProvider;
 import org.alfresco.solr.adapters.ISimpleOrderedMap;
@@ -61,6 +62,15 @@ public class TrackerStats
     
     ConcurrentHashMap<String, IncrementalStats> elapsedContentTimes = new ConcurrentHashMap<String, IncrementalStats>();
 
+    /** Time per item of each stage of the metadata pipeline, by stage and then by thread */
+    ConcurrentHashMap<String, ConcurrentHashMap<String, IncrementalStats>> stageTimes = new ConcurrentHashMap<String, ConcurrentHashMap<String, IncrementalStats>>();
+
+    /** The number of batches waiting for each stage of the metadata pipeline */
+    ConcurrentHashMap<String, Integer> stageQueueDepths = new ConcurrentHashMap<String, Integer>();
+
+    /** The stages of the metadata pipeline, in the order they were first seen */
+    CopyOnWriteArrayList<String> stages = new CopyOnWriteArrayList<String>();
+
     private InformationServerCollectionProvider infoSrv;
     
     public TrackerStats(InformationServerCollectionProvider server)
@@ -214,6 +224,44 @@ public class TrackerStats
         return aggregateResults(changeSetAcls).getMean();
     }
 
+    /**
+     * @return the names of the pipeline stages that have recorded times or queue depths
+     */
+    public List<String> getStages()
+    {
+        return new ArrayList<String>(stages);
+    }
+
+    /**
+     * @param stage the name of the pipeline stage
+     * @return the time per item of the stage
+     */
+    public SimpleStats getStageTimes(String stage)
+    {
+        ConcurrentHashMap<String, IncrementalStats> times = stageTimes.get(stage);
+        return aggregateResults(times == null ? new ConcurrentHashMap<String, IncrementalStats>() : times);
+    }
+
+    /**
+     * @param stage the name of the pipeline stage
+     * @return the number of batches last seen waiting for the stage
+     */
+    public int getStageQueueDepth(String stage)
+    {
+        Integer depth = stageQueueDepths.get(stage);
+        return depth == null ? 0 : depth;
+    }
+
+    /**
+     * @param stage the name of the pipeline stage
+     * @return the number of items per second handled by each thread of the stage
+     */
+    public double getStageRate(String stage)
+    {
+        double mean = getStageTimes(stage).getMean();
+        return mean > 0 ? 1000.0 / mean : 0;
+    }
+
     public static class SimpleStats
     {
         HashMap<String, IncrementalStats> copies = new HashMap<String, IncrementalStats>();
@@ -915,6 +963,51 @@ public class TrackerStats
         
     }
     
+    /**
+     * @param stage the name of the pipeline stage
+     * @param itemCount the number of items handled
+     * @param time the time taken to handle them
+     */
+    public void addStageTime(String stage, int itemCount, long time)
+    {
+        if(itemCount < 1)
+        {
+            return;
+        }
+        stages.addIfAbsent(stage);
+        ConcurrentHashMap<String, IncrementalStats> times = stageTimes.get(stage);
+        if (times == null)
+        {
+            times = new ConcurrentHashMap<String, IncrementalStats>();
+            ConcurrentHashMap<String, IncrementalStats> existing = stageTimes.putIfAbsent(stage, times);
+            if (existing != null)
+            {
+                times = existing;
+            }
+        }
+        IncrementalStats stats = times.get(Thread.currentThread().getName());
+        if (stats == null)
+        {
+            stats = new IncrementalStats(TIME_SCALE, 50, this.infoSrv);
+            times.put(Thread.currentThread().getName(), stats);
+        }
+        long meanTime = time / itemCount;
+        for(int i = 0; i < itemCount; i++)
+        {
+            stats.add(meanTime);
+        }
+    }
+
+    /**
+     * @param stage the name of the pipeline stage
+     * @param depth the number of batches waiting for the stage
+     */
+    public void setStageQueueDepth(String stage, int depth)
+    {
+        stages.addIfAbsent(stage);
+        stageQueueDepths.put(stage, depth);
+    }
+
     /**
      * @param size int
      */
@@ -980,6 +1073,9 @@ public class TrackerStats
         txDocs.clear();
         docTransformationTimes.clear();
         nodeTimes.clear();
+        stageTimes.clear();
+        stageQueueDepths.clear();
+        stages.clear();
     }
 
  
@@ -1268,6 +1268,24 @@ public class AlfrescoCoreAdminHandler extends CoreAdminHandler
         coreSummary.add("Doc Transformation time (ms)", srv.getTrackerStats().getDocTransformationTimes()
                     .getNamedList(detail, hist, values));
 
+        // Metadata pipeline
+
+        List<String> stages = srv.getTrackerStats().getStages();
+        if (stages.size() > 0)
+        {
+            NamedList<Object> pipeline = new SimpleOrderedMap<Object>();
+            for (String stage : stages)
+            {
+                NamedList<Object> stageSummary = new SimpleOrderedMap<Object>();
+                stageSummary.add("Queue depth", srv.getTrackerStats().getStageQueueDepth(stage));
+                stageSummary.add("Items/s per thread", srv.getTrackerStats().getStageRate(stage));
+                stageSummary.add("Time per item (ms)",
+                            srv.getTrackerStats().getStageTimes(stage).getNamedList(detail, hist, values));
+                pipeline.add(stage, stageSummary);
+            }
+            coreSummary.add("Metadata pipeline", pipeline);
+        }
+
         // Model
 
         Map<String, Set<String>> modelErrors = srv.getModelErrors();
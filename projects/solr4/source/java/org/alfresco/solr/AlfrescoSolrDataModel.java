@@ -89,6 +89,7 @@ import org.alfresco.service.namespace.QName;
 import org.alfresco.solr.AlfrescoClientDataModelServicesFactory.DictionaryKey;
 import org.alfresco.solr.client.AlfrescoModel;
 import org.alfresco.solr.query.Lucene4QueryBuilderContextSolrImpl;
+import org.alfresco.solr.query.ParsedQueryCache;
 import org.alfresco.solr.query.Solr4QueryParser;
 import org.alfresco.solr.tracker.pool.DefaultTrackerPoolFactory;
 import org.alfresco.solr.tracker.pool.TrackerPoolFactory;
@@ -189,6 +190,8 @@ public class AlfrescoSolrDataModel implements QueryConstants
     
     private HashSet<QName> identifierProperties = new HashSet<QName>();
     private ThreadPoolExecutor threadPool;
+    
+    private final ParsedQueryCache parsedQueryCache = new ParsedQueryCache(Integer.getInteger("alfresco.parsedQueryCache.size", 1000));
 
     
     public void close() {
@@ -1400,6 +1403,7 @@ public class AlfrescoSolrDataModel implements QueryConstants
         {
             modelErrors.remove(model.getName());
             dictionaryDAO.putModelIgnoringConstraints(model);
+            parsedQueryCache.invalidate();
             return true;
         }
         else
@@ -1458,6 +1462,15 @@ public class AlfrescoSolrDataModel implements QueryConstants
         {
             cds.afterDictionaryInit();
         }
+        parsedQueryCache.invalidate();
+    }
+
+    /**
+     * @return the cache of parsed queries and type and aspect expansions, which is invalidated when the models change
+     */
+    public ParsedQueryCache getParsedQueryCache()
+    {
+        return parsedQueryCache;
     }
     
     public org.alfresco.repo.search.impl.querymodel.Query parseCMISQueryToAlfrescoAbstractQuery(CMISQueryMode mode, SearchParameters searchParameters,
@@ -2287,6 +2300,35 @@ public class AlfrescoSolrDataModel implements QueryConstants
          SearchParameters searchParameters = searchParametersAndFilter.getFirst();
          Boolean isFilter = searchParametersAndFilter.getSecond();
 
+         String cacheKey = parsedQueryCache.getKey(req.getCore().getName(), searchParameters, rerankPhase);
+         Query luceneQuery = parsedQueryCache.get(cacheKey);
+         if (luceneQuery != null)
+         {
+             if (log.isDebugEnabled())
+             {
+                 log.debug("AFTS query from parsed query cache: " + searchParameters.getQuery());
+             }
+         }
+         else
+         {
+             long start = System.nanoTime();
+             long generation = parsedQueryCache.getGeneration();
+             luceneQuery = buildFTSQuery(searchParameters, req, rerankPhase);
+             long nanos = System.nanoTime() - start;
+             parsedQueryCache.put(cacheKey, generation, luceneQuery, nanos);
+             if (log.isDebugEnabled())
+             {
+                 log.debug("AFTS query parsed and expanded in " + (nanos / 1000) + " us" + (cacheKey == null ? " (not cacheable)" : "") + ": " + searchParameters.getQuery());
+             }
+         }
+         // query needs some search parameters fro correct caching ....
+
+         ContextAwareQuery contextAwareQuery = new ContextAwareQuery(luceneQuery, Boolean.TRUE.equals(isFilter) ? null : searchParameters);
+         return contextAwareQuery;
+     }
+
+     private Query buildFTSQuery(SearchParameters searchParameters, SolrQueryRequest req, FTSQueryParser.RerankPhase rerankPhase) throws ParseException
+     {
          QueryModelFactory factory = new LuceneQueryModelFactory<Query, Sort, SyntaxError>();
          AlfrescoFunctionEvaluationContext functionContext = new AlfrescoSolr4FunctionEvaluationContext(namespaceDAO, getDictionaryService(CMISStrictDictionaryService.DEFAULT), NamespaceService.CONTENT_MODEL_1_0_URI, req.getSchema());
 
@@ -2328,11 +2370,7 @@ public class AlfrescoSolrDataModel implements QueryConstants
 
              selectorGroup = selectorGroups.get(0);
          }
-         Query luceneQuery = builder.buildQuery(selectorGroup, luceneContext, functionContext);
-         // query needs some search parameters fro correct caching ....
-
-         ContextAwareQuery contextAwareQuery = new ContextAwareQuery(luceneQuery, Boolean.TRUE.equals(isFilter) ? null : searchParameters);
-         return contextAwareQuery;
+         return builder.buildQuery(selectorGroup, luceneContext, functionContext);
      }
      
     /**
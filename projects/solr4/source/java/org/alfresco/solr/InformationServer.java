@@ -42,6 +42,7 @@ import org.alfresco.solr.client.AclChangeSet;
 import org.alfresco.solr.client.AclReaders;
 import org.alfresco.solr.client.AlfrescoModel;
 import org.alfresco.solr.client.Node;
+import org.alfresco.solr.client.NodeMetaData;
 import org.alfresco.solr.client.Transaction;
 import org.alfresco.solr.tracker.IndexHealthReport;
 import org.alfresco.solr.tracker.TrackerStats;
@@ -79,6 +80,13 @@ public interface InformationServer extends InformationServerCollectionProvider
     
     void indexNodes(List<Node> nodes, boolean overwrite) throws IOException, AuthenticationException, JSONException;
 
+    /**
+     * Index the nodes using metadata that has already been fetched from the repository.
+     *
+     * @param nodeMetaDatas the metadata of the updated, unknown and non-shard updated nodes, or <tt>null</tt> to fetch it
+     */
+    void indexNodes(List<Node> nodes, boolean overwrite, List<NodeMetaData> nodeMetaDatas) throws IOException, AuthenticationException, JSONException;
+
     long indexAcl(List<AclReaders> aclReaderList, boolean overwrite) throws IOException;
 
     TrackerState getTrackerInitialState();
@@ -117,6 +125,11 @@ public interface InformationServer extends InformationServerCollectionProvider
 
     List<TenantAclIdDbId> getDocsWithUncleanContent(int start, int rows) throws IOException;
 
+    /**
+     * Get docs with unclean content whose content is at least the given size, if <code>large</code>, or smaller.
+     */
+    List<TenantAclIdDbId> getDocsWithUncleanContent(int start, int rows, long largeContentSize, boolean large) throws IOException;
+
     void updateContentToIndexAndCache(long dbId, String tenant) throws Exception;
 
     void addCommonNodeReportInfo(NodeReport nodeReport);
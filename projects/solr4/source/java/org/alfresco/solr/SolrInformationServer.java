@@ -129,6 +129,7 @@ import org.alfresco.solr.adapters.IOpenBitSet;
 import org.alfresco.solr.adapters.ISimpleOrderedMap;
 import org.alfresco.solr.adapters.SolrOpenBitSetAdapter;
 import org.alfresco.solr.adapters.SolrSimpleOrderedMap;
+import org.alfresco.solr.cache.AbstractIncrementalCacheRegenerator;
 import org.alfresco.solr.client.AclChangeSet;
 import org.alfresco.solr.client.AclReaders;
 import org.alfresco.solr.client.AlfrescoModel;
@@ -146,10 +147,12 @@ import org.alfresco.solr.client.StringPropertyValue;
 import org.alfresco.solr.client.Transaction;
 import org.alfresco.solr.content.SolrContentStore;
 import org.alfresco.solr.content.SolrContentUrlBuilder;
+import org.alfresco.solr.query.DocValuesCache;
 import org.alfresco.solr.tracker.IndexHealthReport;
 import org.alfresco.solr.tracker.TrackerStats;
 import org.alfresco.util.ISO9075;
 import org.alfresco.util.Pair;
+import org.alfresco.util.SearchLanguageConversion;
 import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.lucene.index.IndexCommit;
 import org.apache.lucene.index.IndexableField;
@@ -170,6 +173,7 @@ import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.request.SolrRequestHandler;
 import org.apache.solr.response.ResultContext;
 import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.search.CacheConfig;
 import org.apache.solr.search.DocIterator;
 import org.apache.solr.search.DocList;
 import org.apache.solr.search.SolrIndexSearcher;
@@ -705,13 +709,31 @@ public class SolrInformationServer implements InformationServer
     
     @Override
     public List<TenantAclIdDbId> getDocsWithUncleanContent(int start, int rows) throws IOException
+    {
+        String query = FIELD_FTSSTATUS + ":" + FTSStatus.Dirty + " OR " + FIELD_FTSSTATUS + ":" + FTSStatus.New;
+        return getDocsWithUncleanContent(query, start, rows);
+    }
+
+    @Override
+    public List<TenantAclIdDbId> getDocsWithUncleanContent(int start, int rows, long largeContentSize, boolean large) throws IOException
+    {
+        // Docs without content are small
+        String sizeField = AlfrescoSolrDataModel.getInstance()
+                    .getIndexedFieldForContentPropertyMetadata(ContentModel.PROP_CONTENT, AlfrescoSolrDataModel.ContentFieldType.SIZE)
+                    .getFields().get(0).getField();
+        String largeQuery = SearchLanguageConversion.escapeLuceneQuery(sizeField) + ":[" + largeContentSize + " TO *]";
+        String query = "(" + FIELD_FTSSTATUS + ":" + FTSStatus.Dirty + " OR " + FIELD_FTSSTATUS + ":" + FTSStatus.New + ")"
+                    + (large ? AND : " AND NOT ") + largeQuery;
+        return getDocsWithUncleanContent(query, start, rows);
+    }
+
+    private List<TenantAclIdDbId> getDocsWithUncleanContent(String query, int start, int rows) throws IOException
     {
         SolrQueryRequest request = null;
         try
         {
             request = getLocalSolrQueryRequest();
             ModifiableSolrParams params = new ModifiableSolrParams(request.getParams());
-            String query = FIELD_FTSSTATUS + ":" + FTSStatus.Dirty + " OR " + FIELD_FTSSTATUS + ":" + FTSStatus.New;
             params.set("q", query)
                 .set("fl", FIELD_SOLR4_ID)
                 .set("rows", rows)
@@ -886,6 +908,9 @@ public class SolrInformationServer implements InformationServer
             refCounted = core.getSearcher(false, true, null);
             SolrIndexSearcher solrIndexSearcher = refCounted.get();
             coreSummary.add("Searcher", solrIndexSearcher.getStatistics());
+            coreSummary.add("DocValuesCache", DocValuesCache.getStatistics());
+            coreSummary.add("Cache warming", getCacheWarmingStatistics());
+            coreSummary.add("Parsed query cache", dataModel.getParsedQueryCache().getStatistics());
             Map<String, SolrInfoMBean> infoRegistry = core.getInfoRegistry();
             for (String key : infoRegistry.keySet())
             {
@@ -915,6 +940,10 @@ public class SolrInformationServer implements InformationServer
                 {
                     coreSummary.add("/alfrescoAuthorityCache", infoMBean.getStatistics());
                 }
+                if (key.equals("alfrescoAclSetCache"))
+                {
+                    coreSummary.add("/alfrescoAclSetCache", infoMBean.getStatistics());
+                }
                 if (key.equals("alfrescoPathCache"))
                 {
                     coreSummary.add("/alfrescoPathCache", infoMBean.getStatistics());
@@ -1131,6 +1160,30 @@ public class SolrInformationServer implements InformationServer
         return count;
     }
 
+    /**
+     * @return the warming statistics of the caches of the core that are warmed incrementally, by cache name
+     */
+    private NamedList<Object> getCacheWarmingStatistics()
+    {
+        NamedList<Object> stats = new SimpleOrderedMap<Object>();
+        CacheConfig[] cacheConfigs = core.getSolrConfig().userCacheConfigs;
+        if (cacheConfigs != null)
+        {
+            for (CacheConfig cacheConfig : cacheConfigs)
+            {
+                if (cacheConfig.getRegenerator() instanceof AbstractIncrementalCacheRegenerator)
+                {
+                    AbstractIncrementalCacheRegenerator regenerator = (AbstractIncrementalCacheRegenerator) cacheConfig.getRegenerator();
+                    if (regenerator.getCacheName() != null)
+                    {
+                        stats.add(regenerator.getCacheName(), regenerator.getStatistics());
+                    }
+                }
+            }
+        }
+        return stats;
+    }
+
     @Override
     public <T> ISimpleOrderedMap<T> getSimpleOrderedMapInstance()
     {
@@ -1947,6 +2000,12 @@ public class SolrInformationServer implements InformationServer
 
     @Override
     public void indexNodes(List<Node> nodes, boolean overwrite) throws IOException, AuthenticationException, JSONException
+    {
+        indexNodes(nodes, overwrite, null);
+    }
+
+    @Override
+    public void indexNodes(List<Node> nodes, boolean overwrite, List<NodeMetaData> prefetchedMetaDatas) throws IOException, AuthenticationException, JSONException
     {
         SolrQueryRequest request = null;
         UpdateRequestProcessor processor = null;
@@ -2034,8 +2093,11 @@ public class SolrInformationServer implements InformationServer
                 nodeIds.addAll(shardUpdatedNodeIds);
                 nmdp.setNodeIds(nodeIds);
 
-                // Fetches bulk metadata
-                List<NodeMetaData> nodeMetaDatas =  repositoryClient.getNodesMetaData(nmdp, Integer.MAX_VALUE);
+                // Fetches bulk metadata, unless the metadata pipeline has already done so
+                List<NodeMetaData> nodeMetaDatas = prefetchedMetaDatas != null ? prefetchedMetaDatas
+                            : repositoryClient.getNodesMetaData(nmdp, Integer.MAX_VALUE);
+                // Reads the cached docs of the batch in one pass over the content log
+                Map<String, ContentReader> cachedDocReaders = getCachedDocReaders(nodeMetaDatas);
 
                 NEXT_NODE: for (NodeMetaData nodeMetaData : nodeMetaDatas)
                 {
@@ -2103,7 +2165,7 @@ public class SolrInformationServer implements InformationServer
                         deleteNode(processor, request, node);
 
                         SolrInputDocument doc = createNewDoc(nodeMetaData, DOC_TYPE_NODE);
-                        addToNewDocAndCache(nodeMetaData, doc);
+                        addToNewDocAndCache(nodeMetaData, doc, cachedDocReaders);
                         addDocCmd.solrDoc = doc;
                         processor.processAdd(addDocCmd);
 
@@ -2134,6 +2196,15 @@ public class SolrInformationServer implements InformationServer
 
     private void addToNewDocAndCache(NodeMetaData nodeMetaData, SolrInputDocument newDoc) throws IOException,
                 AuthenticationException
+    {
+        addToNewDocAndCache(nodeMetaData, newDoc, null);
+    }
+
+    /**
+     * @param cachedDocReaders      readers prefetched with {@link #getCachedDocReaders(List)} or <tt>null</tt>
+     */
+    private void addToNewDocAndCache(NodeMetaData nodeMetaData, SolrInputDocument newDoc,
+                Map<String, ContentReader> cachedDocReaders) throws IOException, AuthenticationException
     {
         addFieldsToDoc(nodeMetaData, newDoc);
         SolrInputDocument cachedDoc = null;
@@ -2141,7 +2212,7 @@ public class SolrInformationServer implements InformationServer
         String fixedTenantDomain = AlfrescoSolrDataModel.getTenantId(nodeMetaData.getTenantDomain());
         if (isContentIndexedForNode)
         {
-            cachedDoc = retrieveDocFromSolrContentStore(fixedTenantDomain, nodeMetaData.getId());
+            cachedDoc = retrieveDocFromSolrContentStore(fixedTenantDomain, nodeMetaData.getId(), cachedDocReaders);
         }
         Map<QName, PropertyValue> properties = nodeMetaData.getProperties();
         addPropertiesToDoc(properties, isContentIndexedForNode, newDoc, cachedDoc, transformContent);
@@ -2876,14 +2947,55 @@ public class SolrInformationServer implements InformationServer
         }
     }
 
-    private SolrInputDocument retrieveDocFromSolrContentStore(String tenant, long dbId) throws IOException
+    /**
+     * Read the cached docs of the nodes whose content is indexed in one batch, if the content store keeps them in a log.
+     * 
+     * @return                  the readers by content URL or <tt>null</tt>
+     */
+    private Map<String, ContentReader> getCachedDocReaders(List<NodeMetaData> nodeMetaDatas)
     {
-        String contentUrl = SolrContentUrlBuilder
+        if (!this.solrContentStore.isLogStructured())
+        {
+            return null;
+        }
+        List<String> contentUrls = new ArrayList<String>(nodeMetaDatas.size());
+        for (NodeMetaData nodeMetaData : nodeMetaDatas)
+        {
+            if (isContentIndexedForNode(nodeMetaData.getProperties()))
+            {
+                String fixedTenantDomain = AlfrescoSolrDataModel.getTenantId(nodeMetaData.getTenantDomain());
+                contentUrls.add(getCachedDocUrl(fixedTenantDomain, nodeMetaData.getId()));
+            }
+        }
+        return this.solrContentStore.getReaders(contentUrls);
+    }
+
+    private String getCachedDocUrl(String tenant, long dbId)
+    {
+        return SolrContentUrlBuilder
                     .start()
                     .add(SolrContentUrlBuilder.KEY_TENANT, tenant)
                     .add(SolrContentUrlBuilder.KEY_DB_ID, String.valueOf(dbId))
                     .get();
-        ContentReader reader = this.solrContentStore.getReader(contentUrl);
+    }
+
+    private SolrInputDocument retrieveDocFromSolrContentStore(String tenant, long dbId) throws IOException
+    {
+        return retrieveDocFromSolrContentStore(tenant, dbId, null);
+    }
+
+    /**
+     * @param cachedDocReaders  prefetched readers, used if the doc has not been replaced since they were read
+     */
+    private SolrInputDocument retrieveDocFromSolrContentStore(String tenant, long dbId,
+                Map<String, ContentReader> cachedDocReaders) throws IOException
+    {
+        String contentUrl = getCachedDocUrl(tenant, dbId);
+        ContentReader reader = cachedDocReaders == null ? null : cachedDocReaders.get(contentUrl);
+        if (reader == null || !this.solrContentStore.isCurrent(reader))
+        {
+            reader = this.solrContentStore.getReader(contentUrl);
+        }
         SolrInputDocument cachedDoc = null;
         if (reader.exists())
         {
@@ -0,0 +1,454 @@
+/*
+ * #%L
+ * Alfresco Solr 4
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.solr.cache;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.search.BitDocSet;
+import org.apache.solr.search.CacheRegenerator;
+import org.apache.solr.search.DocIterator;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.SolrCache;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.search.SortedIntDocSet;
+
+/**
+ * Base {@link CacheRegenerator} for caches of {@link DocSet}s that are worked out document by document, so that the
+ * results for a segment only change when documents in it are deleted.
+ * <p/>
+ * The segments of the searcher being warmed are matched by name with those of the searcher the old cache was warmed
+ * for. The old results for segments that are still there are carried over, less the documents deleted since, and only
+ * the new segments (new documents and merges) are searched. Results are worked out again in full when the old segments
+ * are not known, as for the first searcher of a core, or when {@link #canReuse(SegmentLayout, SegmentLayout)} says so.
+ * <p/>
+ * A regenerator is configured for one cache of a core, and keeps the warming time and the share of documents whose
+ * results were carried over for it, see {@link #getStatistics()}.
+ *
+ * @since 5.2
+ */
+public abstract class AbstractIncrementalCacheRegenerator implements CacheRegenerator
+{
+    /** Warming statistics of the cache */
+    private final WarmingStatistics statistics = new WarmingStatistics();
+
+    /** The name of the cache, once it has been warmed */
+    private volatile String cacheName;
+
+    /** The warming of each cache, which holds the segments of its searcher until the cache is dropped */
+    private final Map<SolrCache, Warming> warmings = Collections.synchronizedMap(new WeakHashMap<SolrCache, Warming>());
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @Override
+    public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache,
+                SolrCache oldCache, Object oldKey, Object oldVal) throws IOException
+    {
+        long start = System.nanoTime();
+        Warming warming = getWarming(newSearcher, newCache, oldCache);
+
+        SegmentSearch segmentSearch = null;
+        if (warming.reusable && (oldVal instanceof DocSet))
+        {
+            segmentSearch = getSegmentSearch(newSearcher, oldKey);
+        }
+
+        if (segmentSearch == null)
+        {
+            recompute(newSearcher, oldKey);
+            warming.recomputed(newSearcher.maxDoc());
+        }
+        else
+        {
+            List<AtomicReaderContext> leaves = newSearcher.getTopReaderContext().leaves();
+            FixedBitSet bits = new FixedBitSet(newSearcher.maxDoc());
+            carryOver((DocSet) oldVal, warming, leaves, bits);
+
+            int reusedDocs = 0;
+            int searchedDocs = 0;
+            for (AtomicReaderContext context : leaves)
+            {
+                if (warming.oldSegmentByLeaf[context.ord] < 0)
+                {
+                    segmentSearch.search(context, bits);
+                    searchedDocs += context.reader().maxDoc();
+                }
+                else
+                {
+                    reusedDocs += context.reader().maxDoc();
+                }
+            }
+
+            newCache.put(oldKey, toDocSet(bits, newSearcher.maxDoc()));
+            warming.regenerated(reusedDocs, searchedDocs);
+        }
+
+        warming.addTime(System.nanoTime() - start);
+        return true;
+    }
+
+    /**
+     * Work out the results for the key in full on the new searcher, putting them in its cache.
+     */
+    protected abstract void recompute(SolrIndexSearcher newSearcher, Object key) throws IOException;
+
+    /**
+     * Get the search of a single segment for the results of the key.
+     *
+     * @return the search, or <tt>null</tt> if the results for the key can not be worked out one segment at a time
+     */
+    protected abstract SegmentSearch getSegmentSearch(SolrIndexSearcher newSearcher, Object key) throws IOException;
+
+    /**
+     * @return the term whose live documents are counted in each segment for {@link #canReuse(SegmentLayout, SegmentLayout)},
+     *         or <tt>null</tt>
+     */
+    protected Term getCountedTerm()
+    {
+        return null;
+    }
+
+    /**
+     * Can results for the old segments be carried over to the new ones? By default they always can.
+     */
+    protected boolean canReuse(SegmentLayout previous, SegmentLayout current)
+    {
+        return true;
+    }
+
+    /**
+     * Set the bits of the documents of the iterator, which are relative to the segment of the context.
+     */
+    protected static void collect(DocIdSetIterator docs, AtomicReaderContext context, FixedBitSet bits) throws IOException
+    {
+        if (docs == null)
+        {
+            return;
+        }
+        for (int doc = docs.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = docs.nextDoc())
+        {
+            bits.set(context.docBase + doc);
+        }
+    }
+
+    private Warming getWarming(SolrIndexSearcher newSearcher, SolrCache<?, ?> newCache, SolrCache<?, ?> oldCache) throws IOException
+    {
+        synchronized (warmings)
+        {
+            Warming warming = warmings.get(newCache);
+            if (warming == null)
+            {
+                Warming previous = warmings.get(oldCache);
+                SegmentLayout layout = SegmentLayout.build(newSearcher, getCountedTerm());
+                warming = new Warming(layout, previous == null ? null : previous.layout);
+                warming.reusable = (warming.previous != null) && (layout != null) && canReuse(warming.previous, layout);
+                warmings.put(newCache, warming);
+                cacheName = newCache.name();
+                statistics.started(warming);
+            }
+            return warming;
+        }
+    }
+
+    /**
+     * Copy the old results for the segments that are still there, at their new position and less deleted documents.
+     */
+    private void carryOver(DocSet oldDocs, Warming warming, List<AtomicReaderContext> leaves, FixedBitSet bits)
+    {
+        int[] oldDocBases = warming.previous.docBases;
+        for (DocIterator it = oldDocs.iterator(); it.hasNext(); /**/)
+        {
+            int doc = it.nextDoc();
+            int oldSegment = ReaderUtil.subIndex(doc, oldDocBases);
+            int leaf = warming.leafByOldSegment[oldSegment];
+            if (leaf >= 0)
+            {
+                AtomicReaderContext context = leaves.get(leaf);
+                int segmentDoc = doc - oldDocBases[oldSegment];
+                Bits liveDocs = context.reader().getLiveDocs();
+                if ((liveDocs == null) || liveDocs.get(segmentDoc))
+                {
+                    bits.set(context.docBase + segmentDoc);
+                }
+            }
+        }
+    }
+
+    /**
+     * Use a sorted int set for small results, as the searcher does.
+     */
+    private static DocSet toDocSet(FixedBitSet bits, int maxDoc) throws IOException
+    {
+        int size = (int) bits.cardinality();
+        if (size > (maxDoc >> 6) + 5)
+        {
+            return new BitDocSet(bits, size);
+        }
+        int[] docs = new int[size];
+        int i = 0;
+        DocIdSetIterator it = bits.iterator();
+        for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc())
+        {
+            docs[i++] = doc;
+        }
+        return new SortedIntDocSet(docs);
+    }
+
+    /**
+     * @return the name of the cache, or <tt>null</tt> if it has not been warmed yet
+     */
+    public String getCacheName()
+    {
+        return cacheName;
+    }
+
+    /**
+     * @return the warming statistics of the cache
+     */
+    public NamedList<Object> getStatistics()
+    {
+        return statistics.toNamedList();
+    }
+
+    /**
+     * Search of a single segment.
+     */
+    protected interface SegmentSearch
+    {
+        /**
+         * Set the bits of the matching live documents of the segment, at their position in the searcher.
+         */
+        void search(AtomicReaderContext context, FixedBitSet bits) throws IOException;
+    }
+
+    /**
+     * The segments of a searcher, in order.
+     */
+    protected static class SegmentLayout
+    {
+        private final String[] names;
+        private final int[] docBases;
+        private final int[] maxDocs;
+        private final int[] counts;
+
+        private SegmentLayout(int size)
+        {
+            names = new String[size];
+            docBases = new int[size];
+            maxDocs = new int[size];
+            counts = new int[size];
+        }
+
+        /**
+         * @return the layout, or <tt>null</tt> if the searcher is not made up of segment readers
+         */
+        static SegmentLayout build(SolrIndexSearcher searcher, Term countedTerm) throws IOException
+        {
+            List<AtomicReaderContext> leaves = searcher.getTopReaderContext().leaves();
+            SegmentLayout layout = new SegmentLayout(leaves.size());
+            for (AtomicReaderContext context : leaves)
+            {
+                AtomicReader reader = context.reader();
+                if (!(reader instanceof SegmentReader))
+                {
+                    return null;
+                }
+                layout.names[context.ord] = ((SegmentReader) reader).getSegmentInfo().info.name;
+                layout.docBases[context.ord] = context.docBase;
+                layout.maxDocs[context.ord] = reader.maxDoc();
+                if (countedTerm != null)
+                {
+                    DocsEnum docs = reader.termDocsEnum(countedTerm);
+                    if (docs != null)
+                    {
+                        while (docs.nextDoc() != DocIdSetIterator.NO_MORE_DOCS)
+                        {
+                            layout.counts[context.ord]++;
+                        }
+                    }
+                }
+            }
+            return layout;
+        }
+
+        public int size()
+        {
+            return names.length;
+        }
+
+        /**
+         * @return the number of live documents of the segment with the counted term
+         */
+        public int getCount(int segment)
+        {
+            return counts[segment];
+        }
+
+        /**
+         * @return the position of the segment of the other layout in this one, or -1 if it is not there
+         */
+        public int indexOf(SegmentLayout other, int segment)
+        {
+            for (int i = 0; i < names.length; i++)
+            {
+                if (names[i].equals(other.names[segment]) && (maxDocs[i] == other.maxDocs[segment]))
+                {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * The warming of one cache.
+     */
+    private static class Warming
+    {
+        final SegmentLayout layout;
+        final SegmentLayout previous;
+        final int[] oldSegmentByLeaf;
+        final int[] leafByOldSegment;
+        boolean reusable;
+
+        volatile long time;
+        volatile long reusedDocs;
+        volatile long computedDocs;
+        private WarmingStatistics statistics;
+
+        Warming(SegmentLayout layout, SegmentLayout previous)
+        {
+            this.layout = layout;
+            this.previous = previous;
+            if ((layout != null) && (previous != null))
+            {
+                oldSegmentByLeaf = new int[layout.size()];
+                for (int i = 0; i < oldSegmentByLeaf.length; i++)
+                {
+                    oldSegmentByLeaf[i] = previous.indexOf(layout, i);
+                }
+                leafByOldSegment = new int[previous.size()];
+                for (int i = 0; i < leafByOldSegment.length; i++)
+                {
+                    leafByOldSegment[i] = layout.indexOf(previous, i);
+                }
+            }
+            else
+            {
+                oldSegmentByLeaf = null;
+                leafByOldSegment = null;
+            }
+        }
+
+        void regenerated(long reused, long searched)
+        {
+            reusedDocs += reused;
+            computedDocs += searched;
+            statistics.regenerated(reused, searched);
+        }
+
+        void recomputed(long docs)
+        {
+            computedDocs += docs;
+            statistics.recomputed(docs);
+        }
+
+        void addTime(long nanos)
+        {
+            time += nanos;
+            statistics.time.addAndGet(nanos);
+        }
+    }
+
+    private static class WarmingStatistics
+    {
+        final AtomicLong warmings = new AtomicLong();
+        final AtomicLong time = new AtomicLong();
+        final AtomicLong regeneratedItems = new AtomicLong();
+        final AtomicLong recomputedItems = new AtomicLong();
+        final AtomicLong reusedDocs = new AtomicLong();
+        final AtomicLong computedDocs = new AtomicLong();
+        volatile Warming last;
+
+        void started(Warming warming)
+        {
+            warming.statistics = this;
+            warmings.incrementAndGet();
+            last = warming;
+        }
+
+        void regenerated(long reused, long searched)
+        {
+            regeneratedItems.incrementAndGet();
+            reusedDocs.addAndGet(reused);
+            computedDocs.addAndGet(searched);
+        }
+
+        void recomputed(long docs)
+        {
+            recomputedItems.incrementAndGet();
+            computedDocs.addAndGet(docs);
+        }
+
+        NamedList<Object> toNamedList()
+        {
+            NamedList<Object> stats = new SimpleOrderedMap<Object>();
+            stats.add("warmups", warmings.get());
+            stats.add("totalWarmupTime", TimeUnit.NANOSECONDS.toMillis(time.get()));
+            stats.add("regeneratedItems", regeneratedItems.get());
+            stats.add("recomputedItems", recomputedItems.get());
+            stats.add("reuseRate", reuseRate(reusedDocs.get(), computedDocs.get()));
+            Warming warming = last;
+            if (warming != null)
+            {
+                stats.add("lastWarmupTime", TimeUnit.NANOSECONDS.toMillis(warming.time));
+                stats.add("lastReuseRate", reuseRate(warming.reusedDocs, warming.computedDocs));
+            }
+            return stats;
+        }
+
+        private static float reuseRate(long reused, long computed)
+        {
+            long total = reused + computed;
+            return total == 0 ? 0f : (float) reused / total;
+        }
+    }
+}
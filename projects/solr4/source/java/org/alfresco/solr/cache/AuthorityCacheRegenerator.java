@@ -27,31 +27,109 @@ package org.alfresco.solr.cache;
 
 import java.io.IOException;
 
+import org.alfresco.repo.search.adaptor.lucene.QueryConstants;
+import org.alfresco.solr.SolrInformationServer;
+import org.alfresco.solr.query.SolrAuthoritySetQuery;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.Query;
-import org.apache.solr.search.CacheRegenerator;
-import org.apache.solr.search.SolrCache;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
 import org.apache.solr.search.SolrIndexSearcher;
 
 /**
  * Cache regeneration for AUTHORITY and AUTHSET queries.
+ * <p/>
+ * Which documents an authority can read depends on the ACL documents, so the results for segments that were already
+ * searched are only carried over when no ACL documents have been added or deleted. Only new segments are then searched,
+ * with the filter of {@link SolrAuthoritySetQuery} itself.
  * 
  * @author Matt Ward
  */
-public class AuthorityCacheRegenerator implements CacheRegenerator
+public class AuthorityCacheRegenerator extends AbstractIncrementalCacheRegenerator
 {
-    @SuppressWarnings({ "rawtypes" })
+    private static final Term ACL_DOCS = new Term(QueryConstants.FIELD_DOC_TYPE, SolrInformationServer.DOC_TYPE_ACL);
+
     @Override
-    public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache,
-                SolrCache oldCache, Object oldKey, Object oldVal) throws IOException
+    protected void recompute(SolrIndexSearcher newSearcher, Object key) throws IOException
     {
-        if (oldKey instanceof Query)
+        if (key instanceof Query)
         {
             // The authority cache contains results keyed by SolrAuthorityQuery
             // and SolrAuthoritySetQuery.
-            Query authQuery = (Query) oldKey;
+            Query authQuery = (Query) key;
             // Execute the query on the new searcher - resulting in cache population as a side-effect.
             newSearcher.getDocSet(authQuery);
         }
+    }
+
+    @Override
+    protected Term getCountedTerm()
+    {
+        return ACL_DOCS;
+    }
+
+    /**
+     * Results can be carried over if new segments have no ACL documents and none have been deleted from old ones.
+     */
+    @Override
+    protected boolean canReuse(SegmentLayout previous, SegmentLayout current)
+    {
+        for (int i = 0; i < current.size(); i++)
+        {
+            int old = previous.indexOf(current, i);
+            if (old < 0 ? current.getCount(i) > 0 : current.getCount(i) != previous.getCount(old))
+            {
+                return false;
+            }
+        }
+        for (int i = 0; i < previous.size(); i++)
+        {
+            if ((previous.getCount(i) > 0) && (current.indexOf(previous, i) < 0))
+            {
+                return false;
+            }
+        }
         return true;
     }
+
+    /**
+     * AUTHSET results are searched with the same per segment filter the query uses. AUTHORITY results are worked out
+     * from whole index reader and owner sets, so they are always recomputed.
+     */
+    @Override
+    protected SegmentSearch getSegmentSearch(SolrIndexSearcher newSearcher, Object key) throws IOException
+    {
+        if (!(key instanceof SolrAuthoritySetQuery))
+        {
+            return null;
+        }
+
+        final Filter readFilter = ((SolrAuthoritySetQuery) key).getReadFilter(newSearcher);
+        return new SegmentSearch()
+        {
+            public void search(AtomicReaderContext context, FixedBitSet bits) throws IOException
+            {
+                Bits liveDocs = context.reader().getLiveDocs();
+                if (readFilter == null)
+                {
+                    // can read all
+                    for (int i = 0; i < context.reader().maxDoc(); i++)
+                    {
+                        if ((liveDocs == null) || liveDocs.get(i))
+                        {
+                            bits.set(context.docBase + i);
+                        }
+                    }
+                }
+                else
+                {
+                    DocIdSet docs = readFilter.getDocIdSet(context, liveDocs);
+                    collect(docs == null ? null : docs.iterator(), context, bits);
+                }
+            }
+        };
+    }
 }
@@ -44,4 +44,5 @@ public class CacheConstants
     public static String ALFRESCO_READER_CACHE = "alfrescoReaderCache";
     public static String ALFRESCO_DENIED_CACHE = "alfrescoDeniedCache";
     public static String ALFRESCO_PATH_CACHE = "alfrescoPathCache";
+    public static String ALFRESCO_ACL_SET_CACHE = "alfrescoAclSetCache";
 }
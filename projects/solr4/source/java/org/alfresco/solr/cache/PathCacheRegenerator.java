@@ -29,30 +29,50 @@ import java.io.IOException;
 
 import org.alfresco.solr.query.SolrCachingPathQuery;
 import org.alfresco.solr.query.SolrPathQuery;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.FixedBitSet;
 import org.apache.solr.search.CacheRegenerator;
-import org.apache.solr.search.SolrCache;
 import org.apache.solr.search.SolrIndexSearcher;
 
 /**
  * {@link CacheRegenerator} for alfrescoPathCache
+ * <p/>
+ * The paths of a node are indexed with the node, so the results for segments that were already searched are carried
+ * over and only new segments are searched.
  * 
  * @author Matt Ward
  */
-public class PathCacheRegenerator implements CacheRegenerator
+public class PathCacheRegenerator extends AbstractIncrementalCacheRegenerator
 {
-    @SuppressWarnings({ "rawtypes" })
     @Override
-    public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache,
-                SolrCache oldCache, Object oldKey, Object oldVal) throws IOException
+    protected void recompute(SolrIndexSearcher newSearcher, Object key) throws IOException
     {
-        if (oldKey instanceof SolrPathQuery)
+        if (key instanceof SolrPathQuery)
         {
-            SolrPathQuery pathQuery = (SolrPathQuery) oldKey;
+            SolrPathQuery pathQuery = (SolrPathQuery) key;
             // Re-execute the path query in a cache-aware context - causing new results to be cached.
             SolrCachingPathQuery cachingPathQuery = new SolrCachingPathQuery(pathQuery);
             newSearcher.getDocSet(cachingPathQuery);
         }
-        return true;
+    }
+
+    @Override
+    protected SegmentSearch getSegmentSearch(SolrIndexSearcher newSearcher, Object key) throws IOException
+    {
+        if (!(key instanceof SolrPathQuery))
+        {
+            return null;
+        }
+
+        final Weight weight = newSearcher.createNormalizedWeight((SolrPathQuery) key);
+        return new SegmentSearch()
+        {
+            public void search(AtomicReaderContext context, FixedBitSet bits) throws IOException
+            {
+                collect(weight.scorer(context, context.reader().getLiveDocs()), context, bits);
+            }
+        };
     }
 
 }
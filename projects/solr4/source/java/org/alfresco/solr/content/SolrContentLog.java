@@ -0,0 +1,916 @@
+/*
+ * #%L
+ * Alfresco Solr 4
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.solr.content;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only store for the documents cached by the {@link SolrContentStore}.
+ * <p/>
+ * Documents are appended as records to segment files instead of being written to a file each, so that storing a
+ * document costs one sequential write and the file system does not have to manage millions of small files. An in-memory
+ * index maps each content URL to the location of its latest record; for the URLs built by the
+ * {@link SolrContentUrlBuilder} from a DB ID the index is a primitive map per tenant. Deletes append a tombstone.
+ * <p/>
+ * Each record is written as <tt>int bodyLength, byte type, short urlLength, url, data, int crc32</tt>. On opening the
+ * segments are replayed in order to rebuild the index and a torn record at the end of a segment is truncated.
+ * <p/>
+ * Segments are rolled once they reach the maximum size. A background thread compacts the older segments once most of
+ * their records have been overwritten or deleted, copying the live records to the active segment and deleting the
+ * segment file.
+ *
+ * @since 5.2
+ */
+class SolrContentLog
+{
+    protected final static Logger log = LoggerFactory.getLogger(SolrContentLog.class);
+
+    static final long DEFAULT_MAX_SEGMENT_SIZE = 64L * 1024L * 1024L;
+    static final float DEFAULT_COMPACTION_THRESHOLD = 0.5f;
+    static final long COMPACTION_INTERVAL_SECONDS = 60L;
+
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_DELETE = 2;
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final byte[] NO_DATA = new byte[0];
+
+    private static final Map<String, SolrContentLog> openLogs = new HashMap<String, SolrContentLog>();
+
+    private final File dir;
+    private final long maxSegmentSize;
+    private final float compactionThreshold;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+    private final LocationIndex index = new LocationIndex();
+    private Segment active;
+    private ScheduledExecutorService compactor;
+
+    /**
+     * Get the log kept in the given directory, opening it on first use. The log is shared by all the stores using the
+     * directory.
+     */
+    static SolrContentLog open(File dir)
+    {
+        String key = dir.getAbsolutePath();
+        synchronized (openLogs)
+        {
+            SolrContentLog contentLog = openLogs.get(key);
+            if (contentLog == null)
+            {
+                try
+                {
+                    contentLog = new SolrContentLog(dir, DEFAULT_MAX_SEGMENT_SIZE, DEFAULT_COMPACTION_THRESHOLD);
+                }
+                catch (IOException e)
+                {
+                    throw new RuntimeException("Failed to open the content log: " + dir, e);
+                }
+                contentLog.startCompaction(COMPACTION_INTERVAL_SECONDS);
+                openLogs.put(key, contentLog);
+            }
+            return contentLog;
+        }
+    }
+
+    SolrContentLog(File dir, long maxSegmentSize, float compactionThreshold) throws IOException
+    {
+        if (maxSegmentSize > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("Segments are addressed with an int offset: " + maxSegmentSize);
+        }
+        this.dir = dir;
+        this.maxSegmentSize = maxSegmentSize;
+        this.compactionThreshold = compactionThreshold;
+
+        if (!dir.isDirectory() && !dir.mkdirs())
+        {
+            throw new IOException("Failed to create directory for content log: " + dir);
+        }
+        String[] names = dir.list(new FilenameFilter()
+        {
+            @Override
+            public boolean accept(File dir, String name)
+            {
+                return name.endsWith(SEGMENT_SUFFIX) && name.substring(0, name.length() - SEGMENT_SUFFIX.length()).matches("\\d+");
+            }
+        });
+        for (String name : names)
+        {
+            int id = Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            segments.put(id, new Segment(id, new File(dir, name)));
+        }
+        // Later records win, so the segments are replayed oldest first
+        for (Segment segment : segments.values())
+        {
+            replay(segment);
+        }
+        if (segments.isEmpty())
+        {
+            Segment segment = newSegment(1);
+            segments.put(segment.id, segment);
+        }
+        active = segments.lastEntry().getValue();
+        if (log.isDebugEnabled())
+        {
+            log.debug("Opened content log " + dir + " with " + segments.size() + " segments and " + index.size() + " documents");
+        }
+    }
+
+    /**
+     * Location of a document, the segment in the upper and the offset in the lower 32 bits
+     */
+    private static long location(int segmentId, long offset)
+    {
+        return ((long) segmentId << 32) | offset;
+    }
+
+    private static int segmentId(long location)
+    {
+        return (int) (location >>> 32);
+    }
+
+    private static long offset(long location)
+    {
+        return location & 0xFFFFFFFFL;
+    }
+
+    private Segment newSegment(int id) throws IOException
+    {
+        return new Segment(id, new File(dir, String.format("%010d", id) + SEGMENT_SUFFIX));
+    }
+
+    private void replay(Segment segment) throws IOException
+    {
+        long offset = 0;
+        long size = segment.channel.size();
+        while (offset < size)
+        {
+            Record record = readRecord(segment, offset, size);
+            if (record == null)
+            {
+                log.warn("Truncating content log segment " + segment.file + " after an incomplete record at " + offset);
+                segment.channel.truncate(offset);
+                size = offset;
+                break;
+            }
+            if (record.type == TYPE_PUT)
+            {
+                segment.liveBytes += record.length;
+                replaced(index.put(record.url, location(segment.id, offset)));
+            }
+            else
+            {
+                replaced(index.remove(record.url));
+            }
+            offset += record.length;
+        }
+        segment.size = size;
+    }
+
+    /**
+     * Account for a record that is no longer live
+     */
+    private void replaced(long location) throws IOException
+    {
+        if (location < 0)
+        {
+            return;
+        }
+        Segment segment = segments.get(segmentId(location));
+        ByteBuffer header = ByteBuffer.allocate(4);
+        readFully(segment.channel, header, offset(location));
+        segment.liveBytes -= header.getInt(0) + 8;
+    }
+
+    /**
+     * @return the record at the offset, or <tt>null</tt> if it is incomplete or corrupt
+     */
+    private static Record readRecord(Segment segment, long offset, long size) throws IOException
+    {
+        if (offset + 4 > size)
+        {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(4);
+        readFully(segment.channel, header, offset);
+        int bodyLength = header.getInt(0);
+        if (bodyLength < 3 || offset + bodyLength + 8 > size)
+        {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(bodyLength + 4);
+        readFully(segment.channel, buffer, offset + 4);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, bodyLength);
+        if ((int) crc.getValue() != buffer.getInt(bodyLength))
+        {
+            return null;
+        }
+        return new Record(buffer.array(), bodyLength);
+    }
+
+    private static byte[] encode(byte type, String url, byte[] data)
+    {
+        byte[] urlBytes = url.getBytes(StandardCharsets.UTF_8);
+        int bodyLength = 3 + urlBytes.length + data.length;
+        ByteBuffer buffer = ByteBuffer.allocate(bodyLength + 8);
+        buffer.putInt(bodyLength);
+        buffer.put(type);
+        buffer.putShort((short) urlBytes.length);
+        buffer.put(urlBytes);
+        buffer.put(data);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 4, bodyLength);
+        buffer.putInt((int) crc.getValue());
+        return buffer.array();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+            {
+                throw new IOException("Unexpected end of content log segment");
+            }
+        }
+    }
+
+    /**
+     * Append a record to the active segment, rolling it if it is full. Called with the write lock held.
+     */
+    private long append(byte[] record) throws IOException
+    {
+        if (active.size > 0 && active.size + record.length > maxSegmentSize)
+        {
+            active.channel.force(false);
+            Segment segment = newSegment(active.id + 1);
+            segments.put(segment.id, segment);
+            active = segment;
+        }
+        long offset = active.size;
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        while (buffer.hasRemaining())
+        {
+            active.channel.write(buffer, offset + buffer.position());
+        }
+        active.size += record.length;
+        return location(active.id, offset);
+    }
+
+    /**
+     * Store the document for the URL, replacing any previous one
+     *
+     * @return the location of the document
+     */
+    long put(String url, byte[] data) throws IOException
+    {
+        byte[] record = encode(TYPE_PUT, url, data);
+        lock.writeLock().lock();
+        try
+        {
+            long location = append(record);
+            active.liveBytes += record.length;
+            replaced(index.put(url, location));
+            return location;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return <tt>true</tt> if there was a document to delete
+     */
+    boolean delete(String url) throws IOException
+    {
+        lock.writeLock().lock();
+        try
+        {
+            long location = index.remove(url);
+            if (location < 0)
+            {
+                return false;
+            }
+            replaced(location);
+            append(encode(TYPE_DELETE, url, NO_DATA));
+            return true;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the location of the document for the URL or <tt>-1</tt> if there is none
+     */
+    long getLocation(String url)
+    {
+        lock.readLock().lock();
+        try
+        {
+            return index.get(url);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the document for the URL or <tt>null</tt> if there is none
+     */
+    Entry get(String url) throws IOException
+    {
+        lock.readLock().lock();
+        try
+        {
+            long location = index.get(url);
+            return location < 0 ? null : read(location);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Read the documents for a batch of URLs. The records are read in the order they are laid out on disk rather than in
+     * the order asked for.
+     *
+     * @return the documents by URL, without the URLs that have none
+     */
+    Map<String, Entry> get(Collection<String> urls) throws IOException
+    {
+        Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+        lock.readLock().lock();
+        try
+        {
+            long[] locations = new long[urls.size()];
+            int count = 0;
+            for (String url : urls)
+            {
+                long location = index.get(url);
+                if (location >= 0)
+                {
+                    locations[count++] = location;
+                }
+            }
+            Arrays.sort(locations, 0, count);
+            for (int i = 0; i < count; i++)
+            {
+                Entry entry = read(locations[i]);
+                entries.put(entry.url, entry);
+            }
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+        return entries;
+    }
+
+    private Entry read(long location) throws IOException
+    {
+        Segment segment = segments.get(segmentId(location));
+        Record record = readRecord(segment, offset(location), segment.size);
+        if (record == null || record.type != TYPE_PUT)
+        {
+            throw new IOException("Corrupt record in content log segment " + segment.file + " at " + offset(location));
+        }
+        return new Entry(record.url, location, record.getData());
+    }
+
+    /**
+     * @return the number of documents in the log
+     */
+    int size()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return index.size();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of segment files
+     */
+    int getSegmentCount()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return segments.size();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void startCompaction(long intervalSeconds)
+    {
+        compactor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "SolrContentLog-compaction");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        compactor.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    compact();
+                }
+                catch (Throwable e)
+                {
+                    log.error("Failed to compact content log " + dir, e);
+                }
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Compact the segments, other than the active one, whose live records have fallen below the threshold.
+     * Only one compaction may run at a time.
+     */
+    synchronized void compact() throws IOException
+    {
+        List<Segment> candidates = new ArrayList<Segment>();
+        lock.readLock().lock();
+        try
+        {
+            for (Segment segment : segments.values())
+            {
+                if (segment != active && segment.liveBytes < segment.size * compactionThreshold)
+                {
+                    candidates.add(segment);
+                }
+            }
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+        for (Segment segment : candidates)
+        {
+            compact(segment);
+        }
+    }
+
+    private void compact(Segment segment) throws IOException
+    {
+        long offset = 0;
+        int copied = 0;
+        // Segments other than the active one are no longer written to, so they can be read without the lock
+        while (offset < segment.size)
+        {
+            Record record = readRecord(segment, offset, segment.size);
+            if (record == null)
+            {
+                throw new IOException("Corrupt record in content log segment " + segment.file + " at " + offset);
+            }
+            long location = location(segment.id, offset);
+            lock.writeLock().lock();
+            try
+            {
+                long current = index.get(record.url);
+                if (record.type == TYPE_PUT)
+                {
+                    if (current == location)
+                    {
+                        long newLocation = append(record.bytes);
+                        segment.liveBytes -= record.length;
+                        active.liveBytes += record.length;
+                        index.put(record.url, newLocation);
+                        copied++;
+                    }
+                }
+                else if (current < 0 && segments.firstKey() != segment.id)
+                {
+                    // The tombstone still hides a document in an older segment
+                    append(record.bytes);
+                    copied++;
+                }
+            }
+            finally
+            {
+                lock.writeLock().unlock();
+            }
+            offset += record.length;
+        }
+        lock.writeLock().lock();
+        try
+        {
+            // The copies must be on disk before the originals go
+            active.channel.force(false);
+            segments.remove(segment.id);
+            segment.channel.close();
+            if (!segment.file.delete())
+            {
+                log.warn("Failed to delete compacted content log segment " + segment.file);
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+        if (log.isDebugEnabled())
+        {
+            log.debug("Compacted content log segment " + segment.file + ", copied " + copied + " records");
+        }
+    }
+
+    void close() throws IOException
+    {
+        synchronized (openLogs)
+        {
+            if (openLogs.get(dir.getAbsolutePath()) == this)
+            {
+                openLogs.remove(dir.getAbsolutePath());
+            }
+        }
+        if (compactor != null)
+        {
+            compactor.shutdownNow();
+        }
+        lock.writeLock().lock();
+        try
+        {
+            active.channel.force(false);
+            for (Segment segment : segments.values())
+            {
+                segment.channel.close();
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * A document read from the log
+     */
+    static class Entry
+    {
+        final String url;
+        final long location;
+        final byte[] data;
+
+        Entry(String url, long location, byte[] data)
+        {
+            this.url = url;
+            this.location = location;
+            this.data = data;
+        }
+    }
+
+    private static class Segment
+    {
+        final int id;
+        final File file;
+        final FileChannel channel;
+        long size;
+        long liveBytes;
+
+        @SuppressWarnings("resource")
+        Segment(int id, File file) throws IOException
+        {
+            this.id = id;
+            this.file = file;
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+        }
+    }
+
+    private static class Record
+    {
+        final byte[] bytes;
+        final byte type;
+        final String url;
+        final int dataOffset;
+        final int length;
+
+        /**
+         * @param body          the record body followed by its checksum
+         * @param bodyLength    the length of the body
+         */
+        Record(byte[] body, int bodyLength)
+        {
+            ByteBuffer buffer = ByteBuffer.wrap(body);
+            this.type = buffer.get();
+            int urlLength = buffer.getShort() & 0xFFFF;
+            this.url = new String(body, 3, urlLength, StandardCharsets.UTF_8);
+            this.dataOffset = 3 + urlLength;
+            this.length = bodyLength + 8;
+            // Kept as written so that compaction can copy the record as it is
+            this.bytes = ByteBuffer.allocate(length).putInt(bodyLength).put(body).array();
+        }
+
+        byte[] getData()
+        {
+            return Arrays.copyOfRange(bytes, 4 + dataOffset, length - 4);
+        }
+    }
+
+    /**
+     * Maps content URLs to locations. The URLs built from a DB ID are kept as primitive longs per tenant.
+     */
+    private static class LocationIndex
+    {
+        private final Map<String, LongLongMap> dbIds = new HashMap<String, LongLongMap>();
+        private final Map<String, Long> others = new HashMap<String, Long>();
+        private int size;
+
+        long get(String url)
+        {
+            int split = splitDbId(url);
+            long dbId = split < 0 ? -1 : parseDbId(url, split + 4);
+            if (dbId < 0)
+            {
+                Long location = others.get(url);
+                return location == null ? -1 : location;
+            }
+            LongLongMap locations = dbIds.get(url.substring(0, split));
+            return locations == null ? -1 : locations.get(dbId);
+        }
+
+        long put(String url, long location)
+        {
+            int split = splitDbId(url);
+            long dbId = split < 0 ? -1 : parseDbId(url, split + 4);
+            long previous;
+            if (dbId < 0)
+            {
+                Long old = others.put(url, location);
+                previous = old == null ? -1 : old;
+            }
+            else
+            {
+                String tenant = url.substring(0, split);
+                LongLongMap locations = dbIds.get(tenant);
+                if (locations == null)
+                {
+                    locations = new LongLongMap();
+                    dbIds.put(tenant, locations);
+                }
+                previous = locations.put(dbId, location);
+            }
+            if (previous < 0)
+            {
+                size++;
+            }
+            return previous;
+        }
+
+        long remove(String url)
+        {
+            int split = splitDbId(url);
+            long dbId = split < 0 ? -1 : parseDbId(url, split + 4);
+            long previous;
+            if (dbId < 0)
+            {
+                Long old = others.remove(url);
+                previous = old == null ? -1 : old;
+            }
+            else
+            {
+                LongLongMap locations = dbIds.get(url.substring(0, split));
+                previous = locations == null ? -1 : locations.remove(dbId);
+            }
+            if (previous >= 0)
+            {
+                size--;
+            }
+            return previous;
+        }
+
+        int size()
+        {
+            return size;
+        }
+
+        /**
+         * @return the end of the tenant if the URL continues with <tt>/db/</tt>, otherwise <tt>-1</tt>
+         */
+        private static int splitDbId(String url)
+        {
+            if (!url.startsWith(SolrContentUrlBuilder.SOLR_PROTOCOL_PREFIX))
+            {
+                return -1;
+            }
+            int split = url.indexOf('/', SolrContentUrlBuilder.SOLR_PROTOCOL_PREFIX.length());
+            return (split > 0 && url.startsWith("/db/", split)) ? split : -1;
+        }
+
+        /**
+         * Parse the DB ID written as groups of four digits separated by slashes, as done by the
+         * {@link SolrContentUrlBuilder}.
+         *
+         * @return the DB ID or <tt>-1</tt> if the rest of the URL is not exactly in that form
+         */
+        private static long parseDbId(String url, int start)
+        {
+            int end = url.length() - SolrContentUrlBuilder.FILE_EXTENSION.length();
+            if (end <= start || end - start > 22 || !url.endsWith(SolrContentUrlBuilder.FILE_EXTENSION))
+            {
+                return -1;
+            }
+            if (url.charAt(start) == '0' && end - start > 1)
+            {
+                return -1;
+            }
+            long dbId = 0;
+            for (int i = start; i < end; i++)
+            {
+                char c = url.charAt(i);
+                if ((i - start) % 5 == 4)
+                {
+                    if (c != '/' || i == end - 1)
+                    {
+                        return -1;
+                    }
+                }
+                else if (c >= '0' && c <= '9')
+                {
+                    dbId = dbId * 10 + (c - '0');
+                }
+                else
+                {
+                    return -1;
+                }
+            }
+            return dbId;
+        }
+    }
+
+    /**
+     * Open addressing map of non-negative keys to non-negative values
+     */
+    private static class LongLongMap
+    {
+        private static final long EMPTY = -1L;
+
+        private long[] keys;
+        private long[] values;
+        private int size;
+
+        LongLongMap()
+        {
+            allocate(16);
+        }
+
+        private void allocate(int capacity)
+        {
+            keys = new long[capacity];
+            values = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+        }
+
+        private int slot(long key)
+        {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & (keys.length - 1);
+        }
+
+        long get(long key)
+        {
+            int mask = keys.length - 1;
+            for (int i = slot(key); ; i = (i + 1) & mask)
+            {
+                if (keys[i] == key)
+                {
+                    return values[i];
+                }
+                else if (keys[i] == EMPTY)
+                {
+                    return -1;
+                }
+            }
+        }
+
+        long put(long key, long value)
+        {
+            if ((size + 1) * 4L > keys.length * 3L)
+            {
+                long[] oldKeys = keys;
+                long[] oldValues = values;
+                allocate(keys.length * 2);
+                size = 0;
+                for (int i = 0; i < oldKeys.length; i++)
+                {
+                    if (oldKeys[i] != EMPTY)
+                    {
+                        put(oldKeys[i], oldValues[i]);
+                    }
+                }
+            }
+            int mask = keys.length - 1;
+            for (int i = slot(key); ; i = (i + 1) & mask)
+            {
+                if (keys[i] == key)
+                {
+                    long previous = values[i];
+                    values[i] = value;
+                    return previous;
+                }
+                else if (keys[i] == EMPTY)
+                {
+                    keys[i] = key;
+                    values[i] = value;
+                    size++;
+                    return -1;
+                }
+            }
+        }
+
+        long remove(long key)
+        {
+            int mask = keys.length - 1;
+            int gap = slot(key);
+            while (keys[gap] != key)
+            {
+                if (keys[gap] == EMPTY)
+                {
+                    return -1;
+                }
+                gap = (gap + 1) & mask;
+            }
+            long previous = values[gap];
+            // Shift back the entries that would otherwise no longer be found past the gap
+            for (int i = (gap + 1) & mask; keys[i] != EMPTY; i = (i + 1) & mask)
+            {
+                int home = slot(keys[i]);
+                if (((i - home) & mask) >= ((i - gap) & mask))
+                {
+                    keys[gap] = keys[i];
+                    values[gap] = values[i];
+                    gap = i;
+                }
+            }
+            keys[gap] = EMPTY;
+            size--;
+            return previous;
+        }
+    }
+}
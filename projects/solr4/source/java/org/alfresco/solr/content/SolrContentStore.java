@@ -26,9 +26,14 @@
 package org.alfresco.solr.content;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.alfresco.repo.content.ContentContext;
 import org.alfresco.repo.content.ContentStore;
+import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.ContentWriter;
 import org.apache.commons.io.FileUtils;
@@ -44,6 +49,10 @@ import org.slf4j.LoggerFactory;
  *   <li>Other metadata</li>
  * </ul>
  * The URL, if not known, can be reliably regenerated using the {@link SolrContentUrlBuilder}.
+ * <p/>
+ * With <tt>solr.solr.content.log=true</tt> the documents are appended to a {@link SolrContentLog} kept in the
+ * <tt>.segments</tt> directory of the root instead of being written to a file each. Documents already written to files
+ * can still be read and deleted.
  * 
  * @author Derek Hulley
  * @since 5.0
@@ -52,9 +61,22 @@ public class SolrContentStore implements ContentStore
 {
     protected final static Logger log = LoggerFactory.getLogger(SolrContentStore.class);
     
+    /** Name of the directory holding the log, which cannot clash with a tenant */
+    private static final String LOG_DIRECTORY = ".segments";
+    
     private final String root;
+    private final SolrContentLog contentLog;
     
     public SolrContentStore(String rootStr)
+    {
+        this(rootStr, Boolean.parseBoolean(System.getProperty("solr.solr.content.log", "false")));
+    }
+    
+    /**
+     * @param rootStr               the root directory of the store
+     * @param logStructured         <tt>true</tt> to append the documents to a {@link SolrContentLog}
+     */
+    public SolrContentStore(String rootStr, boolean logStructured)
     {
         File rootFile = new File(rootStr);
         try
@@ -66,6 +88,15 @@ public class SolrContentStore implements ContentStore
             throw new RuntimeException("Failed to create directory for content store: " + rootFile, e);
         }
         this.root = rootFile.getAbsolutePath();
+        this.contentLog = logStructured ? SolrContentLog.open(new File(rootFile, LOG_DIRECTORY)) : null;
+    }
+
+    /**
+     * @return                  <tt>true</tt> if the documents are appended to a log
+     */
+    public boolean isLogStructured()
+    {
+        return contentLog != null;
     }
 
     @Override
@@ -119,6 +150,10 @@ public class SolrContentStore implements ContentStore
     @Override
     public boolean exists(String contentUrl)
     {
+        if (contentLog != null && contentLog.getLocation(contentUrl) >= 0)
+        {
+            return true;
+        }
         File file = getFileFromUrl(contentUrl);
         return file.exists();
     }
@@ -126,10 +161,72 @@ public class SolrContentStore implements ContentStore
     @Override
     public ContentReader getReader(String contentUrl)
     {
+        if (contentLog != null)
+        {
+            try
+            {
+                SolrContentLog.Entry entry = contentLog.get(contentUrl);
+                if (entry != null)
+                {
+                    return new SolrLogContentReader(contentUrl, entry.location, entry.data);
+                }
+            }
+            catch (IOException e)
+            {
+                throw new ContentIOException("Failed to read from content log: " + contentUrl, e);
+            }
+        }
         File file = getFileFromUrl(contentUrl);
         return new SolrFileContentReader(file, contentUrl);
     }
 
+    /**
+     * Get the readers for a batch of URLs. When the documents are kept in a log they are read in one pass, in the order
+     * they are laid out on disk, and the readers hold the documents as they were when read; use {@link #isCurrent}
+     * to check that a document has not been replaced since.
+     * 
+     * @return                  the readers by URL, with a reader for every URL
+     */
+    public Map<String, ContentReader> getReaders(Collection<String> contentUrls)
+    {
+        Map<String, ContentReader> readers = new HashMap<String, ContentReader>(contentUrls.size() * 2);
+        if (contentLog != null)
+        {
+            try
+            {
+                for (SolrContentLog.Entry entry : contentLog.get(contentUrls).values())
+                {
+                    readers.put(entry.url, new SolrLogContentReader(entry.url, entry.location, entry.data));
+                }
+            }
+            catch (IOException e)
+            {
+                throw new ContentIOException("Failed to read from content log: " + contentUrls, e);
+            }
+        }
+        for (String contentUrl : contentUrls)
+        {
+            if (!readers.containsKey(contentUrl))
+            {
+                readers.put(contentUrl, new SolrFileContentReader(getFileFromUrl(contentUrl), contentUrl));
+            }
+        }
+        return readers;
+    }
+
+    /**
+     * @return                  <tt>true</tt> if the reader still gives the current document for its URL
+     */
+    public boolean isCurrent(ContentReader reader)
+    {
+        if (reader instanceof SolrLogContentReader)
+        {
+            return contentLog.getLocation(reader.getContentUrl()) == ((SolrLogContentReader) reader).getLocation();
+        }
+        // Files are only read when the stream is opened
+        return !(contentLog != null && contentLog.getLocation(reader.getContentUrl()) >= 0);
+    }
+
     @Override
     public ContentWriter getWriter(ContentContext context)
     {
@@ -139,6 +236,10 @@ public class SolrContentStore implements ContentStore
             throw new IllegalArgumentException("Retrieve a writer with a URL-providing ContentContext.");
         }
         String url = context.getContentUrl();
+        if (contentLog != null)
+        {
+            return new SolrLogContentWriter(contentLog, url);
+        }
         File file = getFileFromUrl(url);
         SolrFileContentWriter writer = new SolrFileContentWriter(file, url);
         // Done
@@ -148,7 +249,19 @@ public class SolrContentStore implements ContentStore
     @Override
     public boolean delete(String contentUrl)
     {
+        boolean deleted = false;
+        if (contentLog != null)
+        {
+            try
+            {
+                deleted = contentLog.delete(contentUrl);
+            }
+            catch (IOException e)
+            {
+                throw new ContentIOException("Failed to delete from content log: " + contentUrl, e);
+            }
+        }
         File file = getFileFromUrl(contentUrl);
-        return file.delete();
+        return file.delete() || deleted;
     }
 }
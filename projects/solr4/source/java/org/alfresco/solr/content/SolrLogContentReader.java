@@ -0,0 +1,238 @@
+/*
+ * #%L
+ * Alfresco Solr 4
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.solr.content;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentStreamListener;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Bare-bones implementation of the reader for documents read from the {@link SolrContentLog}
+ *
+ * @since 5.2
+ */
+public class SolrLogContentReader implements ContentReader
+{
+    private final String contentUrl;
+    private final long location;
+    private final byte[] data;
+
+    /**
+     * @param contentUrl    the content URL for information purposes
+     * @param location      the location of the document in the log when it was read
+     * @param data          the document
+     */
+    protected SolrLogContentReader(String contentUrl, long location, byte[] data)
+    {
+        this.contentUrl = contentUrl;
+        this.location = location;
+        this.data = data;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SolrLogContentReader [contentUrl=" + contentUrl + ", location=" + location + "]";
+    }
+
+    /**
+     * @return the location of the document in the log when it was read
+     */
+    long getLocation()
+    {
+        return location;
+    }
+
+    @Override
+    public long getSize()
+    {
+        return data.length;
+    }
+
+    @Override
+    public final ContentReader getReader() throws ContentIOException
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public synchronized final boolean isClosed()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public synchronized boolean isChannelOpen()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public FileChannel getFileChannel() throws ContentIOException
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean exists()
+    {
+        return true;
+    }
+
+    @Override
+    public ReadableByteChannel getReadableChannel() throws ContentIOException
+    {
+        throw new UnsupportedOperationException("Auto-created method not implemented.");
+    }
+
+    @Override
+    public InputStream getContentInputStream() throws ContentIOException
+    {
+        return new ByteArrayInputStream(data);
+    }
+
+    @Override
+    public void getContent(OutputStream os) throws ContentIOException
+    {
+        try
+        {
+            os.write(data);
+            os.close();
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to copy content to stream: " + this, e);
+        }
+    }
+
+    @Override
+    public void getContent(File targetFile) throws ContentIOException
+    {
+        if (targetFile.exists())
+        {
+            throw new IllegalStateException("The target file already exists: " + targetFile);
+        }
+        try
+        {
+            FileUtils.writeByteArrayToFile(targetFile, data);
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to copy content onto file: " + targetFile, e);
+        }
+    }
+
+    @Override
+    public String getContentString(int length) throws ContentIOException
+    {
+        String str = getContentString();
+        if (str.length() > length)
+        {
+            return str.substring(0, length - 1);
+        }
+        else
+        {
+            return str;
+        }
+    }
+
+    @Override
+    public final String getContentString() throws ContentIOException
+    {
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public long getLastModified()
+    {
+        throw new UnsupportedOperationException("Auto-created method not implemented.");
+    }
+
+    @Override
+    public void addListener(ContentStreamListener listener)
+    {
+        throw new UnsupportedOperationException("Auto-created method not implemented.");
+    }
+
+    @Override
+    public ContentData getContentData()
+    {
+        throw new UnsupportedOperationException("Auto-created method not implemented.");
+    }
+
+    @Override
+    public String getContentUrl()
+    {
+        return contentUrl;
+    }
+
+    @Override
+    public String getMimetype()
+    {
+        throw new UnsupportedOperationException("Auto-created method not implemented.");
+    }
+
+    @Override
+    public void setMimetype(String mimetype)
+    {
+        throw new UnsupportedOperationException("Auto-created method not implemented.");
+    }
+
+    @Override
+    public String getEncoding()
+    {
+        throw new UnsupportedOperationException("Auto-created method not implemented.");
+    }
+
+    @Override
+    public void setEncoding(String encoding)
+    {
+        throw new UnsupportedOperationException("Auto-created method not implemented.");
+    }
+
+    @Override
+    public Locale getLocale()
+    {
+        throw new UnsupportedOperationException("Auto-created method not implemented.");
+    }
+
+    @Override
+    public void setLocale(Locale locale)
+    {
+        throw new UnsupportedOperationException("Auto-created method not implemented.");
+    }
+}
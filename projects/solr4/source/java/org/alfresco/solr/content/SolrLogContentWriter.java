@@ -0,0 +1,277 @@
+/*
+ * #%L
+ * Alfresco Solr 4
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.solr.content;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentStreamListener;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Bare-bones implementation of the writer for documents stored in the {@link SolrContentLog}.
+ * The content is buffered and appended to the log in one record when the stream is closed.
+ *
+ * @since 5.2
+ */
+public class SolrLogContentWriter implements ContentWriter
+{
+    private final SolrContentLog contentLog;
+    private final String contentUrl;
+    private boolean written;
+    private long size;
+
+    /**
+     * @param contentLog    the log to append to
+     * @param contentUrl    the content URL to store the content under
+     */
+    protected SolrLogContentWriter(SolrContentLog contentLog, String contentUrl)
+    {
+        this.contentLog = contentLog;
+        this.contentUrl = contentUrl;
+        this.written = false;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SolrLogContentWriter [contentUrl=" + contentUrl + "]";
+    }
+
+    @Override
+    public long getSize()
+    {
+        return size;
+    }
+
+    @Override
+    public final ContentReader getReader() throws ContentIOException
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public synchronized final boolean isClosed()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public synchronized boolean isChannelOpen()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public synchronized final WritableByteChannel getWritableChannel() throws ContentIOException
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public FileChannel getFileChannel(boolean truncate) throws ContentIOException
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public synchronized OutputStream getContentOutputStream() throws ContentIOException
+    {
+        if (written == true)
+        {
+            throw new IllegalStateException("The writer has already been used: " + contentUrl);
+        }
+        written = true;
+        return new ByteArrayOutputStream()
+        {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException
+            {
+                if (!closed)
+                {
+                    closed = true;
+                    put(toByteArray());
+                }
+            }
+        };
+    }
+
+    private void put(byte[] data) throws IOException
+    {
+        contentLog.put(contentUrl, data);
+        size = data.length;
+    }
+
+    @Override
+    public void putContent(ContentReader reader) throws ContentIOException
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public synchronized void putContent(InputStream is) throws ContentIOException
+    {
+        if (written == true)
+        {
+            throw new IllegalStateException("The writer has already been used: " + contentUrl);
+        }
+        try
+        {
+            put(IOUtils.toByteArray(is));
+            written = true;
+        }
+        catch (Throwable e)
+        {
+            throw new ContentIOException("Failed to copy stream into content log: " + contentUrl, e);
+        }
+        finally
+        {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    @Override
+    public synchronized void putContent(File sourceFile) throws ContentIOException
+    {
+        if (written == true)
+        {
+            throw new IllegalStateException("The writer has already been used: " + contentUrl);
+        }
+        else if (!sourceFile.exists())
+        {
+            throw new IllegalStateException("The source file does not exist: " + sourceFile);
+        }
+        try
+        {
+            put(FileUtils.readFileToByteArray(sourceFile));
+            written = true;
+        }
+        catch (Throwable e)
+        {
+            throw new ContentIOException("Failed to copy file into content log: " + sourceFile, e);
+        }
+    }
+
+    @Override
+    public synchronized void putContent(String content) throws ContentIOException
+    {
+        if (written == true)
+        {
+            throw new IllegalStateException("The writer has already been used: " + contentUrl);
+        }
+        try
+        {
+            put(content.getBytes(StandardCharsets.UTF_8));
+            written = true;
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to copy content from string: \n" +
+                    "   writer: " + this +
+                    "   content length: " + content.length(),
+                    e);
+        }
+    }
+
+    @Override
+    public void guessEncoding()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void guessMimetype(String filename)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void addListener(ContentStreamListener listener)
+    {
+        throw new UnsupportedOperationException("Auto-created method not implemented.");
+    }
+
+    @Override
+    public ContentData getContentData()
+    {
+        throw new UnsupportedOperationException("Auto-created method not implemented.");
+    }
+
+    @Override
+    public String getContentUrl()
+    {
+        return contentUrl;
+    }
+
+    @Override
+    public String getMimetype()
+    {
+        throw new UnsupportedOperationException("Auto-created method not implemented.");
+    }
+
+    @Override
+    public void setMimetype(String mimetype)
+    {
+        throw new UnsupportedOperationException("Auto-created method not implemented.");
+    }
+
+    @Override
+    public String getEncoding()
+    {
+        throw new UnsupportedOperationException("Auto-created method not implemented.");
+    }
+
+    @Override
+    public void setEncoding(String encoding)
+    {
+        throw new UnsupportedOperationException("Auto-created method not implemented.");
+    }
+
+    @Override
+    public Locale getLocale()
+    {
+        throw new UnsupportedOperationException("Auto-created method not implemented.");
+    }
+
+    @Override
+    public void setLocale(Locale locale)
+    {
+        throw new UnsupportedOperationException("Auto-created method not implemented.");
+    }
+}
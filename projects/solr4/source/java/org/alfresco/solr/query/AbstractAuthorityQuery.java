@@ -62,6 +62,11 @@ public abstract class AbstractAuthorityQuery extends Query
         return toString();
     }
     
+    public String getAuthority()
+    {
+        return authority;
+    }
+    
     @Override
     public int hashCode()
     {
@@ -27,9 +27,11 @@ package org.alfresco.solr.query;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.alfresco.repo.search.adaptor.lucene.QueryConstants;
+import org.alfresco.solr.cache.CacheConstants;
 import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.NumericDocValues;
@@ -76,6 +78,11 @@ public abstract class AbstractAuthoritySetQuery extends Query
         return toString();
     }
     
+    public String getAuthorities()
+    {
+        return authorities;
+    }
+    
     @Override
     public int hashCode()
     {
@@ -105,7 +112,28 @@ public abstract class AbstractAuthoritySetQuery extends Query
         return true;
     }
 
-    protected HybridBitSet getACLSet(String[] auths, String field, SolrIndexSearcher searcher) throws IOException
+    /**
+     * Get the ids of the ACLs in which any of the authorities is found in the field, as cached by the searcher.
+     */
+    public static RoaringBitSet getACLSet(String[] auths, String field, SolrIndexSearcher searcher) throws IOException
+    {
+        // The same authorities in any order have the same ACLs
+        String[] sortedAuths = auths.clone();
+        Arrays.sort(sortedAuths);
+        List<String> key = new ArrayList<String>(sortedAuths.length + 1);
+        key.add(field);
+        key.addAll(Arrays.asList(sortedAuths));
+
+        RoaringBitSet aclSet = (RoaringBitSet)searcher.cacheLookup(CacheConstants.ALFRESCO_ACL_SET_CACHE, key);
+        if(aclSet == null)
+        {
+            aclSet = buildACLSet(auths, field, searcher);
+            searcher.cacheInsert(CacheConstants.ALFRESCO_ACL_SET_CACHE, key, aclSet);
+        }
+        return aclSet;
+    }
+
+    private static RoaringBitSet buildACLSet(String[] auths, String field, SolrIndexSearcher searcher) throws IOException
     {
         BooleanQuery bQuery = new BooleanQuery();
         for(String current : auths)
@@ -117,14 +145,12 @@ public abstract class AbstractAuthoritySetQuery extends Query
         DocSet docSet = searcher.getDocSet(bQuery);
 
         DocIterator iterator = docSet.iterator();
+        RoaringBitSet aclSet = new RoaringBitSet();
         if(!iterator.hasNext())
         {
-            return new EmptyHybridBitSet();
+            return aclSet;
         }
 
-        //TODO : makes this configurable. For some systems this is huge and for others not big enough.
-        HybridBitSet hybridBitSet = new HybridBitSet(60000000);
-
         List<AtomicReaderContext> leaves = searcher.getTopReaderContext().leaves();
         AtomicReaderContext context = leaves.get(0);
         NumericDocValues aclValues = DocValuesCache.getNumericDocValues(QueryConstants.FIELD_ACLID, context.reader());
@@ -150,16 +176,17 @@ public abstract class AbstractAuthoritySetQuery extends Query
 
             if(aclValues != null) {
                 long aclId = aclValues.get(doc - base);
-                hybridBitSet.set(aclId);
+                aclSet.set(aclId);
             }
         }
 
-        return hybridBitSet;
+        aclSet.optimize();
+        return aclSet;
     }
 
     protected BitsFilter getACLFilter(String[] auths, String field, SolrIndexSearcher searcher) throws IOException
     {
-        HybridBitSet aclBits = getACLSet(auths, field, searcher);
+        RoaringBitSet aclBits = getACLSet(auths, field, searcher);
         List<AtomicReaderContext> leaves = searcher.getTopReaderContext().leaves();
         List<FixedBitSet> bitSets = new ArrayList(leaves.size());
 
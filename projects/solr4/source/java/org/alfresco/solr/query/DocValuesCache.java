@@ -27,12 +27,21 @@
 package org.alfresco.solr.query;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.WeakHashMap;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.util.packed.PackedInts;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
 
 
 /**
@@ -40,103 +49,351 @@ import org.apache.lucene.index.NumericDocValues;
  * possible access to numeric docValues. The DocValuesCache can be used instead of the Direct DocValues format which also
  * provides uncompressed in-memory docValues. The DocValuesCache can be used in situations when it is not
  * practical to re-index to use Direct docValues.
+ * <p/>
+ * Values are cached per segment core, so readers of the same segment share them, and are dropped when the segment core
+ * is closed. Each field of a segment is loaded once, by the first query that needs it, without holding up queries on
+ * other fields or segments. Values are stored relative to the smallest value of the segment, using as few bits as
+ * Lucene's packed integers allow without slowing down access. Setting the <tt>alfresco.docValuesCache.offHeap</tt>
+ * system property to <tt>true</tt> keeps them in direct buffers instead, outside the Java heap, unless a segment is too
+ * large for one buffer.
  **/
 
 public class DocValuesCache
 {
-    private static Map<String, WeakHashMap<Object, NumericDocValues>> cache = new HashMap();
+    private static final boolean OFF_HEAP = Boolean.parseBoolean(System.getProperty("alfresco.docValuesCache.offHeap", "false"));
 
-    public static synchronized NumericDocValues getNumericDocValues(String field, AtomicReader reader) throws IOException
-    {
-        WeakHashMap<Object, NumericDocValues> fieldCache = cache.get(field);
+    /** Values by segment core cache key */
+    private static ConcurrentMap<Object, SegmentValues> cache = new ConcurrentHashMap<Object, SegmentValues>();
+
+    private static final AtomicLong heapBytes = new AtomicLong();
+    private static final AtomicLong offHeapBytes = new AtomicLong();
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong loads = new AtomicLong();
 
-        if(fieldCache == null)
+    private static final NumericDocValues NO_VALUES = new NumericDocValues()
+    {
+        public long get(int index)
         {
-            fieldCache = new WeakHashMap();
-            cache.put(field, fieldCache);
+            return 0;
         }
+    };
 
-        Object cacheKey = reader.getCoreCacheKey();
-        NumericDocValues cachedValues = fieldCache.get(cacheKey);
+    public static NumericDocValues getNumericDocValues(final String field, final AtomicReader reader) throws IOException
+    {
+        final SegmentValues segmentValues = getSegmentValues(reader);
+        ConcurrentMap<String, FutureTask<NumericDocValues>> segmentCache = segmentValues.fields;
 
+        FutureTask<NumericDocValues> cachedValues = segmentCache.get(field);
         if(cachedValues == null)
         {
-            NumericDocValues fieldValues = reader.getNumericDocValues(field);
-            if(fieldValues == null)
+            FutureTask<NumericDocValues> loader = new FutureTask<NumericDocValues>(new Callable<NumericDocValues>()
             {
-                return null;
+                public NumericDocValues call() throws Exception
+                {
+                    return load(field, reader, segmentValues);
+                }
+            });
+            cachedValues = segmentCache.putIfAbsent(field, loader);
+            if(cachedValues == null)
+            {
+                cachedValues = loader;
+                loader.run();
             }
             else
             {
-                int maxDoc = reader.maxDoc();
-                boolean longs = false;
-                int[] intValues = new int[maxDoc]; //Always start off with an int array.
-                SettableDocValues settableValues = new IntValues(intValues);
+                hits.incrementAndGet();
+            }
+        }
+        else
+        {
+            hits.incrementAndGet();
+        }
 
-                for(int i=0; i<maxDoc; i++)
+        try
+        {
+            NumericDocValues values = cachedValues.get();
+            return values == NO_VALUES ? null : values;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading doc values for " + field, e);
+        }
+        catch (ExecutionException e)
+        {
+            // Let a later query try again
+            segmentCache.remove(field, cachedValues);
+            if(e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to load doc values for " + field, e.getCause());
+        }
+    }
+
+    private static SegmentValues getSegmentValues(AtomicReader reader)
+    {
+        final Object cacheKey = reader.getCoreCacheKey();
+        SegmentValues segmentValues = cache.get(cacheKey);
+        if(segmentValues == null)
+        {
+            SegmentValues newValues = new SegmentValues();
+            segmentValues = cache.putIfAbsent(cacheKey, newValues);
+            if(segmentValues == null)
+            {
+                segmentValues = newValues;
+                reader.addCoreClosedListener(new AtomicReader.CoreClosedListener()
                 {
-                    long value = fieldValues.get(i);
-                    if(value > Integer.MAX_VALUE && !longs)
+                    public void onClose(Object ownerCoreCacheKey)
                     {
-                        longs = true;
-                        settableValues = new LongValues(intValues);
+                        evict(ownerCoreCacheKey);
                     }
-
-                    settableValues.set(i, value);
+                });
+                if(reader.getRefCount() <= 0)
+                {
+                    // Closed before the listener was added, so it will not be called
+                    evict(cacheKey);
                 }
-                fieldCache.put(cacheKey, settableValues);
-                return settableValues;
             }
         }
-        else
+        return segmentValues;
+    }
+
+    private static void evict(Object cacheKey)
+    {
+        SegmentValues segmentValues = cache.remove(cacheKey);
+        if(segmentValues != null)
+        {
+            segmentValues.close();
+        }
+    }
+
+    private static NumericDocValues load(String field, AtomicReader reader, SegmentValues segmentValues) throws IOException
+    {
+        loads.incrementAndGet();
+        NumericDocValues fieldValues = reader.getNumericDocValues(field);
+        if(fieldValues == null)
         {
-            return cachedValues;
+            return NO_VALUES;
         }
+
+        int maxDoc = reader.maxDoc();
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for(int i=0; i<maxDoc; i++)
+        {
+            long value = fieldValues.get(i);
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        if(maxDoc == 0)
+        {
+            min = max = 0;
+        }
+
+        // The range overflows when the values span more than a signed long, in which case store them as they are
+        long range = max - min;
+        long offset = range < 0 ? 0 : min;
+        int bitsPerValue = range < 0 ? 64 : Math.max(1, PackedInts.bitsRequired(range));
+
+        CachedValues cachedValues = OFF_HEAP && OffHeapValues.fits(maxDoc, bitsPerValue) ? new OffHeapValues(maxDoc, bitsPerValue, offset) : new PackedValues(maxDoc, bitsPerValue, offset);
+        for(int i=0; i<maxDoc; i++)
+        {
+            cachedValues.set(i, fieldValues.get(i));
+        }
+        // If the segment was closed while loading, the values are only used by the query that loaded them
+        segmentValues.account(cachedValues);
+        return cachedValues;
+    }
+
+    /**
+     * @return the number of bytes used by the cached values, and how often they have been loaded and reused
+     */
+    public static NamedList<Object> getStatistics()
+    {
+        NamedList<Object> stats = new SimpleOrderedMap<Object>();
+        stats.add("segments", cache.size());
+        stats.add("loads", loads.get());
+        stats.add("hits", hits.get());
+        stats.add("heapBytesUsed", heapBytes.get());
+        stats.add("offHeapBytesUsed", offHeapBytes.get());
+        return stats;
     }
 
-    private static abstract class SettableDocValues extends NumericDocValues
+    /**
+     * The values of one segment core. The memory of values is added to the totals and removed again under the lock, so
+     * that values loaded while the segment is closed are never counted, and values counted are always released.
+     */
+    static class SegmentValues
     {
+        final ConcurrentMap<String, FutureTask<NumericDocValues>> fields = new ConcurrentHashMap<String, FutureTask<NumericDocValues>>(4, 0.75f, 4);
+        private final List<CachedValues> accounted = new ArrayList<CachedValues>(4);
+        private boolean closed;
+
+        /**
+         * @return <tt>false</tt> if the segment has been closed, and the values were not counted
+         */
+        synchronized boolean account(CachedValues values)
+        {
+            if(closed)
+            {
+                return false;
+            }
+            values.account();
+            accounted.add(values);
+            return true;
+        }
+
+        synchronized void close()
+        {
+            closed = true;
+            for(CachedValues values : accounted)
+            {
+                values.release();
+            }
+            accounted.clear();
+            fields.clear();
+        }
+    }
+
+    static abstract class CachedValues extends NumericDocValues
+    {
+        protected final long offset;
+
+        protected CachedValues(long offset)
+        {
+            this.offset = offset;
+        }
+
         public abstract void set(int index, long value);
+
+        /**
+         * Add the memory used to the totals, once the values have been set.
+         */
+        public abstract void account();
+
+        /**
+         * Remove the memory used from the totals, when the segment is closed.
+         */
+        public abstract void release();
     }
 
-    private static class IntValues extends SettableDocValues
+    static class PackedValues extends CachedValues
     {
-        private int[] values;
+        private final PackedInts.Mutable values;
 
-        public IntValues(int[] values)
+        public PackedValues(int maxDoc, int bitsPerValue, long offset)
         {
-            this.values = values;
+            super(offset);
+            this.values = PackedInts.getMutable(maxDoc, bitsPerValue, PackedInts.FAST);
         }
 
         public void set(int index, long value)
         {
-            this.values[index] = (int)value;
+            this.values.set(index, value - offset);
+        }
+
+        public long get(int index)
+        {
+            return values.get(index) + offset;
+        }
+
+        public void account()
+        {
+            heapBytes.addAndGet(values.ramBytesUsed());
         }
 
-        public long get(int index) {
-            return values[index];
+        public void release()
+        {
+            heapBytes.addAndGet(-values.ramBytesUsed());
         }
     }
 
-    private static class LongValues extends SettableDocValues
+    static class OffHeapValues extends CachedValues
     {
-        private long[] values;
+        private final ByteBuffer values;
+        /** log2 of the bytes per value */
+        private final int shift;
+
+        public OffHeapValues(int maxDoc, int bitsPerValue, long offset)
+        {
+            super(offset);
+            if(!fits(maxDoc, bitsPerValue))
+            {
+                throw new IllegalArgumentException("Too many values for one buffer: " + maxDoc + " of " + bitsPerValue + " bits");
+            }
+            this.shift = shift(bitsPerValue);
+            this.values = ByteBuffer.allocateDirect((int) Math.max(1L, (long) maxDoc << shift));
+        }
+
+        /**
+         * @return <tt>true</tt> if the values can be held in one buffer, which is limited to <tt>Integer.MAX_VALUE</tt> bytes
+         */
+        static boolean fits(int maxDoc, int bitsPerValue)
+        {
+            return ((long) maxDoc << shift(bitsPerValue)) <= Integer.MAX_VALUE;
+        }
+
+        /**
+         * Whole bytes, so that reads are single aligned buffer accesses
+         */
+        private static int shift(int bitsPerValue)
+        {
+            return bitsPerValue <= 8 ? 0 : bitsPerValue <= 16 ? 1 : bitsPerValue <= 32 ? 2 : 3;
+        }
 
-        public LongValues(int[] ivalues)
+        /**
+         * The byte position of a value. It is worked out as a long, but always fits an int once the buffer has been
+         * allocated.
+         */
+        private int position(int index)
         {
-            values = new long[ivalues.length];
-            //TODO: Validate to you can copy an int[] into a long[].
-            System.arraycopy(ivalues, 0, values, 0, ivalues.length);
+            return (int) ((long) index << shift);
         }
 
         public void set(int index, long value)
         {
-            this.values[index] = value;
+            long relative = value - offset;
+            switch(shift)
+            {
+            case 0:
+                values.put(index, (byte)relative);
+                break;
+            case 1:
+                values.putShort(position(index), (short)relative);
+                break;
+            case 2:
+                values.putInt(position(index), (int)relative);
+                break;
+            default:
+                values.putLong(position(index), relative);
+            }
         }
 
         public long get(int index)
         {
-            return values[index];
+            switch(shift)
+            {
+            case 0:
+                return (values.get(index) & 0xFFL) + offset;
+            case 1:
+                return (values.getShort(position(index)) & 0xFFFFL) + offset;
+            case 2:
+                return (values.getInt(position(index)) & 0xFFFFFFFFL) + offset;
+            default:
+                return values.getLong(position(index)) + offset;
+            }
+        }
+
+        public void account()
+        {
+            offHeapBytes.addAndGet(values.capacity());
+        }
+
+        public void release()
+        {
+            // The buffer itself is freed when it is collected
+            offHeapBytes.addAndGet(-values.capacity());
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,292 @@
+/*
+ * #%L
+ * Alfresco Solr 4
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.solr.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.alfresco.repo.search.impl.parsers.FTSQueryParser;
+import org.alfresco.service.cmr.dictionary.ClassDefinition;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.cmr.search.SearchParameters;
+import org.alfresco.service.namespace.QName;
+import org.apache.lucene.search.Query;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+
+/**
+ * Caches the Lucene queries built from AFTS queries, together with the type and aspect expansions used to build them.
+ * <p/>
+ * Share sends the same queries, built from the same templates, over and over. A query is keyed by its text and by
+ * everything else its parse depends on: the core, the templates, the locales, the default field and operator, the
+ * namespace and the attributes. Queries with date math relative to <tt>NOW</tt> or <tt>TODAY</tt> are not cached. The
+ * sub types and aspects that a <tt>TYPE</tt> or <tt>ASPECT</tt> query expands to are cached for each dictionary.
+ * <p/>
+ * Entries are tagged with the model generation they were built for, and {@link #invalidate()} moves on to the next
+ * generation whenever the models change, so an entry built while models are loading is never used afterwards.
+ * The number of cached queries is set with the <tt>alfresco.parsedQueryCache.size</tt> system property; <tt>0</tt>
+ * turns the query cache off.
+ *
+ * @since 5.2
+ */
+public class ParsedQueryCache
+{
+    private static final Pattern TIME_DEPENDENT = Pattern.compile("\\b(NOW|TODAY)\\b", Pattern.CASE_INSENSITIVE);
+
+    /** Longer queries are not cached, as they are unlikely to be repeated */
+    private static final int MAX_QUERY_LENGTH = 4096;
+
+    private final int maxSize;
+    private final Map<String, CachedQuery> queries;
+    private final ConcurrentHashMap<ExpansionKey, Expansion> expansions = new ConcurrentHashMap<ExpansionKey, Expansion>();
+    private volatile long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong parseNanos = new AtomicLong();
+    private final AtomicLong expansionHits = new AtomicLong();
+    private final AtomicLong expansionMisses = new AtomicLong();
+
+    public ParsedQueryCache(final int maxSize)
+    {
+        this.maxSize = maxSize;
+        this.queries = new LinkedHashMap<String, CachedQuery>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedQuery> eldest)
+            {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return the model generation, to be passed to {@link #put} with a query built after calling this
+     */
+    public long getGeneration()
+    {
+        return generation;
+    }
+
+    /**
+     * Drop everything built for the models as they were
+     */
+    public synchronized void invalidate()
+    {
+        generation++;
+        synchronized (queries)
+        {
+            queries.clear();
+        }
+        expansions.clear();
+    }
+
+    /**
+     * @return the key of the query or <tt>null</tt> if it should not be cached
+     */
+    public String getKey(String coreName, SearchParameters searchParameters, FTSQueryParser.RerankPhase rerankPhase)
+    {
+        String query = searchParameters.getQuery();
+        if (maxSize <= 0 || query == null || query.length() > MAX_QUERY_LENGTH || TIME_DEPENDENT.matcher(query).find())
+        {
+            return null;
+        }
+        Map<String, String> templates = searchParameters.getQueryTemplates();
+        StringBuilder key = new StringBuilder(query.length() + 256);
+        append(key, coreName);
+        append(key, rerankPhase);
+        append(key, searchParameters.getDefaultFTSOperator());
+        append(key, searchParameters.getDefaultFieldName());
+        append(key, searchParameters.getNamespace());
+        append(key, searchParameters.getMlAnalaysisMode());
+        append(key, searchParameters.getLocales());
+        append(key, templates == null ? null : new TreeMap<String, String>(templates));
+        append(key, searchParameters.getAllAttributes());
+        append(key, searchParameters.getTextAttributes());
+        key.append(query);
+        return key.toString();
+    }
+
+    private static void append(StringBuilder key, Object value)
+    {
+        key.append(value).append('\u0000');
+    }
+
+    /**
+     * @return a copy of the cached query, as callers may set its boost, or <tt>null</tt>
+     */
+    public Query get(String key)
+    {
+        if (key == null)
+        {
+            return null;
+        }
+        CachedQuery cached;
+        synchronized (queries)
+        {
+            cached = queries.get(key);
+        }
+        if (cached != null && cached.generation == generation)
+        {
+            hits.incrementAndGet();
+            return cached.query.clone();
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * @param generation        the generation read before the query was built
+     * @param nanos             the time taken to build the query
+     */
+    public void put(String key, long generation, Query query, long nanos)
+    {
+        parseNanos.addAndGet(nanos);
+        if (key == null || generation != this.generation)
+        {
+            return;
+        }
+        synchronized (queries)
+        {
+            queries.put(key, new CachedQuery(generation, query));
+        }
+    }
+
+    /**
+     * The types or aspects that a query for the type or aspect matches: the class itself and those of its sub classes
+     * that are included in super type queries.
+     */
+    public List<QName> getExpansion(DictionaryService dictionaryService, QName className, boolean aspect)
+    {
+        ExpansionKey key = new ExpansionKey(dictionaryService, className, aspect);
+        long currentGeneration = generation;
+        Expansion expansion = expansions.get(key);
+        if (expansion != null && expansion.generation == currentGeneration)
+        {
+            expansionHits.incrementAndGet();
+            return expansion.classNames;
+        }
+        expansionMisses.incrementAndGet();
+        Collection<QName> subclasses = aspect ? dictionaryService.getSubAspects(className, true) : dictionaryService.getSubTypes(className, true);
+        List<QName> classNames = new ArrayList<QName>(subclasses.size());
+        for (QName qname : subclasses)
+        {
+            ClassDefinition current = aspect ? dictionaryService.getAspect(qname) : dictionaryService.getType(qname);
+            if (className.equals(current.getName()) || current.getIncludedInSuperTypeQuery())
+            {
+                classNames.add(qname);
+            }
+        }
+        classNames = Collections.unmodifiableList(classNames);
+        expansions.put(key, new Expansion(currentGeneration, classNames));
+        return classNames;
+    }
+
+    public NamedList<Object> getStatistics()
+    {
+        NamedList<Object> stats = new SimpleOrderedMap<Object>();
+        synchronized (queries)
+        {
+            stats.add("queries", queries.size());
+        }
+        stats.add("hits", hits.get());
+        stats.add("misses", misses.get());
+        stats.add("parseTimeMs", parseNanos.get() / 1000000L);
+        stats.add("expansions", expansions.size());
+        stats.add("expansionHits", expansionHits.get());
+        stats.add("expansionMisses", expansionMisses.get());
+        stats.add("modelGeneration", generation);
+        return stats;
+    }
+
+    private static class CachedQuery
+    {
+        final long generation;
+        final Query query;
+
+        CachedQuery(long generation, Query query)
+        {
+            this.generation = generation;
+            this.query = query;
+        }
+    }
+
+    private static class Expansion
+    {
+        final long generation;
+        final List<QName> classNames;
+
+        Expansion(long generation, List<QName> classNames)
+        {
+            this.generation = generation;
+            this.classNames = classNames;
+        }
+    }
+
+    /**
+     * Dictionary services are compared by identity, as each may see different models
+     */
+    private static class ExpansionKey
+    {
+        final DictionaryService dictionaryService;
+        final QName className;
+        final boolean aspect;
+
+        ExpansionKey(DictionaryService dictionaryService, QName className, boolean aspect)
+        {
+            this.dictionaryService = dictionaryService;
+            this.className = className;
+            this.aspect = aspect;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (System.identityHashCode(dictionaryService) * 31 + className.hashCode()) * 31 + (aspect ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof ExpansionKey))
+            {
+                return false;
+            }
+            ExpansionKey other = (ExpansionKey) obj;
+            return dictionaryService == other.dictionaryService && className.equals(other.className) && aspect == other.aspect;
+        }
+    }
+}
@@ -0,0 +1,626 @@
+/*
+ * #%L
+ * Alfresco Solr 4
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.solr.query;
+
+import java.util.Arrays;
+
+/**
+ * A compressed bit set over the whole range of positive longs, used to hold sets of ACL ids.
+ * <p/>
+ * Bits are grouped by their high 48 bits into containers of 2^16 bits, in the manner of a Roaring bitmap. A container
+ * holds a sorted array of the low 16 bits while it is sparse, a plain bitmap once it holds more than 4096 bits, or runs of
+ * consecutive bits after {@link #optimize()} if that is smaller. Unlike the {@link HybridBitSet} no bits are boxed and
+ * the memory used follows the number of bits set rather than the largest bit.
+ * <p/>
+ * A bit set is not thread safe while it is being built. Once built it may be read by many threads, which is how it is
+ * shared through the searcher caches.
+ *
+ * @since 5.2
+ */
+public class RoaringBitSet
+{
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    private long[] keys;
+    private Container[] containers;
+    private int size;
+
+    /** The index of the last container set, as bits are usually set in ascending order */
+    private int lastIndex = -1;
+
+    public RoaringBitSet()
+    {
+        this.keys = new long[4];
+        this.containers = new Container[4];
+    }
+
+    private RoaringBitSet(long[] keys, Container[] containers, int size)
+    {
+        this.keys = keys;
+        this.containers = containers;
+        this.size = size;
+    }
+
+    public void set(long bit)
+    {
+        long key = bit >>> 16;
+        char low = (char) bit;
+        int index;
+        if (lastIndex >= 0 && keys[lastIndex] == key)
+        {
+            index = lastIndex;
+        }
+        else
+        {
+            index = Arrays.binarySearch(keys, 0, size, key);
+            if (index < 0)
+            {
+                index = -index - 1;
+                insert(index, key, new ArrayContainer());
+            }
+            lastIndex = index;
+        }
+        containers[index] = containers[index].add(low);
+    }
+
+    public boolean get(long bit)
+    {
+        int index = Arrays.binarySearch(keys, 0, size, bit >>> 16);
+        return index >= 0 && containers[index].contains((char) bit);
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public long cardinality()
+    {
+        long cardinality = 0;
+        for (int i = 0; i < size; i++)
+        {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    /**
+     * @return the approximate number of bytes used
+     */
+    public long ramBytesUsed()
+    {
+        long bytes = 32 + keys.length * 8L + containers.length * 8L;
+        for (int i = 0; i < size; i++)
+        {
+            bytes += containers[i].ramBytesUsed();
+        }
+        return bytes;
+    }
+
+    /**
+     * Replace containers with runs of bits where that uses less memory. Call this once the bit set is built.
+     */
+    public void optimize()
+    {
+        for (int i = 0; i < size; i++)
+        {
+            containers[i] = containers[i].optimize();
+        }
+        if (keys.length > size)
+        {
+            keys = Arrays.copyOf(keys, size);
+            containers = Arrays.copyOf(containers, size);
+        }
+    }
+
+    /**
+     * @return a new bit set of the bits set in both this and the other bit set
+     */
+    public RoaringBitSet and(RoaringBitSet other)
+    {
+        int capacity = Math.max(1, Math.min(size, other.size));
+        long[] andKeys = new long[capacity];
+        Container[] andContainers = new Container[capacity];
+        int andSize = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size)
+        {
+            if (keys[i] < other.keys[j])
+            {
+                i++;
+            }
+            else if (keys[i] > other.keys[j])
+            {
+                j++;
+            }
+            else
+            {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality() > 0)
+                {
+                    andKeys[andSize] = keys[i];
+                    andContainers[andSize] = container;
+                    andSize++;
+                }
+                i++;
+                j++;
+            }
+        }
+        return new RoaringBitSet(andKeys, andContainers, andSize);
+    }
+
+    /**
+     * @return a new bit set of the bits set in either this or the other bit set
+     */
+    public RoaringBitSet or(RoaringBitSet other)
+    {
+        int capacity = Math.max(1, size + other.size);
+        long[] orKeys = new long[capacity];
+        Container[] orContainers = new Container[capacity];
+        int orSize = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size)
+        {
+            if (j == other.size || (i < size && keys[i] < other.keys[j]))
+            {
+                orKeys[orSize] = keys[i];
+                orContainers[orSize++] = containers[i++].copy();
+            }
+            else if (i == size || keys[i] > other.keys[j])
+            {
+                orKeys[orSize] = other.keys[j];
+                orContainers[orSize++] = other.containers[j++].copy();
+            }
+            else
+            {
+                orKeys[orSize] = keys[i];
+                orContainers[orSize++] = containers[i++].or(other.containers[j++]);
+            }
+        }
+        return new RoaringBitSet(orKeys, orContainers, orSize);
+    }
+
+    private void insert(int index, long key, Container container)
+    {
+        if (size == keys.length)
+        {
+            keys = Arrays.copyOf(keys, Math.max(4, size * 2));
+            containers = Arrays.copyOf(containers, Math.max(4, size * 2));
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    private static abstract class Container
+    {
+        /**
+         * @return this container, or the container that replaces it
+         */
+        abstract Container add(char low);
+
+        abstract boolean contains(char low);
+
+        abstract int cardinality();
+
+        abstract long ramBytesUsed();
+
+        abstract Container copy();
+
+        /**
+         * @return the bits as a bitmap of {@link RoaringBitSet#BITMAP_WORDS} words
+         */
+        abstract long[] toWords();
+
+        Container and(Container other)
+        {
+            if (this instanceof ArrayContainer)
+            {
+                return ((ArrayContainer) this).filter(other);
+            }
+            else if (other instanceof ArrayContainer)
+            {
+                return ((ArrayContainer) other).filter(this);
+            }
+            long[] words = toWords();
+            long[] otherWords = other.toWords();
+            for (int i = 0; i < BITMAP_WORDS; i++)
+            {
+                words[i] &= otherWords[i];
+            }
+            return BitmapContainer.fromWords(words);
+        }
+
+        Container or(Container other)
+        {
+            if (this instanceof ArrayContainer && other instanceof ArrayContainer
+                        && cardinality() + other.cardinality() <= ARRAY_MAX)
+            {
+                return ((ArrayContainer) this).union((ArrayContainer) other);
+            }
+            long[] words = toWords();
+            long[] otherWords = other.toWords();
+            for (int i = 0; i < BITMAP_WORDS; i++)
+            {
+                words[i] |= otherWords[i];
+            }
+            return BitmapContainer.fromWords(words);
+        }
+
+        Container optimize()
+        {
+            RunContainer runs = RunContainer.fromWords(toWords());
+            return runs.ramBytesUsed() < ramBytesUsed() ? runs : this;
+        }
+    }
+
+    /**
+     * Sorted low bits, for sparse containers.
+     */
+    private static final class ArrayContainer extends Container
+    {
+        private char[] values;
+        private int cardinality;
+
+        ArrayContainer()
+        {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int cardinality)
+        {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char low)
+        {
+            // Fast path for ascending bits
+            if (cardinality > 0 && values[cardinality - 1] < low)
+            {
+                return append(low, cardinality);
+            }
+            int index = Arrays.binarySearch(values, 0, cardinality, low);
+            if (index >= 0)
+            {
+                return this;
+            }
+            return append(low, -index - 1);
+        }
+
+        private Container append(char low, int index)
+        {
+            if (cardinality == ARRAY_MAX)
+            {
+                return new BitmapContainer(toWords(), cardinality).add(low);
+            }
+            if (cardinality == values.length)
+            {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, cardinality * 2));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = low;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        boolean contains(char low)
+        {
+            return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+        }
+
+        @Override
+        int cardinality()
+        {
+            return cardinality;
+        }
+
+        @Override
+        long ramBytesUsed()
+        {
+            return 24 + values.length * 2L;
+        }
+
+        @Override
+        Container copy()
+        {
+            return new ArrayContainer(Arrays.copyOf(values, cardinality), cardinality);
+        }
+
+        @Override
+        long[] toWords()
+        {
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < cardinality; i++)
+            {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+            return words;
+        }
+
+        ArrayContainer filter(Container other)
+        {
+            char[] filtered = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < cardinality; i++)
+            {
+                if (other.contains(values[i]))
+                {
+                    filtered[count++] = values[i];
+                }
+            }
+            return new ArrayContainer(filtered, count);
+        }
+
+        ArrayContainer union(ArrayContainer other)
+        {
+            char[] union = new char[cardinality + other.cardinality];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality || j < other.cardinality)
+            {
+                if (j == other.cardinality || (i < cardinality && values[i] < other.values[j]))
+                {
+                    union[count++] = values[i++];
+                }
+                else if (i == cardinality || values[i] > other.values[j])
+                {
+                    union[count++] = other.values[j++];
+                }
+                else
+                {
+                    union[count++] = values[i++];
+                    j++;
+                }
+            }
+            return new ArrayContainer(union, count);
+        }
+    }
+
+    /**
+     * A plain bitmap, for dense containers.
+     */
+    private static final class BitmapContainer extends Container
+    {
+        private final long[] words;
+        private int cardinality;
+
+        private BitmapContainer(long[] words, int cardinality)
+        {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        /**
+         * @return a bitmap container of the words, or an array container if there are few enough bits
+         */
+        static Container fromWords(long[] words)
+        {
+            int cardinality = 0;
+            for (long word : words)
+            {
+                cardinality += Long.bitCount(word);
+            }
+            if (cardinality > ARRAY_MAX)
+            {
+                return new BitmapContainer(words, cardinality);
+            }
+            char[] values = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++)
+            {
+                long word = words[i];
+                while (word != 0)
+                {
+                    values[count++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values, cardinality);
+        }
+
+        @Override
+        Container add(char low)
+        {
+            long mask = 1L << low;
+            if ((words[low >>> 6] & mask) == 0)
+            {
+                words[low >>> 6] |= mask;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char low)
+        {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        int cardinality()
+        {
+            return cardinality;
+        }
+
+        @Override
+        long ramBytesUsed()
+        {
+            return 24 + BITMAP_WORDS * 8L;
+        }
+
+        @Override
+        Container copy()
+        {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        long[] toWords()
+        {
+            return words.clone();
+        }
+    }
+
+    /**
+     * Runs of consecutive bits, for containers of ACL ids that have been created together.
+     */
+    private static final class RunContainer extends Container
+    {
+        private final char[] starts;
+        private final char[] ends;
+        private final int cardinality;
+
+        private RunContainer(char[] starts, char[] ends, int cardinality)
+        {
+            this.starts = starts;
+            this.ends = ends;
+            this.cardinality = cardinality;
+        }
+
+        static RunContainer fromWords(long[] words)
+        {
+            char[] starts = new char[16];
+            char[] ends = new char[16];
+            int runs = 0;
+            int cardinality = 0;
+            int bit = nextSetBit(words, 0);
+            while (bit >= 0)
+            {
+                int end = nextClearBit(words, bit) - 1;
+                if (runs == starts.length)
+                {
+                    starts = Arrays.copyOf(starts, runs * 2);
+                    ends = Arrays.copyOf(ends, runs * 2);
+                }
+                starts[runs] = (char) bit;
+                ends[runs] = (char) end;
+                runs++;
+                cardinality += end - bit + 1;
+                bit = end + 1 < 65536 ? nextSetBit(words, end + 1) : -1;
+            }
+            return new RunContainer(Arrays.copyOf(starts, runs), Arrays.copyOf(ends, runs), cardinality);
+        }
+
+        private static int nextSetBit(long[] words, int bit)
+        {
+            int i = bit >>> 6;
+            long word = words[i] & (-1L << bit);
+            while (word == 0)
+            {
+                if (++i == BITMAP_WORDS)
+                {
+                    return -1;
+                }
+                word = words[i];
+            }
+            return (i << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        private static int nextClearBit(long[] words, int bit)
+        {
+            int i = bit >>> 6;
+            long word = ~words[i] & (-1L << bit);
+            while (word == 0)
+            {
+                if (++i == BITMAP_WORDS)
+                {
+                    return 65536;
+                }
+                word = ~words[i];
+            }
+            return (i << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        @Override
+        Container add(char low)
+        {
+            if (contains(low))
+            {
+                return this;
+            }
+            return BitmapContainer.fromWords(toWords()).add(low);
+        }
+
+        @Override
+        boolean contains(char low)
+        {
+            int index = Arrays.binarySearch(starts, low);
+            if (index >= 0)
+            {
+                return true;
+            }
+            index = -index - 2;
+            return index >= 0 && low <= ends[index];
+        }
+
+        @Override
+        int cardinality()
+        {
+            return cardinality;
+        }
+
+        @Override
+        long ramBytesUsed()
+        {
+            return 40 + starts.length * 4L;
+        }
+
+        @Override
+        Container copy()
+        {
+            return this;
+        }
+
+        @Override
+        long[] toWords()
+        {
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < starts.length; i++)
+            {
+                for (int bit = starts[i]; bit <= ends[i]; bit++)
+                {
+                    words[bit >>> 6] |= 1L << bit;
+                }
+            }
+            return words;
+        }
+
+        @Override
+        Container optimize()
+        {
+            return this;
+        }
+    }
+}
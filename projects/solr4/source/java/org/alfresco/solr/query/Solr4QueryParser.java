@@ -1059,20 +1059,13 @@ public class Solr4QueryParser extends QueryParser implements QueryConstants
 		}
 		else
 		{
-			Collection<QName> subclasses = dictionaryService.getSubAspects(target.getName(), true);
+			// The sub aspects are only worked out again when the models change
+			List<QName> aspects = AlfrescoSolrDataModel.getInstance().getParsedQueryCache().getExpansion(dictionaryService, target.getName(), true);
 
 			BooleanQuery booleanQuery = new BooleanQuery();
-			for (QName qname : subclasses)
+			for (QName qname : aspects)
 			{
-				AspectDefinition current = dictionaryService.getAspect(qname);
-				if (target.getName().equals(current.getName()) || current.getIncludedInSuperTypeQuery())
-				{
-					TermQuery termQuery = new TermQuery(new Term(FIELD_ASPECT, qname.toString()));
-					if (termQuery != null)
-					{
-						booleanQuery.add(termQuery, Occur.SHOULD);
-					}
-				}
+				booleanQuery.add(new TermQuery(new Term(FIELD_ASPECT, qname.toString())), Occur.SHOULD);
 			}
 			return booleanQuery;
 		}
@@ -1094,19 +1087,12 @@ public class Solr4QueryParser extends QueryParser implements QueryConstants
 		}
 		else
 		{
-			Collection<QName> subclasses = dictionaryService.getSubTypes(target.getName(), true);
+			// The sub types are only worked out again when the models change
+			List<QName> types = AlfrescoSolrDataModel.getInstance().getParsedQueryCache().getExpansion(dictionaryService, target.getName(), false);
 			BooleanQuery booleanQuery = new BooleanQuery();
-			for (QName qname : subclasses)
+			for (QName qname : types)
 			{
-				TypeDefinition current = dictionaryService.getType(qname);
-				if (target.getName().equals(current.getName()) || current.getIncludedInSuperTypeQuery())
-				{
-					TermQuery termQuery = new TermQuery(new Term(FIELD_TYPE, qname.toString()));
-					if (termQuery != null)
-					{
-						booleanQuery.add(termQuery, Occur.SHOULD);
-					}
-				}
+				booleanQuery.add(new TermQuery(new Term(FIELD_TYPE, qname.toString())), Occur.SHOULD);
 			}
 			return booleanQuery;
 		}
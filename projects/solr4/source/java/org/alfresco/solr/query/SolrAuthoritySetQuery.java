@@ -31,10 +31,13 @@ import org.alfresco.repo.search.adaptor.lucene.QueryConstants;
 import org.alfresco.service.cmr.security.AuthorityType;
 import org.alfresco.service.cmr.security.PermissionService;
 import org.alfresco.solr.data.GlobalReaders;
+import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocsEnum;
 import org.apache.lucene.index.NumericDocValues;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.*;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.FixedBitSet;
 import org.apache.solr.search.*;
 
@@ -59,10 +62,25 @@ public class SolrAuthoritySetQuery extends AbstractAuthoritySetQuery implements
             throw new IllegalStateException("Must have a SolrIndexSearcher");
         }
 
+        Filter readFilter = getReadFilter((SolrIndexSearcher)searcher);
+        if (readFilter == null)
+        {
+            return new MatchAllDocsQuery().createWeight(searcher);
+        }
+        return new ConstantScoreQuery(readFilter).createWeight(searcher);
+    }
+
+    /**
+     * Get the filter of the documents the authorities can read, which works out each segment on its own. This is what
+     * the query matches, and is also used to warm the authority cache one segment at a time.
+     *
+     * @return the filter, or <tt>null</tt> if the authorities can read all documents
+     */
+    public Filter getReadFilter(SolrIndexSearcher searcher) throws IOException
+    {
         String[] auths = authorities.substring(1).split(authorities.substring(0, 1));
 
-        SolrIndexSearcher solrIndexSearcher = (SolrIndexSearcher)searcher;
-        Properties p = solrIndexSearcher.getSchema().getResourceLoader().getCoreProperties();
+        Properties p = searcher.getSchema().getResourceLoader().getCoreProperties();
         boolean doPermissionChecks = Boolean.parseBoolean(p.getProperty("alfresco.doPermissionChecks", "true"));
 
         boolean hasGlobalRead = false;
@@ -80,24 +98,28 @@ public class SolrAuthoritySetQuery extends AbstractAuthoritySetQuery implements
 
         if (hasGlobalRead || (doPermissionChecks == false))
         {
-            return new MatchAllDocsQuery().createWeight(searcher);
+            return null;
         }
 
-        BitsFilter readFilter  = getACLFilter(auths, QueryConstants.FIELD_READER, solrIndexSearcher);
-        BitsFilter ownerFilter = getOwnerFilter(auths, solrIndexSearcher);
+        List<Term> ownerTerms = new ArrayList<Term>();
+        for(String auth : auths)
+        {
+            if (AuthorityType.getAuthorityType(auth) == AuthorityType.USER)
+            {
+                ownerTerms.add(new Term(QueryConstants.FIELD_OWNER, auth));
+            }
+        }
 
+        RoaringBitSet aclSet = getACLSet(auths, QueryConstants.FIELD_READER, searcher);
         if (globalReaders.contains(PermissionService.OWNER_AUTHORITY))
         {
-            readFilter.or(ownerFilter);
-            return new ConstantScoreQuery(readFilter).createWeight(searcher);
+            return new ReadFilter(aclSet, null, ownerTerms);
         }
         else
         {
             String[] ownerAuth = {PermissionService.OWNER_AUTHORITY};
-            BitsFilter ownerReadFilter  = getACLFilter(ownerAuth, QueryConstants.FIELD_READER, solrIndexSearcher);
-            ownerReadFilter.and(ownerFilter);
-            readFilter.or(ownerReadFilter);
-            return new ConstantScoreQuery(readFilter).createWeight(searcher);
+            RoaringBitSet ownerAclSet = getACLSet(ownerAuth, QueryConstants.FIELD_READER, searcher);
+            return new ReadFilter(aclSet, ownerAclSet, ownerTerms);
         }
     }
 
@@ -129,7 +151,7 @@ public class SolrAuthoritySetQuery extends AbstractAuthoritySetQuery implements
 
         try
         {
-            HybridBitSet aclSet = getACLSet(auths, QueryConstants.FIELD_READER, solrIndexSearcher);
+            RoaringBitSet aclSet = getACLSet(auths, QueryConstants.FIELD_READER, solrIndexSearcher);
             BitsFilter ownerFilter = getOwnerFilter(auths, solrIndexSearcher);
 
             if (globalReaders.contains(PermissionService.OWNER_AUTHORITY))
@@ -139,7 +161,7 @@ public class SolrAuthoritySetQuery extends AbstractAuthoritySetQuery implements
             else
             {
                 String[] ownerAuth = {PermissionService.OWNER_AUTHORITY};
-                HybridBitSet ownerAclSet = getACLSet(ownerAuth, QueryConstants.FIELD_READER, solrIndexSearcher);
+                RoaringBitSet ownerAclSet = getACLSet(ownerAuth, QueryConstants.FIELD_READER, solrIndexSearcher);
                 return new AccessControlCollectorWithoutOwnerRead(aclSet, ownerAclSet, ownerFilter);
             }
         }
@@ -203,6 +225,65 @@ public class SolrAuthoritySetQuery extends AbstractAuthoritySetQuery implements
         return collector.getBitsFilter();
     }
 
+    /**
+     * Matches the documents with a readable ACL, and the documents owned by the authorities if owners can read them:
+     * always when the owner is a global reader, otherwise when their ACL lets owners read.
+     */
+    static class ReadFilter extends Filter
+    {
+        private final RoaringBitSet aclIds;
+        private final RoaringBitSet ownerAclIds;
+        private final List<Term> ownerTerms;
+
+        ReadFilter(RoaringBitSet aclIds, RoaringBitSet ownerAclIds, List<Term> ownerTerms)
+        {
+            this.aclIds = aclIds;
+            this.ownerAclIds = ownerAclIds;
+            this.ownerTerms = ownerTerms;
+        }
+
+        public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException
+        {
+            AtomicReader reader = context.reader();
+            int maxDoc = reader.maxDoc();
+            FixedBitSet bits = new FixedBitSet(maxDoc);
+
+            NumericDocValues fieldValues = DocValuesCache.getNumericDocValues(QueryConstants.FIELD_ACLID, reader);
+            if (fieldValues != null)
+            {
+                for (int i = 0; i < maxDoc; i++)
+                {
+                    if (aclIds.get(fieldValues.get(i)))
+                    {
+                        bits.set(i);
+                    }
+                }
+            }
+
+            for (Term ownerTerm : ownerTerms)
+            {
+                DocsEnum docs = reader.termDocsEnum(ownerTerm);
+                if (docs == null)
+                {
+                    continue;
+                }
+                for (int doc = docs.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = docs.nextDoc())
+                {
+                    if (ownerAclIds == null)
+                    {
+                        bits.set(doc);
+                    }
+                    else if ((fieldValues != null) && ownerAclIds.get(fieldValues.get(doc)))
+                    {
+                        bits.set(doc);
+                    }
+                }
+            }
+
+            return BitsFilteredDocIdSet.wrap(bits, acceptDocs);
+        }
+    }
+
     class BitsFilterCollector extends Collector
     {
         private List<FixedBitSet> sets;
@@ -237,12 +318,12 @@ public class SolrAuthoritySetQuery extends AbstractAuthoritySetQuery implements
 
     class AccessControlCollector extends DelegatingCollector
     {
-        private HybridBitSet aclIds;
+        private RoaringBitSet aclIds;
         private NumericDocValues fieldValues;
         private BitsFilter ownerFilter;
         private FixedBitSet ownerDocs;
 
-        public AccessControlCollector(HybridBitSet aclIds, BitsFilter ownerFilter)
+        public AccessControlCollector(RoaringBitSet aclIds, BitsFilter ownerFilter)
         {
             this.aclIds=aclIds;
             this.ownerFilter = ownerFilter;
@@ -278,12 +359,12 @@ public class SolrAuthoritySetQuery extends AbstractAuthoritySetQuery implements
 
     class AccessControlCollectorWithoutOwnerRead extends DelegatingCollector
     {
-        private HybridBitSet aclIds;
-        private HybridBitSet ownerAclIds;
+        private RoaringBitSet aclIds;
+        private RoaringBitSet ownerAclIds;
         private NumericDocValues fieldValues;
         private BitsFilter ownerFilter;
         private FixedBitSet ownerDocs;
-        public AccessControlCollectorWithoutOwnerRead(HybridBitSet aclIds, HybridBitSet ownerAclIds, BitsFilter ownerFilter)
+        public AccessControlCollectorWithoutOwnerRead(RoaringBitSet aclIds, RoaringBitSet ownerAclIds, BitsFilter ownerFilter)
         {
             this.aclIds=aclIds;
             this.ownerAclIds = ownerAclIds;
@@ -299,9 +299,14 @@ public abstract class AbstractTracker implements Tracker
     /**
      * Allows time for the scheduled asynchronous tasks to complete
      */
-    protected synchronized void waitForAsynchronous()
+    protected void waitForAsynchronous()
     {
-        AbstractWorkerRunnable currentRunnable = this.threadHandler.peekHeadReindexWorker();
+        waitForAsynchronous(this.threadHandler);
+    }
+
+    protected synchronized void waitForAsynchronous(ThreadHandler threadHandler)
+    {
+        AbstractWorkerRunnable currentRunnable = threadHandler.peekHeadReindexWorker();
         while (currentRunnable != null)
         {
             checkShutdown();
@@ -315,7 +320,7 @@ public abstract class AbstractTracker implements Tracker
                 {
                 }
             }
-            currentRunnable = this.threadHandler.peekHeadReindexWorker();
+            currentRunnable = threadHandler.peekHeadReindexWorker();
         }
     }
 
@@ -25,6 +25,7 @@
  */
     package org.alfresco.solr.tracker;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Properties;
 
@@ -37,6 +38,10 @@ import org.slf4j.LoggerFactory;
 /**
  * This tracker queries for docs with unclean content, and then updates them.
  * Similar to org.alfresco.repo.search.impl.lucene.ADMLuceneIndexerImpl
+ * <p/>
+ * If <tt>alfresco.contentTracker.largeContentSize</tt> is set, docs with content of at least that size are updated in
+ * a separate lane, with its own threads, that is only waited for at the end of each run. The commits of the other docs
+ * are not then held up by the transformation of a few large documents.
  * 
  * @author Ahmed Owian
  */
@@ -45,6 +50,9 @@ public class ContentTracker extends AbstractTracker implements Tracker
     protected final static Logger log = LoggerFactory.getLogger(ContentTracker.class);
     private int contentReadBatchSize;
     private int contentUpdateBatchSize;
+    private long largeContentSize;
+    /** The lane for large content, if any */
+    private ThreadHandler largeContentThreadHandler;
     
 
     public ContentTracker(Properties p, SOLRAPIClient client, String coreName,
@@ -54,6 +62,14 @@ public class ContentTracker extends AbstractTracker implements Tracker
         contentReadBatchSize = Integer.parseInt(p.getProperty("alfresco.contentReadBatchSize", "4000"));
         contentUpdateBatchSize = Integer.parseInt(p.getProperty("alfresco.contentUpdateBatchSize", "1000"));
         threadHandler = new ThreadHandler(p, coreName, "ContentTracker");
+        largeContentSize = Long.parseLong(p.getProperty("alfresco.contentTracker.largeContentSize", "0"));
+        if (largeContentSize > 0)
+        {
+            Properties largeContentProperties = new Properties(p);
+            largeContentProperties.setProperty("alfresco.corePoolSize", p.getProperty("alfresco.contentTracker.largeContentThreads", "1"));
+            largeContentProperties.setProperty("alfresco.maximumPoolSize", "-1");
+            largeContentThreadHandler = new ThreadHandler(largeContentProperties, coreName, "ContentTracker-large");
+        }
     }
     
     ContentTracker()
@@ -75,10 +91,17 @@ public class ContentTracker extends AbstractTracker implements Tracker
         }
         
         final int ROWS = contentReadBatchSize;
-        int start = 0;
         long totalDocs = 0l;
+        int largeDocs = 0;
+        if (largeContentThreadHandler != null)
+        {
+            largeDocs = scheduleLargeContent(ROWS);
+            totalDocs += largeDocs;
+        }
+
+        int start = 0;
         checkShutdown();
-        List<TenantAclIdDbId> docs = this.infoSrv.getDocsWithUncleanContent(start, ROWS);
+        List<TenantAclIdDbId> docs = getDocsWithUncleanContent(start, ROWS);
         while (!docs.isEmpty())
         {
             int docsUpdatedSinceLastCommit = 0;
@@ -115,12 +138,72 @@ public class ContentTracker extends AbstractTracker implements Tracker
             totalDocs += docs.size();
             start += ROWS;
             checkShutdown();
-            docs = this.infoSrv.getDocsWithUncleanContent(start, ROWS);
+            docs = getDocsWithUncleanContent(start, ROWS);
+        }
+        
+        if (largeDocs > 0)
+        {
+            waitForAsynchronous(largeContentThreadHandler);
+            checkShutdown();
+            this.infoSrv.commit();
+            long endElapsed = System.nanoTime();
+            trackerStats.addElapsedContentTime(largeDocs, endElapsed-startElapsed);
         }
         
         log.info("total number of docs with content updated: " + totalDocs);
     }
     
+    private List<TenantAclIdDbId> getDocsWithUncleanContent(int start, int rows) throws IOException
+    {
+        if (largeContentThreadHandler == null)
+        {
+            return this.infoSrv.getDocsWithUncleanContent(start, rows);
+        }
+        return this.infoSrv.getDocsWithUncleanContent(start, rows, largeContentSize, false);
+    }
+    
+    /**
+     * Schedule the updates of all docs with large content in their own lane.
+     * 
+     * @return the number of docs scheduled
+     */
+    private int scheduleLargeContent(int rows) throws IOException
+    {
+        int scheduled = 0;
+        int start = 0;
+        checkShutdown();
+        List<TenantAclIdDbId> docs = this.infoSrv.getDocsWithUncleanContent(start, rows, largeContentSize, true);
+        while (!docs.isEmpty())
+        {
+            for (TenantAclIdDbId doc : docs)
+            {
+                ContentIndexWorkerRunnable ciwr = new ContentIndexWorkerRunnable(largeContentThreadHandler, doc, infoSrv);
+                largeContentThreadHandler.scheduleTask(ciwr);
+                scheduled++;
+            }
+            start += rows;
+            checkShutdown();
+            docs = this.infoSrv.getDocsWithUncleanContent(start, rows, largeContentSize, true);
+        }
+        return scheduled;
+    }
+    
+    @Override
+    public void close()
+    {
+        try
+        {
+            super.close();
+        }
+        finally
+        {
+            if (largeContentThreadHandler != null)
+            {
+                largeContentThreadHandler.shutDownThreadPool();
+            }
+        }
+    }
+    
     class ContentIndexWorkerRunnable extends AbstractWorkerRunnable
     {
         InformationServer infoServer;
@@ -0,0 +1,418 @@
+/*
+ * #%L
+ * Alfresco Solr 4
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.solr.tracker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.solr.InformationServer;
+import org.alfresco.solr.client.GetNodesParameters;
+import org.alfresco.solr.client.Node;
+import org.alfresco.solr.client.Node.SolrApiNodeStatus;
+import org.alfresco.solr.client.NodeMetaData;
+import org.alfresco.solr.client.NodeMetaDataParameters;
+import org.alfresco.solr.client.SOLRAPIClient;
+import org.alfresco.solr.client.Transaction;
+import org.alfresco.util.TraceableThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Overlaps the stages of metadata tracking, so that the nodes and metadata of the next transactions are fetched from
+ * the repository while the previous ones are being indexed.
+ * <p/>
+ * Batches of transactions found by the {@link MetadataTracker} are passed to a node fetching thread, which gets their
+ * nodes and splits them into batches. The node batches are passed to metadata fetching threads, which get the metadata
+ * of the updated nodes and schedule the batches to be indexed by the tracker's worker threads. The stages are separated
+ * by bounded queues and the number of batches waiting to be indexed is limited too, so a slow stage holds up the stages
+ * before it rather than letting work build up in memory.
+ * <p/>
+ * The number of batches waiting for each stage and the time per item taken by each stage are recorded in the
+ * {@link TrackerStats}.
+ *
+ * @since 5.2
+ */
+class MetadataPipeline
+{
+    protected final static Logger log = LoggerFactory.getLogger(MetadataPipeline.class);
+
+    static final String STAGE_FETCH_TRANSACTIONS = "Fetch transactions";
+    static final String STAGE_FETCH_NODES = "Fetch nodes";
+    static final String STAGE_FETCH_METADATA = "Fetch metadata";
+    static final String STAGE_INDEX = "Index nodes";
+
+    private final MetadataTracker tracker;
+    private final SOLRAPIClient client;
+    private final InformationServer infoSrv;
+    private final TrackerStats trackerStats;
+    private final int nodeBatchSize;
+    private final int depth;
+    private final int metadataThreads;
+
+    private final BlockingQueue<List<Transaction>> transactionQueue;
+    private final BlockingQueue<List<Node>> nodeQueue;
+    private final Semaphore indexPermits;
+
+    /** Batches that have been accepted but not yet scheduled for indexing */
+    private final AtomicInteger pendingBatches = new AtomicInteger();
+
+    private ExecutorService stageThreads;
+    private volatile boolean stopped;
+    private volatile Throwable error;
+
+    /**
+     * @param tracker           the tracker to index for
+     * @param depth             the number of batches that may wait for each stage
+     * @param metadataThreads   the number of threads fetching metadata
+     * @param nodeBatchSize     the number of nodes in each batch to index
+     */
+    MetadataPipeline(MetadataTracker tracker, int depth, int metadataThreads, int nodeBatchSize)
+    {
+        this.tracker = tracker;
+        this.client = tracker.client;
+        this.infoSrv = tracker.infoSrv;
+        this.trackerStats = tracker.trackerStats;
+        this.nodeBatchSize = nodeBatchSize;
+        this.depth = Math.max(1, depth);
+        this.metadataThreads = Math.max(1, metadataThreads);
+        this.transactionQueue = new ArrayBlockingQueue<List<Transaction>>(this.depth);
+        this.nodeQueue = new ArrayBlockingQueue<List<Node>>(this.depth);
+        this.indexPermits = new Semaphore(this.depth);
+    }
+
+    /**
+     * Start the node and metadata fetching threads.
+     */
+    void start()
+    {
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setNamePrefix("SolrMetadataPipeline-" + tracker.coreName + "-");
+        threadFactory.setThreadDaemon(true);
+
+        stageThreads = Executors.newFixedThreadPool(1 + metadataThreads, threadFactory);
+        stageThreads.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                fetchNodesLoop();
+            }
+        });
+        for (int i = 0; i < metadataThreads; i++)
+        {
+            stageThreads.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    fetchMetaDataLoop();
+                }
+            });
+        }
+    }
+
+    /**
+     * Stop the fetching threads. Batches that have not been scheduled for indexing are abandoned.
+     */
+    void stop()
+    {
+        stopped = true;
+        if (stageThreads != null)
+        {
+            stageThreads.shutdown();
+        }
+    }
+
+    /**
+     * Queue a batch of transactions to have their nodes indexed, waiting while the queue is full.
+     *
+     * @param txBatch transactions with updates or deletes
+     */
+    void submit(List<Transaction> txBatch)
+    {
+        checkError();
+        pendingBatches.incrementAndGet();
+        try
+        {
+            List<Transaction> batch = new ArrayList<Transaction>(txBatch);
+            while (!transactionQueue.offer(batch, 100L, TimeUnit.MILLISECONDS))
+            {
+                tracker.checkShutdown();
+                checkError();
+            }
+            trackerStats.setStageQueueDepth(STAGE_FETCH_NODES, transactionQueue.size());
+        }
+        catch (InterruptedException e)
+        {
+            pendingBatches.decrementAndGet();
+            Thread.currentThread().interrupt();
+            throw new AlfrescoRuntimeException("Interrupted while queueing transactions", e);
+        }
+        catch (RuntimeException e)
+        {
+            pendingBatches.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Wait until every batch submitted has been scheduled for indexing. The caller must then wait for the tracker's
+     * worker threads before the transactions can be marked as indexed.
+     */
+    void flush()
+    {
+        while (pendingBatches.get() > 0)
+        {
+            tracker.checkShutdown();
+            checkError();
+            try
+            {
+                Thread.sleep(10L);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new AlfrescoRuntimeException("Interrupted while waiting for the metadata pipeline", e);
+            }
+        }
+        checkError();
+    }
+
+    private void checkError()
+    {
+        if (error != null)
+        {
+            throw new AlfrescoRuntimeException("Metadata pipeline failed", error);
+        }
+    }
+
+    private void fail(Throwable e)
+    {
+        log.error("Metadata pipeline failed", e);
+        if (error == null)
+        {
+            error = e;
+        }
+    }
+
+    private void fetchNodesLoop()
+    {
+        try
+        {
+            while (!stopped && error == null)
+            {
+                List<Transaction> txBatch = transactionQueue.poll(100L, TimeUnit.MILLISECONDS);
+                if (txBatch == null)
+                {
+                    continue;
+                }
+                trackerStats.setStageQueueDepth(STAGE_FETCH_NODES, transactionQueue.size());
+                try
+                {
+                    fetchNodes(txBatch);
+                }
+                finally
+                {
+                    pendingBatches.decrementAndGet();
+                }
+            }
+        }
+        catch (Throwable e)
+        {
+            fail(e);
+        }
+    }
+
+    private void fetchNodes(List<Transaction> txBatch) throws Exception
+    {
+        long start = System.nanoTime();
+        ArrayList<Long> txIds = new ArrayList<Long>(txBatch.size());
+        for (Transaction tx : txBatch)
+        {
+            txIds.add(tx.getId());
+        }
+        GetNodesParameters gnp = new GetNodesParameters();
+        gnp.setTransactionIds(txIds);
+        gnp.setStoreProtocol(tracker.storeRef.getProtocol());
+        gnp.setStoreIdentifier(tracker.storeRef.getIdentifier());
+        List<Node> nodes = client.getNodes(gnp, Integer.MAX_VALUE);
+        trackerStats.addStageTime(STAGE_FETCH_NODES, nodes.size(), System.nanoTime() - start);
+
+        ArrayList<Node> nodeBatch = new ArrayList<Node>();
+        for (Node node : nodes)
+        {
+            if (log.isDebugEnabled())
+            {
+                log.debug(node.toString());
+            }
+            nodeBatch.add(node);
+            if (nodeBatch.size() > nodeBatchSize)
+            {
+                queueNodes(nodeBatch);
+                nodeBatch = new ArrayList<Node>();
+            }
+        }
+        if (nodeBatch.size() > 0)
+        {
+            queueNodes(nodeBatch);
+        }
+    }
+
+    private void queueNodes(List<Node> nodeBatch) throws InterruptedException
+    {
+        pendingBatches.incrementAndGet();
+        while (!nodeQueue.offer(nodeBatch, 100L, TimeUnit.MILLISECONDS))
+        {
+            if (stopped)
+            {
+                pendingBatches.decrementAndGet();
+                return;
+            }
+        }
+        trackerStats.setStageQueueDepth(STAGE_FETCH_METADATA, nodeQueue.size());
+    }
+
+    private void fetchMetaDataLoop()
+    {
+        try
+        {
+            while (!stopped && error == null)
+            {
+                List<Node> nodes = nodeQueue.poll(100L, TimeUnit.MILLISECONDS);
+                if (nodes == null)
+                {
+                    continue;
+                }
+                trackerStats.setStageQueueDepth(STAGE_FETCH_METADATA, nodeQueue.size());
+                try
+                {
+                    List<Node> filteredNodes = tracker.filterNodes(nodes);
+                    if (filteredNodes.size() > 0)
+                    {
+                        List<NodeMetaData> nodeMetaDatas = fetchMetaData(filteredNodes);
+                        scheduleIndex(filteredNodes, nodeMetaDatas);
+                    }
+                }
+                finally
+                {
+                    pendingBatches.decrementAndGet();
+                }
+            }
+        }
+        catch (Throwable e)
+        {
+            fail(e);
+        }
+    }
+
+    /**
+     * Fetch the metadata of the nodes that {@link InformationServer#indexNodes(List, boolean, List)} would fetch.
+     *
+     * @return the metadata, or <tt>null</tt> if it could not be fetched and should be fetched by the indexer
+     */
+    private List<NodeMetaData> fetchMetaData(List<Node> nodes)
+    {
+        List<Long> nodeIds = new ArrayList<Long>(nodes.size());
+        for (Node node : nodes)
+        {
+            SolrApiNodeStatus status = node.getStatus();
+            if (status == SolrApiNodeStatus.UPDATED || status == SolrApiNodeStatus.UNKNOWN || status == SolrApiNodeStatus.NON_SHARD_UPDATED)
+            {
+                nodeIds.add(node.getId());
+            }
+        }
+        if (nodeIds.isEmpty())
+        {
+            return new ArrayList<NodeMetaData>(0);
+        }
+
+        long start = System.nanoTime();
+        try
+        {
+            NodeMetaDataParameters nmdp = new NodeMetaDataParameters();
+            nmdp.setNodeIds(nodeIds);
+            List<NodeMetaData> nodeMetaDatas = client.getNodesMetaData(nmdp, Integer.MAX_VALUE);
+            trackerStats.addStageTime(STAGE_FETCH_METADATA, nodeIds.size(), System.nanoTime() - start);
+            return nodeMetaDatas;
+        }
+        catch (Exception e)
+        {
+            // The indexer will try again and fall back to indexing one node at a time
+            log.warn("Failed to fetch node metadata, it will be fetched by the indexer", e);
+            return null;
+        }
+    }
+
+    private void scheduleIndex(List<Node> nodes, List<NodeMetaData> nodeMetaDatas) throws InterruptedException
+    {
+        while (!indexPermits.tryAcquire(100L, TimeUnit.MILLISECONDS))
+        {
+            if (stopped)
+            {
+                return;
+            }
+        }
+        trackerStats.setStageQueueDepth(STAGE_INDEX, depth - indexPermits.availablePermits());
+        tracker.threadHandler.scheduleTask(new IndexWorkerRunnable(tracker.threadHandler, nodes, nodeMetaDatas));
+    }
+
+    class IndexWorkerRunnable extends AbstractWorkerRunnable
+    {
+        List<Node> nodes;
+        List<NodeMetaData> nodeMetaDatas;
+
+        IndexWorkerRunnable(QueueHandler queueHandler, List<Node> nodes, List<NodeMetaData> nodeMetaDatas)
+        {
+            super(queueHandler);
+            this.nodes = nodes;
+            this.nodeMetaDatas = nodeMetaDatas;
+        }
+
+        @Override
+        protected void doWork() throws Exception
+        {
+            long start = System.nanoTime();
+            try
+            {
+                infoSrv.indexNodes(nodes, true, nodeMetaDatas);
+                trackerStats.addStageTime(STAGE_INDEX, nodes.size(), System.nanoTime() - start);
+            }
+            finally
+            {
+                indexPermits.release();
+                trackerStats.setStageQueueDepth(STAGE_INDEX, depth - indexPermits.availablePermits());
+            }
+        }
+    }
+}
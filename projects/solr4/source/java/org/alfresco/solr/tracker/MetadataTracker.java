@@ -66,6 +66,8 @@ public class MetadataTracker extends AbstractTracker implements Tracker
     private static final int DEFAULT_NODE_BATCH_SIZE = 10;
     private int transactionDocsBatchSize = DEFAULT_TRANSACTION_DOCS_BATCH_SIZE;
     private int nodeBatchSize = DEFAULT_NODE_BATCH_SIZE;
+    private int pipelineDepth = 0;
+    private int pipelineFetchThreads = 2;
     private ConcurrentLinkedQueue<Long> transactionsToReindex = new ConcurrentLinkedQueue<Long>();
     private ConcurrentLinkedQueue<Long> transactionsToIndex = new ConcurrentLinkedQueue<Long>();
     private ConcurrentLinkedQueue<Long> transactionsToPurge = new ConcurrentLinkedQueue<Long>();
@@ -82,6 +84,8 @@ public class MetadataTracker extends AbstractTracker implements Tracker
 
         transactionDocsBatchSize = Integer.parseInt(p.getProperty("alfresco.transactionDocsBatchSize", "100"));
         nodeBatchSize = Integer.parseInt(p.getProperty("alfresco.nodeBatchSize", "10"));
+        pipelineDepth = Integer.parseInt(p.getProperty("alfresco.metadataPipelineDepth", "0"));
+        pipelineFetchThreads = Integer.parseInt(p.getProperty("alfresco.metadataPipelineFetchThreads", "2"));
         threadHandler = new ThreadHandler(p, coreName, "MetadataTracker");
     }
     
@@ -576,6 +580,27 @@ public class MetadataTracker extends AbstractTracker implements Tracker
     }
 
     protected void trackTransactions() throws AuthenticationException, IOException, JSONException, EncoderException
+    {
+        if (pipelineDepth < 1)
+        {
+            trackTransactions(null);
+            return;
+        }
+
+        // Fetch the nodes and metadata of later transactions while earlier ones are being indexed
+        MetadataPipeline pipeline = new MetadataPipeline(this, pipelineDepth, pipelineFetchThreads, nodeBatchSize);
+        pipeline.start();
+        try
+        {
+            trackTransactions(pipeline);
+        }
+        finally
+        {
+            pipeline.stop();
+        }
+    }
+
+    private void trackTransactions(MetadataPipeline pipeline) throws AuthenticationException, IOException, JSONException, EncoderException
     {
         long startElapsed = System.nanoTime();
         
@@ -592,9 +617,14 @@ public class MetadataTracker extends AbstractTracker implements Tracker
         {
            
 
+            long startFetch = System.nanoTime();
             Long fromCommitTime = getTxFromCommitTime(txnsFound, state.getLastGoodTxCommitTimeInIndex());
             transactions = getSomeTransactions(txnsFound, fromCommitTime, TIME_STEP_1_HR_IN_MS, 2000,
                         state.getTimeToStopIndexing());
+            if (pipeline != null)
+            {
+                trackerStats.addStageTime(MetadataPipeline.STAGE_FETCH_TRANSACTIONS, transactions.getTransactions().size(), System.nanoTime() - startFetch);
+            }
 
             setLastTxCommitTimeAndTxIdInTrackerState(transactions, state);
 
@@ -633,7 +663,7 @@ public class MetadataTracker extends AbstractTracker implements Tracker
                     if (getUpdateAndDeleteCount(txBatch) > this.transactionDocsBatchSize)
                     {
                         indexed = true;
-                        docCount += indexBatchOfTransactions(txBatch);
+                        docCount += indexBatchOfTransactions(txBatch, pipeline);
                         
                         for (Transaction scheduledTx : txBatch)
                         {
@@ -648,7 +678,7 @@ public class MetadataTracker extends AbstractTracker implements Tracker
                 {
                     if (super.infoSrv.getRegisteredSearcherCount() < getMaxLiveSearchers())
                     {
-                        indexTransactionsAfterAsynchronous(txsIndexed, state);
+                        indexTransactionsAfterAsynchronous(txsIndexed, state, pipeline);
                         long endElapsed = System.nanoTime();
                         trackerStats.addElapsedNodeTime(docCount, endElapsed-startElapsed);
                         startElapsed = endElapsed;
@@ -663,7 +693,7 @@ public class MetadataTracker extends AbstractTracker implements Tracker
                 indexed = true;
                 if (this.getUpdateAndDeleteCount(txBatch) > 0)
                 {
-                    docCount += indexBatchOfTransactions(txBatch);
+                    docCount += indexBatchOfTransactions(txBatch, pipeline);
                 }
 
                 for (Transaction scheduledTx : txBatch)
@@ -682,7 +712,7 @@ public class MetadataTracker extends AbstractTracker implements Tracker
         
         if (indexed)
         {
-            indexTransactionsAfterAsynchronous(txsIndexed, state);
+            indexTransactionsAfterAsynchronous(txsIndexed, state, pipeline);
             long endElapsed = System.nanoTime();
             trackerStats.addElapsedNodeTime(docCount, endElapsed-startElapsed);
         }
@@ -703,9 +733,14 @@ public class MetadataTracker extends AbstractTracker implements Tracker
         }
     }
 
-    private void indexTransactionsAfterAsynchronous(HashSet<Transaction> txsIndexed, TrackerState state)
+    private void indexTransactionsAfterAsynchronous(HashSet<Transaction> txsIndexed, TrackerState state, MetadataPipeline pipeline)
                 throws IOException
     {
+        if (pipeline != null)
+        {
+            // Everything submitted must reach the worker threads before we wait for them
+            pipeline.flush();
+        }
         waitForAsynchronous();
         for (Transaction tx : txsIndexed)
         {
@@ -734,6 +769,33 @@ public class MetadataTracker extends AbstractTracker implements Tracker
         return count;
     }
 
+    /**
+     * Index the nodes of the transactions, or pass the transactions to the pipeline if there is one. The pipeline
+     * fetches the nodes later, so the number of updates and deletes is returned in place of the number of nodes.
+     */
+    private int indexBatchOfTransactions(List<Transaction> txBatch, MetadataPipeline pipeline) throws AuthenticationException, IOException, JSONException
+    {
+        if (pipeline == null)
+        {
+            return indexBatchOfTransactions(txBatch);
+        }
+
+        ArrayList<Transaction> nonEmptyTxs = new ArrayList<>(txBatch.size());
+        for (Transaction tx : txBatch)
+        {
+            if (tx.getUpdates() > 0 || tx.getDeletes() > 0)
+            {
+                nonEmptyTxs.add(tx);
+            }
+        }
+        if (nonEmptyTxs.isEmpty())
+        {
+            return 0;
+        }
+        pipeline.submit(nonEmptyTxs);
+        return (int) getUpdateAndDeleteCount(nonEmptyTxs);
+    }
+
     private int indexBatchOfTransactions(List<Transaction> txBatch) throws AuthenticationException, IOException, JSONException
     {
         int nodeCount = 0;
@@ -802,48 +864,51 @@ public class MetadataTracker extends AbstractTracker implements Tracker
                 this.infoServer.indexNodes(filteredNodes, true);
             }
         }
-        
-        private List<Node> filterNodes(List<Node> nodes)
+    }
+    
+    /**
+     * Replace the nodes that belong to other shards with nodes that cascade updates to, or delete them from, this shard.
+     */
+    List<Node> filterNodes(List<Node> nodes)
+    {
+        ArrayList<Node> filteredList = new ArrayList<Node>(nodes.size());
+        for(Node node : nodes)
         {
-            ArrayList<Node> filteredList = new ArrayList<Node>(nodes.size());
-            for(Node node : nodes)
+            if(isInAclShard(node.getAclId()))
+            {
+                filteredList.add(node);
+            }
+            else
             {
-                if(isInAclShard(node.getAclId()))
+                // Cascade update children of this node if they are in this shard
+                if(node.getStatus() == SolrApiNodeStatus.UPDATED)
                 {
-                    filteredList.add(node);
+                    Node doCascade = new Node();
+                    doCascade.setAclId(node.getAclId());
+                    doCascade.setId(node.getId());
+                    doCascade.setNodeRef(node.getNodeRef());
+                    doCascade.setStatus(SolrApiNodeStatus.NON_SHARD_UPDATED);
+                    doCascade.setTenant(node.getTenant());
+                    doCascade.setTxnId(node.getTxnId());
+                    filteredList.add(doCascade);
                 }
-                else
+                else // DELETED & UNKNOWN
                 {
-                    // Cascade update children of this node if they are in this shard
-                    if(node.getStatus() == SolrApiNodeStatus.UPDATED)
-                    {
-                        Node doCascade = new Node();
-                        doCascade.setAclId(node.getAclId());
-                        doCascade.setId(node.getId());
-                        doCascade.setNodeRef(node.getNodeRef());
-                        doCascade.setStatus(SolrApiNodeStatus.NON_SHARD_UPDATED);
-                        doCascade.setTenant(node.getTenant());
-                        doCascade.setTxnId(node.getTxnId());
-                        filteredList.add(doCascade);
-                    }
-                    else // DELETED & UNKNOWN
-                    {
-                        // Make sure anything no longer relevant to this shard is deleted. 
-                        Node doDelete = new Node();
-                        doDelete.setAclId(node.getAclId());
-                        doDelete.setId(node.getId());
-                        doDelete.setNodeRef(node.getNodeRef());
-                        doDelete.setStatus(SolrApiNodeStatus.NON_SHARD_DELETED);
-                        doDelete.setTenant(node.getTenant());
-                        doDelete.setTxnId(node.getTxnId());
-                        filteredList.add(doDelete);
-                    }
-                   
-                    
+                    // Make sure anything no longer relevant to this shard is deleted. 
+                    Node doDelete = new Node();
+                    doDelete.setAclId(node.getAclId());
+                    doDelete.setId(node.getId());
+                    doDelete.setNodeRef(node.getNodeRef());
+                    doDelete.setStatus(SolrApiNodeStatus.NON_SHARD_DELETED);
+                    doDelete.setTenant(node.getTenant());
+                    doDelete.setTxnId(node.getTxnId());
+                    filteredList.add(doDelete);
                 }
+               
+                
             }
-            return filteredList;
         }
+        return filteredList;
     }
     
     
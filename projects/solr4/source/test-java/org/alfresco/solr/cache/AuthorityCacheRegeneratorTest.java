@@ -0,0 +1,190 @@
+/*
+ * #%L
+ * Alfresco Solr 4
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.solr.cache;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.alfresco.service.cmr.security.PermissionService;
+import org.alfresco.solr.AlfrescoSolrTestCaseJ4;
+import org.alfresco.solr.SolrInformationServer;
+import org.alfresco.solr.data.GlobalReaders;
+import org.alfresco.solr.query.SolrAuthoritySetQuery;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.LRUCache;
+import org.apache.solr.search.SolrCache;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.RefCounted;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks that the authority cache warmed one segment at a time matches the results worked out in full.
+ */
+@LuceneTestCase.SuppressCodecs({"Appending","Lucene3x","Lucene40","Lucene41","Lucene42","Lucene43", "Lucene44", "Lucene45","Lucene46","Lucene47","Lucene48","Lucene49"})
+public class AuthorityCacheRegeneratorTest extends AlfrescoSolrTestCaseJ4
+{
+    @BeforeClass
+    public static void beforeClass() throws Exception
+    {
+        initAlfrescoCore("solrconfig-afts.xml", "schema-afts.xml");
+    }
+
+    @Override
+    @Before
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        clearIndex();
+        assertU(commit());
+    }
+
+    @Test
+    public void readersAndOwnersOfNewDocuments() throws Exception
+    {
+        checkRegeneratedResults("|GROUP_R1", "|GROUP_R2|jim", "|jim", "|GROUP_NONE|bill");
+    }
+
+    @Test
+    public void globalReadersCanReadNewDocuments() throws Exception
+    {
+        checkRegeneratedResults("|" + PermissionService.ADMINISTRATOR_AUTHORITY, "|GROUP_R1|" + PermissionService.ADMINISTRATOR_AUTHORITY);
+    }
+
+    @Test
+    public void ownersReadOnlyWhereTheirAclLetsThemWithoutGlobalOwnerRead() throws Exception
+    {
+        GlobalReaders.getReaders().remove(PermissionService.OWNER_AUTHORITY);
+        try
+        {
+            checkRegeneratedResults("|GROUP_R1", "|GROUP_R2|jim", "|jim", "|GROUP_NONE|bill");
+        }
+        finally
+        {
+            GlobalReaders.getReaders().add(PermissionService.OWNER_AUTHORITY);
+        }
+    }
+
+    /**
+     * Index ACLs and documents, then documents in a new segment, and check the regenerated results of the authority
+     * sets against the ones worked out by the query.
+     */
+    private void checkRegeneratedResults(String... authoritySets) throws Exception
+    {
+        assertU(adoc("id", "100", "DOC_TYPE", SolrInformationServer.DOC_TYPE_ACL, "ACLID", "5000", "READER", "GROUP_R1"));
+        assertU(adoc("id", "101", "DOC_TYPE", SolrInformationServer.DOC_TYPE_ACL, "ACLID", "6000", "READER", "GROUP_R2"));
+        assertU(adoc("id", "102", "DOC_TYPE", SolrInformationServer.DOC_TYPE_ACL, "ACLID", "7000", "READER", PermissionService.OWNER_AUTHORITY));
+        assertU(adoc("id", "1", "ACLID", "5000", "OWNER", "jim"));
+        assertU(adoc("id", "2", "ACLID", "6000", "OWNER", "bill"));
+        assertU(adoc("id", "3", "ACLID", "7000", "OWNER", "jim"));
+        assertU(commit());
+
+        RefCounted<SolrIndexSearcher> oldRef = h.getCore().getSearcher();
+        try
+        {
+            // New documents, with and without ACLs, including a document deleted from the old segment
+            assertU(adoc("id", "4", "ACLID", "5000", "OWNER", "bill"));
+            assertU(adoc("id", "5", "ACLID", "6000", "OWNER", "jim"));
+            assertU(adoc("id", "6", "ACLID", "7000", "OWNER", "bill"));
+            assertU(adoc("id", "7", "OWNER", "jim"));
+            assertU(adoc("id", "8", "OWNER", "bill"));
+            assertU(adoc("id", "9", "ACLID", "8000"));
+            assertU(delI("1"));
+            assertU(commit());
+
+            RefCounted<SolrIndexSearcher> newRef = h.getCore().getSearcher();
+            try
+            {
+                SolrIndexSearcher oldSearcher = oldRef.get();
+                SolrIndexSearcher newSearcher = newRef.get();
+                for (String authoritySet : authoritySets)
+                {
+                    SolrAuthoritySetQuery key = new SolrAuthoritySetQuery(authoritySet);
+                    AuthorityCacheRegenerator regenerator = new AuthorityCacheRegenerator();
+                    SolrCache<Object, Object> oldCache = newCache(regenerator);
+                    SolrCache<Object, Object> newCache = newCache(regenerator);
+
+                    // The first warming has no segments to carry over, so records the layout of the old searcher
+                    regenerator.regenerateItem(oldSearcher, oldCache, newCache(regenerator), key, null);
+                    DocSet oldDocs = oldSearcher.getDocSet(key);
+                    regenerator.regenerateItem(newSearcher, newCache, oldCache, key, oldDocs);
+
+                    if (keepsOldSegments(oldSearcher, newSearcher))
+                    {
+                        assertEquals(authoritySet, 1L, regenerator.getStatistics().get("regeneratedItems"));
+                        DocSet regenerated = (DocSet) newCache.get(key);
+                        DocSet expected = newSearcher.getDocSet(key);
+                        assertEquals(authoritySet, expected.size(), regenerated.size());
+                        assertEquals(authoritySet, expected.size(), expected.intersectionSize(regenerated));
+                    }
+                }
+            }
+            finally
+            {
+                newRef.decref();
+            }
+        }
+        finally
+        {
+            oldRef.decref();
+        }
+    }
+
+    private static SolrCache<Object, Object> newCache(AuthorityCacheRegenerator regenerator)
+    {
+        LRUCache<Object, Object> cache = new LRUCache<Object, Object>();
+        Map<String, String> args = new HashMap<String, String>();
+        args.put("name", CacheConstants.ALFRESCO_AUTHORITY_CACHE);
+        args.put("size", "10");
+        cache.init(args, null, regenerator);
+        return cache;
+    }
+
+    /**
+     * Merges of the old segments, which the random index config allows, leave nothing to carry over.
+     */
+    private static boolean keepsOldSegments(SolrIndexSearcher oldSearcher, SolrIndexSearcher newSearcher)
+    {
+        Set<Object> coreKeys = new HashSet<Object>();
+        for (AtomicReaderContext context : newSearcher.getTopReaderContext().leaves())
+        {
+            coreKeys.add(context.reader().getCoreCacheKey());
+        }
+        for (AtomicReaderContext context : oldSearcher.getTopReaderContext().leaves())
+        {
+            if (!coreKeys.contains(context.reader().getCoreCacheKey()))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
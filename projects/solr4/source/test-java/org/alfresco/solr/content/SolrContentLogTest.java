@@ -0,0 +1,229 @@
+/*
+ * #%L
+ * Alfresco Solr 4
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.solr.content;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link SolrContentLog}
+ *
+ * @since 5.2
+ */
+public class SolrContentLogTest
+{
+    private File dir;
+    private SolrContentLog contentLog;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        File tempFile = File.createTempFile("SolrContentLogTest-", ".bin");
+        dir = new File(tempFile.getParentFile(), "SolrContentLogTest-" + System.currentTimeMillis());
+        tempFile.delete();
+        contentLog = open();
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        contentLog.close();
+        FileUtils.deleteDirectory(dir);
+    }
+
+    private SolrContentLog open() throws IOException
+    {
+        return new SolrContentLog(dir, 4096, 0.5f);
+    }
+
+    private static String url(String tenant, long dbId)
+    {
+        return SolrContentUrlBuilder.start()
+                    .add(SolrContentUrlBuilder.KEY_TENANT, tenant)
+                    .add(SolrContentUrlBuilder.KEY_DB_ID, String.valueOf(dbId))
+                    .get();
+    }
+
+    private String get(String url) throws IOException
+    {
+        SolrContentLog.Entry entry = contentLog.get(url);
+        return entry == null ? null : new String(entry.data, StandardCharsets.UTF_8);
+    }
+
+    private void put(String url, String data) throws IOException
+    {
+        contentLog.put(url, data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void putGetDelete() throws IOException
+    {
+        String url = url("default", 1234567L);
+        String otherUrl = SolrContentUrlBuilder.start().add("data", "abc").get();
+        Assert.assertNull(get(url));
+
+        put(url, "first");
+        put(otherUrl, "other");
+        Assert.assertEquals("first", get(url));
+        Assert.assertEquals("other", get(otherUrl));
+
+        put(url, "second");
+        Assert.assertEquals("second", get(url));
+        Assert.assertEquals(2, contentLog.size());
+
+        Assert.assertTrue(contentLog.delete(url));
+        Assert.assertFalse(contentLog.delete(url));
+        Assert.assertNull(get(url));
+        Assert.assertEquals(-1L, contentLog.getLocation(url));
+        Assert.assertEquals(1, contentLog.size());
+    }
+
+    @Test
+    public void tenantsAreKeptApart() throws IOException
+    {
+        put(url("default", 5L), "default");
+        put(url("acme.com", 5L), "acme");
+        Assert.assertEquals("default", get(url("default", 5L)));
+        Assert.assertEquals("acme", get(url("acme.com", 5L)));
+    }
+
+    @Test
+    public void manyDocuments() throws IOException
+    {
+        for (long dbId = 0; dbId < 2000; dbId++)
+        {
+            put(url("default", dbId), "doc-" + dbId);
+        }
+        for (long dbId = 0; dbId < 2000; dbId += 2)
+        {
+            contentLog.delete(url("default", dbId));
+        }
+        Assert.assertEquals(1000, contentLog.size());
+        for (long dbId = 0; dbId < 2000; dbId++)
+        {
+            Assert.assertEquals(dbId % 2 == 0 ? null : "doc-" + dbId, get(url("default", dbId)));
+        }
+    }
+
+    @Test
+    public void replayOnOpen() throws IOException
+    {
+        put(url("default", 1L), "one");
+        put(url("default", 2L), "two");
+        put(url("default", 1L), "three");
+        contentLog.delete(url("default", 2L));
+        contentLog.close();
+
+        contentLog = open();
+        Assert.assertEquals("three", get(url("default", 1L)));
+        Assert.assertNull(get(url("default", 2L)));
+        Assert.assertEquals(1, contentLog.size());
+    }
+
+    @Test
+    public void incompleteRecordIsTruncated() throws IOException
+    {
+        put(url("default", 1L), "one");
+        put(url("default", 2L), "two");
+        contentLog.close();
+
+        File segment = dir.listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw"))
+        {
+            file.setLength(file.length() - 3);
+        }
+        contentLog = open();
+        Assert.assertEquals("one", get(url("default", 1L)));
+        Assert.assertNull(get(url("default", 2L)));
+
+        put(url("default", 2L), "again");
+        Assert.assertEquals("again", get(url("default", 2L)));
+    }
+
+    @Test
+    public void batchGet() throws IOException
+    {
+        List<String> urls = new ArrayList<String>();
+        for (long dbId = 10; dbId > 0; dbId--)
+        {
+            put(url("default", dbId), "doc-" + dbId);
+            urls.add(url("default", dbId));
+        }
+        urls.add(url("default", 99L));
+
+        Map<String, SolrContentLog.Entry> entries = contentLog.get(urls);
+        Assert.assertEquals(10, entries.size());
+        for (long dbId = 1; dbId <= 10; dbId++)
+        {
+            SolrContentLog.Entry entry = entries.get(url("default", dbId));
+            Assert.assertEquals("doc-" + dbId, new String(entry.data, StandardCharsets.UTF_8));
+            Assert.assertEquals(contentLog.getLocation(url("default", dbId)), entry.location);
+        }
+    }
+
+    @Test
+    public void compaction() throws IOException
+    {
+        String data = new String(new char[200]).replace('\0', 'x');
+        for (int round = 0; round < 10; round++)
+        {
+            for (long dbId = 0; dbId < 10; dbId++)
+            {
+                put(url("default", dbId), data + round);
+            }
+        }
+        contentLog.delete(url("default", 0L));
+        int segments = contentLog.getSegmentCount();
+        Assert.assertTrue(segments > 2);
+
+        contentLog.compact();
+        Assert.assertTrue(contentLog.getSegmentCount() < segments);
+        Assert.assertEquals(9, contentLog.size());
+        for (long dbId = 1; dbId < 10; dbId++)
+        {
+            Assert.assertEquals(data + 9, get(url("default", dbId)));
+        }
+        Assert.assertNull(get(url("default", 0L)));
+
+        // The compacted log replays to the same documents
+        contentLog.close();
+        contentLog = open();
+        Assert.assertEquals(9, contentLog.size());
+        Assert.assertEquals(data + 9, get(url("default", 5L)));
+        Assert.assertNull(get(url("default", 0L)));
+    }
+}
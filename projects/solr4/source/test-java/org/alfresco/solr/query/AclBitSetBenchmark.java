@@ -0,0 +1,170 @@
+/*
+ * #%L
+ * Alfresco Solr 4
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.solr.query;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the {@link RoaringBitSet} with the {@link HybridBitSet} it replaced for building the set of ACL ids readable
+ * by a user and checking the ACL id of each document against it. ACL ids are spread over a range larger than the
+ * hybrid bit set's fixed bitmap, as on repositories with many ACLs.
+ * <p/>
+ * Run with <tt>main</tt> from the test classpath.
+ *
+ * @since 5.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AclBitSetBenchmark
+{
+    private static final int HYBRID_BITS = 60000000;
+
+    @Param({ "1000", "100000" })
+    public int aclCount;
+
+    @Param({ "100000000" })
+    public long aclIdRange;
+
+    private long[] readableAclIds;
+    private long[] docAclIds;
+    private HybridBitSet hybridBitSet;
+    private RoaringBitSet roaringBitSet;
+    private RoaringBitSet otherRoaringBitSet;
+
+    @Setup
+    public void setUp()
+    {
+        Random random = new Random(42);
+        readableAclIds = new long[aclCount];
+        for (int i = 0; i < aclCount; i++)
+        {
+            readableAclIds[i] = (long) (random.nextDouble() * aclIdRange);
+        }
+        docAclIds = new long[100000];
+        for (int i = 0; i < docAclIds.length; i++)
+        {
+            docAclIds[i] = random.nextBoolean() ? readableAclIds[random.nextInt(aclCount)] : (long) (random.nextDouble() * aclIdRange);
+        }
+        hybridBitSet = buildHybrid();
+        roaringBitSet = buildRoaring();
+        otherRoaringBitSet = new RoaringBitSet();
+        for (int i = 0; i < aclCount; i++)
+        {
+            otherRoaringBitSet.set((long) (random.nextDouble() * aclIdRange));
+        }
+        otherRoaringBitSet.optimize();
+    }
+
+    @Benchmark
+    public HybridBitSet buildHybrid()
+    {
+        HybridBitSet bitSet = new HybridBitSet(HYBRID_BITS);
+        for (long aclId : readableAclIds)
+        {
+            bitSet.set(aclId);
+        }
+        return bitSet;
+    }
+
+    @Benchmark
+    public RoaringBitSet buildRoaring()
+    {
+        RoaringBitSet bitSet = new RoaringBitSet();
+        for (long aclId : readableAclIds)
+        {
+            bitSet.set(aclId);
+        }
+        bitSet.optimize();
+        return bitSet;
+    }
+
+    @Benchmark
+    public int collectHybrid()
+    {
+        int count = 0;
+        for (long aclId : docAclIds)
+        {
+            if (hybridBitSet.get(aclId))
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int collectRoaring()
+    {
+        int count = 0;
+        for (long aclId : docAclIds)
+        {
+            if (roaringBitSet.get(aclId))
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public RoaringBitSet andRoaring()
+    {
+        return roaringBitSet.and(otherRoaringBitSet);
+    }
+
+    @Benchmark
+    public RoaringBitSet orRoaring()
+    {
+        return roaringBitSet.or(otherRoaringBitSet);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options options = new OptionsBuilder().include(AclBitSetBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * #%L
+ * Alfresco Solr 4
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.solr.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DocValuesCacheTest
+{
+    private static final String FIELD = "ACLID";
+    private static final long[] VALUES = { 0L, 1L, -7L, 1000L, Integer.MAX_VALUE + 1L, 42L };
+
+    private Directory directory;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_48, new KeywordAnalyzer()));
+        for (long value : VALUES)
+        {
+            Document document = new Document();
+            document.add(new NumericDocValuesField(FIELD, value));
+            writer.addDocument(document);
+        }
+        writer.forceMerge(1);
+        writer.close();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        directory.close();
+    }
+
+    @Test
+    public void valuesMatchTheIndexAndAreSharedBySegment() throws Exception
+    {
+        DirectoryReader reader = DirectoryReader.open(directory);
+        try
+        {
+            AtomicReader segment = reader.leaves().get(0).reader();
+            NumericDocValues values = DocValuesCache.getNumericDocValues(FIELD, segment);
+            for (int i = 0; i < VALUES.length; i++)
+            {
+                assertEquals(VALUES[i], values.get(i));
+            }
+            assertSame(values, DocValuesCache.getNumericDocValues(FIELD, segment));
+            assertNull(DocValuesCache.getNumericDocValues("missing", segment));
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void memoryIsReleasedWhenTheSegmentIsClosed() throws Exception
+    {
+        long before = heapBytesUsed();
+        DirectoryReader reader = DirectoryReader.open(directory);
+        try
+        {
+            DocValuesCache.getNumericDocValues(FIELD, reader.leaves().get(0).reader());
+            assertTrue(heapBytesUsed() > before);
+        }
+        finally
+        {
+            reader.close();
+        }
+        assertEquals(before, heapBytesUsed());
+    }
+
+    @Test
+    public void concurrentQueriesLoadEachFieldOnce() throws Exception
+    {
+        final DirectoryReader reader = DirectoryReader.open(directory);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try
+        {
+            long loadsBefore = statistic("loads");
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<NumericDocValues>> results = new ArrayList<Future<NumericDocValues>>();
+            for (int i = 0; i < 8; i++)
+            {
+                results.add(executor.submit(new Callable<NumericDocValues>()
+                {
+                    public NumericDocValues call() throws Exception
+                    {
+                        start.await();
+                        return DocValuesCache.getNumericDocValues(FIELD, reader.leaves().get(0).reader());
+                    }
+                }));
+            }
+            start.countDown();
+            NumericDocValues first = results.get(0).get();
+            for (Future<NumericDocValues> result : results)
+            {
+                assertSame(first, result.get());
+            }
+            assertEquals(loadsBefore + 1, statistic("loads"));
+        }
+        finally
+        {
+            executor.shutdown();
+            reader.close();
+        }
+    }
+
+    @Test
+    public void valuesOfAClosedSegmentAreNotCounted()
+    {
+        long before = heapBytesUsed();
+        DocValuesCache.SegmentValues segmentValues = new DocValuesCache.SegmentValues();
+        DocValuesCache.PackedValues counted = new DocValuesCache.PackedValues(100, 8, 0);
+        assertTrue(segmentValues.account(counted));
+        assertTrue(heapBytesUsed() > before);
+
+        segmentValues.close();
+        assertEquals(before, heapBytesUsed());
+
+        // As when the segment is closed while a query is still loading values
+        assertFalse(segmentValues.account(new DocValuesCache.PackedValues(100, 8, 0)));
+        assertEquals(before, heapBytesUsed());
+    }
+
+    @Test
+    public void offHeapValuesRoundTripAtEveryWidth()
+    {
+        for (int bitsPerValue : new int[] { 1, 8, 9, 16, 17, 32, 33, 64 })
+        {
+            long max = bitsPerValue == 64 ? -1L : (1L << bitsPerValue) - 1;
+            long offset = bitsPerValue == 64 ? 0 : -5L;
+            DocValuesCache.OffHeapValues values = new DocValuesCache.OffHeapValues(3, bitsPerValue, offset);
+            values.set(0, offset);
+            values.set(1, offset + max);
+            values.set(2, offset + (max >>> 1));
+            assertEquals(offset, values.get(0));
+            assertEquals(offset + max, values.get(1));
+            assertEquals(offset + (max >>> 1), values.get(2));
+        }
+    }
+
+    @Test
+    public void offHeapValuesMustFitOneBuffer()
+    {
+        assertTrue(DocValuesCache.OffHeapValues.fits(Integer.MAX_VALUE, 8));
+        assertFalse(DocValuesCache.OffHeapValues.fits(Integer.MAX_VALUE, 9));
+        assertTrue(DocValuesCache.OffHeapValues.fits(Integer.MAX_VALUE >> 3, 64));
+        assertFalse(DocValuesCache.OffHeapValues.fits((Integer.MAX_VALUE >> 3) + 1, 64));
+        assertFalse(DocValuesCache.OffHeapValues.fits(300000000, 64));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void offHeapValuesThatDoNotFitAreRejected()
+    {
+        new DocValuesCache.OffHeapValues(300000000, 64, 0);
+    }
+
+    private static long heapBytesUsed()
+    {
+        return statistic("heapBytesUsed");
+    }
+
+    private static long statistic(String name)
+    {
+        return ((Number) DocValuesCache.getStatistics().get(name)).longValue();
+    }
+}
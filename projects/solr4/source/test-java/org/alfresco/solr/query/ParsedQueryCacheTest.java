@@ -0,0 +1,136 @@
+/*
+ * #%L
+ * Alfresco Solr 4
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.solr.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.alfresco.repo.search.impl.parsers.FTSQueryParser.RerankPhase;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.cmr.dictionary.TypeDefinition;
+import org.alfresco.service.cmr.search.SearchParameters;
+import org.alfresco.service.namespace.QName;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.junit.Test;
+
+public class ParsedQueryCacheTest
+{
+    private static SearchParameters searchParameters(String query, Locale locale)
+    {
+        SearchParameters searchParameters = new SearchParameters();
+        searchParameters.setQuery(query);
+        searchParameters.addLocale(locale);
+        searchParameters.addQueryTemplate("keywords", "%(cm:name cm:title cm:description)");
+        return searchParameters;
+    }
+
+    @Test
+    public void queriesAreCachedByEverythingTheParseDependsOn()
+    {
+        ParsedQueryCache cache = new ParsedQueryCache(10);
+        String key = cache.getKey("alfresco", searchParameters("keywords:banana", Locale.ENGLISH), RerankPhase.SINGLE_PASS);
+        Query query = new TermQuery(new Term("TEXT", "banana"));
+        assertNull(cache.get(key));
+        cache.put(key, cache.getGeneration(), query, 1000);
+
+        Query cached = cache.get(cache.getKey("alfresco", searchParameters("keywords:banana", Locale.ENGLISH), RerankPhase.SINGLE_PASS));
+        assertEquals(query, cached);
+        // Copies, so that setting the boost of one does not change the others
+        assertNotSame(query, cached);
+
+        assertNull(cache.get(cache.getKey("archive", searchParameters("keywords:banana", Locale.ENGLISH), RerankPhase.SINGLE_PASS)));
+        assertNull(cache.get(cache.getKey("alfresco", searchParameters("keywords:banana", Locale.FRENCH), RerankPhase.SINGLE_PASS)));
+        assertNull(cache.get(cache.getKey("alfresco", searchParameters("keywords:apple", Locale.ENGLISH), RerankPhase.SINGLE_PASS)));
+    }
+
+    @Test
+    public void queriesRelativeToNowAreNotCached()
+    {
+        ParsedQueryCache cache = new ParsedQueryCache(10);
+        assertNull(cache.getKey("alfresco", searchParameters("cm:modified:[NOW-1DAY TO NOW]", Locale.ENGLISH), RerankPhase.SINGLE_PASS));
+        assertNull(cache.getKey("alfresco", searchParameters("cm:created:[today TO MAX]", Locale.ENGLISH), RerankPhase.SINGLE_PASS));
+        assertNotNull(cache.getKey("alfresco", searchParameters("cm:name:knowledge", Locale.ENGLISH), RerankPhase.SINGLE_PASS));
+        assertNull(new ParsedQueryCache(0).getKey("alfresco", searchParameters("cm:name:knowledge", Locale.ENGLISH), RerankPhase.SINGLE_PASS));
+    }
+
+    @Test
+    public void modelChangesInvalidate()
+    {
+        ParsedQueryCache cache = new ParsedQueryCache(10);
+        String key = cache.getKey("alfresco", searchParameters("TYPE:cm:content", Locale.ENGLISH), RerankPhase.SINGLE_PASS);
+        long generation = cache.getGeneration();
+        cache.put(key, generation, new TermQuery(new Term("TYPE", "content")), 1000);
+        cache.invalidate();
+        assertNull(cache.get(key));
+
+        // A query built for the models as they were is not cached
+        cache.put(key, generation, new TermQuery(new Term("TYPE", "content")), 1000);
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void typeExpansionsAreCached()
+    {
+        QName content = QName.createQName("{test}content");
+        QName included = QName.createQName("{test}included");
+        QName excluded = QName.createQName("{test}excluded");
+        DictionaryService dictionaryService = mock(DictionaryService.class);
+        when(dictionaryService.getSubTypes(content, true)).thenReturn(Arrays.asList(content, included, excluded));
+        mockType(dictionaryService, content, true);
+        mockType(dictionaryService, included, true);
+        mockType(dictionaryService, excluded, false);
+
+        ParsedQueryCache cache = new ParsedQueryCache(10);
+        List<QName> expansion = cache.getExpansion(dictionaryService, content, false);
+        assertEquals(Arrays.asList(content, included), expansion);
+        assertEquals(expansion, cache.getExpansion(dictionaryService, content, false));
+        verify(dictionaryService, times(1)).getSubTypes(content, true);
+
+        cache.invalidate();
+        cache.getExpansion(dictionaryService, content, false);
+        verify(dictionaryService, times(2)).getSubTypes(content, true);
+    }
+
+    private static void mockType(DictionaryService dictionaryService, QName name, boolean includedInSuperTypeQuery)
+    {
+        TypeDefinition type = mock(TypeDefinition.class);
+        when(type.getName()).thenReturn(name);
+        when(type.getIncludedInSuperTypeQuery()).thenReturn(includedInSuperTypeQuery);
+        when(dictionaryService.getType(name)).thenReturn(type);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * #%L
+ * Alfresco Solr 4
+ * %%
+ * Copyright (C) 2005 - 2016 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.solr.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class RoaringBitSetTest
+{
+    @Test
+    public void setBitsAreFoundAcrossContainerTypes()
+    {
+        Random random = new Random(7);
+        RoaringBitSet bitSet = new RoaringBitSet();
+        Set<Long> expected = new HashSet<>();
+        // Sparse, dense and run containers, and ids beyond the range of an int
+        for (int i = 0; i < 10000; i++)
+        {
+            long sparse = random.nextInt(10000000);
+            long dense = 70000 + random.nextInt(10000);
+            long run = 200000 + i;
+            long large = Integer.MAX_VALUE * 3L + random.nextInt(1000);
+            for (long bit : new long[] { sparse, dense, run, large })
+            {
+                bitSet.set(bit);
+                expected.add(bit);
+            }
+        }
+        bitSet.optimize();
+
+        assertEquals(expected.size(), bitSet.cardinality());
+        for (long bit : expected)
+        {
+            assertTrue(bitSet.get(bit));
+        }
+        for (long bit = 0; bit < 300000; bit++)
+        {
+            assertEquals(expected.contains(bit), bitSet.get(bit));
+        }
+    }
+
+    @Test
+    public void andAndOrMatchSetOperations()
+    {
+        Random random = new Random(11);
+        RoaringBitSet left = new RoaringBitSet();
+        RoaringBitSet right = new RoaringBitSet();
+        Set<Long> leftBits = new HashSet<>();
+        Set<Long> rightBits = new HashSet<>();
+        for (int i = 0; i < 20000; i++)
+        {
+            long bit = random.nextInt(500000);
+            left.set(bit);
+            leftBits.add(bit);
+            bit = random.nextInt(500000);
+            right.set(bit);
+            rightBits.add(bit);
+        }
+        right.optimize();
+
+        Set<Long> and = new HashSet<>(leftBits);
+        and.retainAll(rightBits);
+        Set<Long> or = new HashSet<>(leftBits);
+        or.addAll(rightBits);
+
+        RoaringBitSet andBits = left.and(right);
+        RoaringBitSet orBits = left.or(right);
+        assertEquals(and.size(), andBits.cardinality());
+        assertEquals(or.size(), orBits.cardinality());
+        for (long bit = 0; bit < 500000; bit++)
+        {
+            assertEquals(and.contains(bit), andBits.get(bit));
+            assertEquals(or.contains(bit), orBits.get(bit));
+        }
+    }
+
+    @Test
+    public void runsUseLessMemoryOnceOptimized()
+    {
+        RoaringBitSet bitSet = new RoaringBitSet();
+        for (long bit = 1000; bit < 1001000; bit++)
+        {
+            bitSet.set(bit);
+        }
+        long before = bitSet.ramBytesUsed();
+        bitSet.optimize();
+        assertTrue(bitSet.ramBytesUsed() < before / 10);
+        assertTrue(bitSet.get(1000));
+        assertTrue(bitSet.get(1000999));
+        assertFalse(bitSet.get(999));
+        assertFalse(bitSet.get(1001000));
+
+        // Still settable after optimizing
+        bitSet.set(5);
+        assertTrue(bitSet.get(5));
+        assertEquals(1000001, bitSet.cardinality());
+    }
+
+    @Test
+    public void emptyBitSet()
+    {
+        RoaringBitSet bitSet = new RoaringBitSet();
+        bitSet.optimize();
+        assertTrue(bitSet.isEmpty());
+        assertFalse(bitSet.get(0));
+        bitSet.set(0);
+        assertFalse(bitSet.isEmpty());
+        assertTrue(bitSet.get(0));
+    }
+}
@@ -136,4 +136,45 @@ public class ContentTrackerTest
         
         order.verify(srv).getDocsWithUncleanContent(0 + READ_BATCH + READ_BATCH, READ_BATCH);
     }
+
+    @Test
+    public void doTrackWithLargeContentLaneUpdatesBothLanes() throws Exception
+    {
+        long largeContentSize = 1000000l;
+        doReturn("" + largeContentSize).when(props).getProperty(eq("alfresco.contentTracker.largeContentSize"), anyString());
+        ContentTracker laneTracker = new ContentTracker(props, repositoryClient, coreName, srv);
+
+        List<TenantAclIdDbId> largeDocs = new ArrayList<>();
+        TenantAclIdDbId largeDoc = new TenantAclIdDbId();
+        largeDoc.dbId = 5l;
+        largeDoc.tenant = "5";
+        largeDocs.add(largeDoc);
+        List<TenantAclIdDbId> smallDocs = new ArrayList<>();
+        TenantAclIdDbId smallDoc = new TenantAclIdDbId();
+        smallDoc.dbId = 6l;
+        smallDoc.tenant = "6";
+        smallDocs.add(smallDoc);
+        List<TenantAclIdDbId> emptyList = new ArrayList<>();
+        when(this.srv.getDocsWithUncleanContent(anyInt(), anyInt(), eq(largeContentSize), eq(true)))
+                .thenReturn(largeDocs)
+                .thenReturn(emptyList);
+        when(this.srv.getDocsWithUncleanContent(anyInt(), anyInt(), eq(largeContentSize), eq(false)))
+                .thenReturn(smallDocs)
+                .thenReturn(emptyList);
+
+        try
+        {
+            laneTracker.doTrack();
+        }
+        finally
+        {
+            laneTracker.close();
+        }
+
+        verify(srv).updateContentToIndexAndCache(5l, "5");
+        verify(srv).updateContentToIndexAndCache(6l, "6");
+        verify(srv, never()).getDocsWithUncleanContent(anyInt(), anyInt());
+        // One commit for each lane
+        verify(srv, times(2)).commit();
+    }
 }
@@ -42,6 +42,9 @@ import org.alfresco.solr.NodeReport;
 import org.alfresco.solr.TrackerState;
 import org.alfresco.solr.client.GetNodesParameters;
 import org.alfresco.solr.client.Node;
+import org.alfresco.solr.client.Node.SolrApiNodeStatus;
+import org.alfresco.solr.client.NodeMetaData;
+import org.alfresco.solr.client.NodeMetaDataParameters;
 import org.alfresco.solr.client.SOLRAPIClient;
 import org.alfresco.solr.client.Transaction;
 import org.alfresco.solr.client.Transactions;
@@ -127,6 +130,50 @@ public class MetadataTrackerTest
         inOrder.verify(srv).commit();
     }
 
+    @Test
+    public void doTrackPipelinedIndexesNodesWithFetchedMetaDataBeforeTransaction() throws AuthenticationException, IOException, JSONException, EncoderException
+    {
+        props.setProperty("alfresco.metadataPipelineDepth", "2");
+        this.metadataTracker = spy(new MetadataTracker(props, repositoryClient, coreName, srv));
+
+        TrackerState state = new TrackerState();
+        state.setTimeToStopIndexing(2L);
+        when(srv.getTrackerInitialState()).thenReturn(state);
+        when(this.metadataTracker.getTrackerState()).thenReturn(state);
+
+        List<Transaction> txsList = new ArrayList<>();
+        Transaction tx = new Transaction();
+        tx.setCommitTimeMs(1L);
+        tx.setDeletes(1);
+        tx.setUpdates(1);
+        txsList.add(tx);
+        Transactions txs = mock(Transactions.class);
+        when(txs.getTransactions()).thenReturn(txsList);
+
+        when(repositoryClient.getTransactions(anyLong(), anyLong(), anyLong(), anyLong(), anyInt(), isNull(ShardState.class))).thenReturn(txs)
+        .thenReturn(txs).thenReturn(mock(Transactions.class));
+        when(repositoryClient.getTransactions(anyLong(), anyLong(), anyLong(), anyLong(), anyInt(), any(ShardState.class))).thenReturn(txs)
+        .thenReturn(txs).thenReturn(mock(Transactions.class));
+
+        List<Node> nodes = getNodes();
+        nodes.get(0).setStatus(SolrApiNodeStatus.UPDATED);
+        when(repositoryClient.getNodes(any(GetNodesParameters.class), anyInt())).thenReturn(nodes);
+        List<NodeMetaData> nodeMetaDatas = new ArrayList<>();
+        NodeMetaData nodeMetaData = new NodeMetaData();
+        nodeMetaData.setId(DB_ID);
+        nodeMetaData.setTxnId(TX_ID);
+        nodeMetaDatas.add(nodeMetaData);
+        when(repositoryClient.getNodesMetaData(any(NodeMetaDataParameters.class), anyInt())).thenReturn(nodeMetaDatas);
+
+        this.metadataTracker.doTrack();
+
+        InOrder inOrder = inOrder(srv);
+        inOrder.verify(srv).indexNodes(nodes, true, nodeMetaDatas);
+        inOrder.verify(srv).indexTransaction(tx, true);
+        inOrder.verify(srv).commit();
+        verify(srv, never()).indexNodes(anyListOf(Node.class), anyBoolean());
+    }
+
     @Test
     public void doTrackWithNoTransactionsDoesNothing() throws AuthenticationException, IOException, JSONException, EncoderException
     {